@@ -11,6 +11,10 @@ tokens { TERM; CPUTIME; DEFDATA; FUNCSET;
 
 @header {
   package org.cmayes.hartree.parser.gaussian.antlr;
+
+  import java.util.Set;
+
+  import org.cmayes.hartree.model.SnapshotField;
 }
 
 // This is Java-specific; these are context flags to avoid matching on unwanted data. 
@@ -33,6 +37,46 @@ tokens { TERM; CPUTIME; DEFDATA; FUNCSET;
     boolean natomsFound = false;
     boolean natomsCtx = false;
     boolean solventCtx = false;
+    boolean optParamCtx = false;
+
+    // Rule switches; a projected load turns off the rules for unwanted data.
+    boolean xyzOn = true;
+    boolean chargeOn = true;
+    boolean multOn = true;
+    boolean stoOn = true;
+    boolean solventOn = true;
+    boolean elecEngOn = true;
+    boolean dipOn = true;
+    boolean zpeOn = true;
+    boolean g298On = true;
+    boolean h298On = true;
+    boolean bsseOn = true;
+    boolean freqOn = true;
+    boolean cpuOn = true;
+    boolean termOn = true;
+
+    /**
+     * Turns off the rules for data that isn't needed for the given fields.
+     * Geometries, CPU times and termination dates are always turned off.
+     *
+     * @param fields The fields to keep.
+     */
+    public void project(final Set<SnapshotField> fields) {
+        xyzOn = false;
+        cpuOn = false;
+        termOn = false;
+        chargeOn = fields.contains(SnapshotField.CHARGE);
+        multOn = fields.contains(SnapshotField.MULT);
+        stoOn = fields.contains(SnapshotField.STOICHIOMETRY);
+        solventOn = fields.contains(SnapshotField.SOLVENT);
+        elecEngOn = fields.contains(SnapshotField.ENERGY);
+        dipOn = fields.contains(SnapshotField.DIPOLE);
+        zpeOn = fields.contains(SnapshotField.ZPE);
+        g298On = fields.contains(SnapshotField.G298);
+        h298On = fields.contains(SnapshotField.H298);
+        bsseOn = fields.contains(SnapshotField.BSSE);
+        freqOn = fields.contains(SnapshotField.FREQ);
+    }
 }
 
 // Def block
@@ -41,24 +85,24 @@ DEFOPEN: {!defCtx}? SEPDASH WS HASH { defCtx = true; $channel = HIDDEN; };
 FUNCSET: {defCtx}? => ANUM SLASH FORMULA ;
 DEFCLOSE: {defCtx}? => SEPDASH { defCtx = false; $channel = HIDDEN; };
 
-ZPEOPEN: 'Zero-point correction=' { zpeCtx = true; $channel = HIDDEN; };
+ZPEOPEN: {zpeOn}? => 'Zero-point correction=' { zpeCtx = true; $channel = HIDDEN; };
 ZPECORR: {zpeCtx}? => FLOAT { zpeCtx = false; };
 
-G298OPEN: 'Sum of electronic and thermal Free Energies=' { g298Ctx = true; $channel = HIDDEN; };
+G298OPEN: {g298On}? => 'Sum of electronic and thermal Free Energies=' { g298Ctx = true; $channel = HIDDEN; };
 G298: {g298Ctx}? => FLOAT { g298Ctx = false; };
 
-H298OPEN: 'Sum of electronic and thermal Enthalpies=' { h298Ctx = true; $channel = HIDDEN; };
+H298OPEN: {h298On}? => 'Sum of electronic and thermal Enthalpies=' { h298Ctx = true; $channel = HIDDEN; };
 H298: {h298Ctx}? => FLOAT { h298Ctx = false; };
 
-BSSEOPEN: 'BSSE energy' { bsseCtx = true; $channel = HIDDEN; };
+BSSEOPEN: {bsseOn}? => 'BSSE energy' { bsseCtx = true; $channel = HIDDEN; };
 BSSE: {bsseCtx}? => FLOAT { bsseCtx = false; };
 
 // Multiplicity
-MULTTAG: 'Multiplicity' { multCtx = true; $channel = HIDDEN; };
+MULTTAG: {multOn}? => 'Multiplicity' { multCtx = true; $channel = HIDDEN; };
 MULT: {multCtx}? => INT { multCtx = false; };
 
 // XYZ coordinates
-XYZTAG: 'Input orientation:' { xyzCtx = true; $channel = HIDDEN; };
+XYZTAG: {xyzOn}? => 'Input orientation:' { xyzCtx = true; $channel = HIDDEN; };
 XYZFLOAT: {xyzCtx}? FLOAT ;
 XYZINT: {xyzCtx}? INT ;
 XYZEND: ( 'Symmetry turned off by external request' | 'Distance matrix (angstroms):' | 'Rotational constants (GHZ):') { xyzCtx = false; $channel = HIDDEN; };
@@ -69,31 +113,46 @@ NATOMS: {(natomsCtx && (!natomsFound))}? => INT { natomsFound = true; };
 NACTIVE: {natomsCtx}? => 'NActive'{ natomsCtx = false; $channel = HIDDEN; };
 
 // Charge
-CHARGETAG: 'Charge' WS+ '=' { chgCtx = true; $channel = HIDDEN; };
+CHARGETAG: {chargeOn}? => 'Charge' WS+ '=' { chgCtx = true; $channel = HIDDEN; };
 CHARGE: {chgCtx}? => INT { chgCtx = false; };
 
 // Stoichiometry
-STOITAG: 'Stoichiometry'{ stoCtx = true; $channel = HIDDEN; };
+STOITAG: {stoOn}? => 'Stoichiometry'{ stoCtx = true; $channel = HIDDEN; };
 STOI: {stoCtx}? => FORMULA { stoCtx = false; };
 
 // Dipole moment
-DIPTAG: 'Dipole moment' { dipCtx = true; $channel = HIDDEN; };
+DIPTAG: {dipOn}? => 'Dipole moment' { dipCtx = true; $channel = HIDDEN; };
 DIPTOTTAG: {dipCtx}? =>  'Tot=' { dipTotCtx = true; $channel = HIDDEN; };
 DIPTOT: {dipTotCtx}? => FLOAT { dipCtx = false; dipTotCtx = false; };
 
 // Solvent
-SOLVENTTAG:  ('S'|'s') 'olvent' WS ':' WS  { solventCtx = true; $channel = HIDDEN; };
+SOLVENTTAG: {solventOn}? => ('S'|'s') 'olvent' WS ':' WS  { solventCtx = true; $channel = HIDDEN; };
 SOLVENT: {solventCtx}? => (ANUM | '-' | ',')+  { solventCtx = false; };
 
-SCFTAG: 'SCF Done' { elecEngCtx = true; $channel = HIDDEN; };
+SCFTAG: {elecEngOn}? => 'SCF Done' { elecEngCtx = true; $channel = HIDDEN; };
 ELECENG: {elecEngCtx}? => FLOAT { elecEngCtx = false; };
 
-FREQTAG: 'Frequencies' { freqCtx = true; $channel = HIDDEN; } ;
+FREQTAG: {freqOn}? => 'Frequencies' { freqCtx = true; $channel = HIDDEN; } ;
 FREQVAL: {freqCtx}? => FLOAT ;
 REDMASS: {freqCtx}? => 'Red. masses' { freqCtx = false; $channel = HIDDEN;} ; 
 
+// Relaxed scans: scanned coordinates, optimized coordinate values and
+// converged points. These are hidden so that they don't reach the parser.
+OPTPARAMTAG: 'Optimized Parameters' { optParamCtx = true; $channel = HIDDEN; };
+OPTPARAM: {optParamCtx}? => '!' WS ANUM WS FORMULA WS FLOAT { $channel = HIDDEN; };
+OPTPARAMEND: {optParamCtx}? => 'GradGrad' { optParamCtx = false; $channel = HIDDEN; };
+SCANPARAM: '!' WS ANUM WS FORMULA WS FLOAT WS 'Scan' { $channel = HIDDEN; };
+STATPOINT: '-- Stationary point found.' { $channel = HIDDEN; };
+
+// Optimization convergence table: value and threshold for each criterion.
+// Hidden so that they don't reach the parser.
+CONVMAXF: 'Maximum' WS 'Force' WS FLOAT WS FLOAT { $channel = HIDDEN; };
+CONVRMSF: 'RMS' WS 'Force' WS FLOAT WS FLOAT { $channel = HIDDEN; };
+CONVMAXD: 'Maximum' WS 'Displacement' WS FLOAT WS FLOAT { $channel = HIDDEN; };
+CONVRMSD: 'RMS' WS 'Displacement' WS FLOAT WS FLOAT { $channel = HIDDEN; };
+
 // CPU time
-CPUTAG: 'Job cpu time:' { cpuCtx = true; } ;
+CPUTAG: {cpuOn}? => 'Job cpu time:' { cpuCtx = true; } ;
 CPUDAYS: {cpuCtx}? => 'days' ;
 CPUHOURS: {cpuCtx}? => 'hours' ;
 CPUMINS: {cpuCtx}? => 'minutes' ;
@@ -102,7 +161,7 @@ CPUFLOAT: {cpuCtx}? => FLOAT ;
 CPUINT: {cpuCtx}? => INT ;
 
 // Termination date
-TERMTAG: 'Normal termination of Gaussian ' INT ' at' { termCtx = true; } ;
+TERMTAG: {termOn}? => 'Normal termination of Gaussian ' INT ' at' { termCtx = true; } ;
 TERMINT: {termCtx}? => INT ;
 TERMDATE: {termCtx}? => DATE ;
 TERMEND: {termCtx}? => '.' { termCtx = false; } ;
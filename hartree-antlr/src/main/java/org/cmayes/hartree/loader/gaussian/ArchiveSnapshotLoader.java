@@ -0,0 +1,351 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.tree.CommonTree;
+import org.cmayes.hartree.loader.FileLoader;
+import org.cmayes.hartree.loader.ParseException;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * A {@link SnapshotLoader} that reads files from the end. Every successful
+ * Gaussian job finishes with a "\"-delimited archive entry holding the route,
+ * charge, multiplicity, final geometry, energy and dipole, so for a plain
+ * optimization only the last few KB of the file are read. The entry's energy
+ * is rounded, so the energy is taken from the last "SCF Done" line before
+ * the entry, as a full read takes it. The entry's geometry carries more digits
+ * than the printed orientation that a full read takes, so results that are
+ * calculated from the atoms should use a full read. The full lexer is
+ * used instead when there is no archive entry or when the job has data that
+ * the entry doesn't carry: frequencies and thermochemistry, solvent, BSSE,
+ * scans and multi-step (Link1) jobs. A Link1 job is found by an earlier
+ * termination in the tail or by a route at the start of the file that
+ * differs from the archive entry's.
+ *
+ * @author cmayes
+ */
+public class ArchiveSnapshotLoader extends SnapshotLoader implements
+        FileLoader<BaseResult> {
+    /** Debye per atomic unit of dipole moment. */
+    private static final double DEBYE_PER_AU = 2.54174623;
+    /** The number of decimal places Gaussian prints for the dipole total. */
+    private static final int DIPOLE_SCALE = 4;
+    private static final String NORMAL_TERM = "Normal termination";
+    /** Starts the line with the energy of each SCF. */
+    private static final String SCF_DONE = "SCF Done";
+    private static final int STOI_IDX = 6;
+    private static final int ROUTE_IDX = 1;
+    private static final int MOLECULE_IDX = 3;
+    private static final int PROPS_IDX = 4;
+    /** Route keywords for data that isn't in the archive entry. */
+    private static final Pattern FALLBACK_ROUTE = Pattern.compile(
+            "\\b(freq|scrf|counterpoise|irc|scan)\\b|geom=(all)?check|guess=read",
+            Pattern.CASE_INSENSITIVE);
+    /** Matches the functional and basis set as the lexer's FUNCSET does. */
+    private static final Pattern FUNC_SET = Pattern
+            .compile("([0-9A-Za-z]+)/([0-9A-Za-z+\\-(),]+)");
+    private static final Map<String, AtomicElement> SYMBOLS = new HashMap<String, AtomicElement>();
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    static {
+        for (AtomicElement element : AtomicElement.values()) {
+            SYMBOLS.put(element.getSymbol().toUpperCase(Locale.US), element);
+        }
+    }
+
+    /**
+     * Creates a loader that lexes large files on one thread per CPU.
+     */
+    public ArchiveSnapshotLoader() {
+        super();
+    }
+
+    /**
+     * Creates a loader that lexes whole files with the given lexer.
+     *
+     * @param segmentedLexer
+     *            The lexer for reading whole files.
+     */
+    public ArchiveSnapshotLoader(final SegmentedSnapshotLexer segmentedLexer) {
+        super(segmentedLexer);
+    }
+
+    /**
+     * Loads the file from its archive entry, using the full lexer if the entry
+     * is missing or incomplete.
+     *
+     * @see org.cmayes.hartree.loader.FileLoader#load(java.io.File)
+     */
+    public BaseResult load(final File file) {
+        final BaseResult result = loadEnds(file);
+        if (result != null) {
+            return result;
+        }
+        logger.debug("Reading all of {}", file.getName());
+        return loadAll(file);
+    }
+
+    /**
+     * Fills a result from the start and end of the file.
+     *
+     * @param file
+     *            The file to read.
+     * @return The filled result or null if the full lexer is needed.
+     */
+    BaseResult loadEnds(final File file) {
+        final String tail = readTail(file, ARCHIVE_START);
+        if (tail == null) {
+            return null;
+        }
+        final int start = tail.lastIndexOf(ARCHIVE_START);
+        if (tail.lastIndexOf(NORMAL_TERM, start) >= 0) {
+            logger.debug("Multiple jobs in {}", file.getName());
+            return null;
+        }
+        final BaseResult result = loadArchive(file, tail.substring(start + 1));
+        if (result == null) {
+            return null;
+        }
+        final Double energy = readScfEnergy(file, tail.substring(0, start));
+        if (energy == null) {
+            logger.debug("No SCF energy near the end of {}", file.getName());
+            return null;
+        }
+        result.setElecEn(energy);
+        return result;
+    }
+
+    /**
+     * Finds the energy of the last SCF, which the full lexer reports at full
+     * precision.
+     *
+     * @param file
+     *            The file being read.
+     * @param beforeArchive
+     *            The end of the file up to the archive entry.
+     * @return The energy or null if no "SCF Done" line was found in the last
+     *         {@link #MAX_TAIL_SIZE} bytes.
+     */
+    private Double readScfEnergy(final File file, final String beforeArchive) {
+        String text = beforeArchive;
+        if (text.lastIndexOf(SCF_DONE) < 0) {
+            text = readTail(file, SCF_DONE);
+            if (text == null) {
+                return null;
+            }
+        }
+        final int tag = text.lastIndexOf(SCF_DONE);
+        int lineEnd = text.indexOf('\n', tag);
+        if (lineEnd < 0) {
+            lineEnd = text.length();
+        }
+        final int equals = text.indexOf('=', tag);
+        if (equals < 0 || equals > lineEnd) {
+            return null;
+        }
+        final String[] values = text.substring(equals + 1, lineEnd).trim()
+                .split("\\s+");
+        return toDouble(values[0]);
+    }
+
+    /**
+     * Fills a result from the archive entry and the job summary after it. An
+     * earlier job may end before the tail that was read, so the entry's route
+     * must also be the one at the start of the file.
+     *
+     * @param file
+     *            The file being read.
+     * @param tail
+     *            The end of the file, starting with the archive entry.
+     * @return The filled result or null if the full lexer is needed.
+     */
+    private BaseResult loadArchive(final File file, final String tail) {
+        final String srcName = file.getName();
+        final StringBuilder archive = new StringBuilder();
+        int lineStart = 0;
+        while (archive.indexOf(ARCHIVE_END) < 0) {
+            if (lineStart >= tail.length()) {
+                return null;
+            }
+            int lineEnd = tail.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = tail.length();
+            }
+            String line = tail.substring(lineStart, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            archive.append(line.startsWith(" ") ? line.substring(1) : line);
+            lineStart = lineEnd + 1;
+        }
+        final String[] sections = archive.substring(0,
+                archive.indexOf(ARCHIVE_END)).split("\\\\\\\\");
+        if (sections.length <= PROPS_IDX
+                || FALLBACK_ROUTE.matcher(sections[ROUTE_IDX]).find()) {
+            return null;
+        }
+        final String[] header = sections[0].split("\\\\");
+        final Matcher funcSet = FUNC_SET.matcher(sections[ROUTE_IDX]);
+        if (header.length <= STOI_IDX || !funcSet.find()) {
+            return null;
+        }
+        if (!isSameRoute(sections[ROUTE_IDX], readFirstRoute(file))) {
+            logger.debug("Multiple jobs in {}", srcName);
+            return null;
+        }
+        final BaseResult result = new DefaultBaseResult(srcName);
+        result.setFunctional(funcSet.group(1));
+        result.setBasisSet(funcSet.group(2));
+        result.setStoichiometry(UNIT_COUNT.matcher(header[STOI_IDX])
+                .replaceAll(""));
+        if (!fillMolecule(result, sections[MOLECULE_IDX].split("\\\\"))
+                || !fillProperties(result, sections[PROPS_IDX].split("\\\\"))) {
+            return null;
+        }
+        fillJobSummary(result, srcName, tail.substring(lineStart));
+        return result;
+    }
+
+    /**
+     * Fills the charge, multiplicity and atoms.
+     *
+     * @param result
+     *            The result to fill.
+     * @param molecule
+     *            The "charge,mult" entry followed by one entry per atom.
+     * @return Whether the section was complete.
+     */
+    private boolean fillMolecule(final BaseResult result,
+            final String[] molecule) {
+        final String[] chgMult = molecule[0].split(",");
+        if (chgMult.length != 2) {
+            return false;
+        }
+        result.setCharge(toInt(chgMult[0]));
+        result.setMult(toInt(chgMult[1]));
+        for (int i = 1; i < molecule.length; i++) {
+            final String[] fields = molecule[i].split(",");
+            if (fields.length < 4) {
+                return false;
+            }
+            String symbol = fields[0];
+            final int paren = symbol.indexOf('(');
+            if (paren > 0) {
+                symbol = symbol.substring(0, paren);
+            }
+            final AtomicElement element = SYMBOLS.get(symbol
+                    .toUpperCase(Locale.US));
+            if (element == null) {
+                return false;
+            }
+            final Atom atom = new DefaultAtom();
+            atom.setId(i);
+            atom.setType(element);
+            atom.setX(toDouble(fields[fields.length - 3]));
+            atom.setY(toDouble(fields[fields.length - 2]));
+            atom.setZ(toDouble(fields[fields.length - 1]));
+            result.addAtom(atom);
+        }
+        result.setAtomCount(molecule.length - 1);
+        return result.getCharge() != null && result.getMult() != null
+                && molecule.length > 1;
+    }
+
+    /**
+     * Fills the energy and dipole total.
+     *
+     * @param result
+     *            The result to fill.
+     * @param props
+     *            The "key=value" entries.
+     * @return Whether the energy and dipole were both found.
+     */
+    private boolean fillProperties(final BaseResult result,
+            final String[] props) {
+        for (String prop : props) {
+            if (prop.startsWith("HF=")) {
+                final String energy = prop.substring("HF=".length());
+                if (energy.indexOf(',') >= 0) {
+                    return false;
+                }
+                result.setElecEn(toDouble(energy));
+            } else if (prop.startsWith("Dipole=")) {
+                final String[] comps = prop.substring("Dipole=".length())
+                        .split(",");
+                double sumSq = 0;
+                for (String comp : comps) {
+                    final Double val = toDouble(comp);
+                    if (val == null) {
+                        return false;
+                    }
+                    sumSq += val * val;
+                }
+                result.setDipoleMomentTotal(new BigDecimal(Math.sqrt(sumSq)
+                        * DEBYE_PER_AU).setScale(DIPOLE_SCALE,
+                        RoundingMode.HALF_UP).doubleValue());
+            }
+        }
+        return result.getElecEn() != null
+                && result.getDipoleMomentTotal() != null;
+    }
+
+    /**
+     * Adds the CPU time and termination date printed after the archive entry.
+     *
+     * @param result
+     *            The result to fill.
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param summary
+     *            The text after the archive entry.
+     */
+    private void fillJobSummary(final BaseResult result, final String srcName,
+            final String summary) {
+        final TokenStream tokens = new CommonTokenStream(new SnapshotLexer(
+                new ANTLRStringStream(summary)));
+        final SnapshotParser parser = new SnapshotParser(tokens);
+        try {
+            while (tokens.LA(1) != Token.EOF) {
+                switch (tokens.LA(1)) {
+                case SnapshotLexer.CPUTAG:
+                    result.getCpuTimes().add(
+                            processCpuTime((CommonTree) parser.cputime()
+                                    .getTree()));
+                    break;
+                case SnapshotLexer.TERMTAG:
+                    result.getTerminationDates().add(
+                            processTermDate((CommonTree) parser.term()
+                                    .getTree()));
+                    break;
+                default:
+                    tokens.consume();
+                    break;
+                }
+            }
+        } catch (final RecognitionException e) {
+            throw new ParseException("Problems parsing data from " + srcName, e);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package org.cmayes.hartree.loader.gaussian;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.regex.Pattern;
 
 import org.antlr.runtime.tree.CommonTree;
+import org.cmayes.hartree.model.TerminationStatus;
 import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.exception.EnvironmentException;
 import com.cmayes.common.model.Atom;
 
 /**
@@ -25,6 +34,35 @@ public class BaseGaussianLoader {
     public static final int HOUR_IDX = 1;
     public static final int DAY_IDX = 0;
     public static final String TERM_DATE_PAT = "E MMM dd HH:mm:ss yyyy";
+    /** The number of bytes initially read from the end of a file. */
+    public static final int TAIL_SIZE = 16 * 1024;
+    /** The largest number of bytes read from the end of a file. */
+    public static final int MAX_TAIL_SIZE = 1024 * 1024;
+    /** The number of bytes read from the start of a file. */
+    public static final int HEAD_SIZE = 16 * 1024;
+    /** Starts the first line of an archive entry. */
+    protected static final String ARCHIVE_START = "\n 1\\1\\";
+    /** Ends an archive entry once its lines are joined. */
+    protected static final String ARCHIVE_END = "\\\\@";
+    /**
+     * Matches the element counts of one that the archive entry's
+     * stoichiometry writes out.
+     */
+    protected static final Pattern UNIT_COUNT = Pattern
+            .compile("(?<=[A-Za-z])1(?=[A-Z(]|$)");
+    /** Starts the line that ends a job that ran to completion. */
+    private static final String END_NORMAL = "\n Normal termination";
+    /** Starts the line that ends a job that failed. */
+    private static final String END_ERROR = "\n Error termination";
+    /** Starts the line that begins the next job in a Link1 file. */
+    private static final String END_LINK1 = "\n Link1:  Proceeding";
+    /** Starts the route line in a job's header. */
+    private static final String ROUTE_START = " #";
+    /** Starts the dashed lines around the route in a job's header. */
+    private static final String DASHES = " --";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    /** The charset for positional reads; Gaussian output is plain ASCII. */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -81,6 +119,23 @@ public class BaseGaussianLoader {
         }
     }
 
+    /**
+     * Removes a trailing comma, as printed after solvent names.
+     *
+     * @param text
+     *            The text to strip.
+     * @return The text without a trailing comma.
+     */
+    protected String stripEndComma(final String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (text.endsWith(",")) {
+            return text.substring(0, text.length() - 1);
+        }
+        return text;
+    }
+
     /**
      * Parses value into a Double.
      * 
@@ -142,4 +197,210 @@ public class BaseGaussianLoader {
             return null;
         }
     }
+
+    /**
+     * Reads the end of the file with positional reads. The window starts at
+     * {@link #TAIL_SIZE} bytes and doubles up to {@link #MAX_TAIL_SIZE} until
+     * it holds the marker.
+     * 
+     * @param file
+     *            The file to read.
+     * @param marker
+     *            The text the window must hold.
+     * @return The end of the file, or null if the marker wasn't found.
+     */
+    protected String readTail(final File file, final String marker) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            final long size = channel.size();
+            for (long window = TAIL_SIZE;; window *= 2) {
+                final int len = (int) Math.min(Math.min(window, size),
+                        MAX_TAIL_SIZE);
+                final String text = readAt(channel, size - len, len);
+                if (text.lastIndexOf(marker) >= 0) {
+                    return text;
+                }
+                if (len == size || len == MAX_TAIL_SIZE) {
+                    return null;
+                }
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from "
+                    + file.getName(), e);
+        } finally {
+            closeChannel(channel, file);
+        }
+    }
+
+    /**
+     * Reads the start of the file with a positional read.
+     * 
+     * @param file
+     *            The file to read.
+     * @param len
+     *            The largest number of bytes to read.
+     * @return The start of the file.
+     */
+    protected String readHead(final File file, final int len) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return readAt(channel, 0, (int) Math.min(len, channel.size()));
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from "
+                    + file.getName(), e);
+        } finally {
+            closeChannel(channel, file);
+        }
+    }
+
+    /**
+     * Reads the end of the file with a positional read.
+     * 
+     * @param file
+     *            The file to read.
+     * @param len
+     *            The largest number of bytes to read.
+     * @return The end of the file.
+     */
+    protected String readEnd(final File file, final int len) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            final long size = channel.size();
+            final int endLen = (int) Math.min(len, size);
+            return readAt(channel, size - endLen, endLen);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from "
+                    + file.getName(), e);
+        } finally {
+            closeChannel(channel, file);
+        }
+    }
+
+    /**
+     * Reads how the file's last job ended from the last {@link #TAIL_SIZE}
+     * bytes of it. A file whose last termination line is followed by the start
+     * of a Link1 job step is still running.
+     * 
+     * @param file
+     *            The file to read.
+     * @return The last job's termination status; INCOMPLETE if the job is
+     *         still running or was cut short.
+     */
+    public TerminationStatus readStatus(final File file) {
+        final String tail = readEnd(file, TAIL_SIZE);
+        final int normal = tail.lastIndexOf(END_NORMAL);
+        final int error = tail.lastIndexOf(END_ERROR);
+        final int end = Math.max(normal, error);
+        if (end < 0 || tail.indexOf(END_LINK1, end) >= 0) {
+            return TerminationStatus.INCOMPLETE;
+        }
+        return normal > error ? TerminationStatus.NORMAL
+                : TerminationStatus.ERROR;
+    }
+
+    /**
+     * Finds the route of the first job in the header at the start of the file.
+     * Comparing it with the route in the last job's archive entry shows
+     * whether the file holds more than one job without reading the middle of
+     * it.
+     * 
+     * @param file
+     *            The file to read.
+     * @return The route with its lines joined, or null if the first
+     *         {@link #HEAD_SIZE} bytes have no complete route.
+     */
+    protected String readFirstRoute(final File file) {
+        return findRoute(readHead(file, HEAD_SIZE));
+    }
+
+    /**
+     * Finds the first route in a job header.
+     * 
+     * @param text
+     *            The text to search.
+     * @return The route with its lines joined, or null if the text has no
+     *         complete route.
+     */
+    protected static String findRoute(final String text) {
+        final String[] lines = text.split("\r?\n");
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith(ROUTE_START)
+                    && lines[i - 1].startsWith(DASHES)) {
+                final StringBuilder route = new StringBuilder();
+                for (int j = i; j < lines.length; j++) {
+                    if (lines[j].startsWith(DASHES)) {
+                        return route.toString();
+                    }
+                    route.append(lines[j].substring(1));
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether two routes are the same, ignoring case and the spaces
+     * that differ where Gaussian wraps long routes.
+     * 
+     * @param first
+     *            The first route; may be null.
+     * @param second
+     *            The second route; may be null.
+     * @return Whether both routes are present and the same.
+     */
+    protected static boolean isSameRoute(final String first,
+            final String second) {
+        return first != null
+                && second != null
+                && WHITESPACE.matcher(first).replaceAll("")
+                        .equalsIgnoreCase(
+                                WHITESPACE.matcher(second).replaceAll(""));
+    }
+
+    /**
+     * Reads a range of the channel as ASCII text.
+     * 
+     * @param channel
+     *            The channel to read.
+     * @param pos
+     *            The position to start reading.
+     * @param len
+     *            The number of bytes to read.
+     * @return The text read, which is shorter than requested if the channel
+     *         ended early.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private String readAt(final FileChannel channel, final long pos,
+            final int len) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                break;
+            }
+        }
+        return new String(buf.array(), 0, buf.position(), ASCII);
+    }
+
+    /**
+     * Closes the channel, logging any problems.
+     * 
+     * @param channel
+     *            The channel to close; may be null.
+     * @param file
+     *            The channel's file.
+     */
+    private void closeChannel(final FileChannel channel, final File file) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                logger.warn("Problems closing " + file.getName(), e);
+            }
+        }
+    }
 }
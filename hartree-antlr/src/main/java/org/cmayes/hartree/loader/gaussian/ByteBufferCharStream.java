@@ -0,0 +1,95 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.nio.ByteBuffer;
+
+import org.antlr.runtime.ANTLRStringStream;
+
+/**
+ * A character stream over the remaining bytes of a buffer, such as a
+ * memory-mapped file, that reads each byte as one ASCII character. Unlike
+ * {@link org.antlr.runtime.ANTLRReaderStream}, the bytes aren't decoded
+ * through a charset or copied into a character array; characters are only
+ * created for token text. Gaussian output is plain ASCII, so the lexer sees
+ * the same characters either way.
+ *
+ * @author cmayes
+ */
+public class ByteBufferCharStream extends ANTLRStringStream {
+    private final ByteBuffer buf;
+
+    /**
+     * Creates a stream over the buffer's remaining bytes. The buffer's
+     * position isn't changed.
+     *
+     * @param data
+     *            The bytes to read.
+     * @param srcName
+     *            The name of the source.
+     */
+    public ByteBufferCharStream(final ByteBuffer data, final String srcName) {
+        this.buf = asNotNull(data, "Buffer is null").slice();
+        this.n = buf.limit();
+        this.name = srcName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#consume()
+     */
+    @Override
+    public void consume() {
+        if (p < n) {
+            charPositionInLine++;
+            if (buf.get(p) == '\n') {
+                line++;
+                charPositionInLine = 0;
+            }
+            p++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#LA(int)
+     */
+    @Override
+    public int LA(final int i) {
+        if (i == 0) {
+            return 0;
+        }
+        // A negative index looks back; -1 is the last character consumed.
+        final int idx = i < 0 ? p + i : p + i - 1;
+        if (idx < 0 || idx >= n) {
+            return EOF;
+        }
+        return buf.get(idx) & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#substring(int, int)
+     */
+    @Override
+    public String substring(final int start, final int stop) {
+        final char[] chars = new char[stop - start + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buf.get(start + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#toString()
+     */
+    @Override
+    public String toString() {
+        return substring(0, n - 1);
+    }
+}
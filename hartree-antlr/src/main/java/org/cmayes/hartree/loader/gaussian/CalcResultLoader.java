@@ -2,13 +2,15 @@ package org.cmayes.hartree.loader.gaussian;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTree;
-import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.BufferLoader;
 import org.cmayes.hartree.loader.ParseException;
 import org.cmayes.hartree.model.BaseResult;
 import org.cmayes.hartree.model.def.DefaultBaseResult;
@@ -31,7 +33,7 @@ import com.cmayes.common.model.impl.DefaultAtom;
  * 
  */
 public class CalcResultLoader extends BaseGaussianLoader implements
-        Loader<BaseResult> {
+        BufferLoader<BaseResult> {
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -44,6 +46,17 @@ public class CalcResultLoader extends BaseGaussianLoader implements
         return extractCalcThermData(srcName, extractAst(srcName, reader));
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public BaseResult load(final String srcName, final ByteBuffer data) {
+        return extractCalcThermData(srcName, extractAst(srcName, new ByteBufferCharStream(
+                data, srcName)));
+    }
+
     /**
      * Fills a {@link BaseResult} instance with data from the AST.
      * 
@@ -130,14 +143,29 @@ public class CalcResultLoader extends BaseGaussianLoader implements
      */
     protected CommonTree extractAst(final String srcName, final Reader reader) {
         try {
-            final GaussianLexer lexer = new GaussianLexer(
-                    new ANTLRReaderStream(reader));
-            final CalcResultParser parser = new CalcResultParser(
-                    new CommonTokenStream(lexer));
-            return (CommonTree) parser.script().getTree();
+            return extractAst(srcName, new ANTLRReaderStream(reader));
         } catch (final IOException e) {
             throw new EnvironmentException("Problems reading from " + srcName,
                     e);
+        }
+    }
+
+    /**
+     * Parses the characters into an abstract syntax tree.
+     * 
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param input
+     *            The characters to parse.
+     * 
+     * @return The abstract syntax tree for the characters.
+     */
+    protected CommonTree extractAst(final String srcName,
+            final CharStream input) {
+        try {
+            final CalcResultParser parser = new CalcResultParser(
+                    new CommonTokenStream(new GaussianLexer(input)));
+            return (CommonTree) parser.script().getTree();
         } catch (final RecognitionException e) {
             throw new ParseException("Problems parsing data from " + srcName, e);
         }
@@ -0,0 +1,300 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cmayes.hartree.loader.FileLoader;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Builds a {@link CatalogEntry} from the start and end of a Gaussian output
+ * file. The version comes from the banner at the top; the termination status,
+ * CPU time and imaginary frequency count (the archive entry's "NImag") come
+ * from the last job's archive entry, if it has one, and the lines at the end
+ * of the file. When the ends of the file show signs of more than one job (a
+ * "geom=check" or "guess=read" route, an archive route that differs from the
+ * first route, an earlier termination or a "Link1" line), the whole file is
+ * read so that every job is counted. A failed or running job whose earlier
+ * steps all ended before the end that was read is counted as one job.
+ *
+ * @author cmayes
+ */
+public class CatalogLoader extends BaseGaussianLoader implements
+        FileLoader<CatalogEntry> {
+    private static final Pattern BANNER = Pattern
+            .compile("^ Gaussian \\d+:\\s+(\\S+)");
+    private static final Pattern CPU_TIME = Pattern
+            .compile("Job cpu time:\\s+(\\d+) days\\s+(\\d+) hours\\s+(\\d+) "
+                    + "minutes\\s+([0-9.]+) seconds");
+    private static final Pattern NIMAG = Pattern.compile("\\\\NImag=(\\d+)\\\\");
+    private static final Pattern ARCHIVE_VERSION = Pattern
+            .compile("\\\\Version=([^\\\\]+)\\\\");
+    /** Route keywords for jobs that follow an earlier one. */
+    private static final Pattern CONTINUATION = Pattern.compile(
+            "geom=(all)?check|guess=(t)?(read|check)", Pattern.CASE_INSENSITIVE);
+    private static final String LINK1 = " Entering Link 1 ";
+    /** Starts each job step after the first. */
+    private static final String LINK1_STEP = " Link1:  Proceeding";
+    private static final String NORMAL_TERM = " Normal termination";
+    private static final String ERROR_TERM = " Error termination";
+    private static final String CPU_TAG = " Job cpu time:";
+    private static final double SECS_PER_MIN = 60;
+    private static final double SECS_PER_HOUR = 3600;
+    private static final double SECS_PER_DAY = 86400;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Reads the whole stream.
+     *
+     * @see org.cmayes.hartree.loader.Loader#load(String, java.io.Reader)
+     */
+    public CatalogEntry load(final String srcName, final Reader reader) {
+        final CatalogScan scan = new CatalogScan();
+        final BufferedReader bufReader = new BufferedReader(reader);
+        try {
+            for (String line = bufReader.readLine(); line != null; line = bufReader
+                    .readLine()) {
+                scan.line(line);
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from " + srcName,
+                    e);
+        }
+        final CatalogEntry entry = scan.toEntry(srcName);
+        entry.setFullRead(true);
+        return entry;
+    }
+
+    /**
+     * Reads the start and end of the file, reading the rest only when it may
+     * hold more than one job.
+     *
+     * @see org.cmayes.hartree.loader.FileLoader#load(java.io.File)
+     */
+    public CatalogEntry load(final File file) {
+        final CatalogEntry entry = loadEnds(file);
+        if (entry != null) {
+            entry.setFileSize(file.length());
+            return entry;
+        }
+        logger.debug("Reading all of {}", file.getName());
+        Reader reader = null;
+        try {
+            reader = new FileReader(file);
+            final CatalogEntry fullEntry = load(file.getName(), reader);
+            fullEntry.setFileSize(file.length());
+            return fullEntry;
+        } catch (final FileNotFoundException e) {
+            throw new EnvironmentException(
+                    "File not found while creating reader", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    logger.warn("Problems closing " + file.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills an entry from the start and end of the file. The archive entry is
+     * only looked for when the job ended normally, since failed and running
+     * jobs don't write one; their status and CPU time come from the last
+     * {@link #TAIL_SIZE} bytes.
+     *
+     * @param file
+     *            The file to read.
+     * @return The entry or null if the whole file must be read.
+     */
+    private CatalogEntry loadEnds(final File file) {
+        String tail = readEnd(file, TAIL_SIZE);
+        if (tail.contains(NORMAL_TERM)) {
+            final String archiveTail = readTail(file, ARCHIVE_START);
+            if (archiveTail != null) {
+                tail = archiveTail;
+            }
+        }
+        final CatalogScan tailScan = new CatalogScan();
+        final int start = tail.lastIndexOf(ARCHIVE_START);
+        if (start >= 0) {
+            final String beforeArchive = tail.substring(0, start);
+            if (beforeArchive.contains(NORMAL_TERM)
+                    || beforeArchive.contains(ERROR_TERM)
+                    || beforeArchive.contains(LINK1_STEP)) {
+                return null;
+            }
+            scanLines(tailScan, tail.substring(start + 1), false);
+            if (tailScan.route == null
+                    || CONTINUATION.matcher(tailScan.route).find()) {
+                return null;
+            }
+        } else {
+            // The first line may be cut off.
+            scanLines(tailScan, tail.substring(tail.indexOf('\n') + 1), false);
+        }
+        if (tailScan.cpuLines > 1 || tailScan.jobSteps > 0) {
+            return null;
+        }
+        final String head = readHead(file, HEAD_SIZE);
+        final CatalogScan headScan = new CatalogScan();
+        scanLines(headScan, head, true);
+        if (headScan.jobs > 1
+                || (tailScan.route != null && !isSameRoute(tailScan.route,
+                        findRoute(head)))) {
+            return null;
+        }
+        final CatalogEntry entry = tailScan.toEntry(file.getName());
+        entry.setJobCount(1);
+        if (headScan.version != null) {
+            entry.setVersion(headScan.version);
+        }
+        return entry;
+    }
+
+    /**
+     * Passes each complete line of the text to the scan.
+     *
+     * @param scan
+     *            The scan to fill.
+     * @param text
+     *            The text to scan.
+     * @param dropLast
+     *            Whether the last line may be cut off and should be skipped.
+     */
+    private void scanLines(final CatalogScan scan, final String text,
+            final boolean dropLast) {
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                if (dropLast) {
+                    return;
+                }
+                lineEnd = text.length();
+            }
+            String line = text.substring(lineStart, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            scan.line(line);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Collects catalog data from lines of output.
+     */
+    private static final class CatalogScan {
+        private String version;
+        private TerminationStatus status = TerminationStatus.INCOMPLETE;
+        private int jobs;
+        private int jobSteps;
+        private int cpuLines;
+        private double cpuSeconds;
+        private Integer imagFreqCount;
+        private String route;
+        private StringBuilder archive;
+
+        /**
+         * Evaluates one line of output.
+         *
+         * @param line
+         *            The line to evaluate.
+         */
+        private void line(final String line) {
+            if (archive != null) {
+                archive.append(line.startsWith(" ") ? line.substring(1) : line);
+                if (archive.indexOf(ARCHIVE_END) >= 0) {
+                    finishArchive();
+                }
+            } else if (line.startsWith(ARCHIVE_START.substring(1))) {
+                archive = new StringBuilder(line.substring(1));
+                if (archive.indexOf(ARCHIVE_END) >= 0) {
+                    finishArchive();
+                }
+            } else if (line.startsWith(LINK1)) {
+                jobs++;
+            } else if (line.startsWith(LINK1_STEP)) {
+                // The status is the last step's, which has only just begun.
+                jobSteps++;
+                status = TerminationStatus.INCOMPLETE;
+            } else if (line.startsWith(CPU_TAG)) {
+                final Matcher cpuMatch = CPU_TIME.matcher(line);
+                if (cpuMatch.find()) {
+                    cpuLines++;
+                    cpuSeconds += Double.parseDouble(cpuMatch.group(1))
+                            * SECS_PER_DAY
+                            + Double.parseDouble(cpuMatch.group(2))
+                            * SECS_PER_HOUR
+                            + Double.parseDouble(cpuMatch.group(3))
+                            * SECS_PER_MIN
+                            + Double.parseDouble(cpuMatch.group(4));
+                }
+            } else if (line.startsWith(NORMAL_TERM)) {
+                status = TerminationStatus.NORMAL;
+            } else if (line.startsWith(ERROR_TERM)) {
+                status = TerminationStatus.ERROR;
+            } else if (version == null) {
+                final Matcher bannerMatch = BANNER.matcher(line);
+                if (bannerMatch.find()) {
+                    version = bannerMatch.group(1);
+                }
+            }
+        }
+
+        /**
+         * Pulls the route, version and imaginary frequency count from the
+         * joined archive entry.
+         */
+        private void finishArchive() {
+            final String text = archive.substring(0,
+                    archive.indexOf(ARCHIVE_END) + 2);
+            archive = null;
+            final String[] sections = text.split("\\\\\\\\");
+            if (sections.length > 1) {
+                route = sections[1];
+            }
+            final Matcher nimagMatch = NIMAG.matcher(text);
+            if (nimagMatch.find()) {
+                imagFreqCount = Integer.valueOf(nimagMatch.group(1));
+            }
+            if (version == null) {
+                final Matcher verMatch = ARCHIVE_VERSION.matcher(text);
+                if (verMatch.find()) {
+                    version = verMatch.group(1);
+                }
+            }
+        }
+
+        /**
+         * Creates an entry from the collected data.
+         *
+         * @param srcName
+         *            The source name.
+         * @return The new entry.
+         */
+        private CatalogEntry toEntry(final String srcName) {
+            final CatalogEntry entry = new CatalogEntry(srcName);
+            entry.setVersion(version);
+            entry.setStatus(status);
+            entry.setJobCount(jobs);
+            entry.setCpuSeconds(cpuSeconds);
+            entry.setImagFreqCount(imagFreqCount);
+            return entry;
+        }
+    }
+}
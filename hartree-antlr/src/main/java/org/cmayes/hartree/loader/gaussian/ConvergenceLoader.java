@@ -0,0 +1,157 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.loader.BufferLoader;
+import org.cmayes.hartree.model.ConvergenceCriterion;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Fills a {@link ConvergenceSeries} with one step per optimization
+ * convergence table. A step's energy is the last SCF energy read before its
+ * table. Like {@link TrajectoryLoader}, tokens are read straight from the
+ * {@link SnapshotLexer} in a single pass.
+ *
+ * @author cmayes
+ */
+public class ConvergenceLoader extends BaseGaussianLoader implements
+        BufferLoader<ConvergenceSeries> {
+    /** The whitespace-separated field holding a criterion's value. */
+    private static final int VAL_IDX = 2;
+    /** The whitespace-separated field holding a criterion's threshold. */
+    private static final int THRESH_IDX = 3;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.Loader#load(String, java.io.Reader)
+     */
+    public ConvergenceSeries load(final String srcName, final Reader reader) {
+        try {
+            return loadTokens(srcName, new SnapshotLexer(new ANTLRReaderStream(
+                    reader)));
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from " + srcName,
+                    e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public ConvergenceSeries load(final String srcName, final ByteBuffer data) {
+        return loadTokens(srcName, new SnapshotLexer(new ByteBufferCharStream(
+                data, srcName)));
+    }
+
+    /**
+     * Reads the steps from already lexed tokens. Convergence values are read
+     * from the lexer's hidden channel, so the tokens must include them.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param lexer
+     *            The tokens to read.
+     * @return The filled series.
+     */
+    protected ConvergenceSeries loadTokens(final String srcName,
+            final TokenSource lexer) {
+        final ConvergenceSeries series = new ConvergenceSeries(srcName);
+        final int critCount = ConvergenceCriterion.values().length;
+        final double[] stepVals = new double[critCount];
+        final double[] stepThresholds = new double[critCount];
+        Arrays.fill(stepVals, Double.NaN);
+        Arrays.fill(stepThresholds, Double.NaN);
+        boolean inTable = false;
+        double curEnergy = Double.NaN;
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF; tok = lexer
+                .nextToken()) {
+            final ConvergenceCriterion crit;
+            switch (tok.getType()) {
+            case SnapshotLexer.ELECENG:
+                final Double energy = toDouble(tok.getText());
+                curEnergy = energy == null ? Double.NaN : energy;
+                continue;
+            case SnapshotLexer.CONVMAXF:
+                crit = ConvergenceCriterion.MAX_FORCE;
+                break;
+            case SnapshotLexer.CONVRMSF:
+                crit = ConvergenceCriterion.RMS_FORCE;
+                break;
+            case SnapshotLexer.CONVMAXD:
+                crit = ConvergenceCriterion.MAX_DISPLACEMENT;
+                break;
+            case SnapshotLexer.CONVRMSD:
+                crit = ConvergenceCriterion.RMS_DISPLACEMENT;
+                break;
+            default:
+                continue;
+            }
+            if (inTable && (crit == ConvergenceCriterion.MAX_FORCE
+                    || !Double.isNaN(stepVals[crit.ordinal()]))) {
+                // A new table started before the last one was complete.
+                addStep(series, curEnergy, stepVals, stepThresholds);
+            }
+            final String[] fields = tok.getText().trim().split("\\s+");
+            stepVals[crit.ordinal()] = parseOrNaN(fields[VAL_IDX]);
+            stepThresholds[crit.ordinal()] = parseOrNaN(fields[THRESH_IDX]);
+            inTable = true;
+            if (crit == ConvergenceCriterion.RMS_DISPLACEMENT) {
+                addStep(series, curEnergy, stepVals, stepThresholds);
+                inTable = false;
+            }
+        }
+        if (inTable) {
+            addStep(series, curEnergy, stepVals, stepThresholds);
+        }
+        if (series.getStepCount() == 0) {
+            logger.warn("No optimization steps found in " + srcName);
+        }
+        return series;
+    }
+
+    /**
+     * Adds a step to the series and clears the step buffers.
+     *
+     * @param series
+     *            The series to add to.
+     * @param energy
+     *            The step's energy.
+     * @param stepVals
+     *            The step's values.
+     * @param stepThresholds
+     *            The step's thresholds.
+     */
+    private void addStep(final ConvergenceSeries series, final double energy,
+            final double[] stepVals, final double[] stepThresholds) {
+        series.addStep(energy, stepVals, stepThresholds);
+        Arrays.fill(stepVals, Double.NaN);
+        Arrays.fill(stepThresholds, Double.NaN);
+    }
+
+    /**
+     * @param text
+     *            The text to parse.
+     * @return The parsed value or NaN if it is not a number.
+     */
+    private double parseOrNaN(final String text) {
+        final Double val = toDouble(text);
+        return val == null ? Double.NaN : val;
+    }
+}
@@ -0,0 +1,110 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.antlr.runtime.ANTLRStringStream;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * A character stream that reads from its reader only as far as the lexer
+ * looks. Unlike {@link org.antlr.runtime.ANTLRReaderStream}, which reads the
+ * whole source when it is created, a lexer that stops early leaves the rest of
+ * the source unread. Characters that have been read are kept so that tokens
+ * and marks stay valid.
+ *
+ * @author cmayes
+ */
+public class IncrementalReaderStream extends ANTLRStringStream {
+    /** The number of characters requested from the reader at a time. */
+    public static final int CHUNK_SIZE = 8 * 1024;
+    private final Reader reader;
+    private boolean exhausted;
+
+    /**
+     * Creates a stream over the given reader.
+     *
+     * @param source
+     *            The reader to read from.
+     */
+    public IncrementalReaderStream(final Reader source) {
+        super(new char[CHUNK_SIZE], 0);
+        this.reader = source;
+    }
+
+    /**
+     * Reads ahead as needed before looking at the character.
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#LA(int)
+     */
+    @Override
+    public int LA(final int i) {
+        if (i > 0 && p + i > n) {
+            fill(p + i);
+        }
+        return super.LA(i);
+    }
+
+    /**
+     * Reads ahead as needed before consuming the character.
+     *
+     * @see org.antlr.runtime.ANTLRStringStream#consume()
+     */
+    @Override
+    public void consume() {
+        if (p >= n) {
+            fill(p + 1);
+        }
+        super.consume();
+    }
+
+    /**
+     * @return the number of characters read so far
+     */
+    public int getReadCount() {
+        return n;
+    }
+
+    /**
+     * Reads the rest of the source and returns its end.
+     *
+     * @param len
+     *            The largest number of characters to return.
+     * @return The last characters of the source.
+     */
+    public String readTail(final int len) {
+        fill(Integer.MAX_VALUE);
+        final int start = Math.max(0, n - len);
+        return new String(data, start, n - start);
+    }
+
+    /**
+     * Reads from the reader until the given number of characters are held or
+     * the reader is exhausted.
+     *
+     * @param count
+     *            The number of characters needed.
+     */
+    private void fill(final int count) {
+        while (n < count && !exhausted) {
+            if (n == data.length) {
+                final char[] grown = new char[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, n);
+                data = grown;
+            }
+            try {
+                final int read = reader.read(data, n,
+                        Math.min(CHUNK_SIZE, data.length - n));
+                if (read < 0) {
+                    exhausted = true;
+                } else {
+                    n += read;
+                }
+            } catch (final IOException e) {
+                throw new EnvironmentException("Problems reading from "
+                        + getSourceName(), e);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.cmayes.hartree.loader.gaussian;
 
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -8,8 +11,9 @@ import java.util.List;
 import org.antlr.runtime.ANTLRReaderStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenSource;
 import org.antlr.runtime.tree.CommonTree;
-import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.FileLoader;
 import org.cmayes.hartree.loader.ParseException;
 import org.cmayes.hartree.model.LowestEnergyMapper;
 import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
@@ -27,9 +31,27 @@ import com.cmayes.common.model.impl.DefaultAtom;
  * @author cmayes
  */
 public class LowestEnergyLoader extends BaseGaussianLoader implements
-        Loader<LowestEnergyMapper> {
+        FileLoader<LowestEnergyMapper> {
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final SegmentedSnapshotLexer segLexer;
+
+    /**
+     * Creates a loader that lexes large files on one thread per CPU.
+     */
+    public LowestEnergyLoader() {
+        this(new SegmentedSnapshotLexer());
+    }
+
+    /**
+     * Creates a loader that lexes files with the given lexer.
+     * 
+     * @param segmentedLexer
+     *            The lexer for reading files.
+     */
+    public LowestEnergyLoader(final SegmentedSnapshotLexer segmentedLexer) {
+        this.segLexer = asNotNull(segmentedLexer, "Segmented lexer is null");
+    }
 
     /**
      * {@inheritDoc}
@@ -40,6 +62,17 @@ public class LowestEnergyLoader extends BaseGaussianLoader implements
         return extractSnapshotData(srcName, extractAst(srcName, reader));
     }
 
+    /**
+     * Lexes large files in segments on separate threads. The result is the
+     * same as reading the file with {@link #load(String, Reader)}.
+     * 
+     * @see org.cmayes.hartree.loader.FileLoader#load(java.io.File)
+     */
+    public LowestEnergyMapper load(final File file) {
+        return extractSnapshotData(file.getName(),
+                extractAst(file.getName(), segLexer.lex(file)));
+    }
+
     /**
      * Fills a {@link LowestEnergyMapper} instance with data from the AST.
      * 
@@ -103,14 +136,30 @@ public class LowestEnergyLoader extends BaseGaussianLoader implements
      */
     protected CommonTree extractAst(final String srcName, final Reader reader) {
         try {
-            final SnapshotLexer lexer = new SnapshotLexer(
-                    new ANTLRReaderStream(reader));
-            final SnapshotParser parser = new SnapshotParser(
-                    new CommonTokenStream(lexer));
-            return (CommonTree) parser.script().getTree();
+            return extractAst(srcName, new SnapshotLexer(new ANTLRReaderStream(
+                    reader)));
         } catch (final IOException e) {
             throw new EnvironmentException("Problems reading from " + srcName,
                     e);
+        }
+    }
+
+    /**
+     * Parses the tokens into an abstract syntax tree.
+     * 
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param tokens
+     *            The lexed data to parse.
+     * 
+     * @return The abstract syntax tree for the tokens.
+     */
+    protected CommonTree extractAst(final String srcName,
+            final TokenSource tokens) {
+        try {
+            final SnapshotParser parser = new SnapshotParser(
+                    new CommonTokenStream(tokens));
+            return (CommonTree) parser.script().getTree();
         } catch (final RecognitionException e) {
             throw new ParseException("Problems parsing data from " + srcName, e);
         }
@@ -2,13 +2,15 @@ package org.cmayes.hartree.loader.gaussian;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTree;
-import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.BufferLoader;
 import org.cmayes.hartree.loader.ParseException;
 import org.cmayes.hartree.model.InternalMotion;
 import org.cmayes.hartree.model.NormalMode;
@@ -32,7 +34,7 @@ import com.cmayes.common.model.impl.DefaultAtom;
  * @author cmayes
  */
 public class NormalModeLoader extends BaseGaussianLoader implements
-        Loader<NormalModeCalculation> {
+        BufferLoader<NormalModeCalculation> {
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -45,6 +47,17 @@ public class NormalModeLoader extends BaseGaussianLoader implements
         return extractNormalModeData(srcName, extractAst(srcName, reader));
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public NormalModeCalculation load(final String srcName, final ByteBuffer data) {
+        return extractNormalModeData(srcName, extractAst(srcName, new ByteBufferCharStream(
+                data, srcName)));
+    }
+
     /**
      * Fills a {@link NormalModeCalculation} instance with data from the AST.
      * 
@@ -148,14 +161,29 @@ public class NormalModeLoader extends BaseGaussianLoader implements
      */
     protected CommonTree extractAst(final String srcName, final Reader reader) {
         try {
-            final GaussianLexer lexer = new GaussianLexer(
-                    new ANTLRReaderStream(reader));
-            final NormalModeParser parser = new NormalModeParser(
-                    new CommonTokenStream(lexer));
-            return (CommonTree) parser.script().getTree();
+            return extractAst(srcName, new ANTLRReaderStream(reader));
         } catch (final IOException e) {
             throw new EnvironmentException("Problems reading from " + srcName,
                     e);
+        }
+    }
+
+    /**
+     * Parses the characters into an abstract syntax tree.
+     * 
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param input
+     *            The characters to parse.
+     * 
+     * @return The abstract syntax tree for the characters.
+     */
+    protected CommonTree extractAst(final String srcName,
+            final CharStream input) {
+        try {
+            final NormalModeParser parser = new NormalModeParser(
+                    new CommonTokenStream(new GaussianLexer(input)));
+            return (CommonTree) parser.script().getTree();
         } catch (final RecognitionException e) {
             throw new ParseException("Problems parsing data from " + srcName, e);
         }
@@ -0,0 +1,525 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.cmayes.hartree.filter.ResultFilter;
+import org.cmayes.hartree.loader.FileLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Fills only the requested {@link SnapshotField}s of a {@link BaseResult}.
+ * The {@link SnapshotLexer} rules for other data are turned off, and when a
+ * file is given, the archive entry at its end is used to decide when each
+ * field is final so that reading can stop early:
+ * <ul>
+ * <li>The charge, multiplicity and stoichiometry are final once they match
+ * the last job's archive entry.</li>
+ * <li>When the first route matches the last job's route (a single job), the
+ * functional, basis set and solvent are final after their first value, data
+ * the route rules out (such as thermochemistry without "freq") is final at
+ * the end of the route and the energy and dipole are final after their first
+ * value if the route is a single point.</li>
+ * <li>The functional and basis set are final at the last job's route.</li>
+ * </ul>
+ * Fields that aren't final keep the last value in the file, as
+ * {@link SnapshotLoader} does.
+ * <p>
+ * Given a {@link ResultFilter}, the loader also reads the fields the filter
+ * tests and tests each one as soon as it is final, giving up on the source as
+ * soon as a test fails. The termination status is tested from the end of a
+ * file before the rest is read. Skipped sources load as null.
+ *
+ * @author cmayes
+ */
+public class ProjectedSnapshotLoader extends BaseGaussianLoader implements
+        FileLoader<BaseResult> {
+    /** Route keywords for jobs that print more than one energy. */
+    private static final Pattern MULTI_ENERGY = Pattern.compile(
+            "\\b(opt|freq|irc|scan|stable|counterpoise)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern FREQ = Pattern.compile("\\bfreq\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCRF = Pattern.compile("\\bscrf\\b",
+            Pattern.CASE_INSENSITIVE);
+    /** Counterpoise jobs print a charge and multiplicity for each fragment. */
+    private static final Pattern COUNTERPOISE = Pattern.compile(
+            "\\bcounterpoise\\b", Pattern.CASE_INSENSITIVE);
+    /** Whitespace and the "#" that starts a route. */
+    private static final Pattern ROUTE_NOISE = Pattern.compile("[\\s#]+");
+    private static final String TERMINATION = " termination";
+    private static final String NORMAL_TERM = "Normal termination";
+    private static final String ERROR_TERM = "Error termination";
+    /** Starts the line that begins the next step of a Link1 job. */
+    private static final String LINK1_STEP = " Link1:  Proceeding";
+    /** Starts the output of each run of Gaussian in a file. */
+    private static final String RUN_START = " Entering Gaussian System";
+    /** Separates the sections of an archive entry. */
+    private static final String SECTION_BREAK = "\\\\";
+    private static final int STOI_IDX = 6;
+    private static final int ROUTE_IDX = 1;
+    private static final int MOLECULE_IDX = 3;
+    private final Set<SnapshotField> fields;
+    /** The projected fields and the fields the filter tests. */
+    private final Set<SnapshotField> lexFields;
+    private final ResultFilter filter;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Creates a loader for the given fields.
+     *
+     * @param projFields
+     *            The fields to fill.
+     * @throws IllegalArgumentException
+     *             If no fields are given.
+     */
+    public ProjectedSnapshotLoader(final Collection<SnapshotField> projFields) {
+        this(projFields, null);
+    }
+
+    /**
+     * Creates a loader for the given fields that skips sources the filter
+     * rejects.
+     *
+     * @param projFields
+     *            The fields to fill.
+     * @param theFilter
+     *            The filter to apply; may be null.
+     * @throws IllegalArgumentException
+     *             If no fields are given.
+     */
+    public ProjectedSnapshotLoader(final Collection<SnapshotField> projFields,
+            final ResultFilter theFilter) {
+        if (projFields == null || projFields.isEmpty()) {
+            throw new IllegalArgumentException("No fields to load");
+        }
+        this.fields = EnumSet.copyOf(projFields);
+        this.lexFields = EnumSet.copyOf(projFields);
+        this.filter = theFilter;
+        if (theFilter != null) {
+            lexFields.addAll(theFilter.getFields());
+        }
+    }
+
+    /**
+     * @return the fields this loader fills
+     */
+    public Set<SnapshotField> getFields() {
+        return EnumSet.copyOf(fields);
+    }
+
+    /**
+     * @return the filter applied to each source, or null if there is none
+     */
+    public ResultFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Reads the whole stream, keeping the last value of each field, since a
+     * stream may hold more than one job.
+     *
+     * @see org.cmayes.hartree.loader.Loader#load(String, java.io.Reader)
+     */
+    public BaseResult load(final String srcName, final Reader reader) {
+        return load(srcName, reader, null, true);
+    }
+
+    /**
+     * Checks the archive entry at the end of the file and stops reading once
+     * every requested field is final.
+     *
+     * @see org.cmayes.hartree.loader.FileLoader#load(java.io.File)
+     */
+    public BaseResult load(final File file) {
+        if (filter != null && filter.hasTermination()
+                && !filter.test(toStatus(readTail(file, TERMINATION)))) {
+            logger.debug("Skipped {} by its termination", file.getName());
+            filter.recordSkip();
+            return null;
+        }
+        final LastJob lastJob = readLastJob(file);
+        if (lastJob == null) {
+            logger.debug("No archive entry for the last job in {}",
+                    file.getName());
+        }
+        Reader reader = null;
+        try {
+            reader = new FileReader(file);
+            return load(file.getName(), reader, lastJob, false);
+        } catch (final FileNotFoundException e) {
+            throw new EnvironmentException(
+                    "File not found while creating reader", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    logger.warn("Problems closing " + file.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the requested fields from the reader.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param reader
+     *            The source of the data.
+     * @param lastJob
+     *            The last job's archive data, or null to read to the end.
+     * @param testEnd
+     *            Whether the filter's termination tests still need the end
+     *            of the stream.
+     * @return The filled result, or null if the filter rejected it.
+     */
+    BaseResult load(final String srcName, final Reader reader,
+            final LastJob lastJob, final boolean testEnd) {
+        final IncrementalReaderStream input = new IncrementalReaderStream(
+                reader);
+        final SnapshotLexer lexer = new SnapshotLexer(input);
+        lexer.project(lexFields);
+        final BaseResult result = new DefaultBaseResult(srcName);
+        final Set<SnapshotField> open = EnumSet.copyOf(lexFields);
+        int routeStart = -1;
+        boolean routeFuncSet = false;
+        boolean routeChecked = lastJob == null;
+        boolean counterpoise = lastJob == null;
+        boolean singleJob = false;
+        boolean singlePoint = false;
+        boolean matches = true;
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF
+                && !open.isEmpty() && matches; tok = lexer.nextToken()) {
+            switch (tok.getType()) {
+            case SnapshotLexer.DEFOPEN:
+                routeStart = ((CommonToken) tok).getStopIndex() + 1;
+                routeFuncSet = false;
+                break;
+            case SnapshotLexer.FUNCSET:
+                final String[] funcSetSplit = tok.getText().split("/");
+                if (lexFields.contains(SnapshotField.FUNCTIONAL)) {
+                    result.setFunctional(funcSetSplit[0]);
+                }
+                if (lexFields.contains(SnapshotField.BASIS_SET)) {
+                    result.setBasisSet(funcSetSplit[1]);
+                }
+                routeFuncSet = true;
+                break;
+            case SnapshotLexer.DEFCLOSE:
+                if (lastJob == null || routeStart < 0) {
+                    break;
+                }
+                final String route = input.substring(routeStart,
+                        ((CommonToken) tok).getStartIndex() - 1);
+                final String normRoute = normalizeRoute(route);
+                if (routeFuncSet && lastJob.route.equals(normRoute)) {
+                    matches = close(SnapshotField.FUNCTIONAL, open, result)
+                            && close(SnapshotField.BASIS_SET, open, result);
+                }
+                if (routeChecked) {
+                    break;
+                }
+                routeChecked = true;
+                counterpoise = COUNTERPOISE.matcher(route).find();
+                if (!lastJob.route.equalsIgnoreCase(normRoute)
+                        || !isOneJob(lastJob)) {
+                    logger.debug("More than one job in {}", srcName);
+                    break;
+                }
+                singleJob = true;
+                singlePoint = !MULTI_ENERGY.matcher(route).find();
+                matches = matches
+                        && close(SnapshotField.FUNCTIONAL, open, result)
+                        && close(SnapshotField.BASIS_SET, open, result)
+                        && closeAbsent(route, open, result);
+                break;
+            case SnapshotLexer.CHARGE:
+                result.setCharge(toInt(tok.getText()));
+                if (!counterpoise && lastJob.charge.equals(result.getCharge())) {
+                    matches = close(SnapshotField.CHARGE, open, result);
+                }
+                break;
+            case SnapshotLexer.MULT:
+                result.setMult(toInt(tok.getText()));
+                if (!counterpoise && lastJob.mult.equals(result.getMult())) {
+                    matches = close(SnapshotField.MULT, open, result);
+                }
+                break;
+            case SnapshotLexer.STOI:
+                result.setStoichiometry(tok.getText());
+                if (lastJob != null
+                        && lastJob.stoichiometry.equals(tok.getText())) {
+                    matches = close(SnapshotField.STOICHIOMETRY, open, result);
+                }
+                break;
+            case SnapshotLexer.SOLVENT:
+                result.setSolvent(stripEndComma(tok.getText()));
+                if (singleJob) {
+                    matches = close(SnapshotField.SOLVENT, open, result);
+                }
+                break;
+            case SnapshotLexer.ELECENG:
+                result.setElecEn(toDouble(tok.getText()));
+                if (singlePoint) {
+                    matches = close(SnapshotField.ENERGY, open, result);
+                }
+                break;
+            case SnapshotLexer.DIPTOT:
+                result.setDipoleMomentTotal(toDouble(tok.getText()));
+                if (singlePoint) {
+                    matches = close(SnapshotField.DIPOLE, open, result);
+                }
+                break;
+            case SnapshotLexer.ZPECORR:
+                result.setZpeCorrection(toDouble(tok.getText()));
+                break;
+            case SnapshotLexer.H298:
+                result.setEnthalpy298(toDouble(tok.getText()));
+                break;
+            case SnapshotLexer.G298:
+                result.setGibbs298(toDouble(tok.getText()));
+                break;
+            case SnapshotLexer.BSSE:
+                result.setBsse(toDouble(tok.getText()));
+                break;
+            case SnapshotLexer.FREQVAL:
+                final Double freqVal = toDouble(tok.getText());
+                if (freqVal != null) {
+                    result.getFrequencyValues().add(freqVal);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        if (open.isEmpty()) {
+            logger.debug("Stopped reading {} after {} characters", srcName,
+                    input.getReadCount());
+        }
+        if (filter == null) {
+            return result;
+        }
+        if (matches && testEnd && filter.hasTermination()) {
+            matches = filter.test(toStatus(input.readTail(MAX_TAIL_SIZE)));
+        }
+        if (!matches || !filter.test(result)) {
+            logger.debug("Skipped {} after {} characters", srcName,
+                    input.getReadCount());
+            filter.recordSkip();
+            return null;
+        }
+        filter.recordMatch();
+        return result;
+    }
+
+    /**
+     * Marks a field as final and tests it against the filter.
+     *
+     * @param field
+     *            The field whose value is final.
+     * @param open
+     *            The fields that aren't final yet.
+     * @param result
+     *            The result holding the value.
+     * @return False if the filter rejects the value.
+     */
+    private boolean close(final SnapshotField field,
+            final Set<SnapshotField> open, final BaseResult result) {
+        return !open.remove(field) || filter == null
+                || filter.test(field, result);
+    }
+
+    /**
+     * Closes the fields that a single job's route rules out.
+     *
+     * @param route
+     *            The route text.
+     * @param open
+     *            The fields that aren't final yet.
+     * @param result
+     *            The result being filled.
+     * @return False if the filter rejects a missing value.
+     */
+    private boolean closeAbsent(final String route,
+            final Set<SnapshotField> open, final BaseResult result) {
+        boolean matches = true;
+        if (!SCRF.matcher(route).find()) {
+            matches = close(SnapshotField.SOLVENT, open, result);
+        }
+        if (!FREQ.matcher(route).find()) {
+            matches = matches && close(SnapshotField.FREQ, open, result)
+                    && close(SnapshotField.ZPE, open, result)
+                    && close(SnapshotField.H298, open, result)
+                    && close(SnapshotField.G298, open, result);
+        }
+        if (!COUNTERPOISE.matcher(route).find()) {
+            matches = matches && close(SnapshotField.BSSE, open, result);
+        }
+        return matches;
+    }
+
+    /**
+     * Finds how the last job ended from the end of its output.
+     *
+     * @param tail
+     *            The end of the output, or null if it has no termination.
+     * @return The termination status.
+     */
+    private TerminationStatus toStatus(final String tail) {
+        if (tail == null) {
+            return TerminationStatus.INCOMPLETE;
+        }
+        final int normal = tail.lastIndexOf(NORMAL_TERM);
+        final int error = tail.lastIndexOf(ERROR_TERM);
+        if (normal < 0 && error < 0) {
+            return TerminationStatus.INCOMPLETE;
+        }
+        return normal > error ? TerminationStatus.NORMAL
+                : TerminationStatus.ERROR;
+    }
+
+    /**
+     * Reads the route, charge, multiplicity and stoichiometry from the
+     * archive entry of the file's last job.
+     *
+     * @param file
+     *            The file to read.
+     * @return The last job's data, or null if the file didn't end normally
+     *         with a complete archive entry.
+     */
+    LastJob readLastJob(final File file) {
+        String tail = readTail(file, TERMINATION);
+        if (tail == null || tail.lastIndexOf(NORMAL_TERM) < 0) {
+            return null;
+        }
+        if (tail.lastIndexOf(ARCHIVE_START) < 0) {
+            tail = readTail(file, ARCHIVE_START);
+            if (tail == null) {
+                return null;
+            }
+        }
+        // Only the sections up to the molecule are needed, so joining stops
+        // before the (possibly very long) Hessian of a frequency job.
+        final StringBuilder archive = new StringBuilder();
+        int breaks = 0;
+        int from = 0;
+        for (String line : tail.substring(tail.lastIndexOf(ARCHIVE_START) + 1)
+                .split("\\r?\\n")) {
+            archive.append(line.startsWith(" ") ? line.substring(1) : line);
+            int idx = archive.indexOf(SECTION_BREAK, from);
+            while (idx >= 0) {
+                breaks++;
+                if (breaks > MOLECULE_IDX) {
+                    return toLastJob(file, archive.substring(0, idx).split(
+                            "\\\\\\\\"));
+                }
+                from = idx + SECTION_BREAK.length();
+                idx = archive.indexOf(SECTION_BREAK, from);
+            }
+            from = Math.max(from, archive.length() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the file holds only its last job, so that the values of
+     * its first job are final. Two jobs can share a route, so the whole file
+     * is searched for a Link1 step or a second run. Only files of up to
+     * {@link #MAX_TAIL_SIZE} bytes are searched; larger ones are taken to
+     * hold more than one job.
+     *
+     * @param lastJob
+     *            The last job's data.
+     * @return Whether the file holds one job.
+     */
+    private boolean isOneJob(final LastJob lastJob) {
+        if (lastJob.oneJob == null) {
+            if (lastJob.file.length() > MAX_TAIL_SIZE) {
+                lastJob.oneJob = false;
+            } else {
+                final String text = readEnd(lastJob.file, MAX_TAIL_SIZE);
+                lastJob.oneJob = !text.contains(LINK1_STEP)
+                        && text.indexOf(RUN_START) == text
+                                .lastIndexOf(RUN_START);
+            }
+        }
+        return lastJob.oneJob;
+    }
+
+    /**
+     * Creates the last job's data from the archive entry's sections.
+     *
+     * @param file
+     *            The file the archive entry is in.
+     * @param sections
+     *            The sections of the archive entry.
+     * @return The last job's data or null if the sections are incomplete.
+     */
+    private LastJob toLastJob(final File file, final String[] sections) {
+        if (sections.length <= MOLECULE_IDX) {
+            return null;
+        }
+        final String[] header = sections[0].split("\\\\");
+        final String[] chgMult = sections[MOLECULE_IDX].split("\\\\")[0]
+                .split(",");
+        if (header.length <= STOI_IDX || chgMult.length != 2) {
+            return null;
+        }
+        final LastJob lastJob = new LastJob();
+        lastJob.file = file;
+        lastJob.route = normalizeRoute(sections[ROUTE_IDX]);
+        lastJob.stoichiometry = UNIT_COUNT.matcher(header[STOI_IDX])
+                .replaceAll("");
+        lastJob.charge = toInt(chgMult[0]);
+        lastJob.mult = toInt(chgMult[1]);
+        if (lastJob.charge == null || lastJob.mult == null) {
+            return null;
+        }
+        return lastJob;
+    }
+
+    /**
+     * Removes whitespace and "#" from a route so that the wrapped route in the
+     * output matches the route in the archive entry.
+     *
+     * @param route
+     *            The route to normalize.
+     * @return The normalized route.
+     */
+    private String normalizeRoute(final String route) {
+        return ROUTE_NOISE.matcher(route).replaceAll("");
+    }
+
+    /**
+     * Data from the archive entry of a file's last job.
+     */
+    static final class LastJob {
+        private File file;
+        /** Whether the file holds only this job, once it is known. */
+        private Boolean oneJob;
+        private String route;
+        private String stoichiometry;
+        private Integer charge;
+        private Integer mult;
+    }
+}
@@ -0,0 +1,157 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.loader.BufferLoader;
+import org.cmayes.hartree.model.def.PesScan;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * Fills a {@link PesScan} from a relaxed (opt=modredundant) scan. Scanned
+ * coordinates are the ones marked "Scan" in the initial parameters. Each
+ * "Stationary point found" adds a point with the last geometry and SCF energy,
+ * and the point's coordinate values are read from the optimized parameters
+ * that follow it. Like {@link TrajectoryLoader}, tokens are read straight from
+ * the {@link SnapshotLexer}.
+ *
+ * @author cmayes
+ */
+public class ScanLoader extends BaseGaussianLoader implements
+        BufferLoader<PesScan> {
+    /** The whitespace-separated field holding a parameter's definition. */
+    private static final int PARAM_DEF_IDX = 2;
+    /** The whitespace-separated field holding a parameter's value. */
+    private static final int PARAM_VAL_IDX = 3;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.Loader#load(String, java.io.Reader)
+     */
+    public PesScan load(final String srcName, final Reader reader) {
+        final SnapshotLexer lexer;
+        try {
+            lexer = new SnapshotLexer(new ANTLRReaderStream(reader));
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from " + srcName,
+                    e);
+        }
+        return loadTokens(srcName, lexer);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public PesScan load(final String srcName, final ByteBuffer data) {
+        return loadTokens(srcName, new SnapshotLexer(new ByteBufferCharStream(
+                data, srcName)));
+    }
+
+    /**
+     * Reads the scan points from the tokens, which must include the hidden
+     * geometry tags.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param lexer
+     *            The tokens to read.
+     * @return The filled scan.
+     */
+    private PesScan loadTokens(final String srcName, final TokenSource lexer) {
+        final List<String> scanDefs = new ArrayList<String>();
+        PesScan scan = null;
+        List<Atom> curAtoms = new ArrayList<Atom>();
+        Atom curAtom = new DefaultAtom();
+        int atomColCount = 0;
+        double curEnergy = Double.NaN;
+        int lastPoint = -1;
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF; tok = lexer
+                .nextToken()) {
+            switch (tok.getType()) {
+            case SnapshotLexer.SCANPARAM:
+                final String scanDef = splitParam(tok)[PARAM_DEF_IDX];
+                if (scan == null && !scanDefs.contains(scanDef)) {
+                    scanDefs.add(scanDef);
+                }
+                break;
+            case SnapshotLexer.XYZTAG:
+                curAtoms = new ArrayList<Atom>();
+                curAtom = new DefaultAtom();
+                atomColCount = 0;
+                break;
+            case SnapshotLexer.XYZINT:
+            case SnapshotLexer.XYZFLOAT:
+                handleAtom(tok.getText(), curAtom, atomColCount);
+                atomColCount++;
+                if (atomColCount % ATOM_COL_COUNT == 0) {
+                    curAtoms.add(curAtom);
+                    curAtom = new DefaultAtom();
+                }
+                break;
+            case SnapshotLexer.ELECENG:
+                final Double energy = toDouble(tok.getText());
+                curEnergy = energy == null ? Double.NaN : energy;
+                break;
+            case SnapshotLexer.STATPOINT:
+                if (scan == null) {
+                    scan = new PesScan(srcName, scanDefs);
+                }
+                lastPoint = scan.addPoint(curEnergy, curAtoms);
+                break;
+            case SnapshotLexer.OPTPARAM:
+                if (lastPoint < 0) {
+                    break;
+                }
+                final String[] fields = splitParam(tok);
+                final int coord = scan.getCoordNames().indexOf(
+                        fields[PARAM_DEF_IDX]);
+                if (coord >= 0) {
+                    final Double val = toDouble(fields[PARAM_VAL_IDX]);
+                    if (val != null) {
+                        scan.setCoordValue(lastPoint, coord, val);
+                    }
+                }
+                break;
+            case SnapshotLexer.OPTPARAMEND:
+                lastPoint = -1;
+                break;
+            default:
+                break;
+            }
+        }
+        if (scan == null) {
+            logger.warn("No converged scan points found in " + srcName);
+            scan = new PesScan(srcName, scanDefs);
+        }
+        return scan;
+    }
+
+    /**
+     * Splits a parameter table row into its whitespace-separated fields.
+     *
+     * @param tok
+     *            The row's token.
+     * @return The fields, starting with the leading "!".
+     */
+    private String[] splitParam(final Token tok) {
+        return tok.getText().trim().split("\\s+");
+    }
+}
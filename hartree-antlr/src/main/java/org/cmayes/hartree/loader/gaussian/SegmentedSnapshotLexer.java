@@ -0,0 +1,471 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Lexes a large file with {@link SnapshotLexer} on several threads. The file
+ * is split at the start of lines where the lexer holds no context: the start
+ * of a job ("Entering Link 1"), of a geometry block ("Input orientation:"),
+ * which sets the only context that might still be open, and of a block of
+ * frequencies, whose context the block before has closed. Each segment is lexed
+ * by its own lexer and the visible tokens are joined in file order, so the
+ * parser sees the same tokens as it would from a serial lexer. The lexer only
+ * reads the number of atoms once per file, so later NATOMS tokens are dropped
+ * when the segments are joined.
+ *
+ * @author cmayes
+ */
+public class SegmentedSnapshotLexer {
+    /** The smallest segment the file is split into by default. */
+    public static final int DEF_MIN_SEGMENT = 8 * 1024 * 1024;
+    /** The number of bytes scanned at a time for boundaries. */
+    private static final int SCAN_SIZE = 64 * 1024;
+    /** The longest line prefix before a marker that a scan keeps. */
+    static final int MAX_PREFIX = 256;
+    private static final byte[][] MARKERS = {
+            "Input orientation:".getBytes(Charset.forName("US-ASCII")),
+            "Frequencies --".getBytes(Charset.forName("US-ASCII")),
+            " Entering Link 1 ".getBytes(Charset.forName("US-ASCII")) };
+    private final int workers;
+    private final int minSegment;
+    private ExecutorService executor;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Creates a lexer with one worker per CPU and the default segment size.
+     */
+    public SegmentedSnapshotLexer() {
+        this(Runtime.getRuntime().availableProcessors(), DEF_MIN_SEGMENT);
+    }
+
+    /**
+     * Creates a lexer with the given number of workers and segment size.
+     *
+     * @param workerCount
+     *            The number of threads lexing segments.
+     * @param minSegSize
+     *            The smallest segment in bytes; smaller files aren't split.
+     * @throws IllegalArgumentException
+     *             If either value isn't positive.
+     */
+    public SegmentedSnapshotLexer(final int workerCount, final int minSegSize) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException(
+                    "Worker count must be positive: " + workerCount);
+        }
+        if (minSegSize < 1) {
+            throw new IllegalArgumentException(
+                    "Segment size must be positive: " + minSegSize);
+        }
+        this.workers = workerCount;
+        this.minSegment = minSegSize;
+    }
+
+    /**
+     * Lexes the file, returning its visible tokens in order.
+     *
+     * @param file
+     *            The file to lex.
+     * @return The tokens, ending with EOF.
+     */
+    public TokenSource lex(final File file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            final List<Long> bounds = findBoundaries(channel);
+            logger.debug("Lexing {} in {} segments", file.getName(),
+                    bounds.size() - 1);
+            if (bounds.size() == 2) {
+                return new SegmentTokenSource(file.getName(),
+                        Collections.singletonList(lexSegment(channel, 0,
+                                bounds.get(1))));
+            }
+            final List<Future<List<Token>>> futures = new ArrayList<Future<List<Token>>>();
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                final FileChannel segChannel = channel;
+                final long start = bounds.get(i);
+                final long end = bounds.get(i + 1);
+                futures.add(getExecutor().submit(new Callable<List<Token>>() {
+                    @Override
+                    public List<Token> call() throws IOException {
+                        return lexSegment(segChannel, start, end);
+                    }
+                }));
+            }
+            final List<List<Token>> segments = new ArrayList<List<Token>>();
+            for (Future<List<Token>> future : futures) {
+                segments.add(waitFor(future, futures));
+            }
+            return new SegmentTokenSource(file.getName(), segments);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from "
+                    + file.getName(), e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    logger.warn("Problems closing " + file.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds where the file's segments start. Each target offset moves forward
+     * to the start of the next line holding a marker.
+     *
+     * @param channel
+     *            The file to split.
+     * @return The start of each segment followed by the file's size.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    List<Long> findBoundaries(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        final long segSize = Math.max(minSegment, size / workers);
+        final List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        long target = segSize;
+        while (target < size - minSegment / 2) {
+            final long bound = nextBoundary(channel, target);
+            if (bound < 0 || bound >= size) {
+                break;
+            }
+            bounds.add(bound);
+            target = bound + segSize;
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+    /**
+     * Finds the start of the first line at or after the given position that
+     * holds a marker.
+     *
+     * @param channel
+     *            The file to scan.
+     * @param from
+     *            The position to start from.
+     * @return The start of the line or -1 if there are no more markers.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private long nextBoundary(final FileChannel channel, final long from)
+            throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE + MAX_PREFIX);
+        // Each window repeats the end of the last one so that a marker and
+        // its line prefix are never split between windows.
+        for (long pos = Math.max(0, from - MAX_PREFIX); pos < channel.size(); pos += SCAN_SIZE) {
+            final int len = readWindow(channel, buf, pos);
+            final byte[] bytes = buf.array();
+            for (int i = 0; i < len; i++) {
+                if (pos + i >= from && isMarkerLine(bytes, i, len)) {
+                    return pos + i;
+                }
+            }
+            if (len < buf.capacity()) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the start of the last line in the given range that holds a
+     * marker, reading the range once.
+     *
+     * @param channel
+     *            The file to scan.
+     * @param from
+     *            The start of the range.
+     * @param to
+     *            The end of the range.
+     * @return The start of the line or -1 if there are no markers.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    long lastBoundary(final FileChannel channel, final long from,
+            final long to) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE + MAX_PREFIX);
+        long last = -1;
+        for (long pos = Math.max(0, from - MAX_PREFIX); pos < to; pos += SCAN_SIZE) {
+            final int len = readWindow(channel, buf, pos);
+            final byte[] bytes = buf.array();
+            for (int i = 0; i < len && pos + i < to; i++) {
+                if (pos + i >= from && isMarkerLine(bytes, i, len)) {
+                    last = pos + i;
+                }
+            }
+            if (len < buf.capacity()) {
+                break;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Fills the buffer from the given position.
+     *
+     * @param channel
+     *            The file to read.
+     * @param buf
+     *            The buffer to fill.
+     * @param pos
+     *            The position to read from.
+     * @return The number of bytes read, which is less than the buffer's
+     *         capacity only at the end of the file.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private static int readWindow(final FileChannel channel,
+            final ByteBuffer buf, final long pos) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                break;
+            }
+        }
+        return buf.position();
+    }
+
+    /**
+     * Returns whether a line starts at the given index and holds a marker
+     * after its leading spaces.
+     *
+     * @param bytes
+     *            The bytes to check.
+     * @param idx
+     *            The index to check.
+     * @param len
+     *            The number of valid bytes.
+     * @return Whether a marker line starts at the index.
+     */
+    private boolean isMarkerLine(final byte[] bytes, final int idx,
+            final int len) {
+        if (idx == 0 || bytes[idx - 1] != '\n') {
+            return false;
+        }
+        int start = idx;
+        while (start < len && start - idx < MAX_PREFIX && bytes[start] == ' ') {
+            start++;
+        }
+        for (byte[] marker : MARKERS) {
+            // The job marker includes its leading space.
+            final int markStart = marker[0] == ' ' ? start - 1 : start;
+            if (markStart >= idx && matches(bytes, markStart, len, marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the marker's bytes are at the given index.
+     *
+     * @param bytes
+     *            The bytes to check.
+     * @param idx
+     *            The index to check.
+     * @param len
+     *            The number of valid bytes.
+     * @param marker
+     *            The marker to look for.
+     * @return Whether the marker is at the index.
+     */
+    private static boolean matches(final byte[] bytes, final int idx,
+            final int len, final byte[] marker) {
+        if (idx + marker.length > len) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            if (bytes[idx + i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lexes part of the file, mapping it into memory rather than reading it.
+     *
+     * @param channel
+     *            The file to read.
+     * @param start
+     *            The position of the segment's first byte.
+     * @param end
+     *            The position after the segment's last byte.
+     * @return The segment's visible tokens.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private List<Token> lexSegment(final FileChannel channel, final long start,
+            final long end) throws IOException {
+        // Tokens read their text from the mapping, which stays valid after
+        // the channel is closed.
+        final SnapshotLexer lexer = new SnapshotLexer(new ByteBufferCharStream(
+                channel.map(FileChannel.MapMode.READ_ONLY, start, end - start),
+                null));
+        final List<Token> tokens = new ArrayList<Token>();
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF; tok = lexer
+                .nextToken()) {
+            if (tok.getChannel() == Token.DEFAULT_CHANNEL) {
+                tokens.add(tok);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Waits for a segment, cancelling the others if it failed.
+     *
+     * @param future
+     *            The segment's pending tokens.
+     * @param all
+     *            All of the file's pending segments.
+     * @return The segment's tokens.
+     */
+    private List<Token> waitFor(final Future<List<Token>> future,
+            final List<Future<List<Token>>> all) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            cancel(all);
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while waiting for a segment", e);
+        } catch (final ExecutionException e) {
+            cancel(all);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EnvironmentException("Problems lexing a segment",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Cancels the given segments.
+     *
+     * @param all
+     *            The segments to cancel.
+     */
+    private static void cancel(final List<Future<List<Token>>> all) {
+        for (Future<List<Token>> future : all) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Returns the worker pool, creating it on first use. The threads are
+     * daemons so that an idle pool doesn't keep the JVM running.
+     *
+     * @return The worker pool.
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(workers,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable run) {
+                            final Thread thread = new Thread(run,
+                                    "segment-lexer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * @return the number of threads lexing segments
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the tokens of each segment in order, followed by EOF.
+     */
+    static final class SegmentTokenSource implements TokenSource {
+        private final String sourceName;
+        private final Iterator<List<Token>> segments;
+        private Iterator<Token> tokens = Collections.<Token> emptyList()
+                .iterator();
+        private boolean natomsFound;
+
+        /**
+         * Creates a source over the given segments.
+         *
+         * @param name
+         *            The name of the file.
+         * @param segs
+         *            The tokens of each segment.
+         */
+        SegmentTokenSource(final String name, final List<List<Token>> segs) {
+            this.sourceName = name;
+            this.segments = segs.iterator();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see org.antlr.runtime.TokenSource#nextToken()
+         */
+        @Override
+        public Token nextToken() {
+            while (true) {
+                while (!tokens.hasNext()) {
+                    if (!segments.hasNext()) {
+                        return new CommonToken(Token.EOF);
+                    }
+                    tokens = segments.next().iterator();
+                }
+                final Token tok = tokens.next();
+                if (tok.getType() == SnapshotLexer.NATOMS) {
+                    if (natomsFound) {
+                        continue;
+                    }
+                    natomsFound = true;
+                }
+                return tok;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see org.antlr.runtime.TokenSource#getSourceName()
+         */
+        @Override
+        public String getSourceName() {
+            return sourceName;
+        }
+    }
+}
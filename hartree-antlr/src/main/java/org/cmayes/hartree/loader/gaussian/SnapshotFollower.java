@@ -0,0 +1,419 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Follows output files that are still being written, lexing only the bytes
+ * appended since the last poll. Each file's tokens are kept up to the last
+ * line where {@link SegmentedSnapshotLexer} would split it, since the lexer
+ * holds no context there; only the text after that line, which may still be
+ * incomplete, is lexed again at the next poll. Results are read from the kept
+ * tokens, so they match what the loaders read from the same bytes.
+ * <p>
+ * The snapshot parser needs complete output, so the snapshot of a job that
+ * hasn't terminated is its last complete optimization step, as
+ * {@link TrajectoryLoader} reads it.
+ * <p>
+ * At most a fixed number of files are held open; the least recently polled
+ * file is closed to make room for another.
+ *
+ * @author cmayes
+ */
+public class SnapshotFollower implements Closeable {
+    /** The number of files held open by default. */
+    public static final int DEF_MAX_OPEN = 64;
+    /**
+     * How far back from the end of the last poll to look for a split line. A
+     * marker that was only partly written then starts its line no further
+     * back than this.
+     */
+    private static final int RESCAN = 2 * SegmentedSnapshotLexer.MAX_PREFIX;
+    private static final String NORMAL_TERM = "\n Normal termination";
+    private static final String ERROR_TERM = "\n Error termination";
+    /** Gaussian output is plain ASCII. */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private final SegmentedSnapshotLexer scanner = new SegmentedSnapshotLexer(
+            1, SegmentedSnapshotLexer.DEF_MIN_SEGMENT);
+    private final SnapshotLoader snapLoader = new SnapshotLoader(scanner);
+    private final ConvergenceLoader convLoader = new ConvergenceLoader();
+    private final TrajectoryLoader trajLoader = new TrajectoryLoader();
+    private final Map<File, FollowState> states = new HashMap<File, FollowState>();
+    private final Map<File, FileChannel> channels;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Creates a follower that holds up to {@link #DEF_MAX_OPEN} files open.
+     */
+    public SnapshotFollower() {
+        this(DEF_MAX_OPEN);
+    }
+
+    /**
+     * Creates a follower that holds up to the given number of files open.
+     *
+     * @param maxOpen
+     *            The largest number of open files.
+     * @throws IllegalArgumentException
+     *             If the number isn't positive.
+     */
+    public SnapshotFollower(final int maxOpen) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException(
+                    "Open file count must be positive: " + maxOpen);
+        }
+        this.channels = new LinkedHashMap<File, FileChannel>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<File, FileChannel> eldest) {
+                if (size() <= maxOpen) {
+                    return false;
+                }
+                closeChannel(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Reads whatever has been appended to the file since the last poll. A file
+     * that is shorter than at the last poll has been replaced and is read
+     * again from the start.
+     *
+     * @param file
+     *            The file to read.
+     * @return Whether the file has changed since the last poll.
+     * @throws EnvironmentException
+     *             If the file can't be read.
+     */
+    public synchronized boolean poll(final File file) {
+        asNotNull(file, "File is null");
+        FollowState state = states.get(file);
+        if (state == null) {
+            state = new FollowState();
+            states.put(file, state);
+        } else if (file.length() < state.size) {
+            logger.info("{} was truncated; reading it from the start",
+                    file.getName());
+            closeChannel(file, channels.remove(file));
+            state = new FollowState();
+            states.put(file, state);
+        }
+        try {
+            final FileChannel channel = getChannel(file);
+            final long size = channel.size();
+            if (size == state.size) {
+                return false;
+            }
+            final long bound = Math.max(state.offset, scanner.lastBoundary(
+                    channel, Math.max(state.offset + 1, state.size - RESCAN),
+                    size));
+            if (bound > state.offset) {
+                state.tokens.addAll(lex(read(channel, state.offset, bound)));
+                state.offset = bound;
+            }
+            final ByteBuffer tail = read(channel, bound, size);
+            state.tail = lex(tail);
+            state.status = findStatus(ASCII.decode(tail).toString());
+            state.size = size;
+            logger.debug("Read {} to {}; kept tokens to {}", new Object[] {
+                    file.getName(), size, bound });
+            return true;
+        } catch (final IOException e) {
+            closeChannel(file, channels.remove(file));
+            throw new EnvironmentException("Problems reading from "
+                    + file.getName(), e);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the file as of the last poll. If the last job
+     * hasn't terminated, this is its last complete step.
+     *
+     * @param file
+     *            The polled file.
+     * @return The file's snapshot.
+     * @throws IllegalStateException
+     *             If the file hasn't been polled.
+     */
+    public synchronized BaseResult getSnapshot(final File file) {
+        if (!TerminationStatus.INCOMPLETE.equals(getState(file).status)) {
+            return snapLoader.loadTokens(file.getName(), tokens(file));
+        }
+        final BaseResult[] last = new BaseResult[] { new DefaultBaseResult(
+                file.getName()) };
+        trajLoader.loadSteps(file.getName(), tokens(file),
+                new StepHandler<BaseResult>() {
+                    @Override
+                    public void handle(final BaseResult step) {
+                        last[0] = step;
+                    }
+                });
+        return last[0];
+    }
+
+    /**
+     * Returns the optimization convergence of the file as of the last poll.
+     *
+     * @param file
+     *            The polled file.
+     * @return The file's convergence series.
+     * @throws IllegalStateException
+     *             If the file hasn't been polled.
+     */
+    public synchronized ConvergenceSeries getConvergence(final File file) {
+        return convLoader.loadTokens(file.getName(), tokens(file));
+    }
+
+    /**
+     * Returns how the file's last job ended as of the last poll.
+     *
+     * @param file
+     *            The polled file.
+     * @return The termination status of the file's last job.
+     * @throws IllegalStateException
+     *             If the file hasn't been polled.
+     */
+    public synchronized TerminationStatus getStatus(final File file) {
+        return getState(file).status;
+    }
+
+    /**
+     * Stops following the file, dropping its tokens and closing it.
+     *
+     * @param file
+     *            The file to forget.
+     */
+    public synchronized void forget(final File file) {
+        states.remove(file);
+        closeChannel(file, channels.remove(file));
+    }
+
+    /**
+     * Closes every open file. Files that are polled again are reopened.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() {
+        for (Map.Entry<File, FileChannel> entry : channels.entrySet()) {
+            closeChannel(entry.getKey(), entry.getValue());
+        }
+        channels.clear();
+    }
+
+    /**
+     * @return the number of files held open
+     */
+    synchronized int getOpenCount() {
+        return channels.size();
+    }
+
+    /**
+     * Returns the position up to which the file's tokens are kept.
+     *
+     * @param file
+     *            The polled file.
+     * @return The end of the kept tokens.
+     */
+    synchronized long getKeptOffset(final File file) {
+        return getState(file).offset;
+    }
+
+    /**
+     * Returns the file's tokens as of the last poll.
+     *
+     * @param file
+     *            The polled file.
+     * @return The kept tokens followed by those of the tail.
+     */
+    private SegmentedSnapshotLexer.SegmentTokenSource tokens(final File file) {
+        final FollowState state = getState(file);
+        return new SegmentedSnapshotLexer.SegmentTokenSource(file.getName(),
+                Arrays.asList(state.tokens, state.tail));
+    }
+
+    /**
+     * @param file
+     *            The polled file.
+     * @return The file's state.
+     * @throws IllegalStateException
+     *             If the file hasn't been polled.
+     */
+    private FollowState getState(final File file) {
+        final FollowState state = states.get(file);
+        if (state == null) {
+            throw new IllegalStateException(file.getName()
+                    + " hasn't been polled");
+        }
+        return state;
+    }
+
+    /**
+     * Returns the file's open channel, opening it if needed.
+     *
+     * @param file
+     *            The file to open.
+     * @return The open channel.
+     * @throws IOException
+     *             If the file can't be opened.
+     */
+    private FileChannel getChannel(final File file) throws IOException {
+        FileChannel channel = channels.get(file);
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channels.put(file, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Closes the channel, logging any problems.
+     *
+     * @param file
+     *            The channel's file.
+     * @param channel
+     *            The channel to close; may be null.
+     */
+    private void closeChannel(final File file, final FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            logger.warn("Problems closing " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Reads part of the file. The file may still be growing, so it is read
+     * rather than mapped.
+     *
+     * @param channel
+     *            The file to read.
+     * @param start
+     *            The position of the first byte.
+     * @param end
+     *            The position after the last byte.
+     * @return The bytes read.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private static ByteBuffer read(final FileChannel channel, final long start,
+            final long end) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, start + buf.position()) < 0) {
+                break;
+            }
+        }
+        return (ByteBuffer) buf.flip();
+    }
+
+    /**
+     * Lexes the bytes, keeping the tokens that the snapshot parser and the
+     * trajectory and convergence readers use. The tokens are copied so that
+     * they don't hold on to the bytes.
+     *
+     * @param data
+     *            The bytes to lex.
+     * @return The kept tokens.
+     */
+    private static List<Token> lex(final ByteBuffer data) {
+        if (!data.hasRemaining()) {
+            return Collections.emptyList();
+        }
+        final SnapshotLexer lexer = new SnapshotLexer(new ByteBufferCharStream(
+                data, null));
+        final List<Token> tokens = new ArrayList<Token>();
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF; tok = lexer
+                .nextToken()) {
+            if (tok.getChannel() == Token.DEFAULT_CHANNEL
+                    || isKeptHidden(tok.getType())) {
+                final CommonToken copy = new CommonToken(tok.getType(),
+                        tok.getText());
+                copy.setChannel(tok.getChannel());
+                tokens.add(copy);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param type
+     *            The token type.
+     * @return Whether the type is a hidden geometry tag or convergence table
+     *         row.
+     */
+    private static boolean isKeptHidden(final int type) {
+        return type == SnapshotLexer.XYZTAG || type == SnapshotLexer.CONVMAXF
+                || type == SnapshotLexer.CONVRMSF
+                || type == SnapshotLexer.CONVMAXD
+                || type == SnapshotLexer.CONVRMSD;
+    }
+
+    /**
+     * Finds how the last job ended. The tail starts at the last split line,
+     * which is at or before the start of the last job, so a termination line
+     * for the last job is in it.
+     *
+     * @param tail
+     *            The text after the last split line.
+     * @return The last job's termination status.
+     */
+    private static TerminationStatus findStatus(final String tail) {
+        final int normal = tail.lastIndexOf(NORMAL_TERM);
+        final int error = tail.lastIndexOf(ERROR_TERM);
+        if (normal < 0 && error < 0) {
+            return TerminationStatus.INCOMPLETE;
+        }
+        return normal > error ? TerminationStatus.NORMAL
+                : TerminationStatus.ERROR;
+    }
+
+    /**
+     * What is known about one followed file.
+     */
+    private static final class FollowState {
+        /** The tokens before {@link #offset}. */
+        private final List<Token> tokens = new ArrayList<Token>();
+        /** The tokens after {@link #offset} as of the last poll. */
+        private List<Token> tail = Collections.emptyList();
+        /** The split line up to which tokens are kept. */
+        private long offset;
+        /** The file's size at the last poll. */
+        private long size;
+        private TerminationStatus status = TerminationStatus.INCOMPLETE;
+    }
+}
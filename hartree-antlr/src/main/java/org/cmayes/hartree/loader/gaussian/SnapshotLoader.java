@@ -1,14 +1,19 @@
 package org.cmayes.hartree.loader.gaussian;
 
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.antlr.runtime.ANTLRReaderStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenSource;
 import org.antlr.runtime.tree.CommonTree;
-import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.BufferLoader;
 import org.cmayes.hartree.loader.ParseException;
 import org.cmayes.hartree.model.BaseResult;
 import org.cmayes.hartree.model.def.DefaultBaseResult;
@@ -27,9 +32,27 @@ import com.cmayes.common.model.impl.DefaultAtom;
  * @author cmayes
  */
 public class SnapshotLoader extends BaseGaussianLoader implements
-        Loader<BaseResult> {
+        BufferLoader<BaseResult> {
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final SegmentedSnapshotLexer segLexer;
+
+    /**
+     * Creates a loader that lexes large files on one thread per CPU.
+     */
+    public SnapshotLoader() {
+        this(new SegmentedSnapshotLexer());
+    }
+
+    /**
+     * Creates a loader that lexes whole files with the given lexer.
+     * 
+     * @param segmentedLexer
+     *            The lexer for reading whole files.
+     */
+    public SnapshotLoader(final SegmentedSnapshotLexer segmentedLexer) {
+        this.segLexer = asNotNull(segmentedLexer, "Segmented lexer is null");
+    }
 
     /**
      * {@inheritDoc}
@@ -40,6 +63,44 @@ public class SnapshotLoader extends BaseGaussianLoader implements
         return extractSnapshotData(srcName, extractAst(srcName, reader));
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public BaseResult load(final String srcName, final ByteBuffer data) {
+        return loadTokens(srcName, new SnapshotLexer(new ByteBufferCharStream(
+                data, srcName)));
+    }
+
+    /**
+     * Reads all of the file, lexing large files in segments on separate
+     * threads. The result is the same as reading the file with
+     * {@link #load(String, Reader)}.
+     * 
+     * @param file
+     *            The file to read.
+     * @return The filled result instance.
+     */
+    protected BaseResult loadAll(final File file) {
+        return loadTokens(file.getName(), segLexer.lex(file));
+    }
+
+    /**
+     * Parses already lexed tokens.
+     * 
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param tokens
+     *            The lexed data to parse.
+     * @return The filled result instance.
+     */
+    protected BaseResult loadTokens(final String srcName,
+            final TokenSource tokens) {
+        return extractSnapshotData(srcName, extractAst(srcName, tokens));
+    }
+
     /**
      * Fills a {@link BaseResult} instance with data from the AST.
      * 
@@ -135,16 +196,6 @@ public class SnapshotLoader extends BaseGaussianLoader implements
         return result;
     }
 
-    private String stripEndComma(String text) {
-        if (text == null || text.isEmpty()) {
-            return text;
-        }
-        if (text.endsWith(",")) {
-            return text.substring(0, text.length() - 1);
-        }
-        return text;
-    }
-
     /**
      * Parses the data from the reader into an abstract syntax tree.
      * 
@@ -157,14 +208,30 @@ public class SnapshotLoader extends BaseGaussianLoader implements
      */
     protected CommonTree extractAst(final String srcName, final Reader reader) {
         try {
-            final SnapshotLexer lexer = new SnapshotLexer(
-                    new ANTLRReaderStream(reader));
-            final SnapshotParser parser = new SnapshotParser(
-                    new CommonTokenStream(lexer));
-            return (CommonTree) parser.script().getTree();
+            return extractAst(srcName, new SnapshotLexer(new ANTLRReaderStream(
+                    reader)));
         } catch (final IOException e) {
             throw new EnvironmentException("Problems reading from " + srcName,
                     e);
+        }
+    }
+
+    /**
+     * Parses the tokens into an abstract syntax tree.
+     * 
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param tokens
+     *            The lexed data to parse.
+     * 
+     * @return The abstract syntax tree for the tokens.
+     */
+    protected CommonTree extractAst(final String srcName,
+            final TokenSource tokens) {
+        try {
+            final SnapshotParser parser = new SnapshotParser(
+                    new CommonTokenStream(tokens));
+            return (CommonTree) parser.script().getTree();
         } catch (final RecognitionException e) {
             throw new ParseException("Problems parsing data from " + srcName, e);
         }
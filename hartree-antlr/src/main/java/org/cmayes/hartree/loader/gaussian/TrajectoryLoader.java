@@ -0,0 +1,263 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.loader.BufferLoader;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.loader.StepLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * Creates a {@link BaseResult} for every "Input orientation" geometry that is
+ * followed by an SCF energy. Tokens are consumed straight from the
+ * {@link SnapshotLexer} rather than through a parsed AST, and each step is
+ * passed on as soon as its energy is read, so only the current geometry is
+ * held while reading. Header values such as the charge and functional are
+ * carried into each step once they are known; steps completed before the
+ * first route section ends are held until it does, so that they get its
+ * functional and basis set. A route without them doesn't hold later steps.
+ *
+ * @author cmayes
+ */
+public class TrajectoryLoader extends BaseGaussianLoader implements
+        StepLoader<BaseResult>, BufferLoader<BaseResult> {
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Returns the last step of the trajectory, or a result with no atoms if
+     * the source has no complete steps.
+     *
+     * @see org.cmayes.hartree.loader.Loader#load(String, java.io.Reader)
+     */
+    public BaseResult load(final String srcName, final Reader reader) {
+        return loadLast(srcName, createLexer(srcName, reader));
+    }
+
+    /**
+     * Returns the last step of the trajectory, or a result with no atoms if
+     * the source has no complete steps.
+     *
+     * @see org.cmayes.hartree.loader.BufferLoader#load(String,
+     *      java.nio.ByteBuffer)
+     */
+    public BaseResult load(final String srcName, final ByteBuffer data) {
+        return loadLast(srcName, new SnapshotLexer(new ByteBufferCharStream(
+                data, srcName)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.StepLoader#loadSteps(String,
+     *      java.io.Reader, org.cmayes.hartree.loader.StepHandler)
+     */
+    public int loadSteps(final String srcName, final Reader reader,
+            final StepHandler<BaseResult> handler) {
+        return loadSteps(srcName, createLexer(srcName, reader), handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.loader.StepLoader#loadSteps(String,
+     *      java.nio.ByteBuffer, org.cmayes.hartree.loader.StepHandler)
+     */
+    public int loadSteps(final String srcName, final ByteBuffer data,
+            final StepHandler<BaseResult> handler) {
+        return loadSteps(srcName, new SnapshotLexer(new ByteBufferCharStream(
+                data, srcName)), handler);
+    }
+
+    /**
+     * Reads the steps from the tokens, keeping only the last.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param lexer
+     *            The tokens to read.
+     * @return The last step, or a result with no atoms if there are no
+     *         complete steps.
+     */
+    private BaseResult loadLast(final String srcName, final TokenSource lexer) {
+        final BaseResult[] last = new BaseResult[] { new DefaultBaseResult(
+                srcName) };
+        loadSteps(srcName, lexer, new StepHandler<BaseResult>() {
+            @Override
+            public void handle(final BaseResult step) {
+                last[0] = step;
+            }
+        });
+        return last[0];
+    }
+
+    /**
+     * Reads the steps from already lexed tokens, which must include the
+     * hidden geometry tags.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param lexer
+     *            The tokens to read.
+     * @param handler
+     *            The handler for each step.
+     * @return The number of steps read.
+     */
+    protected int loadSteps(final String srcName, final TokenSource lexer,
+            final StepHandler<BaseResult> handler) {
+        final DefaultBaseResult header = new DefaultBaseResult(srcName);
+        final List<DefaultBaseResult> pending = new ArrayList<DefaultBaseResult>();
+        DefaultBaseResult curStep = null;
+        Atom curAtom = new DefaultAtom();
+        int atomColCount = 0;
+        int stepCount = 0;
+        boolean routeRead = false;
+        for (Token tok = lexer.nextToken(); tok.getType() != Token.EOF; tok = lexer
+                .nextToken()) {
+            switch (tok.getType()) {
+            case SnapshotLexer.XYZTAG:
+                curStep = new DefaultBaseResult(header);
+                curAtom = new DefaultAtom();
+                atomColCount = 0;
+                break;
+            case SnapshotLexer.XYZINT:
+            case SnapshotLexer.XYZFLOAT:
+                if (curStep == null) {
+                    break;
+                }
+                handleAtom(tok.getText(), curAtom, atomColCount);
+                atomColCount++;
+                if (atomColCount % ATOM_COL_COUNT == 0) {
+                    curStep.addAtom(curAtom);
+                    curAtom = new DefaultAtom();
+                }
+                break;
+            case SnapshotLexer.ELECENG:
+                if (curStep == null || curStep.getAtoms().isEmpty()) {
+                    logger.debug("SCF energy without a new geometry in {}",
+                            srcName);
+                    break;
+                }
+                stepCount++;
+                curStep.setElecEn(toDouble(tok.getText()));
+                curStep.setStep(stepCount);
+                fillHeader(curStep, header);
+                pending.add(curStep);
+                if (routeRead) {
+                    handlePending(pending, header, handler);
+                }
+                curStep = null;
+                break;
+            case SnapshotLexer.FUNCSET:
+                final String[] funcSetSplit = tok.getText().split("/");
+                header.setFunctional(funcSetSplit[0]);
+                header.setBasisSet(funcSetSplit[1]);
+                break;
+            case SnapshotLexer.DEFCLOSE:
+                routeRead = true;
+                handlePending(pending, header, handler);
+                break;
+            case SnapshotLexer.CHARGE:
+                header.setCharge(toInt(tok.getText()));
+                break;
+            case SnapshotLexer.MULT:
+                header.setMult(toInt(tok.getText()));
+                break;
+            case SnapshotLexer.STOI:
+                header.setStoichiometry(tok.getText());
+                break;
+            case SnapshotLexer.NATOMS:
+                header.setAtomCount(toInt(tok.getText()));
+                break;
+            default:
+                break;
+            }
+        }
+        handlePending(pending, header, handler);
+        if (stepCount == 0) {
+            logger.warn("No complete trajectory steps found in " + srcName);
+        }
+        return stepCount;
+    }
+
+    /**
+     * Hands over the completed steps that were waiting for header values,
+     * filling in what has been read since they started.
+     *
+     * @param pending
+     *            The completed steps in order; emptied.
+     * @param header
+     *            The header values read so far.
+     * @param handler
+     *            The handler for each step.
+     */
+    private static void handlePending(final List<DefaultBaseResult> pending,
+            final BaseResult header, final StepHandler<BaseResult> handler) {
+        for (DefaultBaseResult step : pending) {
+            fillHeader(step, header);
+            handler.handle(step);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Sets the header values a step is missing.
+     *
+     * @param step
+     *            The step to fill.
+     * @param header
+     *            The header values read so far.
+     */
+    private static void fillHeader(final DefaultBaseResult step,
+            final BaseResult header) {
+        if (step.getFunctional() == null) {
+            step.setFunctional(header.getFunctional());
+            step.setBasisSet(header.getBasisSet());
+        }
+        if (step.getCharge() == null) {
+            step.setCharge(header.getCharge());
+        }
+        if (step.getMult() == null) {
+            step.setMult(header.getMult());
+        }
+        if (step.getStoichiometry() == null) {
+            step.setStoichiometry(header.getStoichiometry());
+        }
+        if (step.getAtomCount() == null) {
+            step.setAtomCount(header.getAtomCount());
+        }
+    }
+
+    /**
+     * Creates a lexer over the data from the reader.
+     *
+     * @param srcName
+     *            The identifier for the source of the data.
+     * @param reader
+     *            The source of the data to lex.
+     * @return The lexer for the reader's data.
+     */
+    private SnapshotLexer createLexer(final String srcName, final Reader reader) {
+        try {
+            return new SnapshotLexer(new ANTLRReaderStream(reader));
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading from " + srcName,
+                    e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.cmayes.hartree.model.BaseResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link ArchiveSnapshotLoader}.
+ * 
+ * @author cmayes
+ */
+public class TestArchiveSnapshotLoader {
+    private static final double XYZ_MARGIN = .000001;
+    /** The prefix for file locations. */
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final ArchiveSnapshotLoader LOADER = new ArchiveSnapshotLoader();
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "archive");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String LINK1 = " Link1:  Proceeding to internal job";
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that every test file read from its archive entry matches a full
+     * read.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testArchiveMatchesFullRead() throws Exception {
+        int archiveReads = 0;
+        for (String dir : new String[] { G09_DIR_PFX, FILE_DIR_PFX }) {
+            for (File file : new File(dir).listFiles()) {
+                if (file.isFile() && LOADER.loadEnds(file) != null) {
+                    assertMatchesFullRead(file);
+                    archiveReads++;
+                }
+            }
+        }
+        assertThat(archiveReads, greaterThan(0));
+    }
+
+    /**
+     * Tests that a Link1 job is read in full when the earlier job ends before
+     * the tail that holds the last archive entry.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLink1BeforeTail() throws Exception {
+        final String first = new String(Files.readAllBytes(new File(
+                FILE_DIR_PFX + "co_gas.log").toPath()), ASCII);
+        final int link1End = first.indexOf('\n', first.indexOf(LINK1)) + 1;
+        final File target = new File(TMP_DIR, "link1.log");
+        final OutputStream out = new FileOutputStream(target);
+        try {
+            out.write(first.substring(0, link1End).getBytes(ASCII));
+            out.write(Files.readAllBytes(new File(FILE_DIR_PFX + "pet_opt.log")
+                    .toPath()));
+        } finally {
+            out.close();
+        }
+        assertThat(LOADER.loadEnds(target), nullValue());
+        final BaseResult fast = LOADER.load(target);
+        assertThat(fast.getCpuTimes().size(), equalTo(2));
+        assertThat(fast.getTerminationDates().size(), equalTo(2));
+        assertMatchesFullRead(target);
+    }
+
+    /**
+     * Tests that the energy read from the end of a file has the precision of
+     * the last "SCF Done" line rather than the archive entry's rounded one.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testScfEnergy() throws Exception {
+        final BaseResult fast = LOADER.loadEnds(new File(FILE_DIR_PFX
+                + "pet_opt.log"));
+        assertThat(fast.getElecEn(), equalTo(-2290.50749608));
+    }
+
+    /**
+     * Tests that jobs with frequencies are read in full.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testFreqFallback() throws Exception {
+        final String fileName = "pet_freq.log";
+        final BaseResult fast = LOADER.load(new File(FILE_DIR_PFX + fileName));
+        final BaseResult full = new SnapshotLoader().load(fileName,
+                new FileReader(FILE_DIR_PFX + fileName));
+        assertThat(fast, equalTo(full));
+        assertTrue(!fast.getFrequencyValues().isEmpty());
+    }
+
+    /**
+     * Tests that files without an archive entry are read in full.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testNoArchiveFallback() throws Exception {
+        final String fileName = "init_THF+negFAIL.log";
+        final BaseResult fast = LOADER.load(new File(G09_DIR_PFX + fileName));
+        final BaseResult full = new SnapshotLoader().load(fileName,
+                new FileReader(G09_DIR_PFX + fileName));
+        assertThat(fast, equalTo(full));
+    }
+
+    /**
+     * Checks that loading the file with {@link ArchiveSnapshotLoader} gives the
+     * same values as a full read.
+     * 
+     * @param file
+     *            The file to check.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private void assertMatchesFullRead(final File file) throws Exception {
+        final String fileName = file.getName();
+        final BaseResult fast = LOADER.load(file);
+        final BaseResult full = new SnapshotLoader().load(fileName,
+                new FileReader(file));
+        assertThat(fast.getSourceName(), equalTo(fileName));
+        assertThat(fileName, fast.getStoichiometry(),
+                equalTo(full.getStoichiometry()));
+        assertThat(fileName, fast.getCharge(), equalTo(full.getCharge()));
+        assertThat(fileName, fast.getMult(), equalTo(full.getMult()));
+        assertThat(fileName, fast.getFunctional(),
+                equalTo(full.getFunctional()));
+        assertThat(fileName, fast.getBasisSet(), equalTo(full.getBasisSet()));
+        assertThat(fileName, fast.getElecEn(), equalTo(full.getElecEn()));
+        assertThat(fileName, fast.getDipoleMomentTotal(),
+                equalTo(full.getDipoleMomentTotal()));
+        assertThat(fileName, fast.getAtomCount(), equalTo(full.getAtomCount()));
+        assertThat(fileName, fast.getAtoms().size(),
+                equalTo(full.getAtoms().size()));
+        for (int i = 0; i < full.getAtoms().size(); i++) {
+            final Atom fastAtom = fast.getAtoms().get(i);
+            final Atom fullAtom = full.getAtoms().get(i);
+            assertThat(fileName, fastAtom.getId(), equalTo(fullAtom.getId()));
+            assertThat(fileName, fastAtom.getType(),
+                    equalTo(fullAtom.getType()));
+            assertThat(fileName, fastAtom.getX(),
+                    closeTo(fullAtom.getX(), XYZ_MARGIN));
+            assertThat(fileName, fastAtom.getY(),
+                    closeTo(fullAtom.getY(), XYZ_MARGIN));
+            assertThat(fileName, fastAtom.getZ(),
+                    closeTo(fullAtom.getZ(), XYZ_MARGIN));
+        }
+        assertThat(fileName, fast.getCpuTimes(), equalTo(full.getCpuTimes()));
+        assertThat(fileName, fast.getTerminationDates(),
+                equalTo(full.getTerminationDates()));
+        assertThat(fileName, fast.getFrequencyValues(),
+                equalTo(full.getFrequencyValues()));
+        assertThat(fileName, fast.getSolvent(), equalTo(full.getSolvent()));
+    }
+}
@@ -0,0 +1,186 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.Lexer;
+import org.antlr.runtime.Token;
+import org.cmayes.hartree.parser.gaussian.antlr.GaussianLexer;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ByteBufferCharStream}.
+ *
+ * @author cmayes
+ */
+public class TestByteBufferCharStream {
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final String G16_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String[] FILES = { G16_DIR_PFX + "pet_opt.log",
+            G16_DIR_PFX + "pet_freq.log", G16_DIR_PFX + "hooh_scan.log",
+            G09_DIR_PFX + "init_THF+negFAIL.log" };
+
+    /**
+     * Tests that the snapshot lexer makes the same tokens from a mapped file
+     * as from a reader.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testSnapshotTokens() throws Exception {
+        for (String path : FILES) {
+            final File file = new File(path);
+            final Reader reader = new FileReader(file);
+            try {
+                assertSameTokens(path, new SnapshotLexer(new ANTLRReaderStream(
+                        reader)), new SnapshotLexer(new ByteBufferCharStream(
+                        map(file), file.getName())));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that the Gaussian lexer makes the same tokens from a heap buffer
+     * as from a reader.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testGaussianTokens() throws Exception {
+        for (String path : FILES) {
+            final File file = new File(path);
+            final Reader reader = new FileReader(file);
+            try {
+                assertSameTokens(path, new GaussianLexer(new ANTLRReaderStream(
+                        reader)), new GaussianLexer(new ByteBufferCharStream(
+                        ByteBuffer.wrap(Files.readAllBytes(file.toPath())),
+                        file.getName())));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Tests look-ahead, marks and text against a string stream.
+     */
+    @Test
+    public void testStream() {
+        final String text = "ab\ncd\n";
+        final ByteBuffer buf = ByteBuffer.wrap(("xx" + text).getBytes());
+        buf.position(2);
+        final CharStream actual = new ByteBufferCharStream(buf, "src");
+        final CharStream expected = new ANTLRStringStream(text);
+        assertThat(buf.position(), equalTo(2));
+        assertThat(actual.size(), equalTo(text.length()));
+        assertThat(actual.getSourceName(), equalTo("src"));
+        assertThat(actual.LA(-1), equalTo(CharStream.EOF));
+        final int mark = actual.mark();
+        for (int i = 0; i < text.length(); i++) {
+            assertSameState(actual, expected);
+            actual.consume();
+            expected.consume();
+        }
+        assertSameState(actual, expected);
+        assertThat(actual.LA(1), equalTo(CharStream.EOF));
+        actual.rewind(mark);
+        assertThat(actual.index(), equalTo(0));
+        assertThat(actual.getLine(), equalTo(1));
+        assertThat(actual.substring(1, 3), equalTo("b\nc"));
+        assertThat(actual.toString(), equalTo(text));
+    }
+
+    /**
+     * Tests that bytes above the ASCII range are read as unsigned.
+     */
+    @Test
+    public void testHighBytes() {
+        final CharStream stream = new ByteBufferCharStream(
+                ByteBuffer.wrap(new byte[] { (byte) 0xe9 }), null);
+        assertThat(stream.LA(1), equalTo(0xe9));
+        assertThat(stream.substring(0, 0), equalTo("\u00e9"));
+    }
+
+    /**
+     * Checks that the streams are at the same place.
+     *
+     * @param actual
+     *            The stream to check.
+     * @param expected
+     *            The expected stream.
+     */
+    private static void assertSameState(final CharStream actual,
+            final CharStream expected) {
+        assertThat(actual.index(), equalTo(expected.index()));
+        assertThat(actual.getLine(), equalTo(expected.getLine()));
+        assertThat(actual.getCharPositionInLine(),
+                equalTo(expected.getCharPositionInLine()));
+        assertThat(actual.LA(-1), equalTo(expected.LA(-1)));
+        assertThat(actual.LA(1), equalTo(expected.LA(1)));
+        assertThat(actual.LA(2), equalTo(expected.LA(2)));
+    }
+
+    /**
+     * Checks that the lexers make the same tokens.
+     *
+     * @param path
+     *            The lexed file.
+     * @param expected
+     *            The lexer over a reader.
+     * @param actual
+     *            The lexer over a buffer.
+     */
+    private static void assertSameTokens(final String path,
+            final Lexer expected, final Lexer actual) {
+        int count = 0;
+        while (true) {
+            final Token exp = expected.nextToken();
+            final Token act = actual.nextToken();
+            final String at = path + " token " + count++;
+            assertThat(at, act.getType(), equalTo(exp.getType()));
+            if (exp.getType() == Token.EOF) {
+                return;
+            }
+            assertThat(at, act.getText(), equalTo(exp.getText()));
+            assertThat(at, act.getChannel(), equalTo(exp.getChannel()));
+            assertThat(at, act.getLine(), equalTo(exp.getLine()));
+            assertThat(at, act.getCharPositionInLine(),
+                    equalTo(exp.getCharPositionInLine()));
+        }
+    }
+
+    /**
+     * @param file
+     *            The file to map.
+     * @return The file's bytes.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static ByteBuffer map(final File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+}
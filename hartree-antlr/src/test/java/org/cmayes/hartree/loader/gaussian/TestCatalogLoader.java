@@ -0,0 +1,166 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link CatalogLoader}.
+ * 
+ * @author cmayes
+ */
+public class TestCatalogLoader {
+    private static final double ERR_MARGIN = .001;
+    /** The prefix for file locations. */
+    private static final String G16_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final CatalogLoader LOADER = new CatalogLoader();
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "catalog");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String LINK1_STEP = " Link1:  Proceeding";
+    /** Ends the SCF of a job step. */
+    private static final String SCF_DONE = " SCF Done:";
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that a single optimization is cataloged from its ends.
+     */
+    @Test
+    public void testSingleJob() {
+        final File file = new File(G16_DIR_PFX + "pet_opt.log");
+        final CatalogEntry entry = LOADER.load(file);
+        assertFalse(entry.isFullRead());
+        assertThat(entry.getSourceName(), equalTo("pet_opt.log"));
+        assertThat(entry.getFileSize(), equalTo(file.length()));
+        assertThat(entry.getVersion(), equalTo("ES64L-G16RevB.01"));
+        assertThat(entry.getStatus(), equalTo(TerminationStatus.NORMAL));
+        assertThat(entry.getJobCount(), equalTo(1));
+        assertThat(entry.getCpuSeconds(), closeTo(88966.8, ERR_MARGIN));
+        assertThat(entry.getImagFreqCount(), nullValue());
+    }
+
+    /**
+     * Tests that a file with a Link1 job is read in full and that the result
+     * matches reading the stream.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLink1() throws Exception {
+        final String fileName = "init_water+pos4.log";
+        final CatalogEntry entry = LOADER.load(new File(G09_DIR_PFX + fileName));
+        assertTrue(entry.isFullRead());
+        assertThat(entry.getVersion(), equalTo("AM64L-G09RevB.01"));
+        assertThat(entry.getStatus(), equalTo(TerminationStatus.NORMAL));
+        assertThat(entry.getJobCount(), equalTo(2));
+        assertThat(entry.getCpuSeconds(), closeTo(49655.9, ERR_MARGIN));
+        assertThat(entry.getImagFreqCount(), equalTo(0));
+        final CatalogEntry streamed = LOADER.load(fileName, new FileReader(
+                G09_DIR_PFX + fileName));
+        streamed.setFileSize(entry.getFileSize());
+        assertThat(streamed, equalTo(entry));
+    }
+
+    /**
+     * Tests that failed jobs are flagged from the end of the file and that the
+     * result matches reading the stream.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testErrorTermination() throws Exception {
+        final String fileName = "init_THF+negFAIL.log";
+        final CatalogEntry entry = LOADER.load(new File(G09_DIR_PFX
+                + fileName));
+        assertFalse(entry.isFullRead());
+        assertThat(entry.getStatus(), equalTo(TerminationStatus.ERROR));
+        assertThat(entry.getJobCount(), equalTo(1));
+        assertThat(entry.getVersion(), equalTo("EM64L-G09RevB.01"));
+        assertThat(entry.getCpuSeconds(), closeTo(599737.3, ERR_MARGIN));
+        final CatalogEntry streamed = LOADER.load(fileName, new FileReader(
+                G09_DIR_PFX + fileName));
+        streamed.setFileSize(entry.getFileSize());
+        streamed.setFullRead(false);
+        assertThat(streamed, equalTo(entry));
+    }
+
+    /**
+     * Tests that a running job whose end shows an earlier Link1 step is read
+     * in full.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testRunningLink1() throws Exception {
+        final String text = new String(Files.readAllBytes(new File(G16_DIR_PFX
+                + "co_gas.log").toPath()), ASCII);
+        final String partial = text.substring(0,
+                text.indexOf(SCF_DONE, text.indexOf(LINK1_STEP)));
+        final File target = new File(TMP_DIR, "co_gas_running.log");
+        final OutputStream out = new FileOutputStream(target);
+        try {
+            out.write(partial.getBytes(ASCII));
+        } finally {
+            out.close();
+        }
+        final CatalogEntry entry = LOADER.load(target);
+        assertTrue(entry.isFullRead());
+        assertThat(entry.getStatus(), equalTo(TerminationStatus.INCOMPLETE));
+        final CatalogEntry streamed = LOADER.load(target.getName(),
+                new FileReader(target));
+        streamed.setFileSize(entry.getFileSize());
+        assertThat(streamed, equalTo(entry));
+    }
+
+    /**
+     * Tests that the imaginary frequency count comes from the last frequency
+     * job.
+     */
+    @Test
+    public void testImagFreqs() {
+        final CatalogEntry entry = LOADER.load(new File(G09_DIR_PFX
+                + "init2thfTS+camAgain3.log"));
+        assertThat(entry.getImagFreqCount(), equalTo(1));
+    }
+}
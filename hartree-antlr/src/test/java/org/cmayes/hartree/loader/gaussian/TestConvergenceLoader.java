@@ -0,0 +1,81 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.io.StringWriter;
+
+import org.cmayes.hartree.disp.csv.ConvergenceCsvDisplay;
+import org.cmayes.hartree.model.ConvergenceCriterion;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConvergenceLoader}.
+ * 
+ * @author cmayes
+ */
+public class TestConvergenceLoader {
+    private static final double ERR_MARGIN = .00000001;
+    /** The prefix for file locations. */
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String OPT_LOG = "pet_opt.log";
+    private static final int OPT_STEPS = 12;
+    private static final ConvergenceLoader LOADER = new ConvergenceLoader();
+
+    /**
+     * Tests that every convergence table is read with its SCF energy.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoadSeries() throws Exception {
+        final ConvergenceSeries series = LOADER.load(OPT_LOG, new FileReader(
+                FILE_DIR_PFX + OPT_LOG));
+        assertThat(series.getSourceName(), equalTo(OPT_LOG));
+        assertThat(series.getStepCount(), equalTo(OPT_STEPS));
+        assertThat(series.getEnergy(0), closeTo(-2290.50619621, ERR_MARGIN));
+        assertThat(series.getValue(ConvergenceCriterion.MAX_FORCE, 0),
+                closeTo(0.012283, ERR_MARGIN));
+        assertThat(series.getValue(ConvergenceCriterion.RMS_DISPLACEMENT, 0),
+                closeTo(0.018121, ERR_MARGIN));
+        assertThat(series.getFinalEnergy(), closeTo(-2290.50749608, ERR_MARGIN));
+        assertThat(series.getFinalValue(ConvergenceCriterion.MAX_DISPLACEMENT),
+                closeTo(0.001815, ERR_MARGIN));
+        assertThat(series.getThreshold(ConvergenceCriterion.MAX_DISPLACEMENT),
+                closeTo(0.0018, ERR_MARGIN));
+        assertThat(series.getCriteriaMet(OPT_STEPS - 1), equalTo(3));
+        assertFalse(series.isConverged());
+        assertThat(series.getEnergyRises(), equalTo(0));
+        assertTrue(series.isMonotonic());
+        assertThat(series.getValues(ConvergenceCriterion.RMS_FORCE).length,
+                equalTo(OPT_STEPS));
+    }
+
+    /**
+     * Tests the summary and full-series CSV layouts.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testDisplay() throws Exception {
+        final ConvergenceSeries series = LOADER.load(OPT_LOG, new FileReader(
+                FILE_DIR_PFX + OPT_LOG));
+        final StringWriter summary = new StringWriter();
+        new ConvergenceCsvDisplay().write(summary, series);
+        final String[] sumLines = summary.toString().split("\r?\n");
+        assertThat(sumLines.length, equalTo(2));
+        assertTrue(sumLines[1].startsWith("\"pet_opt.log\",\"12\""));
+        assertTrue(sumLines[1].endsWith("\"NO\",\"0\",\"YES\""));
+        final StringWriter full = new StringWriter();
+        new ConvergenceCsvDisplay(true).write(full, series);
+        assertThat(full.toString().split("\r?\n").length,
+                equalTo(OPT_STEPS + 1));
+    }
+}
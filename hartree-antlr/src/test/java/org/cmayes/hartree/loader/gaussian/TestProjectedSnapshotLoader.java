@@ -0,0 +1,377 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.cmayes.hartree.filter.ResultFilter;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link ProjectedSnapshotLoader}.
+ *
+ * @author cmayes
+ */
+public class TestProjectedSnapshotLoader {
+    /** The prefix for file locations. */
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final List<String> CORPUS = Arrays.asList(
+            G09_DIR_PFX + "init_water+pos4.log",
+            G09_DIR_PFX + "init_THF+negFAIL.log",
+            G09_DIR_PFX + "init2thfTS+camAgain3.log",
+            G09_DIR_PFX + "glucose5m062xEtOHnorm.log",
+            G09_DIR_PFX + "m-glucose_gasm062x.out",
+            G09_DIR_PFX + "GL_THF_rev4.log",
+            G09_DIR_PFX + "semp/2H1pm6.log",
+            G09_DIR_PFX + "snapshot/glucNa3eO4areacttwater.out",
+            FILE_DIR_PFX + "pet_opt.log",
+            FILE_DIR_PFX + "pet_freq.log",
+            FILE_DIR_PFX + "pet_cp1_def2.log",
+            FILE_DIR_PFX + "pe_linear_4_5_cp.log",
+            FILE_DIR_PFX + "tieg4pdc2_optfreq.log",
+            FILE_DIR_PFX + "o_gas.log",
+            FILE_DIR_PFX + "co_gas.log",
+            FILE_DIR_PFX + "1,2-EthaneDiol.log");
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "projected");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String SP_ENERGY = "-610.819730927";
+    private static final List<String> FILTERS = Arrays.asList(
+            "functional=M062X", "charge=0", "mult!=1",
+            "stoichiometry=C32H30O14", "energy<-1000", "freq>0",
+            "solvent=water", "termination=normal",
+            "termination=normal,functional=B3LYP,zpe>0");
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that the energy and dipole of a Link1 file whose jobs share a
+     * single point route come from the last job, as in a full read.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLink1SameRoute() throws Exception {
+        final String job = new String(Files.readAllBytes(new File(G09_DIR_PFX
+                + "levoglucosan8spTooLittleData.log").toPath()), ASCII);
+        assertThat(job.contains(SP_ENERGY), equalTo(true));
+        final File target = new File(TMP_DIR, "link1sp.log");
+        final OutputStream out = new FileOutputStream(target);
+        try {
+            out.write(job.replace(SP_ENERGY, "-600.000000000").getBytes(ASCII));
+            out.write(" Link1:  Proceeding to internal job step number  2.\n"
+                    .getBytes(ASCII));
+            // A Link1 step doesn't start a new run of Gaussian.
+            out.write(job.substring(job.indexOf('\n') + 1).getBytes(ASCII));
+        } finally {
+            out.close();
+        }
+        final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                EnumSet.of(SnapshotField.ENERGY, SnapshotField.DIPOLE,
+                        SnapshotField.SOLVENT));
+        final BaseResult proj = loader.load(target);
+        final BaseResult full = load(new SnapshotLoader(), target.getPath());
+        assertThat(proj.getElecEn(), equalTo(Double.valueOf(SP_ENERGY)));
+        assertThat(proj.getElecEn(), equalTo(full.getElecEn()));
+        assertThat(proj.getDipoleMomentTotal(),
+                equalTo(full.getDipoleMomentTotal()));
+        assertThat(proj.getSolvent(), equalTo(full.getSolvent()));
+
+        final ResultFilter filter = ResultFilter.parse("energy<-605");
+        assertThat(new ProjectedSnapshotLoader(
+                EnumSet.of(SnapshotField.STOICHIOMETRY), filter).load(target)
+                .getStoichiometry(), equalTo(full.getStoichiometry()));
+    }
+
+    /**
+     * Tests that every field matches a full read across the corpus.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testAllFieldsMatchFullRead() throws Exception {
+        final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                EnumSet.allOf(SnapshotField.class));
+        for (String fileName : CORPUS) {
+            final BaseResult proj = load(loader, fileName);
+            final BaseResult full = load(new SnapshotLoader(), fileName);
+            assertThat(fileName, proj.getSolvent(), equalTo(full.getSolvent()));
+            assertThat(fileName, proj.getStoichiometry(),
+                    equalTo(full.getStoichiometry()));
+            assertThat(fileName, proj.getCharge(), equalTo(full.getCharge()));
+            assertThat(fileName, proj.getMult(), equalTo(full.getMult()));
+            assertThat(fileName, proj.getFunctional(),
+                    equalTo(full.getFunctional()));
+            assertThat(fileName, proj.getBasisSet(),
+                    equalTo(full.getBasisSet()));
+            assertThat(fileName, proj.getElecEn(), equalTo(full.getElecEn()));
+            assertThat(fileName, proj.getDipoleMomentTotal(),
+                    equalTo(full.getDipoleMomentTotal()));
+            assertThat(fileName, proj.getZpeCorrection(),
+                    equalTo(full.getZpeCorrection()));
+            assertThat(fileName, proj.getEnthalpy298(),
+                    equalTo(full.getEnthalpy298()));
+            assertThat(fileName, proj.getGibbs298(),
+                    equalTo(full.getGibbs298()));
+            assertThat(fileName, proj.getFrequencyValues(),
+                    equalTo(full.getFrequencyValues()));
+            assertThat(fileName, proj.getBsse(), equalTo(full.getBsse()));
+        }
+    }
+
+    /**
+     * Tests that header fields match a full read and that unrequested fields
+     * are left empty.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testHeaderFields() throws Exception {
+        final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                EnumSet.of(SnapshotField.STOICHIOMETRY, SnapshotField.CHARGE,
+                        SnapshotField.MULT, SnapshotField.FUNCTIONAL));
+        for (String fileName : CORPUS) {
+            final BaseResult proj = load(loader, fileName);
+            final BaseResult full = load(new SnapshotLoader(), fileName);
+            assertThat(fileName, proj.getStoichiometry(),
+                    equalTo(full.getStoichiometry()));
+            assertThat(fileName, proj.getCharge(), equalTo(full.getCharge()));
+            assertThat(fileName, proj.getMult(), equalTo(full.getMult()));
+            assertThat(fileName, proj.getFunctional(),
+                    equalTo(full.getFunctional()));
+            assertThat(fileName, proj.getBasisSet(), nullValue());
+            assertThat(fileName, proj.getElecEn(), nullValue());
+            assertThat(fileName, proj.getAtoms().size(), equalTo(0));
+        }
+    }
+
+    /**
+     * Tests that only the start of the file is read for header fields.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testStopsEarly() throws Exception {
+        final File file = new File(FILE_DIR_PFX + "pet_opt.log");
+        final CountingReader reader = new CountingReader(file);
+        try {
+            final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                    EnumSet.of(SnapshotField.STOICHIOMETRY,
+                            SnapshotField.CHARGE));
+            final BaseResult result = loader.load(file.getName(), reader,
+                    loader.readLastJob(file), false);
+            assertThat(result.getStoichiometry(), equalTo("C32H30O14"));
+            assertThat(result.getCharge(), equalTo(0));
+            assertThat(reader.getCount(), lessThan(file.length() / 10));
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tests that filtered loads keep the same files as filtering full reads.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testFilterMatchesFullRead() throws Exception {
+        final List<BaseResult> fullReads = new ArrayList<BaseResult>();
+        final List<TerminationStatus> statuses = new ArrayList<TerminationStatus>();
+        for (String fileName : CORPUS) {
+            fullReads.add(load(new SnapshotLoader(), fileName));
+            statuses.add(new CatalogLoader().load(new File(fileName))
+                    .getStatus());
+        }
+        for (String expr : FILTERS) {
+            final ResultFilter filter = ResultFilter.parse(expr);
+            final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                    EnumSet.of(SnapshotField.STOICHIOMETRY), filter);
+            int expectMatches = 0;
+            for (int i = 0; i < CORPUS.size(); i++) {
+                final String fileName = CORPUS.get(i);
+                final boolean expected = filter.test(fullReads.get(i))
+                        && filter.test(statuses.get(i));
+                final BaseResult proj = load(loader, fileName);
+                assertThat(expr + " " + fileName, proj != null,
+                        equalTo(expected));
+                if (expected) {
+                    expectMatches++;
+                }
+            }
+            assertThat(expr, filter.getMatchCount(), equalTo(expectMatches));
+            assertThat(expr, filter.getSkipCount(), equalTo(CORPUS.size()
+                    - expectMatches));
+        }
+    }
+
+    /**
+     * Tests that a file whose stoichiometry doesn't match is given up on near
+     * its start.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testFilterSkipsEarly() throws Exception {
+        final File file = new File(FILE_DIR_PFX + "pet_opt.log");
+        final CountingReader reader = new CountingReader(file);
+        try {
+            final ResultFilter filter = ResultFilter
+                    .parse("stoichiometry=C6H12O6,termination=normal");
+            final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                    EnumSet.of(SnapshotField.ENERGY), filter);
+            assertThat(loader.load(file.getName(), reader,
+                    loader.readLastJob(file), false), nullValue());
+            assertThat(reader.getCount(), lessThan(file.length() / 10));
+            assertThat(filter.getSkipCount(), equalTo(1));
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Tests that a file is skipped by its termination without being parsed.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testFilterTermination() throws Exception {
+        final ProjectedSnapshotLoader loader = new ProjectedSnapshotLoader(
+                EnumSet.of(SnapshotField.ENERGY),
+                ResultFilter.parse("termination=normal"));
+        assertThat(load(loader, G09_DIR_PFX + "init_THF+negFAIL.log"),
+                nullValue());
+        assertThat(load(loader, FILE_DIR_PFX + "pet_opt.log").getElecEn(),
+                equalTo(load(new SnapshotLoader(), FILE_DIR_PFX + "pet_opt.log")
+                        .getElecEn()));
+        final Reader reader = new FileReader(G09_DIR_PFX
+                + "init_THF+negFAIL.log");
+        try {
+            assertThat(loader.load("init_THF+negFAIL.log", reader),
+                    nullValue());
+        } finally {
+            reader.close();
+        }
+        assertThat(loader.getFilter().getSkipCount(), equalTo(2));
+    }
+
+    /**
+     * Loads the given file.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param fileName
+     *            The file to load.
+     * @return The loaded result.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private BaseResult load(final ProjectedSnapshotLoader loader,
+            final String fileName) throws Exception {
+        return loader.load(new File(fileName));
+    }
+
+    /**
+     * Loads the given file.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param fileName
+     *            The file to load.
+     * @return The loaded result.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private BaseResult load(final SnapshotLoader loader, final String fileName)
+            throws Exception {
+        final Reader reader = new FileReader(fileName);
+        try {
+            return loader.load(fileName, reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Counts the characters read from a file.
+     */
+    private static class CountingReader extends FilterReader {
+        private long count;
+
+        /**
+         * Creates a reader for the given file.
+         *
+         * @param file
+         *            The file to read.
+         * @throws IOException
+         *             If the file can't be opened.
+         */
+        CountingReader(final File file) throws IOException {
+            super(new FileReader(file));
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException {
+            final int read = super.read(cbuf, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        /**
+         * @return the number of characters read
+         */
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.FileReader;
+import java.util.Arrays;
+
+import org.cmayes.hartree.model.def.PesScan;
+import org.cmayes.hartree.model.def.ScanGrid;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ScanLoader}.
+ * 
+ * @author cmayes
+ */
+public class TestScanLoader {
+    private static final double ERR_MARGIN = .0001;
+    /** The prefix for file locations. */
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String SCAN_LOG = "hooh_scan.log";
+    private static final ScanLoader LOADER = new ScanLoader();
+
+    /**
+     * Tests that each stationary point is read with its scanned coordinate.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoadScan() throws Exception {
+        final PesScan scan = LOADER.load(SCAN_LOG, new FileReader(FILE_DIR_PFX
+                + SCAN_LOG));
+        assertThat(scan.getSourceName(), equalTo(SCAN_LOG));
+        assertThat(scan.getCoordNames(), equalTo(Arrays.asList("D(3,1,2,4)")));
+        assertThat(scan.getPointCount(), equalTo(3));
+        final double[] coords = new double[] { 0, 60, 120 };
+        final double[] energies = new double[] { -151.370, -151.378,
+                -151.381 };
+        for (int i = 0; i < coords.length; i++) {
+            assertThat(scan.getCoordValue(i, 0), closeTo(coords[i], ERR_MARGIN));
+            assertThat(scan.getEnergy(i), closeTo(energies[i], ERR_MARGIN));
+        }
+        assertThat(scan.getGeometries().getFrameCount(), equalTo(3));
+        assertThat(scan.getGeometries().getAtomCount(), equalTo(4));
+    }
+
+    /**
+     * Tests that a loaded scan can be arranged into a grid.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testScanGrid() throws Exception {
+        final ScanGrid grid = LOADER.load(SCAN_LOG,
+                new FileReader(FILE_DIR_PFX + SCAN_LOG)).toGrid();
+        assertThat(grid.getDimensions(), equalTo(1));
+        assertThat(grid.getAxisName(0), equalTo("D(3,1,2,4)"));
+        assertThat(grid.getAxisLength(0), equalTo(3));
+        assertThat(grid.getEnergy(2), closeTo(-151.381, ERR_MARGIN));
+    }
+}
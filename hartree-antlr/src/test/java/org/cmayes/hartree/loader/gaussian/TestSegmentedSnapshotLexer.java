@@ -0,0 +1,160 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.LowestEnergyMapper;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SegmentedSnapshotLexer}. The segments are kept small so
+ * that the test files are split many times.
+ *
+ * @author cmayes
+ */
+public class TestSegmentedSnapshotLexer {
+    /** The prefix for file locations. */
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final String G16_DIR_PFX = "src/test/resources/files/g16/";
+    private static final int SEG_SIZE = 32 * 1024;
+    private static final SegmentedSnapshotLexer LEXER = new SegmentedSnapshotLexer(
+            4, SEG_SIZE);
+
+    /**
+     * Tests that the segments' tokens match the serial lexer's for every test
+     * file.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTokensMatchSerial() throws Exception {
+        final List<File> files = new ArrayList<File>();
+        for (String dir : new String[] { G09_DIR_PFX, G16_DIR_PFX }) {
+            for (File file : new File(dir).listFiles(new FileFilter() {
+                @Override
+                public boolean accept(final File pathname) {
+                    return pathname.isFile();
+                }
+            })) {
+                files.add(file);
+            }
+        }
+        for (File file : files) {
+            final FileReader reader = new FileReader(file);
+            try {
+                final List<String> serial = toStrings(new SnapshotLexer(
+                        new ANTLRReaderStream(reader)));
+                assertThat(file.getName(), toStrings(LEXER.lex(file)),
+                        equalTo(serial));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that a large file is split into segments of at least the minimum
+     * size.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testBoundaries() throws Exception {
+        final File file = new File(G16_DIR_PFX + "pet_freq.log");
+        final FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        try {
+            final List<Long> bounds = LEXER.findBoundaries(channel);
+            assertThat(bounds.size(), greaterThan(2));
+            assertThat(bounds.get(0), equalTo(0L));
+            assertThat(bounds.get(bounds.size() - 1), equalTo(file.length()));
+            for (int i = 1; i < bounds.size() - 1; i++) {
+                assertThat(bounds.get(i) - bounds.get(i - 1),
+                        greaterThan((long) SEG_SIZE - 1));
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Tests that a snapshot of a multi-job file matches the serial read.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testSnapshotMatchesSerial() throws Exception {
+        final ArchiveSnapshotLoader segLoader = new ArchiveSnapshotLoader(
+                LEXER);
+        for (String path : new String[] { G16_DIR_PFX + "pet_freq.log",
+                G16_DIR_PFX + "tieg4pdc2_optfreq.log",
+                G09_DIR_PFX + "init_THF+negFAIL.log" }) {
+            final File file = new File(path);
+            final FileReader reader = new FileReader(file);
+            try {
+                final BaseResult serial = new SnapshotLoader().load(
+                        file.getName(), reader);
+                assertThat(path, segLoader.load(file), equalTo(serial));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that the lowest energy geometry matches the serial read.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLowestEnergyMatchesSerial() throws Exception {
+        final File file = new File(G09_DIR_PFX + "aglc_b14_157.log");
+        final FileReader reader = new FileReader(file);
+        try {
+            final LowestEnergyMapper serial = new LowestEnergyLoader().load(
+                    file.getName(), reader);
+            final LowestEnergyMapper seg = new LowestEnergyLoader(LEXER)
+                    .load(file);
+            assertThat(seg.getLowestEnergy(),
+                    equalTo(serial.getLowestEnergy()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the type and text of each visible token.
+     *
+     * @param source
+     *            The tokens to read.
+     * @return The type and text of each visible token.
+     */
+    private static List<String> toStrings(final TokenSource source) {
+        final List<String> strings = new ArrayList<String>();
+        for (Token tok = source.nextToken(); tok.getType() != Token.EOF; tok = source
+                .nextToken()) {
+            if (tok.getChannel() == Token.DEFAULT_CHANNEL) {
+                strings.add(tok.getType() + ":" + tok.getText());
+            }
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,268 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.ConvergenceCriterion;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link SnapshotFollower}. Files are copied a piece at a time, as
+ * Gaussian writes them, and polled after each piece.
+ *
+ * @author cmayes
+ */
+public class TestSnapshotFollower {
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final String G16_DIR_PFX = "src/test/resources/files/g16/";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "follow");
+    /** Not a divisor of any line length, so pieces end mid-line. */
+    private static final int PIECE_COUNT = 7;
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that after each piece the snapshot and convergence match reading
+     * the partial file from the start.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testMatchesFullRead() throws Exception {
+        for (String path : new String[] { G16_DIR_PFX + "pet_opt.log",
+                G16_DIR_PFX + "tieg4pdc2_optfreq.log",
+                G09_DIR_PFX + "init_THF+negFAIL.log" }) {
+            final byte[] data = Files.readAllBytes(new File(path).toPath());
+            final File target = new File(TMP_DIR, new File(path).getName());
+            final SnapshotFollower follower = new SnapshotFollower();
+            try {
+                final int pieceSize = data.length / PIECE_COUNT + 1;
+                for (int start = 0; start < data.length; start += pieceSize) {
+                    append(target, Arrays.copyOfRange(data, start,
+                            Math.min(data.length, start + pieceSize)));
+                    assertTrue(follower.poll(target));
+                    assertThat(path, follower.getSnapshot(target),
+                            equalTo(loadSnapshot(target,
+                                    follower.getStatus(target))));
+                    assertSameSeries(follower.getConvergence(target),
+                            loadSeries(target));
+                    assertThat(follower.getKeptOffset(target),
+                            lessThan(target.length()));
+                }
+                assertThat(follower.getKeptOffset(target), greaterThan(0L));
+                assertFalse(follower.poll(target));
+            } finally {
+                follower.close();
+            }
+        }
+    }
+
+    /**
+     * Tests the termination status of a running and a finished job.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testStatus() throws Exception {
+        final byte[] data = Files.readAllBytes(new File(G16_DIR_PFX
+                + "pet_opt.log").toPath());
+        final File target = new File(TMP_DIR, "pet_opt.log");
+        final SnapshotFollower follower = new SnapshotFollower();
+        try {
+            append(target, Arrays.copyOf(data, data.length / 2));
+            follower.poll(target);
+            assertThat(follower.getStatus(target),
+                    equalTo(TerminationStatus.INCOMPLETE));
+            assertThat(follower.getSnapshot(target).getAtoms().size(),
+                    greaterThan(0));
+            assertThat(follower.getSnapshot(target).getElecEn(),
+                    notNullValue());
+            append(target, Arrays.copyOfRange(data, data.length / 2,
+                    data.length));
+            follower.poll(target);
+            assertThat(follower.getStatus(target),
+                    equalTo(TerminationStatus.NORMAL));
+        } finally {
+            follower.close();
+        }
+    }
+
+    /**
+     * Tests that a file that is replaced by a shorter one is read again from
+     * the start.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        final File target = new File(TMP_DIR, "job.log");
+        final SnapshotFollower follower = new SnapshotFollower();
+        try {
+            append(target, Files.readAllBytes(new File(G16_DIR_PFX
+                    + "pet_opt.log").toPath()));
+            follower.poll(target);
+            target.delete();
+            append(target, Files.readAllBytes(new File(G16_DIR_PFX
+                    + "co_gas.log").toPath()));
+            assertTrue(follower.poll(target));
+            assertThat(follower.getSnapshot(target), equalTo(loadSnapshot(
+                    target, TerminationStatus.NORMAL)));
+        } finally {
+            follower.close();
+        }
+    }
+
+    /**
+     * Tests that no more than the given number of files are held open and that
+     * closed files are reopened when they are polled.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testMaxOpen() throws Exception {
+        final String[] names = { "co_gas.log", "o_gas.log", "1,2-EthaneDiol.log" };
+        final SnapshotFollower follower = new SnapshotFollower(2);
+        try {
+            for (String name : names) {
+                final File target = new File(TMP_DIR, name);
+                append(target, Files.readAllBytes(new File(G16_DIR_PFX + name)
+                        .toPath()));
+                assertTrue(follower.poll(target));
+                assertThat(follower.getOpenCount(), lessThan(3));
+            }
+            final File first = new File(TMP_DIR, names[0]);
+            append(first, " Normal termination of Gaussian 16\n".getBytes());
+            assertTrue(follower.poll(first));
+            assertThat(follower.getOpenCount(), equalTo(2));
+            assertThat(follower.getStatus(first),
+                    equalTo(TerminationStatus.NORMAL));
+        } finally {
+            follower.close();
+        }
+        assertThat(follower.getOpenCount(), equalTo(0));
+    }
+
+    /**
+     * Checks that two series have the same steps.
+     *
+     * @param actual
+     *            The series to check.
+     * @param expected
+     *            The expected series.
+     */
+    private static void assertSameSeries(final ConvergenceSeries actual,
+            final ConvergenceSeries expected) {
+        assertThat(actual.getStepCount(), equalTo(expected.getStepCount()));
+        assertTrue(Arrays.equals(actual.getEnergies(), expected.getEnergies()));
+        for (ConvergenceCriterion crit : ConvergenceCriterion.values()) {
+            assertTrue(Arrays.equals(actual.getValues(crit),
+                    expected.getValues(crit)));
+        }
+    }
+
+    /**
+     * Reads the file from the start as the follower should: a running job
+     * with the trajectory reader, and a finished one with the snapshot
+     * parser.
+     *
+     * @param file
+     *            The file to read.
+     * @param status
+     *            The file's termination status.
+     * @return The file's snapshot.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static BaseResult loadSnapshot(final File file,
+            final TerminationStatus status) throws IOException {
+        final FileReader reader = new FileReader(file);
+        try {
+            if (TerminationStatus.INCOMPLETE.equals(status)) {
+                return new TrajectoryLoader().load(file.getName(), reader);
+            }
+            return new SnapshotLoader().load(file.getName(), reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param file
+     *            The file to read.
+     * @return The file's convergence series, read from the start.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static ConvergenceSeries loadSeries(final File file)
+            throws IOException {
+        final FileReader reader = new FileReader(file);
+        try {
+            return new ConvergenceLoader().load(file.getName(), reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Appends the data to the file.
+     *
+     * @param file
+     *            The file to write to.
+     * @param data
+     *            The data to append.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static void append(final File file, final byte[] data)
+            throws IOException {
+        final OutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.cmayes.hartree.loader.gaussian;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.parser.gaussian.antlr.SnapshotLexer;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TrajectoryLoader}.
+ * 
+ * @author cmayes
+ */
+public class TestTrajectoryLoader {
+    private static final double ERR_MARGIN = .01;
+    /** The prefix for file locations. */
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g16/";
+    private static final String OPT_LOG = "pet_opt.log";
+    private static final int OPT_STEPS = 12;
+    private static final TrajectoryLoader LOADER = new TrajectoryLoader();
+
+    /**
+     * Tests that every optimization step is handed over in order.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoadSteps() throws Exception {
+        final List<BaseResult> steps = new ArrayList<BaseResult>();
+        final int count = LOADER.loadSteps(OPT_LOG, new FileReader(
+                FILE_DIR_PFX + OPT_LOG), new StepHandler<BaseResult>() {
+            @Override
+            public void handle(final BaseResult step) {
+                steps.add(step);
+            }
+        });
+        assertThat(count, equalTo(OPT_STEPS));
+        assertThat(steps.size(), equalTo(OPT_STEPS));
+        for (int i = 0; i < steps.size(); i++) {
+            final BaseResult step = steps.get(i);
+            assertThat(step.getStep(), equalTo(i + 1));
+            assertThat(step.getSourceName(), equalTo(OPT_LOG));
+            assertThat(step.getAtoms().size(), equalTo(76));
+            assertThat(step.getCharge(), equalTo(0));
+            assertThat(step.getMult(), equalTo(1));
+        }
+        assertThat(steps.get(0).getElecEn(),
+                closeTo(-2290.50619621, ERR_MARGIN));
+        assertThat(steps.get(0).getStoichiometry(), equalTo("C32H30O14"));
+        assertThat(steps.get(OPT_STEPS - 1).getElecEn(),
+                closeTo(-2290.50749608, ERR_MARGIN));
+    }
+
+    /**
+     * Tests that the plain load returns the final step.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoadLast() throws Exception {
+        final BaseResult last = LOADER.load(OPT_LOG, new FileReader(
+                FILE_DIR_PFX + OPT_LOG));
+        assertThat(last.getStep(), equalTo(OPT_STEPS));
+        assertThat(last.getElecEn(), closeTo(-2290.50749608, ERR_MARGIN));
+    }
+
+    /**
+     * Tests that a functional and basis set read after the first steps are
+     * carried into them and every later step.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLateFunctional() throws Exception {
+        final List<BaseResult> steps = loadWithRouteAfter(2);
+        assertThat(steps.size(), equalTo(OPT_STEPS));
+        for (int i = 0; i < steps.size(); i++) {
+            assertThat(steps.get(i).getStep(), equalTo(i + 1));
+            assertThat(steps.get(i).getFunctional(), equalTo("m062x"));
+            assertThat(steps.get(i).getBasisSet(), equalTo("6-311+g(2d,p)"));
+            assertThat(steps.get(i).getStoichiometry(), equalTo("C32H30O14"));
+        }
+    }
+
+    /**
+     * Tests that steps held for a functional are handed over at the end when
+     * none is read.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testNoFunctional() throws Exception {
+        final List<BaseResult> steps = loadWithRouteAfter(-1);
+        assertThat(steps.size(), equalTo(OPT_STEPS));
+        for (int i = 0; i < steps.size(); i++) {
+            assertThat(steps.get(i).getStep(), equalTo(i + 1));
+            assertThat(steps.get(i).getFunctional(), nullValue());
+            assertThat(steps.get(i).getCharge(), equalTo(0));
+        }
+    }
+
+    /**
+     * Tests that a route without a functional and basis set doesn't hold the
+     * steps after it: each step is handed over before the next SCF energy is
+     * read.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testRouteWithoutFuncSet() throws Exception {
+        final String log = new String(Files.readAllBytes(new File(FILE_DIR_PFX
+                + OPT_LOG).toPath()), StandardCharsets.UTF_8).replace(
+                "# opt=(modredundant) m062x/6-311+g(2d,p) nosymm scf=xqc",
+                "# opt=(modredundant) m062x gen nosymm scf=xqc");
+        final SnapshotLexer lexer = new SnapshotLexer(new ANTLRStringStream(
+                log));
+        final int[] energies = new int[1];
+        final TokenSource counter = new TokenSource() {
+            @Override
+            public Token nextToken() {
+                final Token tok = lexer.nextToken();
+                if (tok.getType() == SnapshotLexer.ELECENG) {
+                    energies[0]++;
+                }
+                return tok;
+            }
+
+            @Override
+            public String getSourceName() {
+                return lexer.getSourceName();
+            }
+        };
+        final List<BaseResult> steps = new ArrayList<BaseResult>();
+        final int count = LOADER.loadSteps(OPT_LOG, counter,
+                new StepHandler<BaseResult>() {
+                    @Override
+                    public void handle(final BaseResult step) {
+                        assertThat(energies[0], equalTo(step.getStep()));
+                        steps.add(step);
+                    }
+                });
+        assertThat(count, equalTo(OPT_STEPS));
+        assertThat(steps.size(), equalTo(OPT_STEPS));
+        for (BaseResult step : steps) {
+            assertThat(step.getFunctional(), nullValue());
+            assertThat(step.getCharge(), equalTo(0));
+            assertThat(step.getStoichiometry(), equalTo("C32H30O14"));
+        }
+    }
+
+    /**
+     * Loads the steps of the optimization with its route section moved.
+     * 
+     * @param scfCount
+     *            The number of SCF energies to move the route section after,
+     *            or a negative number to remove it.
+     * @return The steps.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static List<BaseResult> loadWithRouteAfter(final int scfCount)
+            throws Exception {
+        final List<String> lines = Files.readAllLines(new File(FILE_DIR_PFX
+                + OPT_LOG).toPath(), StandardCharsets.UTF_8);
+        int route = 0;
+        while (!lines.get(route).startsWith(" # opt")) {
+            route++;
+        }
+        // The route line and the dashed lines around it.
+        final List<String> routeLines = new ArrayList<String>(lines.subList(
+                route - 1, route + 2));
+        lines.subList(route - 1, route + 2).clear();
+        if (scfCount >= 0) {
+            int seen = 0;
+            int insertAt = 0;
+            while (seen < scfCount) {
+                if (lines.get(insertAt++).startsWith(" SCF Done")) {
+                    seen++;
+                }
+            }
+            lines.addAll(insertAt, routeLines);
+        }
+        final StringBuilder log = new StringBuilder();
+        for (String line : lines) {
+            log.append(line).append('\n');
+        }
+        final List<BaseResult> steps = new ArrayList<BaseResult>();
+        final int count = LOADER.loadSteps(OPT_LOG,
+                new StringReader(log.toString()),
+                new StepHandler<BaseResult>() {
+                    @Override
+                    public void handle(final BaseResult step) {
+                        steps.add(step);
+                    }
+                });
+        assertThat(count, equalTo(steps.size()));
+        return steps;
+    }
+}
@@ -0,0 +1,22 @@
+package org.cmayes.hartree;
+
+/**
+ * Adds loaders, displays and calculations to a {@link ComponentRegistry}.
+ * Providers are found with {@link java.util.ServiceLoader}, so a JAR on the
+ * classpath that lists its provider in
+ * <code>META-INF/services/org.cmayes.hartree.ComponentProvider</code> can
+ * plug its own components into the commands. Providers should only register
+ * factories; the components themselves are created when a command first
+ * needs them.
+ * 
+ * @author cmayes
+ */
+public interface ComponentProvider {
+    /**
+     * Registers this provider's component factories.
+     * 
+     * @param registry
+     *            The registry to add to.
+     */
+    void register(ComponentRegistry registry);
+}
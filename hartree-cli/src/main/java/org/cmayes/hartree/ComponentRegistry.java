@@ -0,0 +1,224 @@
+package org.cmayes.hartree;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.MediaType;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Table;
+
+/**
+ * Holds the factories for the loaders, displays and calculations of each
+ * command, along with each command's default media and processor types.
+ * Each component is created the first time it is asked for and then shared,
+ * so a run only pays for the components its command uses.
+ *
+ * @author cmayes
+ */
+public class ComponentRegistry {
+    /** Logger. */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ComponentRegistry.class);
+    private final Map<HandlingType, Supplier<? extends Loader<?>>> loaders = new EnumMap<HandlingType, Supplier<? extends Loader<?>>>(
+            HandlingType.class);
+    private final Table<HandlingType, MediaType, Supplier<? extends Display<?>>> displays = HashBasedTable
+            .create();
+    private final ListMultimap<HandlingType, Supplier<? extends Calculation>> calcs = ArrayListMultimap
+            .create();
+    private final Map<HandlingType, MediaType> defMedia = new EnumMap<HandlingType, MediaType>(
+            HandlingType.class);
+    private final Map<HandlingType, ProcType> defProcs = new EnumMap<HandlingType, ProcType>(
+            HandlingType.class);
+
+    /**
+     * Creates a registry with the built-in components followed by those of
+     * every {@link ComponentProvider} found with {@link ServiceLoader}. A
+     * provider's registrations replace the built-in ones for the same command
+     * and media type.
+     *
+     * @return The registry.
+     */
+    public static ComponentRegistry load() {
+        final ComponentRegistry registry = new ComponentRegistry();
+        new DefaultComponentProvider().register(registry);
+        for (ComponentProvider provider : ServiceLoader
+                .load(ComponentProvider.class)) {
+            LOGGER.debug("Registering components from {}", provider.getClass()
+                    .getName());
+            provider.register(registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Returns a factory that creates an instance of the class with its no-arg
+     * constructor.
+     *
+     * @param type
+     *            The class to create.
+     * @param <C>
+     *            The type of the class.
+     * @return The factory.
+     */
+    public static <C> Supplier<C> of(final Class<C> type) {
+        return new Supplier<C>() {
+            @Override
+            public C get() {
+                try {
+                    return type.newInstance();
+                } catch (final InstantiationException e) {
+                    throw new IllegalStateException("Can't create "
+                            + type.getName(), e);
+                } catch (final IllegalAccessException e) {
+                    throw new IllegalStateException("Can't create "
+                            + type.getName(), e);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return type.getName();
+            }
+        };
+    }
+
+    /**
+     * Sets the loader for a command.
+     *
+     * @param type
+     *            The command.
+     * @param factory
+     *            Creates the loader.
+     */
+    public void setLoader(final HandlingType type,
+            final Supplier<? extends Loader<?>> factory) {
+        loaders.put(type, Suppliers.memoize(factory));
+    }
+
+    /**
+     * Sets the display for a command and media type.
+     *
+     * @param type
+     *            The command.
+     * @param media
+     *            The media type.
+     * @param factory
+     *            Creates the display.
+     */
+    public void setDisplay(final HandlingType type, final MediaType media,
+            final Supplier<? extends Display<?>> factory) {
+        displays.put(type, media, Suppliers.memoize(factory));
+    }
+
+    /**
+     * Adds a calculation to each of the given commands; they share one
+     * instance of it.
+     *
+     * @param factory
+     *            Creates the calculation.
+     * @param types
+     *            The commands.
+     */
+    public void addCalculation(final Supplier<? extends Calculation> factory,
+            final HandlingType... types) {
+        final Supplier<? extends Calculation> shared = Suppliers
+                .memoize(factory);
+        for (HandlingType type : types) {
+            calcs.put(type, shared);
+        }
+    }
+
+    /**
+     * Sets the media type a command displays when none is given.
+     *
+     * @param type
+     *            The command.
+     * @param media
+     *            The media type.
+     */
+    public void setDefaultMedia(final HandlingType type, final MediaType media) {
+        defMedia.put(type, media);
+    }
+
+    /**
+     * Sets the processor type a command runs with when none is given.
+     *
+     * @param type
+     *            The command.
+     * @param proc
+     *            The processor type.
+     */
+    public void setDefaultProc(final HandlingType type, final ProcType proc) {
+        defProcs.put(type, proc);
+    }
+
+    /**
+     * @param type
+     *            The command.
+     * @return The command's loader, or null if it has none.
+     */
+    public Loader<?> getLoader(final HandlingType type) {
+        final Supplier<? extends Loader<?>> factory = loaders.get(type);
+        return factory == null ? null : factory.get();
+    }
+
+    /**
+     * @param type
+     *            The command.
+     * @param media
+     *            The media type.
+     * @return The command's display for the media type, or null if it has
+     *         none.
+     */
+    public Display<?> getDisplay(final HandlingType type,
+            final MediaType media) {
+        final Supplier<? extends Display<?>> factory = displays.get(type,
+                media);
+        return factory == null ? null : factory.get();
+    }
+
+    /**
+     * @param type
+     *            The command.
+     * @return A new list of the command's calculations in the order they
+     *         were added.
+     */
+    public List<Calculation> getCalculations(final HandlingType type) {
+        final List<Calculation> list = new ArrayList<Calculation>();
+        for (Supplier<? extends Calculation> factory : calcs.get(type)) {
+            list.add(factory.get());
+        }
+        return list;
+    }
+
+    /**
+     * @param type
+     *            The command.
+     * @return The command's default media type, or null if it has none.
+     */
+    public MediaType getDefaultMedia(final HandlingType type) {
+        return defMedia.get(type);
+    }
+
+    /**
+     * @param type
+     *            The command.
+     * @return The command's default processor type, or null if it has none.
+     */
+    public ProcType getDefaultProc(final HandlingType type) {
+        return defProcs.get(type);
+    }
+}
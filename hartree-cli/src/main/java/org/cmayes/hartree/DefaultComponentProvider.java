@@ -0,0 +1,124 @@
+package org.cmayes.hartree;
+
+import static org.cmayes.hartree.ComponentRegistry.of;
+
+import org.cmayes.hartree.calc.impl.ACDihedralAngleCalculation;
+import org.cmayes.hartree.calc.impl.AnomericDihedralAngleCalculation;
+import org.cmayes.hartree.calc.impl.CartesianCremerPoplePuckeringCalculation;
+import org.cmayes.hartree.calc.impl.CremerPopleCalculation;
+import org.cmayes.hartree.calc.impl.GlucoseBondLengthCalculation;
+import org.cmayes.hartree.calc.impl.GlucoseRingCalculation;
+import org.cmayes.hartree.calc.impl.HMDihedralAngleCalculation;
+import org.cmayes.hartree.calc.impl.HydrogenBondCalculation;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.disp.csv.ConvergenceCsvDisplay;
+import org.cmayes.hartree.disp.csv.ScanGridCsvDisplay;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.disp.txt.LowestEnergyTemplateDisplay;
+import org.cmayes.hartree.disp.txt.NormalModeTextDisplay;
+import org.cmayes.hartree.loader.gaussian.ArchiveSnapshotLoader;
+import org.cmayes.hartree.loader.gaussian.CalcResultLoader;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.loader.gaussian.ConvergenceLoader;
+import org.cmayes.hartree.loader.gaussian.LowestEnergyLoader;
+import org.cmayes.hartree.loader.gaussian.NormalModeLoader;
+import org.cmayes.hartree.loader.gaussian.ScanLoader;
+import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
+import org.cmayes.hartree.loader.gaussian.TrajectoryLoader;
+
+import com.cmayes.common.MediaType;
+import com.google.common.base.Supplier;
+
+/**
+ * Registers the loaders, displays and calculations that come with Hartree.
+ *
+ * @author cmayes
+ */
+public class DefaultComponentProvider implements ComponentProvider {
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.ComponentProvider#register(org.cmayes.hartree.ComponentRegistry)
+     */
+    @Override
+    public void register(final ComponentRegistry registry) {
+        // Assign handlers
+        registry.setLoader(HandlingType.NORMAL_MODE, of(NormalModeLoader.class));
+        registry.setLoader(HandlingType.SNAPSHOT,
+                of(ArchiveSnapshotLoader.class));
+        // The puckering calculations need the printed geometry that a full
+        // read gives, not the archive entry's.
+        registry.setLoader(HandlingType.CPSNAPSHOT, of(SnapshotLoader.class));
+        registry.setLoader(HandlingType.THERM, of(CalcResultLoader.class));
+        registry.setLoader(HandlingType.LOWEN, of(LowestEnergyLoader.class));
+        registry.setLoader(HandlingType.TRAJECTORY, of(TrajectoryLoader.class));
+        registry.setLoader(HandlingType.SCAN, of(ScanLoader.class));
+        registry.setLoader(HandlingType.CONVERGENCE,
+                of(ConvergenceLoader.class));
+        registry.setLoader(HandlingType.CONVSERIES, of(ConvergenceLoader.class));
+        registry.setLoader(HandlingType.CATALOG, of(CatalogLoader.class));
+        // Set default media types for value classes.
+        registry.setDefaultMedia(HandlingType.NORMAL_MODE, MediaType.TEXT);
+        registry.setDefaultMedia(HandlingType.SNAPSHOT, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.CPSNAPSHOT, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.LOWEN, MediaType.TEXT);
+        registry.setDefaultMedia(HandlingType.TRAJECTORY, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.SCAN, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.CONVERGENCE, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.CONVSERIES, MediaType.CSV);
+        registry.setDefaultMedia(HandlingType.CATALOG, MediaType.CSV);
+        // Assign processors
+        registry.setDefaultProc(HandlingType.NORMAL_MODE, ProcType.BASIC);
+        registry.setDefaultProc(HandlingType.LOWEN, ProcType.BASIC);
+        registry.setDefaultProc(HandlingType.SNAPSHOT, ProcType.ACCUM);
+        registry.setDefaultProc(HandlingType.CPSNAPSHOT, ProcType.ACCUM);
+        registry.setDefaultProc(HandlingType.TRAJECTORY, ProcType.TRAJ);
+        registry.setDefaultProc(HandlingType.SCAN, ProcType.PARALLEL);
+        registry.setDefaultProc(HandlingType.CONVERGENCE, ProcType.ACCUM);
+        registry.setDefaultProc(HandlingType.CONVSERIES, ProcType.ACCUM);
+        registry.setDefaultProc(HandlingType.CATALOG, ProcType.PARACCUM);
+        // Establish displays for a combo of value object and media type
+        registry.setDisplay(HandlingType.NORMAL_MODE, MediaType.TEXT,
+                of(NormalModeTextDisplay.class));
+        registry.setDisplay(HandlingType.SNAPSHOT, MediaType.CSV,
+                of(SnapshotCsvDisplay.class));
+        registry.setDisplay(HandlingType.CPSNAPSHOT, MediaType.CSV,
+                of(SnapshotCsvDisplay.class));
+        registry.setDisplay(HandlingType.TRAJECTORY, MediaType.CSV,
+                of(SnapshotCsvDisplay.class));
+        registry.setDisplay(HandlingType.SCAN, MediaType.CSV,
+                of(ScanGridCsvDisplay.class));
+        registry.setDisplay(HandlingType.CONVERGENCE, MediaType.CSV,
+                of(ConvergenceCsvDisplay.class));
+        registry.setDisplay(HandlingType.CONVSERIES, MediaType.CSV,
+                new Supplier<ConvergenceCsvDisplay>() {
+                    @Override
+                    public ConvergenceCsvDisplay get() {
+                        return new ConvergenceCsvDisplay(true);
+                    }
+                });
+        registry.setDisplay(HandlingType.CATALOG, MediaType.CSV,
+                of(CatalogCsvDisplay.class));
+        registry.setDisplay(HandlingType.LOWEN, MediaType.TEXT,
+                of(LowestEnergyTemplateDisplay.class));
+        // Add calcs; the Cremer-Pople puckering calculation reads its
+        // puckering codes when it is created, so only cpsnap and traj runs
+        // pay for that.
+        final HandlingType[] cpSnapTypes = {HandlingType.CPSNAPSHOT,
+                HandlingType.TRAJECTORY };
+        registry.addCalculation(of(GlucoseRingCalculation.class), cpSnapTypes);
+        registry.addCalculation(of(HMDihedralAngleCalculation.class),
+                cpSnapTypes);
+        registry.addCalculation(of(ACDihedralAngleCalculation.class),
+                cpSnapTypes);
+        registry.addCalculation(of(AnomericDihedralAngleCalculation.class),
+                cpSnapTypes);
+        registry.addCalculation(of(GlucoseBondLengthCalculation.class),
+                cpSnapTypes);
+        registry.addCalculation(of(CremerPopleCalculation.class), cpSnapTypes);
+        registry.addCalculation(
+                of(CartesianCremerPoplePuckeringCalculation.class),
+                cpSnapTypes);
+        registry.addCalculation(of(HydrogenBondCalculation.class), cpSnapTypes);
+    }
+}
@@ -4,7 +4,10 @@ import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
 
 import org.cmayes.hartree.model.LowestEnergyMapper;
 import org.cmayes.hartree.model.NormalModeCalculation;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
 import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.model.def.PesScan;
 
 /**
  * The type of handling to perform.
@@ -22,7 +25,21 @@ public enum HandlingType {
             "Handles thermo calculations", DefaultBaseResult.class), LOWEN(
             "lowen",
             "creates Gaussian input files for the lowest energy in the input files",
-            LowestEnergyMapper.class);
+            LowestEnergyMapper.class), TRAJECTORY(
+            "traj",
+            "Provides Cremer-Pople snapshot data for every optimization step",
+            DefaultBaseResult.class), SCAN("scan",
+            "Extracts relaxed scan energies into a dense grid", PesScan.class), CONVERGENCE(
+            "conv", "Summarizes optimization convergence",
+            ConvergenceSeries.class), CONVSERIES("convseries",
+            "Provides optimization convergence values for every step",
+            ConvergenceSeries.class), CATALOG("catalog",
+            "Indexes job status from the start and end of each file",
+            CatalogEntry.class), MERGE("merge",
+            "Merges the accumulators written by each shard of a run",
+            Object.class), SERVE("serve",
+            "Serves snap, cpsnap and norm results for single files over HTTP",
+            Object.class);
 
     private final String commandName;
     private final String description;
@@ -7,37 +7,49 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 import org.cmayes.hartree.calc.Calculation;
-import org.cmayes.hartree.calc.impl.ACDihedralAngleCalculation;
-import org.cmayes.hartree.calc.impl.CartesianCremerPoplePuckeringCalculation;
-import org.cmayes.hartree.calc.impl.CremerPopleCalculation;
-import org.cmayes.hartree.calc.impl.GlucoseBondLengthCalculation;
-import org.cmayes.hartree.calc.impl.GlucoseRingCalculation;
-import org.cmayes.hartree.calc.impl.HMDihedralAngleCalculation;
+import org.cmayes.hartree.calc.impl.IonCoordinationCalculation;
 import org.cmayes.hartree.calc.impl.IonDistanceCalculation;
-import org.cmayes.hartree.calc.impl.AnomericDihedralAngleCalculation;
 import org.cmayes.hartree.disp.Display;
 import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
 import org.cmayes.hartree.disp.db.SnapshotJdbcDisplay;
 import org.cmayes.hartree.disp.json.JsonDisplay;
-import org.cmayes.hartree.disp.txt.LowestEnergyTemplateDisplay;
 import org.cmayes.hartree.disp.txt.NormalModeTextDisplay;
+import org.cmayes.hartree.filter.ResultFilter;
+import org.cmayes.hartree.http.ParseServer;
 import org.cmayes.hartree.loader.Loader;
-import org.cmayes.hartree.loader.gaussian.CalcResultLoader;
-import org.cmayes.hartree.loader.gaussian.LowestEnergyLoader;
-import org.cmayes.hartree.loader.gaussian.NormalModeLoader;
-import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
+import org.cmayes.hartree.loader.gaussian.ProjectedSnapshotLoader;
+import org.cmayes.hartree.loader.gaussian.SnapshotFollower;
+import org.cmayes.hartree.model.SnapshotField;
 import org.cmayes.hartree.proc.FileProcessor;
 import org.cmayes.hartree.proc.basic.AccumulatingFileProcessor;
 import org.cmayes.hartree.proc.basic.BasicFileProcessor;
 import org.cmayes.hartree.proc.basic.BasicInputFileHandler;
+import org.cmayes.hartree.proc.basic.DirectoryWalker;
+import org.cmayes.hartree.proc.basic.FileSchedule;
+import org.cmayes.hartree.proc.basic.FollowFileProcessor;
+import org.cmayes.hartree.proc.basic.Manifest;
+import org.cmayes.hartree.proc.basic.ParallelAccumulatingFileProcessor;
+import org.cmayes.hartree.proc.basic.ParallelFileProcessor;
+import org.cmayes.hartree.proc.basic.PipelineFileProcessor;
+import org.cmayes.hartree.proc.basic.PipelineStage;
+import org.cmayes.hartree.proc.basic.Shard;
+import org.cmayes.hartree.proc.basic.ShardMerger;
+import org.cmayes.hartree.proc.basic.WatchDaemon;
+import org.cmayes.hartree.proc.basic.WorkQueue;
+import org.cmayes.hartree.proc.basic.TrajectoryFileProcessor;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -49,8 +61,6 @@ import org.slf4j.LoggerFactory;
 import com.cmayes.common.MediaType;
 import com.cmayes.common.chem.AtomicElement;
 import com.cmayes.common.file.ExtensionFilter;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 
 /**
  * This is the main entry point for running Hartree CLI functions.
@@ -63,12 +73,17 @@ public class Main<T> {
      * Logger.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
-    private static final Map<HandlingType, Loader<?>> HAND_TYPE_MAP = new HashMap<HandlingType, Loader<?>>();
-    private static final Map<HandlingType, List<Calculation>> CALC_MAP = new HashMap<HandlingType, List<Calculation>>();
-    private static final Table<HandlingType, MediaType, Display<?>> DISP_TYPE_TBL = HashBasedTable
-            .create();
-    private static final Map<HandlingType, MediaType> DEF_MEDIA = new HashMap<HandlingType, MediaType>();
-    private static final Map<HandlingType, ProcType> DEF_PROC = new HashMap<HandlingType, ProcType>();
+    private static final ComponentRegistry REGISTRY = ComponentRegistry
+            .load();
+    private static final Set<ProcType> SCHEDULED_PROCS = EnumSet.of(
+            ProcType.PARALLEL, ProcType.PARACCUM);
+    private static final Set<ProcType> ACCUM_PROCS = EnumSet.of(
+            ProcType.ACCUM, ProcType.PARACCUM);
+    private static final int DAEMON_STOP_SECS = 30;
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final List<HandlingType> SERVED_TYPES = Arrays.asList(
+            HandlingType.SNAPSHOT, HandlingType.CPSNAPSHOT,
+            HandlingType.NORMAL_MODE);
 
     /**
      * Receives leftover command line parameters.
@@ -84,16 +99,64 @@ public class Main<T> {
     private HandlingType hType;
     @Option(metaVar = "ION", aliases = {"-i"}, name = "--ion", usage = "The ion element type to use.")
     private AtomicElement ion;
+    @Option(metaVar = "CUTOFF", aliases = {"-u"}, name = "--ioncutoff", usage = "The ion coordination cutoff distance in angstroms (3.0 by default)")
+    private double ionCutoff = IonCoordinationCalculation.DEF_CUTOFF;
     @Option(metaVar = "MEDIA", aliases = {"-m"}, name = "--mediatype", usage = "The media type to use instead of the default.")
     private MediaType targetMedia;
     @Option(metaVar = "PROC", aliases = {"-p"}, name = "--proctype", usage = "The processor type to use instead of the default.")
     private ProcType targetProc;
-    @Option(metaVar = "EXTS", aliases = {"-e"}, name = "--extensions", usage = "Extensions to include in input directory searches (.log and .out by default)")
+    @Option(metaVar = "EXTS", aliases = {"-e"}, name = "--extensions", usage = "Extensions to include in input directory searches (.log and .out by default); .gz, .bz2, .xz and .zst copies are included too")
     private String[] inputExtensions = new String[]{".log"};
     @Option(metaVar = "TAGS", aliases = {"-t"}, name = "--tags", usage = "Categories that describe the input data")
     private String[] categories = new String[]{};
     @Option(metaVar = "PROJ", aliases = {"-n"}, name = "--projname", usage = "The name of this data's project (required for DB inserts)")
     private String projectName;
+    @Option(metaVar = "WORKERS", aliases = {"-w"}, name = "--workers", usage = "The number of worker threads for the traj, scan and catalog commands (one per CPU by default)")
+    private int workers = Runtime.getRuntime().availableProcessors();
+    @Option(metaVar = "FIELDS", aliases = {"-l"}, name = "--fields", usage = "Comma-separated snap fields to extract and display, such as stoichiometry,charge,energy (all by default)")
+    private String fieldNames;
+    private List<SnapshotField> fields;
+    @Option(metaVar = "CONDS", aliases = {"-q"}, name = "--where", usage = "Comma-separated conditions that snap results must match, such as functional=M062X,charge=1,termination=normal")
+    private String whereExpr;
+    private ResultFilter filter;
+    @Option(metaVar = "SECS", aliases = {"-F"}, name = "--follow", usage = "Follow running jobs for snap, cpsnap, conv and convseries, reading what is appended every SECS seconds until every job has terminated")
+    private int followSecs;
+    @Option(metaVar = "MAXOPEN", aliases = {"-x"}, name = "--maxopen", usage = "The most files held open while following (64 by default)")
+    private int maxOpen = SnapshotFollower.DEF_MAX_OPEN;
+    @Option(metaVar = "R,P,C", aliases = {"-g"}, name = "--stagethreads", usage = "Threads for the read, parse and calculate stages of the pipeline processor (2,WORKERS,1 by default)")
+    private String stageThreadCounts;
+    private int[] stageThreads;
+    @Option(metaVar = "SIZE", aliases = {"-k"}, name = "--queuesize", usage = "The capacity of each queue between pipeline stages, or the most requests the server holds for its workers (16 by default)")
+    private int queueSize = PipelineFileProcessor.DEF_QUEUE_SIZE;
+    @Option(metaVar = "THREADS", aliases = {"-W"}, name = "--walkthreads", usage = "The number of threads listing input subdirectories at once (8 by default)")
+    private int walkThreads = DirectoryWalker.DEF_THREADS;
+    @Option(aliases = {"-U"}, name = "--unordered", usage = "Process files in input directories as they are found instead of in sorted order")
+    private boolean unordered;
+    @Option(metaVar = "ORDER", aliases = {"-S"}, name = "--schedule", usage = "The order the PARALLEL and PARACCUM processors start files in: INPUT (the default), LARGEST, DIRECTORY or INODE")
+    private FileSchedule.Policy schedulePolicy = FileSchedule.Policy.INPUT;
+    private FileSchedule schedule;
+    @Option(aliases = {"-I"}, name = "--incremental", usage = "Keep a manifest next to the accumulator so that later runs only parse new or changed files (needs --outdir)")
+    private boolean incremental;
+    @Option(metaVar = "I/N", aliases = {"-s"}, name = "--shard", usage = "Process only shard I of N (from 0) of the input files for snap, cpsnap, conv, convseries and catalog; join the shards with the merge command (needs --outdir)")
+    private String shardSpec;
+    private Shard shard;
+    @Option(metaVar = "QDIR", aliases = {"-Q"}, name = "--queue", usage = "Claim batches of the input files from the work queue in QDIR, a directory shared with workers on other nodes, for snap, cpsnap, conv, convseries and catalog; join the workers' output with merge -Q QDIR")
+    private File queueDir;
+    @Option(metaVar = "SIZE", aliases = {"-b"}, name = "--batch", usage = "The number of input files in each work queue batch (8 by default)")
+    private int batchSize = WorkQueue.DEF_BATCH_SIZE;
+    @Option(metaVar = "SECS", aliases = {"-L"}, name = "--lease", usage = "The seconds before a work queue batch whose worker stopped renewing its lease is claimed again (60 by default)")
+    private int leaseSecs = WorkQueue.DEF_LEASE_SECS;
+    private WorkQueue workQueue;
+    @Option(metaVar = "WATCHDIR", aliases = {"-D"}, name = "--daemon", usage = "Stay running and process the logs in WATCHDIR, and those added or changed later, for snap, cpsnap, conv, convseries and catalog; may be given more than once", multiValued = true)
+    private List<File> watchDirs;
+    @Option(metaVar = "SECS", aliases = {"-T"}, name = "--settle", usage = "The seconds a watched file must go unchanged before the daemon checks whether its job has ended (10 by default)")
+    private int settleSecs = WatchDaemon.DEF_SETTLE_SECS;
+    @Option(metaVar = "PORT", aliases = {"-P"}, name = "--port", usage = "The port the serve command listens on (8080 by default)")
+    private int port = ParseServer.DEF_PORT;
+    @Option(metaVar = "HOST", aliases = {"-B"}, name = "--bind", usage = "The address the serve command listens on (127.0.0.1 by default)")
+    private String bindHost = "127.0.0.1";
+    @Option(metaVar = "MB", aliases = {"-M"}, name = "--maxbody", usage = "The largest file the serve command accepts in a request, in megabytes (64 by default)")
+    private int maxBodyMb = ParseServer.DEF_MAX_BODY_MB;
     @Option(aliases = {"-h"}, name = "--help", usage = "Displays usage info")
     private boolean help;
 
@@ -252,14 +315,140 @@ public class Main<T> {
                     "Invalid argument '%s'", arguments.get(0)), e);
         }
 
+        if (fieldNames != null) {
+            if (!HandlingType.SNAPSHOT.equals(hType)) {
+                throw new CmdLineException(parser, String.format(
+                        "Fields can't be selected for '%s'",
+                        hType.getCommandName()));
+            }
+            try {
+                fields = parseFields(fieldNames);
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage(), e);
+            }
+        }
+
+        if (whereExpr != null) {
+            if (!HandlingType.SNAPSHOT.equals(hType)) {
+                throw new CmdLineException(parser, String.format(
+                        "Results can't be filtered for '%s'",
+                        hType.getCommandName()));
+            }
+            try {
+                filter = ResultFilter.parse(whereExpr);
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage(), e);
+            }
+        }
+
+        if (followSecs > 0) {
+            if (!FollowFileProcessor.isFollowable(hType)) {
+                throw new CmdLineException(parser, String.format(
+                        "Files can't be followed for '%s'",
+                        hType.getCommandName()));
+            }
+            if (filter != null) {
+                throw new CmdLineException(parser,
+                        "Followed results can't be filtered");
+            }
+        }
+
+        if (stageThreadCounts != null) {
+            try {
+                stageThreads = parseStageThreads(stageThreadCounts);
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage(), e);
+            }
+        }
+
+        if (walkThreads < 1) {
+            throw new CmdLineException(parser, String.format(
+                    "Walk threads must be positive: %d", walkThreads));
+        }
+
+        if (shardSpec != null) {
+            try {
+                shard = Shard.parse(shardSpec);
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage(), e);
+            }
+        }
+
         if (HandlingType.TEST.equals(hType)) {
             LOGGER.info("Test mode.  Performing no processing.");
             return;
         }
 
+        if (HandlingType.MERGE.equals(hType)) {
+            merge(parser);
+            return;
+        }
+
+        if (HandlingType.SERVE.equals(hType)) {
+            serve(parser);
+            return;
+        }
+
+        schedule = new FileSchedule(schedulePolicy);
+        if (schedule.isBatched() && (followSecs > 0
+                || !SCHEDULED_PROCS.contains(getProcType()))) {
+            throw new CmdLineException(parser, String.format(
+                    "Files can't be scheduled for the %s processor",
+                    followSecs > 0 ? "follow" : getProcType()));
+        }
+
+        if (HandlingType.TRAJECTORY.equals(hType)
+                && MediaType.RDBMS.equals(getTargetMediaType())) {
+            throw new CmdLineException(parser,
+                    "Trajectory steps can't be inserted into the database,"
+                            + " which has no column for the step");
+        }
+
+        if (incremental) {
+            checkAccumulated(parser, "Incremental", "run incrementally");
+        }
+        if (shard != null) {
+            checkAccumulated(parser, "Sharded", "sharded");
+        }
+        if (queueDir != null) {
+            startWorker(parser);
+        }
+        if (watchDirs != null) {
+            checkDaemon(parser);
+        }
+        if ((shard != null || workQueue != null) && unordered) {
+            throw new CmdLineException(parser, String.format(
+                    "%s runs need the sorted walk order",
+                    shard != null ? "Sharded" : "Queued"));
+        }
+
         final FileProcessor<T> proc = createProcessor();
+        Manifest manifest = null;
+        if (proc instanceof AccumulatingFileProcessor) {
+            final AccumulatingFileProcessor<T> accProc = (AccumulatingFileProcessor<T>) proc;
+            // A daemon replaces the rows of a log that changes again through
+            // the manifest, so it keeps one whenever it writes a file.
+            if (incremental || watchDirs != null && outDir != null
+                    && (MediaType.CSV.equals(getTargetMediaType())
+                    || MediaType.JSON.equals(getTargetMediaType()))) {
+                accProc.useManifest(getManifestSettings());
+                manifest = accProc.getManifest();
+            }
+            if (shard != null) {
+                accProc.useShard(shard);
+            }
+            if (workQueue != null) {
+                accProc.useWorkQueue(workQueue.getWorkerId());
+            }
+        }
         try {
-            if (files != null) {
+            if (watchDirs != null) {
+                runDaemon((AccumulatingFileProcessor<T>) proc);
+            } else if (workQueue != null) {
+                workQueue.work(listInputs(parser), batchSize,
+                        getManifestSettings() + " " + getTargetMediaType(),
+                        (AccumulatingFileProcessor<T>) proc);
+            } else if (files != null) {
                 proc.displayAll(files);
             } else if (inDir != null) {
                 proc.displayDir(inDir);
@@ -270,6 +459,329 @@ public class Main<T> {
         } finally {
             proc.finish();
         }
+        if (filter != null) {
+            printFilterSummary(System.err, filter);
+        }
+        if (schedule.isBatched()) {
+            System.err.printf("Schedule %s%s", schedule, NL);
+        }
+        if (manifest != null) {
+            System.err.printf("Manifest %s%s", manifest, NL);
+        }
+        if (workQueue != null) {
+            System.err.printf("Worker %s%s", workQueue, NL);
+        }
+        if (proc instanceof PipelineFileProcessor) {
+            printStageSummary(System.err,
+                    ((PipelineFileProcessor<T>) proc).getStages());
+        }
+    }
+
+    /**
+     * Checks that the run writes a CSV or JSON accumulator file that a
+     * manifest or shard index can be kept next to.
+     *
+     * @param parser  The parser to report problems with.
+     * @param runKind The kind of run, for messages.
+     * @param verb    What can't be done to the command, for messages.
+     * @throws CmdLineException If the run doesn't write such a file.
+     */
+    private void checkAccumulated(final CmdLineParser parser,
+                                  final String runKind, final String verb)
+            throws CmdLineException {
+        if (outDir == null) {
+            throw new CmdLineException(parser, String.format(
+                    "%s runs need an output directory", runKind));
+        }
+        final MediaType media = getTargetMediaType();
+        if (followSecs > 0 || !ACCUM_PROCS.contains(REGISTRY.getDefaultProc(hType))
+                || !ACCUM_PROCS.contains(getProcType())
+                || !(MediaType.CSV.equals(media) || MediaType.JSON
+                .equals(media))) {
+            throw new CmdLineException(parser, String.format(
+                    "'%s' can't be %s to %s", hType.getCommandName(), verb,
+                    media));
+        }
+    }
+
+    /**
+     * Checks that the run can stay up as a {@link WatchDaemon}.
+     *
+     * @param parser The parser to report problems with.
+     * @throws CmdLineException If the run can't be a daemon.
+     */
+    private void checkDaemon(final CmdLineParser parser)
+            throws CmdLineException {
+        if (files != null || inDir != null) {
+            throw new CmdLineException(parser,
+                    "The daemon's input is its --daemon directories");
+        }
+        for (File dir : watchDirs) {
+            if (!dir.isDirectory()) {
+                throw new CmdLineException(parser, String.format(
+                        "%s is not a directory", dir.getAbsolutePath()));
+            }
+        }
+        if (settleSecs < 0) {
+            throw new CmdLineException(parser, String.format(
+                    "Settle time can't be negative: %d", settleSecs));
+        }
+        if (followSecs > 0 || shard != null || queueDir != null
+                || schedule.isBatched()
+                || !ACCUM_PROCS.contains(REGISTRY.getDefaultProc(hType))
+                || !ACCUM_PROCS.contains(getProcType())) {
+            throw new CmdLineException(parser, String.format(
+                    "'%s' can't run as a daemon with these options",
+                    hType.getCommandName()));
+        }
+    }
+
+    /**
+     * Runs the processor as a {@link WatchDaemon}, published over JMX, until
+     * it is stopped over JMX or the JVM is shut down. On shutdown, the
+     * daemon's batch is finished before the accumulator is closed.
+     *
+     * @param accProc The processor to keep running.
+     */
+    private void runDaemon(final AccumulatingFileProcessor<T> accProc) {
+        final WatchDaemon daemon = new WatchDaemon(accProc,
+                createFileHandler(), watchDirs,
+                TimeUnit.SECONDS.toMillis(settleSecs));
+        final ObjectName name = daemon.register(hType.getCommandName());
+        final Thread runner = Thread.currentThread();
+        final Thread stopper = new Thread("daemon-stopper") {
+            @Override
+            public void run() {
+                daemon.stop();
+                try {
+                    // Give the runner time to finish the accumulator.
+                    runner.join(TimeUnit.SECONDS.toMillis(DAEMON_STOP_SECS));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(stopper);
+        System.err.printf("Watching %s as %s%s", watchDirs, name, NL);
+        try {
+            daemon.run();
+        } finally {
+            WatchDaemon.unregister(name);
+            try {
+                Runtime.getRuntime().removeShutdownHook(stopper);
+            } catch (final IllegalStateException e) {
+                LOGGER.debug("Stopping for shutdown");
+            }
+        }
+        System.err.printf("Daemon %s%s", daemon, NL);
+    }
+
+    /**
+     * Joins the work queue, writing this worker's accumulator under the
+     * queue's directory.
+     *
+     * @param parser The parser to report problems with.
+     * @throws CmdLineException If the run can't be a queue worker.
+     */
+    private void startWorker(final CmdLineParser parser)
+            throws CmdLineException {
+        if (outDir != null) {
+            throw new CmdLineException(parser,
+                    "Queue workers write under the queue directory; "
+                            + "give --outdir to merge -Q instead");
+        }
+        if (shard != null || schedule.isBatched()) {
+            throw new CmdLineException(parser,
+                    "Queued runs can't be sharded or scheduled");
+        }
+        if (batchSize < 1 || leaseSecs < 1) {
+            throw new CmdLineException(parser, String.format(
+                    "Batch size and lease must be positive: %d, %d",
+                    batchSize, leaseSecs));
+        }
+        workQueue = new WorkQueue(queueDir, WorkQueue.newWorkerId(),
+                TimeUnit.SECONDS.toMillis(leaseSecs));
+        outDir = workQueue.getPartDir();
+        checkAccumulated(parser, "Queued", "queued");
+    }
+
+    /**
+     * Lists every input file of the run, in input order.
+     *
+     * @param parser The parser to report problems with.
+     * @return The input files.
+     * @throws CmdLineException If no input was given.
+     */
+    private List<File> listInputs(final CmdLineParser parser)
+            throws CmdLineException {
+        if (files != null) {
+            return files;
+        } else if (inDir != null) {
+            return createFileHandler().listFiles(inDir);
+        }
+        throw new CmdLineException(parser,
+                "No input file or directory specified.");
+    }
+
+    /**
+     * Merges the shard accumulators given with --file or as arguments, or the
+     * accumulators of the workers of the --queue directory, into the output
+     * directory, or to standard output.
+     *
+     * @param parser The parser to report problems with.
+     * @throws CmdLineException If the accumulators can't be merged.
+     */
+    private void merge(final CmdLineParser parser) throws CmdLineException {
+        if (queueDir != null) {
+            try {
+                writeMerged(WorkQueue.merger(queueDir));
+            } catch (final IllegalArgumentException e) {
+                throw new CmdLineException(parser, e.getMessage(), e);
+            }
+            return;
+        }
+        final List<File> accFiles = new ArrayList<File>();
+        if (files != null) {
+            accFiles.addAll(files);
+        }
+        for (String arg : arguments.subList(1, arguments.size())) {
+            accFiles.add(new File(arg));
+        }
+        if (accFiles.isEmpty()) {
+            throw new CmdLineException(parser,
+                    "No shard accumulators to merge");
+        }
+        try {
+            writeMerged(new ShardMerger(accFiles));
+        } catch (final IllegalArgumentException e) {
+            throw new CmdLineException(parser, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Serves the results of single files over HTTP until the JVM is shut
+     * down. Files named by path must be under --directory.
+     *
+     * @param parser The parser to report problems with.
+     * @throws CmdLineException If the server's limits are bad.
+     */
+    private void serve(final CmdLineParser parser) throws CmdLineException {
+        if (maxBodyMb < 1) {
+            throw new CmdLineException(parser, String.format(
+                    "The largest body must be positive: %d", maxBodyMb));
+        }
+        final ParseServer server;
+        try {
+            server = new ParseServer(new InetSocketAddress(bindHost, port),
+                    workers, queueSize, maxBodyMb * MEGABYTE,
+                    inDir == null ? Collections.<File>emptyList()
+                            : Collections.singletonList(inDir));
+        } catch (final IllegalArgumentException e) {
+            throw new CmdLineException(parser, e.getMessage(), e);
+        }
+        for (HandlingType type : SERVED_TYPES) {
+            addServed(server, type);
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("server-stopper") {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        });
+        System.err.printf("Serving %s on %s:%d%s", SERVED_TYPES, bindHost,
+                server.getPort(), NL);
+        try {
+            server.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serves a command with its loader and calculations and a new display
+     * for each request.
+     *
+     * @param server The server.
+     * @param type   The command.
+     * @param <R>    The type of the command's results.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> void addServed(final ParseServer server,
+                               final HandlingType type) {
+        server.addCommand(type, (Loader<R>) REGISTRY.getLoader(type),
+                getCalcs(type), new ParseServer.DisplayFactory<R>() {
+                    @Override
+                    public Display<R> create(final MediaType media) {
+                        return (Display<R>) newDisplay(type,
+                                media == null ? REGISTRY.getDefaultMedia(type) : media);
+                    }
+                });
+    }
+
+    /**
+     * Creates a display for one served request; the registry's displays are
+     * shared and keep state between writes.
+     *
+     * @param type  The command.
+     * @param media The media type.
+     * @return A new display, or null if there is none for the media type.
+     */
+    private static Display<?> newDisplay(final HandlingType type,
+                                         final MediaType media) {
+        if (MediaType.JSON.equals(media)) {
+            return new JsonDisplay();
+        }
+        if (MediaType.CSV.equals(media)
+                && (HandlingType.SNAPSHOT.equals(type)
+                || HandlingType.CPSNAPSHOT.equals(type))) {
+            return new SnapshotCsvDisplay();
+        }
+        if (MediaType.TEXT.equals(media)
+                && HandlingType.NORMAL_MODE.equals(type)) {
+            return new NormalModeTextDisplay();
+        }
+        return null;
+    }
+
+    /**
+     * Writes a merged accumulator to the output directory, or to standard
+     * output.
+     *
+     * @param merger The merger of the parts' accumulators.
+     */
+    private void writeMerged(final ShardMerger merger) {
+        if (outDir == null) {
+            merger.merge(System.out);
+        } else {
+            merger.merge(new File(outDir, merger.getAccName()));
+        }
+        System.err.printf("Merged %s%s", merger, NL);
+    }
+
+    /**
+     * Prints the work of each pipeline stage.
+     *
+     * @param outs   The stream to print to.
+     * @param stages The stages of the run's pipeline.
+     */
+    static void printStageSummary(final PrintStream outs,
+                                  final List<PipelineStage> stages) {
+        for (PipelineStage stage : stages) {
+            outs.printf("Stage %s%s", stage, NL);
+        }
+    }
+
+    /**
+     * Prints the number of files that matched and were skipped by the filter.
+     *
+     * @param outs   The stream to print to.
+     * @param filter The filter applied to the run.
+     */
+    static void printFilterSummary(final PrintStream outs,
+                                   final ResultFilter filter) {
+        outs.printf("Matched %d files; skipped %d that didn't match --where%s",
+                filter.getMatchCount(), filter.getSkipCount(), NL);
     }
 
     /**
@@ -281,7 +793,47 @@ public class Main<T> {
         if (testProcessor != null) {
             return testProcessor;
         }
-        ProcType proc = DEF_PROC.get(hType);
+        if (followSecs > 0) {
+            return new FollowFileProcessor<T>(hType, getLoader(), getDisplay(),
+                    getCalcs(), createFileHandler(), new SnapshotFollower(
+                    maxOpen), TimeUnit.SECONDS.toMillis(followSecs));
+        }
+        final ProcType proc = getProcType();
+        if (ProcType.ACCUM.equals(proc)) {
+            return new AccumulatingFileProcessor<T>(hType, getLoader(),
+                    getDisplay(), getCalcs(), createFileHandler());
+        } else if (ProcType.BASIC.equals(proc)) {
+            return new BasicFileProcessor<T>(hType, getLoader(), getDisplay(),
+                    getCalcs(), createFileHandler());
+        } else if (ProcType.TRAJ.equals(proc)) {
+            return new TrajectoryFileProcessor<T>(hType, getLoader(),
+                    getDisplay(), getCalcs(), createFileHandler(), workers);
+        } else if (ProcType.PARACCUM.equals(proc)) {
+            return new ParallelAccumulatingFileProcessor<T>(hType, getLoader(),
+                    getDisplay(), getCalcs(), createFileHandler(), workers,
+                    schedule);
+        } else if (ProcType.PIPELINE.equals(proc)) {
+            final int[] counts = stageThreads == null ? new int[]{
+                    PipelineFileProcessor.DEF_READ_THREADS, workers,
+                    PipelineFileProcessor.DEF_CALC_THREADS} : stageThreads;
+            return new PipelineFileProcessor<T>(hType, getLoader(),
+                    getDisplay(), getCalcs(), createFileHandler(),
+                    counts[0], counts[1], counts[2], queueSize);
+        } else if (ProcType.PARALLEL.equals(proc)) {
+            return new ParallelFileProcessor<T>(hType, getLoader(),
+                    getDisplay(), getCalcs(), createFileHandler(), workers,
+                    schedule);
+        }
+        throw new IllegalArgumentException("Unhandled processor type " + proc);
+    }
+
+    /**
+     * Returns the processor type to use for the handling type.
+     *
+     * @return The target processor type, or the handling type's default.
+     */
+    private ProcType getProcType() {
+        ProcType proc = REGISTRY.getDefaultProc(hType);
         if (targetProc != null) {
             proc = targetProc;
         }
@@ -291,18 +843,31 @@ public class Main<T> {
                             "No target processor specified and no default configured for type '%s'",
                             hType));
         }
+        return proc;
+    }
 
-        if (ProcType.ACCUM.equals(proc)) {
-            return new AccumulatingFileProcessor<T>(hType, getLoader(),
-                    getDisplay(), getCalcs(),
-                    new BasicInputFileHandler(new ExtensionFilter(
-                            inputExtensions), inDir, outDir));
-        } else if (ProcType.BASIC.equals(proc)) {
-            return new BasicFileProcessor<T>(hType, getLoader(), getDisplay(),
-                    getCalcs(), new BasicInputFileHandler(new ExtensionFilter(
-                    inputExtensions), inDir, outDir));
-        }
-        throw new IllegalArgumentException("Unhandled processor type " + proc);
+    /**
+     * Describes the options that change the rows written for a file, so that
+     * a manifest written with other options is not used.
+     *
+     * @return The settings for the run's manifest.
+     */
+    private String getManifestSettings() {
+        return String.format("%s fields=%s where=%s ion=%s ioncutoff=%s",
+                hType.getCommandName(), fieldNames, whereExpr, ion, ionCutoff);
+    }
+
+    /**
+     * Creates the handler that walks input directories for a processor.
+     *
+     * @return A new handler for the configured extensions and directories.
+     */
+    private BasicInputFileHandler createFileHandler() {
+        final BasicInputFileHandler handler = new BasicInputFileHandler(
+                new ExtensionFilter(inputExtensions), inDir, outDir);
+        handler.setWalkThreads(walkThreads);
+        handler.setOrdered(!unordered);
+        return handler;
     }
 
     /**
@@ -311,15 +876,23 @@ public class Main<T> {
      * @return The configured calculations for the current handling type.
      */
     private List<Calculation> getCalcs() {
-        final List<Calculation> staticList = CALC_MAP.get(hType);
-        if (staticList == null) {
-            return new ArrayList<Calculation>();
-        }
-        final List<Calculation> list = new ArrayList<Calculation>(staticList);
+        return getCalcs(hType);
+    }
+
+    /**
+     * Finds the configured calculations for a handling type.
+     *
+     * @param type The handling type.
+     * @return The configured calculations for the handling type.
+     */
+    private List<Calculation> getCalcs(final HandlingType type) {
+        final List<Calculation> list = REGISTRY.getCalculations(type);
         // TODO: Consider looking for glucose ring calc rather than doing a
         // per-handling-type check.
-        if (HandlingType.CPSNAPSHOT.equals(hType)) {
+        if (HandlingType.CPSNAPSHOT.equals(type)
+                || HandlingType.TRAJECTORY.equals(type)) {
             list.add(new IonDistanceCalculation(getIon()));
+            list.add(new IonCoordinationCalculation(ionCutoff, getIon()));
         }
         return list;
     }
@@ -331,7 +904,12 @@ public class Main<T> {
      */
     @SuppressWarnings("unchecked")
     Loader<T> getLoader() {
-        return (Loader<T>) asNotNull(HAND_TYPE_MAP.get(hType),
+        if (fields != null || filter != null) {
+            return (Loader<T>) new ProjectedSnapshotLoader(
+                    fields == null ? EnumSet.allOf(SnapshotField.class)
+                            : fields, filter);
+        }
+        return (Loader<T>) asNotNull(REGISTRY.getLoader(hType),
                 "No loader for type " + hType);
     }
 
@@ -351,7 +929,11 @@ public class Main<T> {
             return createRdbmsDisplay();
         }
 
-        return (Display<T>) asNotNull(DISP_TYPE_TBL.get(hType, tgtMediaType),
+        if (fields != null && MediaType.CSV.equals(tgtMediaType)) {
+            return (Display<T>) new SnapshotCsvDisplay(fields);
+        }
+
+        return (Display<T>) asNotNull(REGISTRY.getDisplay(hType, tgtMediaType),
                 String.format("No display for media %s on type %s",
                         getTargetMediaType(), hType.name()));
     }
@@ -377,6 +959,57 @@ public class Main<T> {
         }
     }
 
+    /**
+     * Parses the thread counts of the read, parse and calculate stages.
+     *
+     * @param counts The comma-separated counts.
+     * @return The three counts in order.
+     * @throws IllegalArgumentException If there aren't three positive counts.
+     */
+    static int[] parseStageThreads(final String counts) {
+        final String[] split = counts.split(",");
+        if (split.length != 3) {
+            throw new IllegalArgumentException(
+                    "Expected read, parse and calculate thread counts: "
+                            + counts);
+        }
+        final int[] parsed = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            try {
+                parsed[i] = Integer.parseInt(split[i].trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid thread count '"
+                        + split[i] + "'", e);
+            }
+            if (parsed[i] < 1) {
+                throw new IllegalArgumentException(
+                        "Thread counts must be positive: " + counts);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses a comma-separated list of snapshot field names.
+     *
+     * @param names The field names.
+     * @return The fields in the given order.
+     * @throws IllegalArgumentException If a name doesn't match a field or no
+     *                                  names are given.
+     */
+    static List<SnapshotField> parseFields(final String names) {
+        final List<SnapshotField> parsed = new ArrayList<SnapshotField>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                parsed.add(SnapshotField.valueOfName(name));
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("No fields in '" + names + "'");
+        }
+        return parsed;
+    }
+
     /**
      * Returns either the user's specified target media type or the default
      * media type for the target type.
@@ -389,7 +1022,7 @@ public class Main<T> {
         if (targetMedia != null) {
             return targetMedia;
         }
-        final MediaType mediaType = DEF_MEDIA.get(hType);
+        final MediaType mediaType = REGISTRY.getDefaultMedia(hType);
         if (mediaType == null) {
             throw new IllegalStateException(
                     String.format(
@@ -485,50 +1118,8 @@ public class Main<T> {
     }
 
     static {
-        // Assign handlers
-        HAND_TYPE_MAP.put(HandlingType.NORMAL_MODE, new NormalModeLoader());
-        HAND_TYPE_MAP.put(HandlingType.SNAPSHOT, new SnapshotLoader());
-        HAND_TYPE_MAP.put(HandlingType.CPSNAPSHOT, new SnapshotLoader());
-        HAND_TYPE_MAP.put(HandlingType.THERM, new CalcResultLoader());
-        HAND_TYPE_MAP.put(HandlingType.LOWEN, new LowestEnergyLoader());
-        // Set default media types for value classes.
-        DEF_MEDIA.put(HandlingType.NORMAL_MODE, MediaType.TEXT);
-        DEF_MEDIA.put(HandlingType.SNAPSHOT, MediaType.CSV);
-        DEF_MEDIA.put(HandlingType.CPSNAPSHOT, MediaType.CSV);
-        DEF_MEDIA.put(HandlingType.LOWEN, MediaType.TEXT);
-        // Assign processors
-        DEF_PROC.put(HandlingType.NORMAL_MODE, ProcType.BASIC);
-        DEF_PROC.put(HandlingType.LOWEN, ProcType.BASIC);
-        DEF_PROC.put(HandlingType.SNAPSHOT, ProcType.ACCUM);
-        DEF_PROC.put(HandlingType.CPSNAPSHOT, ProcType.ACCUM);
-        // Establish displays for a combo of value object and media type
-        DISP_TYPE_TBL.put(HandlingType.NORMAL_MODE, MediaType.TEXT,
-                new NormalModeTextDisplay());
-        DISP_TYPE_TBL.put(HandlingType.SNAPSHOT, MediaType.CSV,
-                new SnapshotCsvDisplay());
-        DISP_TYPE_TBL.put(HandlingType.CPSNAPSHOT, MediaType.CSV,
-                new SnapshotCsvDisplay());
-        DISP_TYPE_TBL.put(HandlingType.LOWEN, MediaType.TEXT,
-                new LowestEnergyTemplateDisplay());
-        // Add calcs
-        final ArrayList<Calculation> cpSnapCalcs = new ArrayList<Calculation>();
-        cpSnapCalcs.add(new GlucoseRingCalculation());
-        cpSnapCalcs.add(new HMDihedralAngleCalculation());
-        cpSnapCalcs.add(new ACDihedralAngleCalculation());
-        cpSnapCalcs.add(new AnomericDihedralAngleCalculation());
-        cpSnapCalcs.add(new GlucoseBondLengthCalculation());
-        cpSnapCalcs.add(new CremerPopleCalculation());
-        cpSnapCalcs.add(new CartesianCremerPoplePuckeringCalculation());
-        CALC_MAP.put(HandlingType.CPSNAPSHOT, cpSnapCalcs);
         // Register string array handler for CLI options.
         CmdLineParser.registerHandler(String[].class,
                 StringArrayOptionHandler.class);
     }
-
-    /**
-     * The processor type to use.
-     */
-    private static enum ProcType {
-        BASIC, ACCUM;
-    }
 }
@@ -0,0 +1,21 @@
+package org.cmayes.hartree;
+
+/**
+ * The type of file processor to run a command with.
+ * 
+ * @author cmayes
+ */
+public enum ProcType {
+    /** Writes each file's result to its own output file. */
+    BASIC,
+    /** Writes every file's result to one accumulator file. */
+    ACCUM,
+    /** Writes every optimization step of each file. */
+    TRAJ,
+    /** Processes files on several threads, each to its own output file. */
+    PARALLEL,
+    /** Processes files on several threads into one accumulator file. */
+    PARACCUM,
+    /** Reads, parses and calculates in separate stages into one accumulator. */
+    PIPELINE;
+}
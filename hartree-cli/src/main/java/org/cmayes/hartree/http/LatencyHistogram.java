@@ -0,0 +1,75 @@
+package org.cmayes.hartree.http;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts request latencies in fixed buckets, written in the Prometheus text
+ * format as a cumulative histogram. Recording is lock-free, so every request
+ * thread can record into one histogram.
+ *
+ * @author cmayes
+ */
+public class LatencyHistogram {
+    /** The upper bounds of the buckets, in seconds. */
+    private static final double[] BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1,
+            0.25, 0.5, 1, 2.5, 5, 10, 30 };
+    private final AtomicLongArray counts = new AtomicLongArray(
+            BOUNDS.length + 1);
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * Records a request.
+     *
+     * @param nanos
+     *            The request's latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final double secs = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && secs > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        totalNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the number of requests recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the histogram's bucket, sum and count lines.
+     *
+     * @param out
+     *            The writer.
+     * @param name
+     *            The metric's name.
+     * @param labels
+     *            The metric's labels, such as command="snap".
+     */
+    public void write(final PrintWriter out, final String name,
+            final String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += counts.get(i);
+            out.printf("%s_bucket{%s,le=\"%s\"} %d%n", name, labels,
+                    BOUNDS[i], cumulative);
+        }
+        cumulative += counts.get(BOUNDS.length);
+        out.printf("%s_bucket{%s,le=\"+Inf\"} %d%n", name, labels, cumulative);
+        out.printf(Locale.ROOT, "%s_sum{%s} %f%n", name, labels,
+                totalNanos.get() / (double) TimeUnit.SECONDS.toNanos(1));
+        out.printf("%s_count{%s} %d%n", name, labels, cumulative);
+    }
+}
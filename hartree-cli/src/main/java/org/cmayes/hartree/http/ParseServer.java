@@ -0,0 +1,665 @@
+package org.cmayes.hartree.http;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.proc.basic.LoaderInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the results of single files over HTTP with the JDK's built-in
+ * server, so that a client pays for a parse instead of a JVM start. Each
+ * command is served at its own path, such as /snap. A request either posts
+ * the log as its body, named with the "name" parameter, or names a file under
+ * one of the server's root directories with the "path" parameter. The
+ * "format" parameter picks the media type, such as json or csv; the command's
+ * default is used without it.
+ * <p>
+ * Requests are handled by a fixed pool of worker threads with a bounded
+ * number of requests waiting for them; a request beyond that is answered at
+ * once with 503. Bodies larger than the limit are refused with 413. Latency
+ * histograms and response counts for each command are served in the
+ * Prometheus text format at /metrics.
+ *
+ * @author cmayes
+ */
+public class ParseServer {
+    /** The default port. */
+    public static final int DEF_PORT = 8080;
+    /** The default largest body accepted, in megabytes. */
+    public static final int DEF_MAX_BODY_MB = 64;
+    private static final String METRICS_PATH = "/metrics";
+    private static final String DEF_SRC_NAME = "upload.log";
+    private static final int READ_BUF_SIZE = 64 * 1024;
+    private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<Boolean>();
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ExecutorService rejector;
+    private final Semaphore admitted;
+    private final long maxBodyBytes;
+    private final List<File> roots = new ArrayList<File>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> responses = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Creates a server bound to the address; call {@link #start()} once the
+     * commands are added.
+     *
+     * @param address
+     *            The address to listen on; port 0 picks a free port.
+     * @param threads
+     *            The number of worker threads.
+     * @param queueSize
+     *            The most requests waiting for a worker.
+     * @param maxBody
+     *            The largest request body accepted, in bytes.
+     * @param pathRoots
+     *            The directories whose files can be named with "path".
+     * @throws IllegalArgumentException
+     *             If a count or limit isn't positive.
+     * @throws EnvironmentException
+     *             If the address can't be bound.
+     */
+    public ParseServer(final InetSocketAddress address, final int threads,
+            final int queueSize, final long maxBody, final List<File> pathRoots) {
+        if (threads < 1 || queueSize < 0 || maxBody < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Bad server limits: %d threads, %d queued, %d bytes",
+                    threads, queueSize, maxBody));
+        }
+        this.maxBodyBytes = maxBody;
+        for (File root : asNotNull(pathRoots, "Roots are null")) {
+            try {
+                roots.add(root.getCanonicalFile());
+            } catch (final IOException e) {
+                throw new EnvironmentException("Problems resolving " + root,
+                        e);
+            }
+        }
+        this.admitted = new Semaphore(threads + queueSize);
+        this.workers = Executors.newFixedThreadPool(threads,
+                threadFactory("parse-worker"));
+        this.rejector = Executors
+                .newSingleThreadExecutor(threadFactory("parse-rejector"));
+        try {
+            this.server = HttpServer.create(
+                    asNotNull(address, "Address is null"), 0);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems binding " + address, e);
+        }
+        server.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable exchange) {
+                admit(exchange);
+            }
+        });
+        server.createContext(METRICS_PATH, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                serveMetrics(exchange);
+            }
+        });
+    }
+
+    /**
+     * @param name
+     *            The name of the threads.
+     * @return A factory for daemon threads with the name.
+     */
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, name + "-"
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Serves a command at the path of its name.
+     *
+     * @param type
+     *            The command.
+     * @param loader
+     *            The command's loader, which is shared by every request.
+     * @param calcs
+     *            The command's calculations, which are shared by every
+     *            request.
+     * @param displays
+     *            Creates a display for each request.
+     * @param <T>
+     *            The type of the command's results.
+     */
+    public <T> void addCommand(final HandlingType type, final Loader<T> loader,
+            final List<Calculation> calcs, final DisplayFactory<T> displays) {
+        final String name = type.getCommandName();
+        final Command<T> command = new Command<T>(name, asNotNull(loader,
+                "Loader is null"), asNotNull(calcs, "Calculations are null"),
+                asNotNull(displays, "Displays are null"));
+        latencies.put(name, new LatencyHistogram());
+        server.createContext("/" + name, new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(command, exchange);
+            }
+        });
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+        logger.info("Serving {} on port {}", latencies.keySet(), getPort());
+    }
+
+    /**
+     * Stops the server, letting requests that are being answered finish.
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+        rejector.shutdown();
+        stopped.countDown();
+    }
+
+    /**
+     * Waits until the server is stopped.
+     *
+     * @throws InterruptedException
+     *             If the thread is interrupted.
+     */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Hands an exchange to a worker, or, when every worker is busy and the
+     * queue is full, to the thread that answers 503.
+     *
+     * @param exchange
+     *            The server's task for a request.
+     */
+    private void admit(final Runnable exchange) {
+        if (admitted.tryAcquire()) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        exchange.run();
+                    } finally {
+                        admitted.release();
+                    }
+                }
+            });
+        } else {
+            rejectedCount.incrementAndGet();
+            rejector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    OVERLOADED.set(Boolean.TRUE);
+                    try {
+                        exchange.run();
+                    } finally {
+                        OVERLOADED.remove();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers a request for a command, recording its latency and response
+     * code.
+     *
+     * @param command
+     *            The command.
+     * @param exchange
+     *            The request.
+     * @param <T>
+     *            The type of the command's results.
+     * @throws IOException
+     *             If the response can't be sent.
+     */
+    private <T> void serve(final Command<T> command,
+            final HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        activeCount.incrementAndGet();
+        int code = HttpStatus.INTERNAL_ERROR;
+        try {
+            if (Boolean.TRUE.equals(OVERLOADED.get())) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                code = respond(exchange, HttpStatus.UNAVAILABLE,
+                        "Server busy; try again");
+            } else {
+                code = answer(command, exchange);
+            }
+        } catch (final RuntimeException e) {
+            logger.error("Problems answering " + exchange.getRequestURI(), e);
+            code = respond(exchange, HttpStatus.INTERNAL_ERROR,
+                    "Problems parsing: " + e.getMessage());
+        } finally {
+            exchange.close();
+            activeCount.decrementAndGet();
+            latencies.get(command.name).record(System.nanoTime() - start);
+            count(command.name, code);
+        }
+    }
+
+    /**
+     * Loads, calculates and displays the file of a request.
+     *
+     * @param command
+     *            The command.
+     * @param exchange
+     *            The request.
+     * @param <T>
+     *            The type of the command's results.
+     * @return The response code sent.
+     * @throws IOException
+     *             If the request can't be read or the response sent.
+     */
+    private <T> int answer(final Command<T> command,
+            final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"POST".equals(method)) {
+            return respond(exchange, HttpStatus.BAD_METHOD,
+                    "Use GET with a path or POST a file");
+        }
+        final Map<String, String> params = parseQuery(exchange
+                .getRequestURI().getRawQuery());
+        final String format = params.get("format");
+        MediaType media = null;
+        if (format != null) {
+            try {
+                media = MediaType.valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                return respond(exchange, HttpStatus.NOT_ACCEPTABLE,
+                        "Unknown format " + format);
+            }
+        }
+        final Display<T> display = MediaType.RDBMS.equals(media) ? null
+                : command.displays.create(media);
+        if (display == null) {
+            return respond(exchange, HttpStatus.NOT_ACCEPTABLE, String.format(
+                    "'%s' can't be displayed as %s", command.name, format));
+        }
+
+        final T result;
+        final String srcName;
+        final String path = params.get("path");
+        if (path != null) {
+            final File file = new File(path).getCanonicalFile();
+            if (!isUnderRoot(file)) {
+                return respond(exchange, HttpStatus.FORBIDDEN,
+                        "Not under a served directory: " + path);
+            }
+            if (!file.isFile()) {
+                return respond(exchange, HttpStatus.NOT_FOUND,
+                        "No such file: " + path);
+            }
+            srcName = file.getName();
+            result = LoaderInput.load(command.loader, file);
+        } else if ("POST".equals(method)) {
+            final byte[] body = readBody(exchange);
+            if (body == null) {
+                return respond(exchange, HttpStatus.TOO_LARGE, String.format(
+                        "Bodies are limited to %d bytes", maxBodyBytes));
+            }
+            srcName = params.containsKey("name") ? params.get("name")
+                    : DEF_SRC_NAME;
+            result = LoaderInput.load(command.loader, srcName, body);
+        } else {
+            return respond(exchange, HttpStatus.BAD_REQUEST,
+                    "Give a path or POST a file");
+        }
+        if (result == null) {
+            return respond(exchange, HttpStatus.UNPROCESSABLE,
+                    "No result in " + srcName);
+        }
+
+        T calculated = result;
+        for (Calculation calc : command.calcs) {
+            calculated = command.cast(calc.calculate((Object) calculated));
+        }
+        final StringWriter out = new StringWriter();
+        display.write(out, calculated);
+        display.finish(out);
+        exchange.getResponseHeaders().set("Content-Type",
+                display.getMediaType().getMimeType() + "; charset=UTF-8");
+        return send(exchange, HttpStatus.OK,
+                out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param file
+     *            A canonical file.
+     * @return Whether the file is under one of the roots.
+     */
+    private boolean isUnderRoot(final File file) {
+        for (File root : roots) {
+            if (file.getPath().startsWith(root.getPath() + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the request body unless it is larger than the limit.
+     *
+     * @param exchange
+     *            The request.
+     * @return The body, or null if it is too large.
+     * @throws IOException
+     *             If the body can't be read.
+     */
+    private byte[] readBody(final HttpExchange exchange) throws IOException {
+        final String length = exchange.getRequestHeaders().getFirst(
+                "Content-Length");
+        if (length != null && Long.parseLong(length.trim()) > maxBodyBytes) {
+            return null;
+        }
+        final InputStream in = exchange.getRequestBody();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(
+                READ_BUF_SIZE);
+        final byte[] buf = new byte[READ_BUF_SIZE];
+        for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+            if (body.size() + read > maxBodyBytes) {
+                return null;
+            }
+            body.write(buf, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * @param query
+     *            The raw query string, or null.
+     * @return The decoded parameters.
+     * @throws UnsupportedEncodingException
+     *             Never; UTF-8 is always supported.
+     */
+    static Map<String, String> parseQuery(final String query)
+            throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<String, String>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            final int split = pair.indexOf('=');
+            final String key = split < 0 ? pair : pair.substring(0, split);
+            final String value = split < 0 ? "" : pair.substring(split + 1);
+            params.put(URLDecoder.decode(key, "UTF-8"),
+                    URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    /**
+     * Sends a plain text response.
+     *
+     * @param exchange
+     *            The request.
+     * @param code
+     *            The response code.
+     * @param message
+     *            The text.
+     * @return The response code.
+     * @throws IOException
+     *             If the response can't be sent.
+     */
+    private static int respond(final HttpExchange exchange, final int code,
+            final String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=UTF-8");
+        return send(exchange, code,
+                (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a response.
+     *
+     * @param exchange
+     *            The request.
+     * @param code
+     *            The response code.
+     * @param body
+     *            The response body.
+     * @return The response code.
+     * @throws IOException
+     *             If the response can't be sent.
+     */
+    private static int send(final HttpExchange exchange, final int code,
+            final byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        return code;
+    }
+
+    /**
+     * @param command
+     *            The command's name.
+     * @param code
+     *            The response code sent.
+     */
+    private void count(final String command, final int code) {
+        final String key = String.format("command=\"%s\",code=\"%d\"",
+                command, code);
+        AtomicLong counter = responses.get(key);
+        if (counter == null) {
+            responses.putIfAbsent(key, new AtomicLong());
+            counter = responses.get(key);
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Writes the server's metrics in the Prometheus text format.
+     *
+     * @param exchange
+     *            The request.
+     * @throws IOException
+     *             If the response can't be sent.
+     */
+    private void serveMetrics(final HttpExchange exchange) throws IOException {
+        try {
+            final StringWriter text = new StringWriter();
+            final PrintWriter out = new PrintWriter(text);
+            out.println("# TYPE hartree_request_seconds histogram");
+            for (Map.Entry<String, LatencyHistogram> entry : latencies
+                    .entrySet()) {
+                entry.getValue().write(out, "hartree_request_seconds",
+                        String.format("command=\"%s\"", entry.getKey()));
+            }
+            out.println("# TYPE hartree_responses_total counter");
+            for (Map.Entry<String, AtomicLong> entry : responses.entrySet()) {
+                out.printf("hartree_responses_total{%s} %d%n",
+                        entry.getKey(), entry.getValue().get());
+            }
+            out.println("# TYPE hartree_rejected_total counter");
+            out.printf("hartree_rejected_total %d%n", rejectedCount.get());
+            out.println("# TYPE hartree_active_requests gauge");
+            out.printf("hartree_active_requests %d%n", activeCount.get());
+            out.flush();
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/plain; version=0.0.4; charset=UTF-8");
+            send(exchange, HttpStatus.OK,
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests answered with 503
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @param command
+     *            The command's name.
+     * @return the latencies of the command's requests
+     */
+    public LatencyHistogram getLatencies(final String command) {
+        return latencies.get(command);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        long count = 0;
+        for (LatencyHistogram histogram : latencies.values()) {
+            count += histogram.getCount();
+        }
+        return String.format("answered %d requests, rejected %d", count,
+                rejectedCount.get());
+    }
+
+    /**
+     * Creates the display for a request.
+     *
+     * @param <T>
+     *            The type of the command's results.
+     */
+    public interface DisplayFactory<T> {
+        /**
+         * Creates a new display for one request.
+         *
+         * @param media
+         *            The requested media type, or null for the command's
+         *            default.
+         * @return The display, or null if the command can't be displayed in
+         *         the media type.
+         */
+        Display<T> create(MediaType media);
+    }
+
+    /**
+     * A served command's components.
+     *
+     * @param <T>
+     *            The type of the command's results.
+     */
+    private static final class Command<T> {
+        private final String name;
+        private final Loader<T> loader;
+        private final List<Calculation> calcs;
+        private final DisplayFactory<T> displays;
+
+        /**
+         * @param cmdName
+         *            The command's name.
+         * @param theLoader
+         *            The loader.
+         * @param theCalcs
+         *            The calculations.
+         * @param theDisplays
+         *            The display factory.
+         */
+        private Command(final String cmdName, final Loader<T> theLoader,
+                final List<Calculation> theCalcs,
+                final DisplayFactory<T> theDisplays) {
+            this.name = cmdName;
+            this.loader = theLoader;
+            this.calcs = theCalcs;
+            this.displays = theDisplays;
+        }
+
+        /**
+         * @param calculated
+         *            A calculation's result.
+         * @return The result as the command's type.
+         */
+        @SuppressWarnings("unchecked")
+        private T cast(final Object calculated) {
+            return (T) calculated;
+        }
+    }
+
+    /**
+     * The response codes the server sends.
+     */
+    private static final class HttpStatus {
+        private static final int OK = 200;
+        private static final int BAD_REQUEST = 400;
+        private static final int FORBIDDEN = 403;
+        private static final int NOT_FOUND = 404;
+        private static final int BAD_METHOD = 405;
+        private static final int NOT_ACCEPTABLE = 406;
+        private static final int TOO_LARGE = 413;
+        private static final int UNPROCESSABLE = 422;
+        private static final int INTERNAL_ERROR = 500;
+        private static final int UNAVAILABLE = 503;
+
+        /**
+         * Constants only.
+         */
+        private HttpStatus() {
+        }
+    }
+}
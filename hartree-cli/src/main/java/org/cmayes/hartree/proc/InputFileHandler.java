@@ -22,6 +22,15 @@ public interface InputFileHandler {
      */
     void handle(final File processDir, FileProcessor<?> fileProcessor);
 
+    /**
+     * Returns whether an archive entry should be processed.
+     * 
+     * @param entryPath
+     *            The entry's path in the archive.
+     * @return Whether the entry should be processed.
+     */
+    boolean acceptEntry(String entryPath);
+
     /**
      * Creates a target writer for the given input file.
      * 
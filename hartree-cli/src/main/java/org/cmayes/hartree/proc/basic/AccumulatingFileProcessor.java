@@ -3,11 +3,12 @@ package org.cmayes.hartree.proc.basic;
 import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
 
@@ -21,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cmayes.common.exception.EnvironmentException;
+import com.google.common.io.CountingOutputStream;
 
 /**
  * A linear file processor that collects all output into a single file named
@@ -40,6 +42,12 @@ public class AccumulatingFileProcessor<T> implements FileProcessor<T> {
     private final HandlingType handlingType;
     private final InputFileHandler inputFileHandler;
     private Writer accWriter;
+    private File accFile;
+    private CountingOutputStream accCount;
+    private Manifest manifest;
+    private Shard shard;
+    private ShardIndex shardIndex;
+    private long inputCount;
 
     /**
      * Creates a processor that will use the given parser and display and will
@@ -80,6 +88,7 @@ public class AccumulatingFileProcessor<T> implements FileProcessor<T> {
                             + outFile.getAbsolutePath());
                 }
                 accWriter = new FileWriter(outFile);
+                accFile = outFile;
             } catch (final IOException e) {
                 throw new EnvironmentException("Problems creating out file "
                         + outFile, e);
@@ -88,21 +97,383 @@ public class AccumulatingFileProcessor<T> implements FileProcessor<T> {
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Files the loader skips are not written. Each entry of a
+     * tar or zip archive is handled as a file. With a manifest, the recorded
+     * rows of unchanged files are written without parsing them. With a shard,
+     * files that belong to other shards are skipped.
      * 
      * @see org.cmayes.hartree.proc.FileProcessor#displayAll(List)
      */
     public void displayAll(final List<File> processMe) {
         for (File targetFile : processMe) {
+            final long ordinal = claim(targetFile);
+            if (ordinal < 0) {
+                continue;
+            }
+            startOutput(ordinal);
+            if (ArchiveInput.isArchive(targetFile)) {
+                displayArchive(targetFile);
+                continue;
+            }
+            if (isUnchanged(targetFile)) {
+                writeUnchanged(targetFile);
+                continue;
+            }
+            final Manifest.FileState state = describe(targetFile);
+            final T result = load(targetFile);
+            writeCalculated(targetFile, state,
+                    result == null ? null : applyCalcs(result));
+        }
+    }
+
+    /**
+     * Keeps a manifest next to the accumulator so that later runs with the
+     * same settings only parse new or changed files (see {@link Manifest}).
+     * 
+     * @param settings
+     *            A description of the settings that change the rows written
+     *            for a file.
+     * @throws IllegalStateException
+     *             If the accumulator is not written to a file.
+     */
+    public void useManifest(final String settings) {
+        if (accFile == null) {
+            throw new IllegalStateException(
+                    "A manifest needs an accumulator file");
+        }
+        this.manifest = new Manifest(accFile, settings,
+                displayer.getMediaType());
+    }
+
+    /**
+     * @return the manifest, or null if there is none
+     */
+    public Manifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Processes only the input files that belong to the given shard, keeping
+     * a {@link ShardIndex} next to the accumulator so that the shards can be
+     * merged with a {@link ShardMerger}.
+     * 
+     * @param theShard
+     *            The run's shard.
+     * @throws IllegalStateException
+     *             If the accumulator is not written to a file.
+     */
+    public void useShard(final Shard theShard) {
+        this.shard = asNotNull(theShard, "Shard is null");
+        openShardIndex(shard.toString());
+    }
+
+    /**
+     * Keeps a {@link ShardIndex} next to the accumulator for a
+     * {@link WorkQueue} worker, which gives its files to
+     * {@link #displayBatch(List, long)} a batch at a time.
+     * 
+     * @param workerId
+     *            The worker's ID.
+     * @throws IllegalStateException
+     *             If the accumulator is not written to a file.
+     */
+    public void useWorkQueue(final String workerId) {
+        openShardIndex(WorkQueue.PART_PREFIX + workerId);
+    }
+
+    /**
+     * Starts the shard index for a part of the run.
+     * 
+     * @param part
+     *            The part of the run.
+     * @throws IllegalStateException
+     *             If the accumulator is not written to a file.
+     */
+    private void openShardIndex(final String part) {
+        if (accFile == null) {
+            throw new IllegalStateException(
+                    "A shard needs an accumulator file");
+        }
+        // Reopen the still empty accumulator to count the bytes written.
+        try {
+            accWriter.close();
+            accCount = new CountingOutputStream(new FileOutputStream(accFile));
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reopening " + accFile, e);
+        }
+        accWriter = new OutputStreamWriter(accCount);
+        this.shardIndex = new ShardIndex(accFile, part,
+                displayer.getMediaType());
+    }
+
+    /**
+     * Processes a batch of input files given by a {@link WorkQueue}, and
+     * returns once their output is written and indexed.
+     * 
+     * @param batch
+     *            The batch's files, in input order.
+     * @param firstOrdinal
+     *            The position of the batch's first file among the run's input
+     *            files.
+     */
+    public void displayBatch(final List<File> batch, final long firstOrdinal) {
+        inputCount = firstOrdinal;
+        displayAll(batch);
+        drain();
+        if (shardIndex != null) {
+            shardIndex.end(flushedCount());
+        }
+    }
+
+    /**
+     * Processes files for a long-running {@link WatchDaemon}, and returns once
+     * their output is written and flushed to the accumulator. With a manifest,
+     * a file that was written before is replaced: the accumulator is rewritten
+     * from the manifest's rows, so each file keeps one set of rows.
+     * 
+     * @param processMe
+     *            The files to process.
+     */
+    public void displayAndFlush(final List<File> processMe) {
+        if (isRewritten(processMe)) {
+            // The manifest records the new rows; the accumulator is written
+            // from it below.
+            final Writer out = accWriter;
+            accWriter = new StringWriter();
             try {
-                final T procResult = applyCalcs(parser.load(targetFile.getName(),
-                        new FileReader(targetFile)));
-                displayer.write(accWriter, procResult);
-            } catch (final FileNotFoundException e) {
-                throw new EnvironmentException(
-                        "File not found while creating reader", e);
+                displayAll(processMe);
+                drain();
+            } finally {
+                accWriter = out;
+            }
+            rewriteAccumulator();
+        } else {
+            displayAll(processMe);
+            drain();
+        }
+        try {
+            accWriter.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing to the "
+                    + "accumulator", e);
+        }
+    }
+
+    /**
+     * @param processMe
+     *            The files about to be processed.
+     * @return Whether the manifest has rows for one of the files, which the
+     *         accumulator must be rewritten to replace.
+     */
+    private boolean isRewritten(final List<File> processMe) {
+        if (manifest == null) {
+            return false;
+        }
+        for (File targetFile : processMe) {
+            if (manifest.isWritten(targetFile)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Empties the accumulator file and writes the rows of every file in the
+     * manifest to it.
+     */
+    private void rewriteAccumulator() {
+        try {
+            accWriter.close();
+            accWriter = new FileWriter(accFile);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems rewriting " + accFile, e);
+        }
+        manifest.rewrite(accWriter);
+    }
+
+    /**
+     * Writes the output of every file given so far. Files are written as they
+     * are given here, so there is nothing to wait for.
+     */
+    protected void drain() {
+    }
+
+    /**
+     * Counts an input file and returns its position among the run's input
+     * files if it belongs to this run's shard.
+     * 
+     * @param targetFile
+     *            The input file.
+     * @return The file's position, or -1 if another shard processes it.
+     */
+    protected long claim(final File targetFile) {
+        final long ordinal = inputCount++;
+        if (shard == null
+                || shard.owns(Shard.relativePath(targetFile,
+                        inputFileHandler.getInDir()))) {
+            return ordinal;
+        }
+        return -1;
+    }
+
+    /**
+     * Notes in the shard index that the output of a claimed file starts.
+     * Called just before anything is written for the file.
+     * 
+     * @param ordinal
+     *            The file's position from {@link #claim(File)}.
+     */
+    protected void startOutput(final long ordinal) {
+        if (shardIndex != null) {
+            shardIndex.start(ordinal, flushedCount());
+        }
+    }
+
+    /**
+     * @return The number of bytes written to the accumulator file.
+     */
+    private long flushedCount() {
+        try {
+            accWriter.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing to the "
+                    + "accumulator", e);
+        }
+        return accCount.getCount();
+    }
+
+    /**
+     * Returns whether the manifest holds the rows of an unchanged file.
+     * 
+     * @param targetFile
+     *            The file to look up.
+     * @return Whether the file can be written without parsing it.
+     */
+    protected boolean isUnchanged(final File targetFile) {
+        return manifest != null && manifest.isUnchanged(targetFile);
+    }
+
+    /**
+     * Writes the rows recorded for an unchanged file.
+     * 
+     * @param targetFile
+     *            A file found unchanged by {@link #isUnchanged(File)}.
+     */
+    protected void writeUnchanged(final File targetFile) {
+        manifest.writeUnchanged(targetFile, accWriter);
+    }
+
+    /**
+     * Reads the state of a file about to be parsed for the manifest.
+     * 
+     * @param targetFile
+     *            The file to describe.
+     * @return The file's state, or null if there is no manifest.
+     */
+    protected Manifest.FileState describe(final File targetFile) {
+        return manifest == null ? null : manifest.describe(targetFile);
+    }
+
+    /**
+     * Writes a calculated result to the accumulator, recording it in the
+     * manifest if there is one.
+     * 
+     * @param source
+     *            The parsed file, or null for an archive entry.
+     * @param state
+     *            The file's state from {@link #describe(File)}.
+     * @param result
+     *            The calculated result, or null if the loader skipped the
+     *            file.
+     */
+    protected void writeCalculated(final File source,
+            final Manifest.FileState state, final T result) {
+        if (manifest == null) {
+            if (result != null) {
+                displayer.write(accWriter, result);
+            }
+            return;
+        }
+        final StringWriter chunk = new StringWriter();
+        if (result != null) {
+            displayer.write(chunk, result);
+        }
+        manifest.write(accWriter, source, state, chunk.toString());
+    }
+
+    /**
+     * Reads the archive once, displaying each entry that the file handler
+     * accepts.
+     * 
+     * @param archive
+     *            The archive to read.
+     */
+    protected void displayArchive(final File archive) {
+        final int count = ArchiveInput.read(archive, inputFileHandler,
+                new ArchiveInput.EntryHandler() {
+                    @Override
+                    public void handle(final String path,
+                            final InputStream data) throws IOException {
+                        displayEntry(archive, path, data);
+                    }
+                });
+        logger.debug("Read {} entries from {}", count, archive.getName());
+    }
+
+    /**
+     * Loads and writes one archive entry unless the loader skips it.
+     * 
+     * @param archive
+     *            The archive holding the entry.
+     * @param path
+     *            The entry's path in the archive.
+     * @param data
+     *            The entry's data.
+     * @throws IOException
+     *             If there's a problem reading the entry.
+     */
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) throws IOException {
+        final T result = LoaderInput.load(parser, path, data);
+        if (result != null) {
+            write(result);
+        }
+    }
+
+    /**
+     * Applies the calculations to the result and writes it to the
+     * accumulator.
+     * 
+     * @param result
+     *            The loaded result.
+     */
+    protected void write(final T result) {
+        writeCalculated(null, null, applyCalcs(result));
+    }
+
+    /**
+     * Loads an archive entry that was read into memory.
+     * 
+     * @param srcName
+     *            The entry's path in the archive.
+     * @param data
+     *            The entry's bytes.
+     * @return The loaded result, or null if the loader skipped the entry.
+     */
+    protected T load(final String srcName, final byte[] data) {
+        return LoaderInput.load(parser, srcName, data);
+    }
+
+    /**
+     * Loads the file in the cheapest form the loader accepts (see
+     * {@link LoaderInput}).
+     * 
+     * @param targetFile
+     *            The file to load.
+     * @return The loaded result, or null if the loader skipped the file.
+     */
+    protected T load(final File targetFile) {
+        return LoaderInput.load(parser, targetFile);
     }
 
     /**
@@ -113,7 +484,7 @@ public class AccumulatingFileProcessor<T> implements FileProcessor<T> {
      * @return The processed result.
      */
     @SuppressWarnings("unchecked")
-    private T applyCalcs(final T rawResult) {
+    protected T applyCalcs(final T rawResult) {
         T procResult = rawResult;
         for (Calculation curCalc : calculations) {
             procResult = (T) curCalc.calculate((Object) procResult);
@@ -138,7 +509,15 @@ public class AccumulatingFileProcessor<T> implements FileProcessor<T> {
     @Override
     public void finish() {
         try {
-            displayer.finish(this.accWriter);
+            if (shardIndex != null) {
+                shardIndex.finish(flushedCount());
+            }
+            if (manifest == null) {
+                displayer.finish(this.accWriter);
+            } else {
+                displayer.finish(new StringWriter());
+                manifest.finish(this.accWriter);
+            }
             this.accWriter.close();
         } catch (final IOException e) {
             logger.warn("Problems closing the accumulator", e);
@@ -0,0 +1,249 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Reads the entries of a tar or zip archive as if they were files, without
+ * extracting them. The archive is read once, front to back; tar files may be
+ * compressed in any {@link Compression} format, as may the entries. Each entry
+ * is named by its normalized path in the archive; entries whose paths are
+ * absolute or climb out of the archive with ".." are skipped with a warning,
+ * since the path names the entry's output file.
+ *
+ * @author cmayes
+ */
+public final class ArchiveInput {
+    /** Logger. */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ArchiveInput.class);
+    private static final String TAR = ".tar";
+    private static final String TGZ = ".tgz";
+    private static final String ZIP = ".zip";
+    private static final String PARENT = "..";
+    private static final String CURRENT = ".";
+    /** Matches a Windows drive at the start of a path. */
+    private static final Pattern DRIVE = Pattern.compile("^[A-Za-z]:");
+
+    /**
+     * Handles one entry of an archive.
+     */
+    public interface EntryHandler {
+        /**
+         * Handles the entry's data. The stream is only valid until this
+         * returns; closing it has no effect.
+         *
+         * @param path
+         *            The entry's path in the archive, without a compression
+         *            extension.
+         * @param data
+         *            The entry's uncompressed data.
+         * @throws IOException
+         *             If there's a problem reading the data.
+         */
+        void handle(String path, InputStream data) throws IOException;
+    }
+
+    /**
+     * Not instantiated.
+     */
+    private ArchiveInput() {
+    }
+
+    /**
+     * Returns whether the file is an archive that this class can read.
+     *
+     * @param file
+     *            The file to check.
+     * @return Whether the file is a tar or zip archive.
+     */
+    public static boolean isArchive(final File file) {
+        final String name = file.getName().toLowerCase(Locale.US);
+        return name.endsWith(ZIP) || name.endsWith(TGZ)
+                || Compression.baseName(file).toLowerCase(Locale.US)
+                        .endsWith(TAR);
+    }
+
+    /**
+     * Passes each regular entry that the file handler accepts to the entry
+     * handler, in archive order.
+     *
+     * @param archive
+     *            The archive to read.
+     * @param fileHandler
+     *            Decides which entries to read.
+     * @param handler
+     *            The handler for each entry.
+     * @return The number of entries handled.
+     * @throws EnvironmentException
+     *             If there's a problem reading the archive.
+     */
+    public static int read(final File archive,
+            final InputFileHandler fileHandler, final EntryHandler handler) {
+        asNotNull(fileHandler, "File handler is null");
+        asNotNull(handler, "Entry handler is null");
+        ArchiveInputStream archiveIn = null;
+        int count = 0;
+        try {
+            archiveIn = open(archive);
+            for (ArchiveEntry entry = archiveIn.getNextEntry(); entry != null; entry = archiveIn
+                    .getNextEntry()) {
+                if (entry.isDirectory() || !archiveIn.canReadEntryData(entry)) {
+                    continue;
+                }
+                final String path = normalize(entry.getName());
+                if (path == null) {
+                    LOGGER.warn("Skipping entry {} of {}: its path is "
+                            + "absolute or leaves the archive",
+                            entry.getName(), archive);
+                    continue;
+                }
+                if (!fileHandler.acceptEntry(path)) {
+                    continue;
+                }
+                final InputStream shielded = new FilterInputStream(archiveIn) {
+                    @Override
+                    public void close() {
+                        // The archive stream stays open for the next entry.
+                    }
+                };
+                final Compression comp = Compression.forName(path);
+                if (comp == null) {
+                    handler.handle(path, shielded);
+                } else {
+                    handler.handle(path.substring(0, path.length()
+                            - comp.getExtension().length()),
+                            comp.open(shielded));
+                }
+                count++;
+            }
+            return count;
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading archive "
+                    + archive, e);
+        } finally {
+            if (archiveIn != null) {
+                try {
+                    archiveIn.close();
+                } catch (final IOException e) {
+                    LOGGER.warn("Problems closing archive " + archive, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Normalizes an entry's path so that it can name a file under an output
+     * directory: separators become "/" and empty and "." segments are dropped.
+     *
+     * @param name
+     *            The entry's name in the archive.
+     * @return The normalized path, or null if the path is absolute, has a
+     *         ".." segment or is empty.
+     */
+    static String normalize(final String name) {
+        final String unixName = name.replace('\\', '/');
+        if (unixName.startsWith("/") || DRIVE.matcher(unixName).find()) {
+            return null;
+        }
+        final StringBuilder path = new StringBuilder();
+        for (String segment : unixName.split("/")) {
+            if (PARENT.equals(segment)) {
+                return null;
+            }
+            if (segment.isEmpty() || CURRENT.equals(segment)) {
+                continue;
+            }
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(segment);
+        }
+        return path.length() == 0 ? null : path.toString();
+    }
+
+    /**
+     * Reads the rest of an entry into memory so that it can be loaded on
+     * another thread.
+     *
+     * @param data
+     *            The entry's data.
+     * @return The entry's bytes.
+     * @throws IOException
+     *             If there's a problem reading the data.
+     */
+    public static byte[] toBytes(final InputStream data) throws IOException {
+        return IOUtils.toByteArray(data);
+    }
+
+    /**
+     * Returns a reader for an entry's text.
+     *
+     * @param data
+     *            The entry's data.
+     * @return A reader for the entry's text.
+     */
+    public static Reader toReader(final InputStream data) {
+        return new InputStreamReader(data);
+    }
+
+    /**
+     * Returns a reader for an entry's text that was read into memory.
+     *
+     * @param data
+     *            The entry's bytes.
+     * @return A reader for the entry's text.
+     */
+    public static Reader toReader(final byte[] data) {
+        return toReader(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Opens the archive, decompressing a compressed tar file on a separate
+     * thread.
+     *
+     * @param archive
+     *            The archive to open.
+     * @return A stream of the archive's entries.
+     * @throws IOException
+     *             If the archive can't be opened.
+     */
+    private static ArchiveInputStream open(final File archive)
+            throws IOException {
+        final String name = archive.getName().toLowerCase(Locale.US);
+        if (name.endsWith(ZIP)) {
+            return new ZipArchiveInputStream(new BufferedInputStream(
+                    new FileInputStream(archive)));
+        }
+        final Compression comp = name.endsWith(TGZ) ? Compression.GZIP
+                : Compression.forName(name);
+        if (comp == null) {
+            return new TarArchiveInputStream(new BufferedInputStream(
+                    new FileInputStream(archive)));
+        }
+        return new TarArchiveInputStream(new DecompressingInputStream(archive,
+                comp));
+    }
+}
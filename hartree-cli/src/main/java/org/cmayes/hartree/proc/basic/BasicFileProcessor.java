@@ -3,9 +3,8 @@ package org.cmayes.hartree.proc.basic;
 import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
 import java.util.List;
 
@@ -65,24 +64,28 @@ public class BasicFileProcessor<T> implements FileProcessor<T> {
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} No output is created for files the loader skips. Each
+     * entry of a tar or zip archive is handled as a file in the archive's
+     * directory.
      * 
      */
     public void displayAll(final List<File> processFiles) {
         for (File targetFile: processFiles) {
+            if (ArchiveInput.isArchive(targetFile)) {
+                displayArchive(targetFile);
+                continue;
+            }
             Writer writer = null;
-            FileReader fileReader = null;
             try {
+                final T rawResult = LoaderInput.load(parser, targetFile);
+                if (rawResult == null) {
+                    continue;
+                }
                 writer = inputFileHandler.createOutWriter(targetFile, handlingType
                         .getCommandName(), displayer.getMediaType()
                         .getPrimaryExtension());
-                fileReader = new FileReader(targetFile);
-                final T procResult = applyCalcs(parser.load(targetFile.getName(),
-                        fileReader));
+                final T procResult = applyCalcs(rawResult);
                 displayer.write(writer, procResult);
-            } catch (final FileNotFoundException e) {
-                throw new EnvironmentException(
-                        "File not found while creating reader", e);
             } finally {
                 displayer.finish(writer);
                 if (writer != null) {
@@ -92,12 +95,65 @@ public class BasicFileProcessor<T> implements FileProcessor<T> {
                         logger.warn("Problems closing writer: " + e.getMessage());
                     }
                 }
-                if (fileReader != null) {
-                    try {
-                        fileReader.close();
-                    } catch (final IOException e) {
-                        logger.warn("Problems closing reader: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the archive once, displaying each entry that the file handler
+     * accepts.
+     * 
+     * @param archive
+     *            The archive to read.
+     */
+    protected void displayArchive(final File archive) {
+        final int count = ArchiveInput.read(archive, inputFileHandler,
+                new ArchiveInput.EntryHandler() {
+                    @Override
+                    public void handle(final String path,
+                            final InputStream data) {
+                        displayEntry(archive, path, data);
                     }
+                });
+        logger.debug("Read {} entries from {}", count, archive.getName());
+    }
+
+    /**
+     * Loads and displays one archive entry. The output is named as it would
+     * be for a file at the entry's path in the archive's directory.
+     * 
+     * @param archive
+     *            The archive holding the entry.
+     * @param path
+     *            The entry's path in the archive.
+     * @param data
+     *            The entry's data.
+     */
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) {
+        final T rawResult;
+        try {
+            rawResult = LoaderInput.load(parser, path, data);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + path
+                    + " from " + archive, e);
+        }
+        if (rawResult == null) {
+            return;
+        }
+        final Writer writer = inputFileHandler.createOutWriter(new File(
+                archive.getAbsoluteFile().getParentFile(), path), handlingType
+                .getCommandName(), displayer.getMediaType()
+                .getPrimaryExtension());
+        try {
+            displayer.write(writer, applyCalcs(rawResult));
+        } finally {
+            displayer.finish(writer);
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    logger.warn("Problems closing writer: " + e.getMessage());
                 }
             }
         }
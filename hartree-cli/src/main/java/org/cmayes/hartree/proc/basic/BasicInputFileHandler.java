@@ -10,8 +10,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import org.cmayes.hartree.proc.FileProcessor;
@@ -25,15 +24,34 @@ import com.cmayes.common.file.AcceptAllFilter;
 import com.cmayes.common.file.ExtensionFilter;
 
 /**
- * Handles file type filtering and output file naming.
+ * Handles file type filtering and output file naming. Files compressed in one
+ * of the {@link Compression} formats are included when their name without the
+ * compression extension passes the filter. Tar and zip archives are always
+ * included; their entries are filtered by {@link #acceptEntry(String)}.
+ * Directories are walked by a {@link DirectoryWalker}.
  * 
  * @author cmayes
  */
 public class BasicInputFileHandler implements InputFileHandler {
     private final FilenameFilter fileFilter;
+    private final FilenameFilter compFilter = new FilenameFilter() {
+        @Override
+        public boolean accept(final File dir, final String name) {
+            if (fileFilter.accept(dir, name)
+                    || ArchiveInput.isArchive(new File(dir, name))) {
+                return true;
+            }
+            final Compression comp = Compression.forName(name);
+            return comp != null
+                    && fileFilter.accept(dir, name.substring(0, name.length()
+                            - comp.getExtension().length()));
+        }
+    };
     private final File inDir;
     private final File outDir;
     private PrintStream sysOut = System.out;
+    private int walkThreads = DirectoryWalker.DEF_THREADS;
+    private boolean ordered = true;
 
     /** Logger. */
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -73,15 +91,61 @@ public class BasicInputFileHandler implements InputFileHandler {
     @Override
     public void handle(final File processDir,
             final FileProcessor<?> fileProcessor) {
-        if (processDir.isDirectory()) {
-            final String[] children = processDir.list(fileFilter);
-            Arrays.sort(children);
-            for (int i = 0; i < children.length; i++) {
-                handle(new File(processDir, children[i]), fileProcessor);
+        new DirectoryWalker(compFilter, walkThreads, ordered).walk(processDir,
+                fileProcessor);
+    }
+
+    /**
+     * Returns whether a directory walk would pick up the file.
+     * 
+     * @param file
+     *            The file to check.
+     * @return Whether the file passes the filter or is a compressed copy or
+     *         archive.
+     */
+    public boolean accepts(final File file) {
+        return compFilter.accept(file.getParentFile(), file.getName());
+    }
+
+    /**
+     * Lists the files that {@link #handle(File, FileProcessor)} would give a
+     * processor, in the order it would give them.
+     * 
+     * @param processDir
+     *            The directory to walk.
+     * @return The files found.
+     */
+    public List<File> listFiles(final File processDir) {
+        final List<File> found = new ArrayList<File>();
+        handle(processDir, new FileProcessor<Object>() {
+            @Override
+            public void displayAll(final List<File> processFiles) {
+                found.addAll(processFiles);
             }
-        } else {
-            fileProcessor.displayAll(Collections.singletonList(processDir));
-        }
+
+            @Override
+            public void displayDir(final File dir) {
+                throw new UnsupportedOperationException(
+                        "Walked directories are listed by file");
+            }
+
+            @Override
+            public void finish() {
+            }
+        });
+        return found;
+    }
+
+    /**
+     * {@inheritDoc} Entries are filtered by name as files in a directory are.
+     * 
+     * @see org.cmayes.hartree.proc.InputFileHandler#acceptEntry(String)
+     */
+    @Override
+    public boolean acceptEntry(final String entryPath) {
+        final File entry = new File(entryPath);
+        return compFilter.accept(entry.getParentFile(), entry.getName())
+                && !ArchiveInput.isArchive(entry);
     }
 
     /**
@@ -110,7 +174,8 @@ public class BasicInputFileHandler implements InputFileHandler {
         }
 
         final File outFile = new File(tgtOutDir, String.format("%s-%s.%s",
-                processFileName(inFile.getName()), cmdName, outExt));
+                processFileName(Compression.baseName(inFile)), cmdName,
+                outExt));
 
         try {
             if (outFile.exists() || !outFile.createNewFile()) {
@@ -126,7 +191,7 @@ public class BasicInputFileHandler implements InputFileHandler {
 
     /**
      * Strips off the filename's extension if it is one of the configured input
-     * extensions.
+     * extensions. Compression extensions are stripped before this.
      * 
      * @param inFile
      *            The input file to process.
@@ -178,6 +243,33 @@ public class BasicInputFileHandler implements InputFileHandler {
         this.sysOut = out;
     }
 
+    /**
+     * Sets the number of threads that list directories at once.
+     * 
+     * @param threads
+     *            The number of walker threads.
+     * @throws IllegalArgumentException
+     *             If the thread count is not positive.
+     */
+    public void setWalkThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "Walker thread count must be positive: " + threads);
+        }
+        this.walkThreads = threads;
+    }
+
+    /**
+     * Sets whether files are processed in sorted walk order (the default)
+     * rather than as they are found.
+     * 
+     * @param sorted
+     *            Whether the walk is ordered.
+     */
+    public void setOrdered(final boolean sorted) {
+        this.ordered = sorted;
+    }
+
     /**
      * Returns the configured input directory.
      * 
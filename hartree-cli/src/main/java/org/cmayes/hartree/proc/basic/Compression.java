@@ -0,0 +1,126 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+/**
+ * The compression formats that input files may be stored in, identified by
+ * their extension. A compressed file is read through a
+ * {@link DecompressingInputStream} so that decompression runs on its own
+ * thread ahead of the loader.
+ *
+ * @author cmayes
+ */
+public enum Compression {
+    GZIP(".gz", CompressorStreamFactory.GZIP), BZIP2(".bz2",
+            CompressorStreamFactory.BZIP2), XZ(".xz", CompressorStreamFactory.XZ), ZSTD(
+            ".zst", CompressorStreamFactory.ZSTANDARD);
+
+    private final String extension;
+    private final String format;
+
+    /**
+     * Creates the format.
+     *
+     * @param ext
+     *            The file extension for the format.
+     * @param fmt
+     *            The commons-compress name for the format.
+     */
+    private Compression(final String ext, final String fmt) {
+        this.extension = ext;
+        this.format = fmt;
+    }
+
+    /**
+     * Finds the compression format for a file name.
+     *
+     * @param name
+     *            The file name to check.
+     * @return The file's compression format or null if it isn't compressed.
+     */
+    public static Compression forName(final String name) {
+        final String lowerName = asNotNull(name, "Name is null").toLowerCase(
+                Locale.US);
+        for (Compression comp : values()) {
+            if (lowerName.endsWith(comp.extension)) {
+                return comp;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the file's name without its compression extension.
+     *
+     * @param file
+     *            The file to name.
+     * @return The name of the uncompressed file.
+     */
+    public static String baseName(final File file) {
+        final String name = file.getName();
+        final Compression comp = forName(name);
+        if (comp == null) {
+            return name;
+        }
+        return name.substring(0, name.length() - comp.extension.length());
+    }
+
+    /**
+     * Opens a reader for the file, decompressing it if it has a compression
+     * extension.
+     *
+     * @param file
+     *            The file to read.
+     * @return A reader for the file's text.
+     * @throws FileNotFoundException
+     *             If the file can't be opened.
+     */
+    public static Reader openReader(final File file)
+            throws FileNotFoundException {
+        final Compression comp = forName(file.getName());
+        if (comp == null) {
+            return new FileReader(file);
+        }
+        return new InputStreamReader(new DecompressingInputStream(file, comp));
+    }
+
+    /**
+     * Wraps the compressed stream. Concatenated streams, such as those
+     * written by parallel compressors, are read to the end.
+     *
+     * @param compressed
+     *            The compressed stream.
+     * @return The decompressed stream.
+     * @throws IOException
+     *             If the stream can't be decompressed, including when the
+     *             format's library isn't on the classpath.
+     */
+    InputStream open(final InputStream compressed) throws IOException {
+        try {
+            return new CompressorStreamFactory(true).createCompressorInputStream(
+                    format, compressed);
+        } catch (final CompressorException e) {
+            throw new IOException("Can't read " + extension + " files: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the file extension for the format
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
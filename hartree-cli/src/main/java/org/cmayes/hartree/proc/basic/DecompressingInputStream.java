@@ -0,0 +1,242 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a compressed file, decompressing it on a separate thread. The
+ * decompressor stays up to {@link #QUEUE_SIZE} chunks ahead of the reader so
+ * that decompression and lexing overlap; when the queue is full it waits for
+ * the reader to catch up.
+ *
+ * @author cmayes
+ */
+public class DecompressingInputStream extends InputStream {
+    /** The number of decompressed bytes handed over at a time. */
+    public static final int CHUNK_SIZE = 64 * 1024;
+    /** The number of chunks the decompressor may have ready. */
+    public static final int QUEUE_SIZE = 16;
+    /** Marks the end of the decompressed data. */
+    private static final byte[] END = new byte[0];
+    private static final ExecutorService DECOMPRESSORS = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable run) {
+                    final Thread thread = new Thread(run, "decompressor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private final String fileName;
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(
+            QUEUE_SIZE);
+    private final InputStream compressed;
+    private final Future<?> decompressor;
+    private volatile Throwable failure;
+    private byte[] chunk = END;
+    private int pos;
+    private boolean done;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Opens the file and starts decompressing it.
+     *
+     * @param file
+     *            The compressed file.
+     * @param comp
+     *            The file's compression format.
+     * @throws FileNotFoundException
+     *             If the file can't be opened.
+     */
+    public DecompressingInputStream(final File file, final Compression comp)
+            throws FileNotFoundException {
+        this(asNotNull(file, "File is null").getName(), new BufferedInputStream(
+                new FileInputStream(file)), asNotNull(comp,
+                "Compression is null"));
+    }
+
+    /**
+     * Starts reading the stream on the decompressor thread.
+     *
+     * @param name
+     *            The name of the stream's source.
+     * @param source
+     *            The stream to read.
+     * @param comp
+     *            The stream's compression format, or null to read it as it
+     *            is.
+     */
+    DecompressingInputStream(final String name, final InputStream source,
+            final Compression comp) {
+        this.fileName = name;
+        this.compressed = source;
+        this.decompressor = DECOMPRESSORS.submit(new Runnable() {
+            @Override
+            public void run() {
+                decompress(comp);
+            }
+        });
+    }
+
+    /**
+     * Decompresses the stream into the queue, always ending with {@link #END}
+     * so that the reader never waits on a decompressor that has stopped.
+     * Anything thrown while decompressing is handed to the reader.
+     *
+     * @param comp
+     *            The stream's compression format, or null to read it as it
+     *            is.
+     */
+    private void decompress(final Compression comp) {
+        InputStream in = compressed;
+        boolean closed = false;
+        try {
+            if (comp != null) {
+                in = comp.open(compressed);
+            }
+            final byte[] buf = new byte[CHUNK_SIZE];
+            int len = 0;
+            int read;
+            while ((read = in.read(buf, len, buf.length - len)) >= 0) {
+                len += read;
+                if (len == buf.length) {
+                    chunks.put(buf.clone());
+                    len = 0;
+                }
+            }
+            if (len > 0) {
+                chunks.put(Arrays.copyOf(buf, len));
+            }
+        } catch (final InterruptedException e) {
+            // The reader was closed.
+            closed = true;
+        } catch (final Throwable e) {
+            failure = e;
+        } finally {
+            try {
+                in.close();
+            } catch (final IOException e) {
+                logger.warn("Problems closing " + fileName, e);
+            } finally {
+                if (closed) {
+                    // No one is reading, so don't wait for room.
+                    chunks.offer(END);
+                } else {
+                    try {
+                        chunks.put(END);
+                    } catch (final InterruptedException e) {
+                        logger.debug("Closed before the end of {}", fileName);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next chunk.
+     *
+     * @return Whether there is data to read.
+     * @throws IOException
+     *             If decompression failed or the wait was interrupted.
+     */
+    private boolean fill() throws IOException {
+        while (!done && pos == chunk.length) {
+            try {
+                chunk = chunks.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing "
+                        + fileName, e);
+            }
+            pos = 0;
+            if (chunk == END) {
+                done = true;
+                if (failure != null) {
+                    throw new IOException("Problems decompressing " + fileName,
+                            failure);
+                }
+            }
+        }
+        return !done;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return chunk[pos++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int count = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk, pos, buf, off, count);
+        pos += count;
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() {
+        return chunk.length - pos;
+    }
+
+    /**
+     * Stops the decompressor if it hasn't finished.
+     *
+     * @see java.io.InputStream#close()
+     */
+    @Override
+    public void close() {
+        done = true;
+        if (decompressor.cancel(true)) {
+            // The decompressor may not have started, so it can't be relied on
+            // to close the file.
+            try {
+                compressed.close();
+            } catch (final IOException e) {
+                logger.warn("Problems closing " + fileName, e);
+            }
+        }
+        chunks.clear();
+    }
+}
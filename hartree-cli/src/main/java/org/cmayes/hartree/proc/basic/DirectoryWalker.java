@@ -0,0 +1,342 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+
+import org.cmayes.hartree.proc.FileProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Walks a directory tree, listing subdirectories at once on a fork/join pool
+ * and passing each matching file to a {@link FileProcessor} on the calling
+ * thread as soon as it can be. Links to directories are followed unless they
+ * lead back to a directory that is already being walked.
+ *
+ * <p>
+ * When ordered, files are processed in the order of a depth-first walk with
+ * the names in each directory sorted, which is the order of a walk on one
+ * thread; the listing still runs ahead of the processing. When unordered, each
+ * file is processed as soon as its directory has been listed.
+ * </p>
+ *
+ * @author cmayes
+ */
+public class DirectoryWalker {
+    /** The default number of threads listing directories. */
+    public static final int DEF_THREADS = 8;
+    /** Marks the end of an unordered walk. */
+    private static final File END = new File("");
+    private final FilenameFilter filter;
+    private final int threads;
+    private final boolean ordered;
+
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Creates a walker with the given filter and threads.
+     *
+     * @param fileFilter
+     *            The filter for the names of files; directories are not
+     *            filtered.
+     * @param threadCount
+     *            The number of threads listing directories.
+     * @param sorted
+     *            Whether files are processed in sorted walk order rather than
+     *            as they are found.
+     * @throws IllegalArgumentException
+     *             If the thread count is not positive.
+     */
+    public DirectoryWalker(final FilenameFilter fileFilter,
+            final int threadCount, final boolean sorted) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException(
+                    "Walker thread count must be positive: " + threadCount);
+        }
+        this.filter = asNotNull(fileFilter, "Filter is null");
+        this.threads = threadCount;
+        this.ordered = sorted;
+    }
+
+    /**
+     * Passes each matching file under the given directory to the processor.
+     * A file that isn't a directory is passed as it is.
+     *
+     * @param root
+     *            The directory (or file) to walk.
+     * @param fileProcessor
+     *            The processor for the files found.
+     * @throws EnvironmentException
+     *             If a directory can't be listed.
+     */
+    public void walk(final File root, final FileProcessor<?> fileProcessor) {
+        if (!root.isDirectory()) {
+            fileProcessor.displayAll(Collections.singletonList(root));
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            if (ordered) {
+                final DirTask rootTask = new DirTask(root, null,
+                        readKey(root.toPath()), null);
+                pool.execute(rootTask);
+                processInOrder(rootTask, fileProcessor);
+            } else {
+                processAsFound(pool, root, fileProcessor);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes the files under the task's directory in sorted walk order,
+     * waiting for each directory's listing as it is reached.
+     *
+     * @param task
+     *            The task listing the directory.
+     * @param fileProcessor
+     *            The processor for the files found.
+     */
+    private void processInOrder(final DirTask task,
+            final FileProcessor<?> fileProcessor) {
+        task.join();
+        for (Object child : task.takeChildren()) {
+            if (child instanceof DirTask) {
+                processInOrder((DirTask) child, fileProcessor);
+            } else {
+                fileProcessor.displayAll(Collections
+                        .singletonList((File) child));
+            }
+        }
+    }
+
+    /**
+     * Processes the files under the directory as their directories are
+     * listed.
+     *
+     * @param pool
+     *            The pool to list directories on.
+     * @param root
+     *            The directory to walk.
+     * @param fileProcessor
+     *            The processor for the files found.
+     */
+    private void processAsFound(final ForkJoinPool pool, final File root,
+            final FileProcessor<?> fileProcessor) {
+        final BlockingQueue<File> found = new LinkedBlockingQueue<File>();
+        final DirTask rootTask = new DirTask(root, null,
+                readKey(root.toPath()), found);
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rootTask.invoke();
+                } catch (final RuntimeException e) {
+                    logger.debug("Walk of " + root + " failed", e);
+                } finally {
+                    found.add(END);
+                }
+            }
+        });
+        try {
+            for (File file = found.take(); file != END; file = found.take()) {
+                fileProcessor.displayAll(Collections.singletonList(file));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException("Interrupted walking " + root, e);
+        }
+        rootTask.join();
+    }
+
+    /**
+     * @param path
+     *            The directory to identify.
+     * @return The key that identifies the directory, or null if the file
+     *         system has none.
+     */
+    private static Object readKey(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class)
+                    .fileKey();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + path, e);
+        }
+    }
+
+    /**
+     * Lists one directory, forking a task for each subdirectory.
+     */
+    private final class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File dir;
+        private final DirTask parent;
+        private final Object key;
+        private final BlockingQueue<File> found;
+        private List<Object> children = new ArrayList<Object>();
+
+        /**
+         * @param directory
+         *            The directory to list.
+         * @param parentTask
+         *            The task for the directory's parent, or null for the
+         *            root.
+         * @param fileKey
+         *            The directory's file key; may be null.
+         * @param foundQueue
+         *            The queue files are added to as they are found, or null
+         *            when ordered.
+         */
+        private DirTask(final File directory, final DirTask parentTask,
+                final Object fileKey, final BlockingQueue<File> foundQueue) {
+            this.dir = directory;
+            this.parent = parentTask;
+            this.key = fileKey;
+            this.found = foundQueue;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            final List<DirTask> subTasks = new ArrayList<DirTask>();
+            for (String name : listNames()) {
+                final File child = new File(dir, name);
+                final BasicFileAttributes attrs = readAttributes(child);
+                if (attrs != null && attrs.isDirectory()) {
+                    if (isAncestor(child, attrs.fileKey())) {
+                        logger.warn("Skipping {}: it links back to a "
+                                + "directory above it", child);
+                        continue;
+                    }
+                    final DirTask subTask = new DirTask(child, this,
+                            attrs.fileKey(), found);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                    children.add(subTask);
+                } else if (filter.accept(dir, name)) {
+                    if (found == null) {
+                        children.add(child);
+                    } else {
+                        found.add(child);
+                    }
+                }
+            }
+            if (found != null) {
+                for (DirTask subTask : subTasks) {
+                    subTask.join();
+                }
+            }
+        }
+
+        /**
+         * @return The names in the directory, sorted when the walk is ordered.
+         */
+        private List<String> listNames() {
+            final List<String> names = new ArrayList<String>();
+            try {
+                final DirectoryStream<Path> stream = Files
+                        .newDirectoryStream(dir.toPath());
+                try {
+                    for (Path path : stream) {
+                        names.add(path.getFileName().toString());
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (final IOException e) {
+                throw new EnvironmentException("Problems listing " + dir, e);
+            }
+            if (ordered) {
+                Collections.sort(names);
+            }
+            return names;
+        }
+
+        /**
+         * @param child
+         *            The file to read.
+         * @return The file's attributes, following links, or null if they
+         *         can't be read (as for a broken link).
+         */
+        private BasicFileAttributes readAttributes(final File child) {
+            try {
+                return Files.readAttributes(child.toPath(),
+                        BasicFileAttributes.class);
+            } catch (final IOException e) {
+                logger.debug("Can't read attributes of {}: {}", child,
+                        e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * @param child
+         *            A subdirectory of this task's directory.
+         * @param childKey
+         *            The subdirectory's file key; may be null.
+         * @return Whether the subdirectory is this task's directory or one
+         *         above it.
+         */
+        private boolean isAncestor(final File child, final Object childKey) {
+            for (DirTask task = this; task != null; task = task.parent) {
+                if (childKey != null && task.key != null) {
+                    if (childKey.equals(task.key)) {
+                        return true;
+                    }
+                } else if (isSameFile(child, task.dir)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param first
+         *            A file.
+         * @param second
+         *            Another file.
+         * @return Whether both locate the same file.
+         */
+        private boolean isSameFile(final File first, final File second) {
+            try {
+                return Files.isSameFile(first.toPath(), second.toPath());
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the files and subdirectory tasks in name order, releasing
+         * them from this task.
+         *
+         * @return The directory's children.
+         */
+        private List<Object> takeChildren() {
+            final List<Object> taken = children;
+            children = null;
+            return taken;
+        }
+    }
+}
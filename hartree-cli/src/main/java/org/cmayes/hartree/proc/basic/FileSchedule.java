@@ -0,0 +1,245 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the order in which a parallel processor starts a batch of files.
+ * Starting the largest files first keeps one large file picked up last from
+ * leaving the other workers idle while it finishes. Processors that use a
+ * schedule other than {@link Policy#INPUT} collect their files and start them
+ * all when they finish; results are still reported in input order.
+ *
+ * @author cmayes
+ */
+public class FileSchedule {
+    /** Logger. */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(FileSchedule.class);
+    private final Policy policy;
+    private final List<File> files = new ArrayList<File>();
+    private long totalBytes;
+    private File firstFile;
+    private long startNanos;
+    private long endNanos;
+
+    /**
+     * The orders files can be started in.
+     */
+    public static enum Policy {
+        /** The order the files were given or found in. */
+        INPUT,
+        /** The largest files first. */
+        LARGEST,
+        /**
+         * Files in the same directory together, the directory with the most
+         * bytes first and the largest files first within each.
+         */
+        DIRECTORY,
+        /** By inode number, which follows the layout of many local disks. */
+        INODE
+    }
+
+    /**
+     * Creates a schedule with the given policy.
+     *
+     * @param schedPolicy
+     *            The order to start files in.
+     */
+    public FileSchedule(final Policy schedPolicy) {
+        this.policy = asNotNull(schedPolicy, "Policy is null");
+    }
+
+    /**
+     * @return Whether files are collected to be started when the processor
+     *         finishes rather than started as they are given.
+     */
+    public boolean isBatched() {
+        return !Policy.INPUT.equals(policy);
+    }
+
+    /**
+     * Collects files to be started later.
+     *
+     * @param batch
+     *            The files, in input order.
+     */
+    void add(final List<File> batch) {
+        files.addAll(batch);
+    }
+
+    /**
+     * @return The collected files, in input order.
+     */
+    List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the order to start the collected files in and notes the start of
+     * the batch.
+     *
+     * @return The indexes of the collected files in the order to start them.
+     */
+    int[] start() {
+        final int count = files.size();
+        final long[] sizes = new long[count];
+        totalBytes = 0;
+        for (int i = 0; i < count; i++) {
+            sizes[i] = files.get(i).length();
+            totalBytes += sizes[i];
+        }
+        final List<Integer> order = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        // The sort is stable, so ties stay in input order.
+        if (Policy.LARGEST.equals(policy)) {
+            Collections.sort(order, descending(sizes));
+        } else if (Policy.DIRECTORY.equals(policy)) {
+            Collections.sort(order, descending(sizes));
+            Collections.sort(order, descending(directoryBytes(sizes)));
+        } else if (Policy.INODE.equals(policy)) {
+            Collections.sort(order, ascending(readInodes()));
+        }
+        final int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = order.get(i);
+        }
+        firstFile = count == 0 ? null : files.get(indexes[0]);
+        startNanos = System.nanoTime();
+        return indexes;
+    }
+
+    /**
+     * Notes the end of the batch.
+     */
+    void finished() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @param sizes
+     *            The size of each collected file.
+     * @return The total size of each file's directory.
+     */
+    private long[] directoryBytes(final long[] sizes) {
+        final Map<File, Long> dirBytes = new HashMap<File, Long>();
+        for (int i = 0; i < sizes.length; i++) {
+            final File dir = files.get(i).getAbsoluteFile().getParentFile();
+            final Long bytes = dirBytes.get(dir);
+            dirBytes.put(dir, (bytes == null ? 0 : bytes) + sizes[i]);
+        }
+        final long[] totals = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            totals[i] = dirBytes.get(files.get(i).getAbsoluteFile()
+                    .getParentFile());
+        }
+        return totals;
+    }
+
+    /**
+     * @return The inode number of each collected file, or 0 where the file
+     *         system has none.
+     */
+    private long[] readInodes() {
+        final long[] inodes = new long[files.size()];
+        for (int i = 0; i < inodes.length; i++) {
+            try {
+                inodes[i] = ((Number) Files.getAttribute(files.get(i)
+                        .toPath(), "unix:ino")).longValue();
+            } catch (final IOException e) {
+                LOGGER.debug("Can't read inode of {}: {}", files.get(i),
+                        e.getMessage());
+            } catch (final UnsupportedOperationException e) {
+                LOGGER.debug("No inodes here; keeping input order");
+                break;
+            }
+        }
+        return inodes;
+    }
+
+    /**
+     * @param keys
+     *            A key for each collected file.
+     * @return A comparator of indexes by descending key.
+     */
+    private static Comparator<Integer> descending(final long[] keys) {
+        return new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Long.compare(keys[second], keys[first]);
+            }
+        };
+    }
+
+    /**
+     * @param keys
+     *            A key for each collected file.
+     * @return A comparator of indexes by ascending key.
+     */
+    private static Comparator<Integer> ascending(final long[] keys) {
+        return new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Long.compare(keys[first], keys[second]);
+            }
+        };
+    }
+
+    /**
+     * @return the order files are started in
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of files in the batch
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return the total size of the batch's files
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the milliseconds from the start of the batch to the end of its
+     *         last file, or 0 if it hasn't finished
+     */
+    public long getMakespanMillis() {
+        return endNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(endNanos
+                - startNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d files, %d bytes, %s started first, "
+                + "%d ms to finish", policy, getFileCount(), totalBytes,
+                firstFile == null ? "none" : firstFile.getName(),
+                getMakespanMillis());
+    }
+}
@@ -0,0 +1,243 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.SnapshotFollower;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Follows files that are still being written, writing a new result for a file
+ * to the accumulator each time it grows. Each poll reads only what was
+ * appended since the last one (see {@link SnapshotFollower}). Directories are
+ * searched again at each poll so that new jobs are picked up. Following stops
+ * when every file's last job has terminated and no file grew during a poll,
+ * or when the thread is interrupted.
+ * <p>
+ * Compressed files and archives aren't being written, so they are read once
+ * with the loader.
+ *
+ * @author cmayes
+ *
+ * @param <T>
+ *            The type that is returned from file processing.
+ */
+public class FollowFileProcessor<T> extends AccumulatingFileProcessor<T> {
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final HandlingType handlingType;
+    private final SnapshotFollower follower;
+    private final long pollMillis;
+    private final Set<File> followed = new LinkedHashSet<File>();
+    private final Set<File> readOnce = new LinkedHashSet<File>();
+    private boolean searching;
+
+    /**
+     * Creates a processor that follows files with the given follower.
+     *
+     * @param handType
+     *            The handling type; only snapshot and convergence types can be
+     *            followed.
+     * @param theParser
+     *            The parser for compressed files and archives.
+     * @param theDisp
+     *            The display to use.
+     * @param calcs
+     *            The calculations to use.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param theFollower
+     *            Reads what is appended to each file.
+     * @param pollTime
+     *            The time between polls in milliseconds.
+     * @throws IllegalArgumentException
+     *             If the type can't be followed or the time isn't positive.
+     */
+    public FollowFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final SnapshotFollower theFollower, final long pollTime) {
+        super(handType, theParser, theDisp, calcs, fileHandler);
+        if (!isFollowable(handType)) {
+            throw new IllegalArgumentException("Can't follow files for "
+                    + handType.getCommandName());
+        }
+        if (pollTime < 1) {
+            throw new IllegalArgumentException("Poll time must be positive: "
+                    + pollTime);
+        }
+        this.handlingType = handType;
+        this.follower = asNotNull(theFollower, "Follower is null");
+        this.pollMillis = pollTime;
+    }
+
+    /**
+     * Returns whether files can be followed for the handling type.
+     *
+     * @param handType
+     *            The handling type to check.
+     * @return Whether the type's results can be read from a followed file.
+     */
+    public static boolean isFollowable(final HandlingType handType) {
+        switch (handType) {
+        case SNAPSHOT:
+        case CPSNAPSHOT:
+        case CONVERGENCE:
+        case CONVSERIES:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc} The files are followed until they finish unless they are
+     * being found by a directory search, which follows them itself.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayAll(List)
+     */
+    @Override
+    public void displayAll(final List<File> processMe) {
+        for (File targetFile : processMe) {
+            if (Compression.forName(targetFile.getName()) != null
+                    || ArchiveInput.isArchive(targetFile)) {
+                if (readOnce.add(targetFile)) {
+                    super.displayAll(Collections.singletonList(targetFile));
+                }
+            } else {
+                followed.add(targetFile);
+            }
+        }
+        if (!searching) {
+            follow(null);
+        }
+    }
+
+    /**
+     * Follows the files in the directory and its children, including files
+     * that are created while following.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayDir(File)
+     */
+    @Override
+    public void displayDir(final File processDir) {
+        follow(processDir);
+    }
+
+    /**
+     * Polls until every file has finished.
+     *
+     * @param dir
+     *            The directory to search before each poll; null for none.
+     */
+    private void follow(final File dir) {
+        while (true) {
+            if (dir != null) {
+                searching = true;
+                try {
+                    super.displayDir(dir);
+                } finally {
+                    searching = false;
+                }
+            }
+            final boolean grew = pollAll();
+            if (!grew && isFinished()) {
+                logger.debug("All {} followed files have finished",
+                        followed.size());
+                return;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.info("Stopped following files");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Polls each file, writing results for those that grew. A file that can't
+     * be read is no longer followed.
+     *
+     * @return Whether any file grew.
+     */
+    private boolean pollAll() {
+        boolean grew = false;
+        for (File file : new ArrayList<File>(followed)) {
+            try {
+                if (follower.poll(file)) {
+                    grew = true;
+                    write(result(file));
+                }
+            } catch (final EnvironmentException e) {
+                logger.warn("Stopped following " + file + ": " + e.getMessage());
+                follower.forget(file);
+                followed.remove(file);
+            }
+        }
+        try {
+            getAccWriter().flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing results", e);
+        }
+        return grew;
+    }
+
+    /**
+     * @return Whether every followed file's last job has terminated.
+     */
+    private boolean isFinished() {
+        for (File file : followed) {
+            if (TerminationStatus.INCOMPLETE.equals(follower.getStatus(file))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the file's result for the handling type.
+     *
+     * @param file
+     *            The polled file.
+     * @return The file's current result.
+     */
+    @SuppressWarnings("unchecked")
+    private T result(final File file) {
+        switch (handlingType) {
+        case CONVERGENCE:
+        case CONVSERIES:
+            return (T) follower.getConvergence(file);
+        default:
+            return (T) follower.getSnapshot(file);
+        }
+    }
+
+    /**
+     * {@inheritDoc} Closes the followed files.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#finish()
+     */
+    @Override
+    public void finish() {
+        follower.close();
+        super.finish();
+    }
+}
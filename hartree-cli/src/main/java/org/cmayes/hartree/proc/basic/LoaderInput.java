@@ -0,0 +1,213 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.cmayes.hartree.loader.BufferLoader;
+import org.cmayes.hartree.loader.FileLoader;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.loader.StepLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Hands a file or archive entry to a loader in the cheapest form it accepts.
+ * A {@link FileLoader} reads an uncompressed file itself. A
+ * {@link BufferLoader} is given the file mapped into memory, or an entry's
+ * bytes, which it reads as ASCII without decoding them. Other loaders, and
+ * compressed files, are read through a reader.
+ *
+ * @author cmayes
+ */
+public final class LoaderInput {
+    /** Logger. */
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(LoaderInput.class);
+
+    /**
+     * Not instantiated.
+     */
+    private LoaderInput() {
+    }
+
+    /**
+     * Returns whether the file can be mapped into a single buffer: it isn't
+     * compressed and is smaller than 2 GB.
+     *
+     * @param file
+     *            The file to check.
+     * @return Whether the file can be mapped.
+     */
+    public static boolean isMappable(final File file) {
+        return Compression.forName(file.getName()) == null
+                && file.length() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Maps the file into memory. The mapping stays valid after this method
+     * closes the file.
+     *
+     * @param file
+     *            The file to map.
+     * @return The file's bytes.
+     * @throws EnvironmentException
+     *             If the file can't be mapped.
+     */
+    public static ByteBuffer map(final File file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems mapping " + file, e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    LOGGER.warn("Problems closing " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the file with the loader.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param file
+     *            The file to load.
+     * @param <T>
+     *            The type of the loaded result.
+     * @return The loaded result, or null if the loader skipped the file.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T load(final Loader<T> loader, final File file) {
+        asNotNull(loader, "Loader is null");
+        if (loader instanceof FileLoader
+                && Compression.forName(file.getName()) == null) {
+            return ((FileLoader<T>) loader).load(file);
+        }
+        if (loader instanceof BufferLoader && isMappable(file)) {
+            return ((BufferLoader<T>) loader).load(file.getName(), map(file));
+        }
+        Reader reader = null;
+        try {
+            reader = Compression.openReader(file);
+            return loader.load(Compression.baseName(file), reader);
+        } catch (final FileNotFoundException e) {
+            throw new EnvironmentException(
+                    "File not found while creating reader", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Loads an archive entry with the loader.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param srcName
+     *            The entry's path in the archive.
+     * @param data
+     *            The entry's data.
+     * @param <T>
+     *            The type of the loaded result.
+     * @return The loaded result, or null if the loader skipped the entry.
+     * @throws IOException
+     *             If there's a problem reading the entry.
+     */
+    public static <T> T load(final Loader<T> loader, final String srcName,
+            final InputStream data) throws IOException {
+        if (loader instanceof BufferLoader) {
+            return load(loader, srcName, ArchiveInput.toBytes(data));
+        }
+        return loader.load(srcName, ArchiveInput.toReader(data));
+    }
+
+    /**
+     * Loads an archive entry that was read into memory with the loader.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param srcName
+     *            The entry's path in the archive.
+     * @param data
+     *            The entry's bytes.
+     * @param <T>
+     *            The type of the loaded result.
+     * @return The loaded result, or null if the loader skipped the entry.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T load(final Loader<T> loader, final String srcName,
+            final byte[] data) {
+        if (loader instanceof BufferLoader) {
+            return ((BufferLoader<T>) loader).load(srcName,
+                    ByteBuffer.wrap(data));
+        }
+        return loader.load(srcName, ArchiveInput.toReader(data));
+    }
+
+    /**
+     * Passes each step of the file to the handler, mapping the file unless it
+     * is compressed.
+     *
+     * @param loader
+     *            The loader to use.
+     * @param file
+     *            The file to load.
+     * @param handler
+     *            The handler for each step.
+     * @param <T>
+     *            The type of each step.
+     * @return The number of steps passed to the handler.
+     */
+    public static <T> int loadSteps(final StepLoader<T> loader,
+            final File file, final StepHandler<T> handler) {
+        asNotNull(loader, "Loader is null");
+        if (isMappable(file)) {
+            return loader.loadSteps(file.getName(), map(file), handler);
+        }
+        Reader reader = null;
+        try {
+            reader = Compression.openReader(file);
+            return loader.loadSteps(Compression.baseName(file), reader,
+                    handler);
+        } catch (final FileNotFoundException e) {
+            throw new EnvironmentException(
+                    "File not found while creating reader", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Closes the reader, logging any problems.
+     *
+     * @param reader
+     *            The reader to close; may be null.
+     */
+    private static void close(final Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final IOException e) {
+                LOGGER.warn("Problems closing reader: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,669 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records the rows written for each file of an accumulated run so that a later
+ * run only parses the files that are new or have changed. The manifest is kept
+ * next to the accumulator output as one JSON object per line: a first line
+ * with the run's settings, then the path, size, modification time, SHA-1 hash
+ * and rows of each file. A file is unchanged when its size and modification
+ * time match, or when its size and hash match.
+ *
+ * <p>
+ * Each file is appended to the manifest as soon as it is written, so an
+ * interrupted run resumes where it stopped. The manifest is rewritten without
+ * files that no longer exist when the run finishes. A manifest written with
+ * other settings is ignored.
+ * </p>
+ *
+ * <p>
+ * The manifest writes the accumulator's framing itself: the CSV header, or the
+ * brackets and commas of a JSON array. The rows of each file are kept without
+ * that framing, so cached and parsed files can be written in any mix.
+ * </p>
+ *
+ * @author cmayes
+ */
+public class Manifest {
+    /** The extension added to the accumulator's name. */
+    public static final String EXTENSION = ".manifest";
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final int HASH_BUF_SIZE = 64 * 1024;
+    private static final String SETTINGS = "settings";
+    private static final String FORMAT = "format";
+    private static final String HEADER = "header";
+    private static final String PATH = "path";
+    private static final String SIZE = "size";
+    private static final String MTIME = "mtime";
+    private static final String HASH = "hash";
+    private static final String ROWS = "rows";
+
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final File file;
+    private final String settings;
+    private final MediaType format;
+    private final Map<String, Map<String, Object>> previous = new HashMap<String, Map<String, Object>>();
+    private final Map<String, Map<String, Object>> current = new LinkedHashMap<String, Map<String, Object>>();
+    private Writer journal;
+    private String header;
+    private boolean displayStarted;
+    private boolean outStarted;
+    private int reusedCount;
+    private int parsedCount;
+
+    /**
+     * Opens the manifest for the given accumulator, reading the files recorded
+     * by an earlier run with the same settings.
+     *
+     * @param accFile
+     *            The accumulator output file.
+     * @param runSettings
+     *            A description of the settings that change the rows written
+     *            for a file, such as the command and the selected fields.
+     * @param accFormat
+     *            The accumulator's media type, CSV or JSON.
+     * @throws IllegalArgumentException
+     *             If the media type is not CSV or JSON.
+     */
+    public Manifest(final File accFile, final String runSettings,
+            final MediaType accFormat) {
+        this.file = new File(asNotNull(accFile, "Accumulator is null")
+                .getPath() + EXTENSION);
+        this.settings = asNotNull(runSettings, "Settings are null");
+        this.format = asNotNull(accFormat, "Format is null");
+        if (!MediaType.CSV.equals(format) && !MediaType.JSON.equals(format)) {
+            throw new IllegalArgumentException(
+                    "Only CSV and JSON accumulators can be incremental: "
+                            + format);
+        }
+        if (file.exists()) {
+            read();
+        }
+    }
+
+    /**
+     * Reads the earlier run's records, skipping any that an interrupted run
+     * cut short.
+     */
+    private void read() {
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(
+                    file));
+            try {
+                final Map<String, Object> first = parse(reader.readLine());
+                if (first == null || !settings.equals(first.get(SETTINGS))
+                        || !format.name().equals(first.get(FORMAT))) {
+                    logger.info("Settings changed since {} was written; "
+                            + "processing every file", file.getName());
+                    return;
+                }
+                for (String line = reader.readLine(); line != null; line = reader
+                        .readLine()) {
+                    final Map<String, Object> record = parse(line);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (record.containsKey(HEADER)) {
+                        header = (String) record.get(HEADER);
+                    } else {
+                        previous.put((String) record.get(PATH), record);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + file, e);
+        }
+        logger.debug("Read {} files from {}", previous.size(), file.getName());
+    }
+
+    /**
+     * @param line
+     *            A line of the manifest.
+     * @return The line's record, or null if there is no line or it can't be
+     *         parsed.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(final String line) {
+        if (line == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(line, Map.class);
+        } catch (final IOException e) {
+            logger.debug("Skipping a broken record in {}: {}",
+                    file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the source hasn't changed since its rows were recorded.
+     * An unchanged file is kept in the manifest and its rows can be written
+     * with {@link #writeUnchanged(File, Writer)}.
+     *
+     * @param source
+     *            The file to look up.
+     * @return Whether the file is unchanged; if not, it needs parsing.
+     */
+    public boolean isUnchanged(final File source) {
+        final String path = source.getAbsolutePath();
+        final Map<String, Object> record = previous.get(path);
+        if (record == null) {
+            return false;
+        }
+        final BasicFileAttributes attrs = readAttributes(source);
+        if (attrs.size() != ((Number) record.get(SIZE)).longValue()) {
+            return false;
+        }
+        final long mtime = attrs.lastModifiedTime().toMillis();
+        if (mtime != ((Number) record.get(MTIME)).longValue()) {
+            if (!hash(source).equals(record.get(HASH))) {
+                return false;
+            }
+            // Touched but unchanged; record the new time for the next run.
+            record.put(MTIME, mtime);
+            append(record);
+        }
+        current.put(path, record);
+        reusedCount++;
+        return true;
+    }
+
+    /**
+     * Writes the recorded rows of an unchanged file.
+     *
+     * @param source
+     *            A file found unchanged by {@link #isUnchanged(File)}.
+     * @param out
+     *            The accumulator to write to.
+     */
+    public void writeUnchanged(final File source, final Writer out) {
+        emit(out, (String) current.get(source.getAbsolutePath()).get(ROWS));
+    }
+
+    /**
+     * Reads the size, modification time and hash of a file about to be
+     * parsed. Reading them first means a file that changes while it is parsed
+     * is parsed again by the next run.
+     *
+     * @param source
+     *            The file to describe.
+     * @return The file's state.
+     */
+    public FileState describe(final File source) {
+        final BasicFileAttributes attrs = readAttributes(source);
+        return new FileState(attrs.size(), attrs.lastModifiedTime()
+                .toMillis(), hash(source));
+    }
+
+    /**
+     * Writes what the display wrote for a parsed file to the accumulator and
+     * records it.
+     *
+     * @param out
+     *            The accumulator to write to.
+     * @param source
+     *            The parsed file, or null for an archive entry, which isn't
+     *            recorded.
+     * @param state
+     *            The file's state before it was parsed, or null for an
+     *            archive entry.
+     * @param chunk
+     *            What the display wrote for the file's result; empty if the
+     *            loader or a filter skipped it.
+     */
+    public void write(final Writer out, final File source,
+            final FileState state, final String chunk) {
+        final String rows = stripFraming(chunk);
+        if (source != null) {
+            final Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put(PATH, source.getAbsolutePath());
+            record.put(SIZE, state.size);
+            record.put(MTIME, state.mtime);
+            record.put(HASH, state.hash);
+            record.put(ROWS, rows);
+            current.put(source.getAbsolutePath(), record);
+            append(record);
+            parsedCount++;
+        }
+        emit(out, rows);
+    }
+
+    /**
+     * Returns whether rows for the source were written by this run, so that
+     * writing it again needs the accumulator rewritten with
+     * {@link #rewrite(Writer)}.
+     *
+     * @param source
+     *            The file to look up.
+     * @return Whether the file was written by this run.
+     */
+    public boolean isWritten(final File source) {
+        return current.containsKey(source.getAbsolutePath());
+    }
+
+    /**
+     * Writes the latest rows of every file written by this run to an emptied
+     * accumulator, in the order the files were first written. A file written
+     * more than once appears once, with the rows it was last written with.
+     *
+     * @param out
+     *            The emptied accumulator to write to.
+     */
+    public void rewrite(final Writer out) {
+        outStarted = false;
+        for (Map<String, Object> record : current.values()) {
+            emit(out, (String) record.get(ROWS));
+        }
+    }
+
+    /**
+     * Removes the display's framing from a chunk it wrote.
+     *
+     * @param chunk
+     *            What the display wrote.
+     * @return The chunk's rows.
+     */
+    private String stripFraming(final String chunk) {
+        if (chunk.isEmpty()) {
+            return chunk;
+        }
+        final boolean first = !displayStarted;
+        displayStarted = true;
+        if (MediaType.CSV.equals(format) && first) {
+            final int end = chunk.indexOf('\n') + 1;
+            final String chunkHeader = chunk.substring(0, end);
+            if (header == null) {
+                header = chunkHeader;
+                appendHeader();
+            } else if (!header.equals(chunkHeader)) {
+                logger.warn("Keeping the header recorded in {}",
+                        file.getName());
+            }
+            return chunk.substring(end);
+        }
+        return MediaType.JSON.equals(format) ? chunk.substring(1) : chunk;
+    }
+
+    /**
+     * Writes rows to the accumulator, preceded by the CSV header or JSON
+     * separator they need.
+     *
+     * @param out
+     *            The accumulator to write to.
+     * @param rows
+     *            The rows to write.
+     */
+    private void emit(final Writer out, final String rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            if (MediaType.JSON.equals(format)) {
+                out.write(outStarted ? "," : "[");
+            } else if (!outStarted) {
+                out.write(header);
+            }
+            outStarted = true;
+            out.write(rows);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing cached rows", e);
+        }
+    }
+
+    /**
+     * Ends the accumulator and rewrites the manifest with the files written by
+     * this run and the earlier files that still exist.
+     *
+     * @param out
+     *            The accumulator to end.
+     */
+    public void finish(final Writer out) {
+        try {
+            if (MediaType.JSON.equals(format)) {
+                out.write(outStarted ? "]" : "[]");
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems ending the accumulator",
+                    e);
+        } finally {
+            closeJournal();
+        }
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            final Writer writer = new FileWriter(tmpFile);
+            try {
+                writeLine(writer, settingsRecord());
+                if (header != null) {
+                    writeLine(writer, headerRecord());
+                }
+                for (Map<String, Object> record : current.values()) {
+                    writeLine(writer, record);
+                }
+                for (Map.Entry<String, Map<String, Object>> entry : previous
+                        .entrySet()) {
+                    if (!current.containsKey(entry.getKey())
+                            && new File(entry.getKey()).exists()) {
+                        writeLine(writer, entry.getValue());
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(tmpFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems rewriting " + file, e);
+        }
+    }
+
+    /**
+     * Joins the manifests kept by the shards of a run into the manifest of the
+     * merged accumulator. Manifests written with other settings than the
+     * first are left out.
+     *
+     * @param sources
+     *            The manifest of each shard.
+     * @param target
+     *            The manifest to write.
+     */
+    public static void merge(final List<File> sources, final File target) {
+        final Logger log = LoggerFactory.getLogger(Manifest.class);
+        final ObjectMapper mapper = new ObjectMapper();
+        final File tmpFile = new File(target.getPath() + ".tmp");
+        try {
+            final Writer writer = new FileWriter(tmpFile);
+            try {
+                String settingsLine = null;
+                boolean headerWritten = false;
+                for (File source : sources) {
+                    final BufferedReader reader = new BufferedReader(
+                            new FileReader(source));
+                    try {
+                        final String first = reader.readLine();
+                        if (settingsLine == null) {
+                            settingsLine = first;
+                            writer.write(first + "\n");
+                        } else if (!settingsLine.equals(first)) {
+                            log.warn("Leaving out {}: its settings differ",
+                                    source);
+                            continue;
+                        }
+                        for (String line = reader.readLine(); line != null; line = reader
+                                .readLine()) {
+                            final boolean isHeader;
+                            try {
+                                isHeader = mapper.readTree(line).has(HEADER);
+                            } catch (final IOException e) {
+                                log.debug("Skipping a broken record in {}",
+                                        source);
+                                continue;
+                            }
+                            if (isHeader && headerWritten) {
+                                continue;
+                            }
+                            headerWritten |= isHeader;
+                            writer.write(line + "\n");
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(tmpFile.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + target, e);
+        }
+    }
+
+    /**
+     * Appends a record to the manifest, starting a new manifest if this run
+     * can't use the old one.
+     *
+     * @param record
+     *            The record to append.
+     */
+    private void append(final Map<String, Object> record) {
+        try {
+            if (journal == null) {
+                final boolean fresh = previous.isEmpty() || !file.exists();
+                final boolean broken = !fresh && !endsWithNewline();
+                journal = new FileWriter(file, !fresh);
+                if (fresh) {
+                    writeLine(journal, settingsRecord());
+                    if (header != null) {
+                        writeLine(journal, headerRecord());
+                    }
+                } else if (broken) {
+                    // End the record an interrupted run cut short.
+                    journal.write('\n');
+                }
+            }
+            writeLine(journal, record);
+            journal.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + file, e);
+        }
+    }
+
+    /**
+     * @return Whether the manifest ends with a whole line.
+     * @throws IOException
+     *             If there's a problem reading the manifest.
+     */
+    private boolean endsWithNewline() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Appends the CSV header once it is known.
+     */
+    private void appendHeader() {
+        if (journal != null || !previous.isEmpty()) {
+            append(headerRecord());
+        }
+    }
+
+    /**
+     * Closes the appended manifest.
+     */
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (final IOException e) {
+            logger.warn("Problems closing " + file, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * @return The first record of a manifest.
+     */
+    private Map<String, Object> settingsRecord() {
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put(SETTINGS, settings);
+        record.put(FORMAT, format.name());
+        return record;
+    }
+
+    /**
+     * @return The record of the CSV header.
+     */
+    private Map<String, Object> headerRecord() {
+        final Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put(HEADER, header);
+        return record;
+    }
+
+    /**
+     * Writes a record as one line.
+     *
+     * @param writer
+     *            The writer to use.
+     * @param record
+     *            The record to write.
+     * @throws IOException
+     *             If there's a problem writing.
+     */
+    private void writeLine(final Writer writer,
+            final Map<String, Object> record) throws IOException {
+        try {
+            writer.write(mapper.writeValueAsString(record));
+        } catch (final JsonProcessingException e) {
+            throw new EnvironmentException("Problems writing record "
+                    + record, e);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * @param source
+     *            The file to read.
+     * @return The file's attributes.
+     */
+    private static BasicFileAttributes readAttributes(final File source) {
+        try {
+            return Files.readAttributes(source.toPath(),
+                    BasicFileAttributes.class);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + source, e);
+        }
+    }
+
+    /**
+     * @param source
+     *            The file to hash.
+     * @return The hex SHA-1 hash of the file's bytes.
+     */
+    private static String hash(final File source) {
+        try {
+            final MessageDigest digest = MessageDigest
+                    .getInstance(HASH_ALGORITHM);
+            final InputStream in = new FileInputStream(source);
+            try {
+                final byte[] buf = new byte[HASH_BUF_SIZE];
+                for (int count = in.read(buf); count >= 0; count = in
+                        .read(buf)) {
+                    digest.update(buf, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM
+                    + " is not available", e);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems hashing " + source, e);
+        }
+    }
+
+    /**
+     * @return the number of files written from the manifest
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * @return the number of files parsed and recorded
+     */
+    public int getParsedCount() {
+        return parsedCount;
+    }
+
+    /**
+     * @return the manifest file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: reused %d files, parsed %d",
+                file.getName(), reusedCount, parsedCount);
+    }
+
+    /**
+     * The size, modification time and hash of a file before it was parsed.
+     */
+    public static final class FileState {
+        private final long size;
+        private final long mtime;
+        private final String hash;
+
+        /**
+         * @param fileSize
+         *            The file's size in bytes.
+         * @param modTime
+         *            The file's modification time in milliseconds.
+         * @param fileHash
+         *            The file's hash.
+         */
+        private FileState(final long fileSize, final long modTime,
+                final String fileHash) {
+            this.size = fileSize;
+            this.mtime = modTime;
+            this.hash = fileHash;
+        }
+    }
+}
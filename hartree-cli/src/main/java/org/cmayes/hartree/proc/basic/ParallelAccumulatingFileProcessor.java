@@ -0,0 +1,365 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.proc.InputFileHandler;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * An {@link AccumulatingFileProcessor} that loads and calculates several files
+ * at once. Results are written by the calling thread in the order the files
+ * were given, so the output matches a linear run. At most a fixed window of
+ * files per worker is in flight. A {@link FileSchedule} may collect the files
+ * to start them in another order when the processor finishes; the window then
+ * slides along the schedule, and results that finish early wait in it for
+ * their turn to be written.
+ *
+ * @author cmayes
+ *
+ * @param <T>
+ *            The type that is returned from file processing.
+ */
+public class ParallelAccumulatingFileProcessor<T> extends
+        AccumulatingFileProcessor<T> {
+    /** The number of in-flight files allowed per worker thread. */
+    public static final int FILES_PER_WORKER = 4;
+    private final ExecutorService executor;
+    private final Deque<Slot<T>> pending = new ArrayDeque<Slot<T>>();
+    private final int maxPending;
+    private final FileSchedule schedule;
+    private final List<Long> scheduledOrdinals = new ArrayList<Long>();
+    private long entryOrdinal = -1;
+
+    /**
+     * Creates a processor that will use the given parser, display and number
+     * of worker threads.
+     *
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use; it must be safe to share between threads.
+     * @param theDisp
+     *            The display to use.
+     * @param calcs
+     *            The calculations to use; they must be safe to share between
+     *            threads.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param workers
+     *            The number of worker threads.
+     * @throws IllegalArgumentException
+     *             If the worker count is not positive.
+     */
+    public ParallelAccumulatingFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int workers) {
+        this(handType, theParser, theDisp, calcs, fileHandler, workers,
+                new FileSchedule(FileSchedule.Policy.INPUT));
+    }
+
+    /**
+     * Creates a processor that will use the given parser, display, number of
+     * worker threads and schedule.
+     *
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use; it must be safe to share between threads.
+     * @param theDisp
+     *            The display to use.
+     * @param calcs
+     *            The calculations to use; they must be safe to share between
+     *            threads.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param workers
+     *            The number of worker threads.
+     * @param fileSched
+     *            The order to start files in.
+     * @throws IllegalArgumentException
+     *             If the worker count is not positive.
+     */
+    public ParallelAccumulatingFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int workers, final FileSchedule fileSched) {
+        super(handType, theParser, theDisp, calcs, fileHandler);
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                    "Worker count must be positive: " + workers);
+        }
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.maxPending = workers * FILES_PER_WORKER;
+        this.schedule = asNotNull(fileSched, "Schedule is null");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.FileProcessor#displayAll(List)
+     */
+    @Override
+    public void displayAll(final List<File> processMe) {
+        final List<File> claimed = new ArrayList<File>();
+        for (final File targetFile : processMe) {
+            final long ordinal = claim(targetFile);
+            if (ordinal < 0) {
+                continue;
+            }
+            if (schedule.isBatched()) {
+                claimed.add(targetFile);
+                scheduledOrdinals.add(ordinal);
+            } else if (ArchiveInput.isArchive(targetFile)) {
+                displayArchive(targetFile, ordinal);
+            } else {
+                submit(start(targetFile, ordinal));
+            }
+        }
+        if (schedule.isBatched()) {
+            schedule.add(claimed);
+        }
+    }
+
+    /**
+     * Starts the scheduled files in schedule order and writes their results
+     * in input order. No more than the in-flight window of files is started
+     * but unwritten at a time, so results don't pile up waiting for their
+     * turn; a file whose result is due before the window reaches it is
+     * started early. Archives are read when their results are due.
+     */
+    private void displayScheduled() {
+        final List<File> files = schedule.getFiles();
+        final List<Slot<T>> slots = new ArrayList<Slot<T>>(
+                Collections.<Slot<T>> nCopies(files.size(), null));
+        final int[] order = schedule.start();
+        int next = 0;
+        int held = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (ArchiveInput.isArchive(files.get(i))) {
+                displayArchive(files.get(i), scheduledOrdinals.get(i));
+                while (!pending.isEmpty()) {
+                    writeNext();
+                }
+                continue;
+            }
+            if (slots.get(i) == null) {
+                slots.set(i, start(files.get(i), scheduledOrdinals.get(i)));
+                held++;
+            }
+            for (; next < order.length && held < maxPending; next++) {
+                final int idx = order[next];
+                // Files before this one have been written.
+                if (idx > i && slots.get(idx) == null
+                        && !ArchiveInput.isArchive(files.get(idx))) {
+                    slots.set(idx, start(files.get(idx),
+                            scheduledOrdinals.get(idx)));
+                    held++;
+                }
+            }
+            write(slots.set(i, null));
+            held--;
+        }
+        schedule.finished();
+    }
+
+    /**
+     * Reads an archive, marking its first entry as the start of the archive's
+     * output.
+     * 
+     * @param archive
+     *            The archive to read.
+     * @param ordinal
+     *            The archive's position among the input files.
+     */
+    private void displayArchive(final File archive, final long ordinal) {
+        entryOrdinal = ordinal;
+        try {
+            displayArchive(archive);
+        } finally {
+            entryOrdinal = -1;
+        }
+    }
+
+    /**
+     * Starts loading the file unless the manifest holds its rows.
+     * 
+     * @param targetFile
+     *            The file to load.
+     * @param ordinal
+     *            The file's position among the input files.
+     * @return The file's slot in the output.
+     */
+    private Slot<T> start(final File targetFile, final long ordinal) {
+        final Slot<T> slot = new Slot<T>(targetFile, ordinal);
+        if (!isUnchanged(targetFile)) {
+            slot.result = executor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    slot.state = describe(targetFile);
+                    final T result = load(targetFile);
+                    return result == null ? null : applyCalcs(result);
+                }
+            });
+        }
+        return slot;
+    }
+
+    /**
+     * Reads the entry into memory and queues it for loading, so that the
+     * archive is read once by the calling thread while the workers load
+     * entries. Results are written in archive order.
+     * 
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayEntry(java.io.File,
+     *      java.lang.String, java.io.InputStream)
+     */
+    @Override
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) throws IOException {
+        final byte[] bytes = ArchiveInput.toBytes(data);
+        final Slot<T> slot = new Slot<T>(null, entryOrdinal);
+        entryOrdinal = -1;
+        slot.result = executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                final T result = load(path, bytes);
+                return result == null ? null : applyCalcs(result);
+            }
+        });
+        submit(slot);
+    }
+
+    /**
+     * Queues the slot, writing the oldest result if the queue is full.
+     * 
+     * @param slot
+     *            The slot to queue.
+     */
+    private void submit(final Slot<T> slot) {
+        pending.add(slot);
+        if (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Waits for the oldest pending file and writes its result unless the
+     * loader skipped it.
+     */
+    private void writeNext() {
+        write(pending.poll());
+    }
+
+    /**
+     * Waits for the file and writes its result unless the loader skipped it.
+     * 
+     * @param slot
+     *            The file's slot in the output.
+     */
+    private void write(final Slot<T> slot) {
+        if (slot.ordinal >= 0) {
+            startOutput(slot.ordinal);
+        }
+        if (slot.result == null) {
+            writeUnchanged(slot.source);
+            return;
+        }
+        try {
+            final T result = slot.result.get();
+            writeCalculated(slot.source, slot.state, result);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while waiting for a file", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EnvironmentException("Problems processing a file",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Waits for and writes every pending result.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#drain()
+     */
+    @Override
+    protected void drain() {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Writes the remaining results and stops the worker threads.
+     *
+     * @see org.cmayes.hartree.proc.FileProcessor#finish()
+     */
+    @Override
+    public void finish() {
+        try {
+            if (schedule.isBatched()) {
+                displayScheduled();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            for (Slot<T> slot : pending) {
+                if (slot.result != null) {
+                    slot.result.cancel(true);
+                }
+            }
+            pending.clear();
+            executor.shutdownNow();
+            super.finish();
+        }
+    }
+
+    /**
+     * A file's place in the output: its pending result, or no result when the
+     * manifest holds its rows.
+     * 
+     * @param <T>
+     *            The type that is returned from file processing.
+     */
+    private static final class Slot<T> {
+        private final File source;
+        private final long ordinal;
+        private Future<T> result;
+        private volatile Manifest.FileState state;
+
+        /**
+         * @param file
+         *            The file, or null for an archive entry.
+         * @param fileOrdinal
+         *            The position of the input file whose output starts with
+         *            this slot, or -1 for later entries of an archive.
+         */
+        private Slot(final File file, final long fileOrdinal) {
+            this.source = file;
+            this.ordinal = fileOrdinal;
+        }
+    }
+}
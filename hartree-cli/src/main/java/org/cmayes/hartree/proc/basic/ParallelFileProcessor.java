@@ -0,0 +1,245 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.proc.InputFileHandler;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * A {@link BasicFileProcessor} that loads, calculates and writes several files
+ * at once, each into its own output. The display must be safe to share
+ * between threads. At most a fixed number of files per worker are queued, so
+ * large directories are walked no faster than they are processed. A
+ * {@link FileSchedule} may instead collect the files and start them in another
+ * order when the processor finishes.
+ * 
+ * @author cmayes
+ * 
+ * @param <T>
+ *            The type that is returned from file processing.
+ */
+public class ParallelFileProcessor<T> extends BasicFileProcessor<T> {
+    /** The number of queued files allowed per worker thread. */
+    public static final int FILES_PER_WORKER = 2;
+    private final ExecutorService executor;
+    private final Deque<Future<?>> pending = new ArrayDeque<Future<?>>();
+    private final int maxPending;
+    private final FileSchedule schedule;
+
+    /**
+     * Creates a processor that will use the given parser, display and number
+     * of worker threads.
+     * 
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use.
+     * @param theDisp
+     *            The display to use; it must be thread-safe.
+     * @param calcs
+     *            The calculations to use.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param workers
+     *            The number of worker threads.
+     * @throws IllegalArgumentException
+     *             If the worker count is not positive.
+     */
+    public ParallelFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int workers) {
+        this(handType, theParser, theDisp, calcs, fileHandler, workers,
+                new FileSchedule(FileSchedule.Policy.INPUT));
+    }
+
+    /**
+     * Creates a processor that will use the given parser, display, number of
+     * worker threads and schedule.
+     * 
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use.
+     * @param theDisp
+     *            The display to use; it must be thread-safe.
+     * @param calcs
+     *            The calculations to use.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param workers
+     *            The number of worker threads.
+     * @param fileSched
+     *            The order to start files in.
+     * @throws IllegalArgumentException
+     *             If the worker count is not positive.
+     */
+    public ParallelFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int workers, final FileSchedule fileSched) {
+        super(handType, theParser, theDisp, calcs, fileHandler);
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                    "Worker count must be positive: " + workers);
+        }
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.maxPending = workers * FILES_PER_WORKER;
+        this.schedule = asNotNull(fileSched, "Schedule is null");
+    }
+
+    /**
+     * Queues each file for processing, or collects it when the files are
+     * scheduled. Failures are reported by a later call to this method or by
+     * {@link #finish()}.
+     * 
+     * @see org.cmayes.hartree.proc.basic.BasicFileProcessor#displayAll(java.util.List)
+     */
+    @Override
+    public void displayAll(final List<File> processFiles) {
+        if (schedule.isBatched()) {
+            schedule.add(processFiles);
+            return;
+        }
+        for (final File targetFile : processFiles) {
+            submitFile(targetFile);
+        }
+    }
+
+    /**
+     * Queues the scheduled files in schedule order.
+     */
+    private void displayScheduled() {
+        final List<File> files = schedule.getFiles();
+        for (int idx : schedule.start()) {
+            submitFile(files.get(idx));
+        }
+        while (!pending.isEmpty()) {
+            waitFor(pending.poll());
+        }
+        schedule.finished();
+    }
+
+    /**
+     * Queues the file for processing, or reads it if it is an archive.
+     * 
+     * @param targetFile
+     *            The file to process.
+     */
+    private void submitFile(final File targetFile) {
+        if (ArchiveInput.isArchive(targetFile)) {
+            displayArchive(targetFile);
+            return;
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                ParallelFileProcessor.super.displayAll(Collections
+                        .singletonList(targetFile));
+            }
+        });
+    }
+
+    /**
+     * Reads the entry into memory and queues it for processing, so that the
+     * archive is read by the calling thread while the workers load entries.
+     * 
+     * @see org.cmayes.hartree.proc.basic.BasicFileProcessor#displayEntry(java.io.File,
+     *      java.lang.String, java.io.InputStream)
+     */
+    @Override
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) {
+        final byte[] bytes;
+        try {
+            bytes = ArchiveInput.toBytes(data);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + path
+                    + " from " + archive, e);
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                ParallelFileProcessor.super.displayEntry(archive, path,
+                        new ByteArrayInputStream(bytes));
+            }
+        });
+    }
+
+    /**
+     * Queues the task, first waiting for the oldest one if the queue is full.
+     * 
+     * @param task
+     *            The task to queue.
+     */
+    private void submit(final Runnable task) {
+        while (pending.size() >= maxPending) {
+            waitFor(pending.poll());
+        }
+        pending.add(executor.submit(task));
+    }
+
+    /**
+     * Waits for the given file's processing to complete.
+     * 
+     * @param future
+     *            The file's pending result.
+     */
+    private void waitFor(final Future<?> future) {
+        try {
+            future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while waiting for a file", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EnvironmentException("Problems processing a file",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Waits for all queued files and stops the worker threads.
+     * 
+     * @see org.cmayes.hartree.proc.basic.BasicFileProcessor#finish()
+     */
+    @Override
+    public void finish() {
+        try {
+            if (schedule.isBatched()) {
+                displayScheduled();
+            }
+            while (!pending.isEmpty()) {
+                waitFor(pending.poll());
+            }
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            executor.shutdownNow();
+            super.finish();
+        }
+    }
+}
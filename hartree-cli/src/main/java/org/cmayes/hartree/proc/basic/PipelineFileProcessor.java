@@ -0,0 +1,509 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.FileLoader;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * An {@link AccumulatingFileProcessor} that splits the work into stages, each
+ * with its own threads, joined by bounded queues: files are discovered by the
+ * calling thread, read into memory, parsed, calculated and written. A slow
+ * network file system then holds up only the read threads, while parsing and
+ * calculation go on with what has been read. A stage that can't keep up
+ * blocks the stages before it, and no more than a fixed number of files are
+ * in flight, so memory stays bounded when output is the bottleneck. Results
+ * are written in the order the files were found, so the output matches a
+ * linear run.
+ * <p>
+ * Files that a {@link FileLoader} reads in part aren't read ahead; the loader
+ * reads them in the parse stage. Archives are read by the calling thread,
+ * which queues their entries for parsing. The work of each stage is counted
+ * by a {@link PipelineStage}.
+ *
+ * @author cmayes
+ *
+ * @param <T>
+ *            The type that is returned from file processing.
+ */
+public class PipelineFileProcessor<T> extends AccumulatingFileProcessor<T> {
+    /** The default capacity of each queue between stages. */
+    public static final int DEF_QUEUE_SIZE = 16;
+    /** The default number of read threads. */
+    public static final int DEF_READ_THREADS = 2;
+    /** The default number of calculation threads. */
+    public static final int DEF_CALC_THREADS = 1;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Loader<T> parser;
+    private final Display<T> displayer;
+    private final BlockingQueue<Item<T>> readQueue;
+    private final BlockingQueue<Item<T>> parseQueue;
+    private final BlockingQueue<Item<T>> calcQueue;
+    private final BlockingQueue<Item<T>> displayQueue;
+    private final PipelineStage discoverStage;
+    private final PipelineStage readStage;
+    private final PipelineStage parseStage;
+    private final PipelineStage calcStage;
+    private final PipelineStage displayStage;
+    /** Limits the number of files between discovery and display. */
+    private final Semaphore inFlight;
+    /** Marks the end of the input; it follows every item through the stages. */
+    private final Item<T> end = new Item<T>(-1, null, null, null);
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private long nextSeq;
+    private long discoverMark = System.nanoTime();
+    private volatile Throwable failure;
+    private boolean failureReported;
+
+    /**
+     * Creates a processor with the given number of threads for each stage.
+     *
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use; it must be safe to share between threads.
+     * @param theDisp
+     *            The display to use.
+     * @param calcs
+     *            The calculations to use; they must be safe to share between
+     *            threads.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param readThreads
+     *            The number of threads reading files.
+     * @param parseThreads
+     *            The number of threads parsing files.
+     * @param calcThreads
+     *            The number of threads applying calculations.
+     * @param queueSize
+     *            The capacity of each queue between stages.
+     * @throws IllegalArgumentException
+     *             If a thread count or the queue size is not positive.
+     */
+    public PipelineFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int readThreads, final int parseThreads,
+            final int calcThreads, final int queueSize) {
+        super(handType, theParser, theDisp, calcs, fileHandler);
+        checkPositive("Read thread count", readThreads);
+        checkPositive("Parse thread count", parseThreads);
+        checkPositive("Calculation thread count", calcThreads);
+        checkPositive("Queue size", queueSize);
+        this.parser = asNotNull(theParser, "Parser is null");
+        this.displayer = asNotNull(theDisp, "Display is null");
+        this.readQueue = new ArrayBlockingQueue<Item<T>>(queueSize);
+        this.parseQueue = new ArrayBlockingQueue<Item<T>>(queueSize);
+        this.calcQueue = new ArrayBlockingQueue<Item<T>>(queueSize);
+        this.displayQueue = new ArrayBlockingQueue<Item<T>>(queueSize);
+        this.discoverStage = new PipelineStage("discover", 1, null);
+        this.readStage = new PipelineStage("read", readThreads, readQueue);
+        this.parseStage = new PipelineStage("parse", parseThreads, parseQueue);
+        this.calcStage = new PipelineStage("calculate", calcThreads, calcQueue);
+        this.displayStage = new PipelineStage("display", 1, displayQueue);
+        // Every queue may be full and every thread holding an item.
+        this.inFlight = new Semaphore(queueSize * 4 + readThreads
+                + parseThreads + calcThreads + 1);
+        start(readStage, readQueue, parseQueue, new Work<T>() {
+            @Override
+            public void process(final Item<T> item) {
+                read(item);
+            }
+        });
+        start(parseStage, parseQueue, calcQueue, new Work<T>() {
+            @Override
+            public void process(final Item<T> item) {
+                item.result = item.data == null ? load(item.file) : LoaderInput
+                        .load(parser, item.srcName, item.data);
+                item.data = null;
+            }
+        });
+        start(calcStage, calcQueue, displayQueue, new Work<T>() {
+            @Override
+            public void process(final Item<T> item) {
+                if (item.result != null) {
+                    item.result = applyCalcs(item.result);
+                }
+            }
+        });
+        final Thread display = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                display();
+            }
+        }, "pipeline-display");
+        display.setDaemon(true);
+        threads.add(display);
+        display.start();
+    }
+
+    /**
+     * Queues each file for reading, waiting while the pipeline is full.
+     * Failures are reported by a later call to this method or by
+     * {@link #finish()}.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayAll(java.util.List)
+     */
+    @Override
+    public void displayAll(final List<File> processMe) {
+        for (File targetFile : processMe) {
+            checkFailure();
+            if (ArchiveInput.isArchive(targetFile)) {
+                displayArchive(targetFile);
+                continue;
+            }
+            submit(new Item<T>(nextSeq++, targetFile,
+                    Compression.baseName(targetFile), null), readQueue);
+        }
+    }
+
+    /**
+     * Queues the entry, which has been read, for parsing.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayEntry(java.io.File,
+     *      java.lang.String, java.io.InputStream)
+     */
+    @Override
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) throws IOException {
+        checkFailure();
+        submit(new Item<T>(nextSeq++, null, path, ArchiveInput.toBytes(data)),
+                parseQueue);
+    }
+
+    /**
+     * @return the stages in pipeline order
+     */
+    public List<PipelineStage> getStages() {
+        final List<PipelineStage> stages = new ArrayList<PipelineStage>();
+        Collections.addAll(stages, discoverStage, readStage, parseStage,
+                calcStage, displayStage);
+        return stages;
+    }
+
+    /**
+     * Waits for the queued files to be written, then stops the stages.
+     *
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#finish()
+     */
+    @Override
+    public void finish() {
+        try {
+            readQueue.put(end);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while waiting for the pipeline", e);
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            for (PipelineStage stage : getStages()) {
+                logger.info("Pipeline stage {}", stage);
+            }
+            super.finish();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Reads the file into memory unless the loader reads it in part.
+     *
+     * @param item
+     *            The file to read.
+     */
+    private void read(final Item<T> item) {
+        final Compression comp = Compression.forName(item.file.getName());
+        if (parser instanceof FileLoader && comp == null) {
+            return;
+        }
+        try {
+            if (comp == null) {
+                item.data = Files.readAllBytes(item.file.toPath());
+                return;
+            }
+            final InputStream in = new DecompressingInputStream(item.file,
+                    comp);
+            try {
+                item.data = ArchiveInput.toBytes(in);
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + item.file, e);
+        }
+    }
+
+    /**
+     * Writes the results in the order their files were found. Items that
+     * finish early wait for those before them; there are never more of them
+     * than files in flight.
+     */
+    private void display() {
+        final SortedMap<Long, Item<T>> waiting = new TreeMap<Long, Item<T>>();
+        long next = 0;
+        try {
+            for (Item<T> item = displayQueue.take(); item != end; item = displayQueue
+                    .take()) {
+                waiting.put(item.seq, item);
+                while (!waiting.isEmpty() && waiting.firstKey() == next) {
+                    final long start = System.nanoTime();
+                    show(waiting.remove(next++));
+                    displayStage.record(System.nanoTime() - start, 0);
+                    inFlight.release();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the item's result, or records its failure. Nothing more is
+     * written after a failure.
+     *
+     * @param item
+     *            The item to write.
+     */
+    private void show(final Item<T> item) {
+        if (failure != null) {
+            return;
+        }
+        if (item.error != null) {
+            failure = item.error;
+        } else if (item.result != null) {
+            try {
+                displayer.write(getAccWriter(), item.result);
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Queues the item, waiting while the pipeline is full. The calling
+     * thread's time between items is counted as discovery.
+     *
+     * @param item
+     *            The item to queue.
+     * @param queue
+     *            The queue of the item's first stage.
+     */
+    private void submit(final Item<T> item, final BlockingQueue<Item<T>> queue) {
+        final long start = System.nanoTime();
+        try {
+            inFlight.acquire();
+            queue.put(item);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while queueing " + item.srcName, e);
+        }
+        sampleDepth(queue);
+        final long queued = System.nanoTime();
+        discoverStage.record(start - discoverMark, queued - start);
+        discoverMark = queued;
+    }
+
+    /**
+     * Starts the threads of a stage.
+     *
+     * @param stage
+     *            The stage's counts.
+     * @param in
+     *            The queue the stage takes items from.
+     * @param out
+     *            The queue of the next stage.
+     * @param work
+     *            What the stage does to each item.
+     */
+    private void start(final PipelineStage stage,
+            final BlockingQueue<Item<T>> in, final BlockingQueue<Item<T>> out,
+            final Work<T> work) {
+        final AtomicInteger running = new AtomicInteger(stage.getThreads());
+        for (int i = 0; i < stage.getThreads(); i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runStage(stage, in, out, work, running);
+                }
+            }, "pipeline-" + stage.getName() + "-" + (i + 1));
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Takes items from the queue until the end of the input, passing each to
+     * the next stage once it is handled. An item that failed is passed on
+     * without further work so that the failure is reported in order. The last
+     * thread of the stage to see the end passes it on.
+     *
+     * @param stage
+     *            The stage's counts.
+     * @param in
+     *            The queue the stage takes items from.
+     * @param out
+     *            The queue of the next stage.
+     * @param work
+     *            What the stage does to each item.
+     * @param running
+     *            The number of the stage's threads that haven't seen the end.
+     */
+    private void runStage(final PipelineStage stage,
+            final BlockingQueue<Item<T>> in, final BlockingQueue<Item<T>> out,
+            final Work<T> work, final AtomicInteger running) {
+        try {
+            for (Item<T> item = in.take(); item != end; item = in.take()) {
+                final long start = System.nanoTime();
+                if (item.error == null) {
+                    try {
+                        work.process(item);
+                    } catch (final Throwable e) {
+                        // Errors are reported on the calling thread.
+                        item.error = e;
+                        item.data = null;
+                    }
+                }
+                final long worked = System.nanoTime();
+                out.put(item);
+                stage.record(worked - start, System.nanoTime() - worked);
+                sampleDepth(out);
+            }
+            if (running.decrementAndGet() == 0) {
+                out.put(end);
+            } else {
+                in.put(end);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Samples the depth of the stage fed by the queue.
+     *
+     * @param queue
+     *            The queue that was added to.
+     */
+    private void sampleDepth(final BlockingQueue<Item<T>> queue) {
+        if (queue == readQueue) {
+            readStage.sampleDepth();
+        } else if (queue == parseQueue) {
+            parseStage.sampleDepth();
+        } else if (queue == calcQueue) {
+            calcStage.sampleDepth();
+        } else if (queue == displayQueue) {
+            displayStage.sampleDepth();
+        }
+    }
+
+    /**
+     * Throws the first failure, once.
+     */
+    private void checkFailure() {
+        final Throwable cause = failure;
+        if (cause == null || failureReported) {
+            return;
+        }
+        failureReported = true;
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new EnvironmentException("Problems processing a file", cause);
+    }
+
+    /**
+     * @param desc
+     *            The value's description.
+     * @param value
+     *            The value to check.
+     * @throws IllegalArgumentException
+     *             If the value isn't positive.
+     */
+    private static void checkPositive(final String desc, final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(desc + " must be positive: "
+                    + value);
+        }
+    }
+
+    /**
+     * What a stage does to each item.
+     *
+     * @param <T>
+     *            The type of the item's result.
+     */
+    private interface Work<T> {
+        /**
+         * Handles the item.
+         *
+         * @param item
+         *            The item to handle.
+         */
+        void process(Item<T> item);
+    }
+
+    /**
+     * A file or archive entry moving through the stages.
+     *
+     * @param <T>
+     *            The type of the item's result.
+     */
+    private static final class Item<T> {
+        private final long seq;
+        private final File file;
+        private final String srcName;
+        private byte[] data;
+        private T result;
+        private Throwable error;
+
+        /**
+         * @param sequence
+         *            The item's place in the output.
+         * @param theFile
+         *            The file to read; null for an archive entry.
+         * @param name
+         *            The name of the item's source.
+         * @param bytes
+         *            The item's data if it has already been read.
+         */
+        private Item(final long sequence, final File theFile,
+                final String name, final byte[] bytes) {
+            this.seq = sequence;
+            this.file = theFile;
+            this.srcName = name;
+            this.data = bytes;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the work of one stage of a {@link PipelineFileProcessor} so that its
+ * thread counts and queue size can be tuned. A stage that is busy most of the
+ * time needs more threads; one that is blocked most of the time is waiting on
+ * a slower stage after it.
+ *
+ * @author cmayes
+ */
+public class PipelineStage {
+    private final String name;
+    private final int threads;
+    private final BlockingQueue<?> queue;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong itemCount = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * Creates a stage with the given input queue.
+     *
+     * @param stageName
+     *            The stage's name.
+     * @param threadCount
+     *            The number of threads running the stage.
+     * @param inQueue
+     *            The queue the stage takes items from; null for the first
+     *            stage.
+     */
+    public PipelineStage(final String stageName, final int threadCount,
+            final BlockingQueue<?> inQueue) {
+        this.name = asNotNull(stageName, "Name is null");
+        this.threads = threadCount;
+        this.queue = inQueue;
+    }
+
+    /**
+     * Records an item that the stage has handled.
+     *
+     * @param busy
+     *            The nanoseconds spent working on the item.
+     * @param blocked
+     *            The nanoseconds spent waiting to pass it on.
+     */
+    void record(final long busy, final long blocked) {
+        itemCount.incrementAndGet();
+        busyNanos.addAndGet(busy);
+        blockedNanos.addAndGet(blocked);
+    }
+
+    /**
+     * Notes the depth of the input queue after an item was added to it.
+     */
+    void sampleDepth() {
+        final int depth = getQueueDepth();
+        int max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+
+    /**
+     * @return the stage's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of threads running the stage
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the number of items the stage has handled
+     */
+    public long getItemCount() {
+        return itemCount.get();
+    }
+
+    /**
+     * @return the number of items waiting in the input queue
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the capacity of the input queue, or 0 for the first stage
+     */
+    public int getQueueCapacity() {
+        return queue == null ? 0 : queue.size() + queue.remainingCapacity();
+    }
+
+    /**
+     * @return the most items that have waited in the input queue at once
+     */
+    public int getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return the share of the stage's thread time spent working, from 0 to 1
+     */
+    public double getUtilization() {
+        return share(busyNanos.get());
+    }
+
+    /**
+     * @return the share of the stage's thread time spent waiting for room in
+     *         the next stage's queue, from 0 to 1
+     */
+    public double getBlockedShare() {
+        return share(blockedNanos.get());
+    }
+
+    /**
+     * @param nanos
+     *            A total of thread time.
+     * @return The time's share of the stage's thread time since it started.
+     */
+    private double share(final long nanos) {
+        final long elapsed = (System.nanoTime() - startNanos) * threads;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double) nanos / elapsed);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: %d threads, %d items, queue %d/%d (max %d), "
+                        + "%.0f%% busy, %.0f%% blocked, %d ms working", name,
+                threads, getItemCount(), getQueueDepth(),
+                getQueueCapacity(), getMaxQueueDepth(),
+                getUtilization() * 100, getBlockedShare() * 100,
+                TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+    }
+}
@@ -0,0 +1,128 @@
+package org.cmayes.hartree.proc.basic;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * One of a fixed number of shards of a run's input files. Each file belongs to
+ * the shard picked by a CRC-32 hash of its path relative to the input
+ * directory, so every node that sees the same input agrees on the assignment
+ * without talking to the others. Shards are numbered from 0, which matches a
+ * Slurm array declared with <code>--array=0-(N-1)</code>.
+ *
+ * @author cmayes
+ */
+public class Shard {
+    private final int index;
+    private final int count;
+
+    /**
+     * Creates shard <code>shardIndex</code> of <code>shardCount</code>.
+     *
+     * @param shardIndex
+     *            The shard's number, from 0.
+     * @param shardCount
+     *            The number of shards.
+     * @throws IllegalArgumentException
+     *             If the count isn't positive or the index isn't below it.
+     */
+    public Shard(final int shardIndex, final int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid shard %d/%d", shardIndex, shardCount));
+        }
+        this.index = shardIndex;
+        this.count = shardCount;
+    }
+
+    /**
+     * Parses a shard written as <code>index/count</code>, such as "0/8".
+     *
+     * @param spec
+     *            The shard to parse.
+     * @return The shard.
+     * @throws IllegalArgumentException
+     *             If the text isn't a valid shard.
+     */
+    public static Shard parse(final String spec) {
+        final String[] split = spec.split("/");
+        if (split.length != 2) {
+            throw new IllegalArgumentException("Expected a shard like 0/8: "
+                    + spec);
+        }
+        try {
+            return new Shard(Integer.parseInt(split[0].trim()),
+                    Integer.parseInt(split[1].trim()));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard '" + spec + "'",
+                    e);
+        }
+    }
+
+    /**
+     * @param relPath
+     *            A file's path relative to the input directory.
+     * @return Whether the file belongs to this shard.
+     */
+    public boolean owns(final String relPath) {
+        final CRC32 crc = new CRC32();
+        crc.update(relPath.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % count == index;
+    }
+
+    /**
+     * Returns the path shards are assigned by: the path relative to the input
+     * directory when the file is under it, or the path as given, with '/'
+     * between names in both cases.
+     *
+     * @param file
+     *            The input file.
+     * @param inDir
+     *            The input directory; may be null.
+     * @return The file's relative path.
+     */
+    public static String relativePath(final File file, final File inDir) {
+        Path path = file.toPath();
+        if (inDir != null) {
+            final Path base = inDir.getAbsoluteFile().toPath().normalize();
+            final Path abs = file.getAbsoluteFile().toPath().normalize();
+            if (abs.startsWith(base)) {
+                path = base.relativize(abs);
+            }
+        }
+        final StringBuilder rel = new StringBuilder();
+        for (Path name : path) {
+            if (rel.length() > 0) {
+                rel.append('/');
+            }
+            rel.append(name);
+        }
+        return rel.toString();
+    }
+
+    /**
+     * @return the shard's number, from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
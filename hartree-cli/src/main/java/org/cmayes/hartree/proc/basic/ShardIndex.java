@@ -0,0 +1,312 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Records where the output of each input file starts and ends in the
+ * accumulator of one part of a run, a shard or a {@link WorkQueue} worker, so
+ * that {@link ShardMerger} can put the rows of every part back in the order of
+ * a run on one node. Files are identified by their position among all of the
+ * run's input files, which every part counts the same way. The index is kept
+ * next to the accumulator as text: a first line with the part and format, then
+ * the position, first byte and end byte of each file that wrote anything. Each
+ * file is added as soon as its output ends, so the index of a worker that
+ * stops early still describes what it wrote.
+ *
+ * @author cmayes
+ */
+public class ShardIndex {
+    /** The extension added to the accumulator's name. */
+    public static final String EXTENSION = ".shard";
+    private static final String MAGIC = "#shard";
+    private final File accFile;
+    private final String part;
+    private final MediaType format;
+    private final List<Range> ranges = new ArrayList<Range>();
+    private Writer journal;
+    private long openOrdinal = -1;
+    private long openStart;
+
+    /**
+     * Creates an empty index for a part's accumulator.
+     *
+     * @param acc
+     *            The accumulator output file.
+     * @param partName
+     *            The part of the run, such as the shard "0/8"; it can't hold
+     *            spaces.
+     * @param accFormat
+     *            The accumulator's media type, CSV or JSON.
+     * @throws IllegalArgumentException
+     *             If the media type is not CSV or JSON.
+     */
+    public ShardIndex(final File acc, final String partName,
+            final MediaType accFormat) {
+        this.accFile = asNotNull(acc, "Accumulator is null");
+        this.part = asNotNull(partName, "Part is null");
+        this.format = asNotNull(accFormat, "Format is null");
+        if (!MediaType.CSV.equals(format) && !MediaType.JSON.equals(format)) {
+            throw new IllegalArgumentException(
+                    "Only CSV and JSON accumulators can be split: " + format);
+        }
+    }
+
+    /**
+     * Reads the index kept next to an accumulator, skipping a last line that
+     * a stopped run cut short.
+     *
+     * @param acc
+     *            The accumulator output file.
+     * @return The accumulator's index, with its files in input order.
+     * @throws IllegalArgumentException
+     *             If there is no index or it isn't one.
+     */
+    public static ShardIndex read(final File acc) {
+        final File file = indexFile(acc);
+        if (!file.exists()) {
+            throw new IllegalArgumentException("No shard index for " + acc);
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(
+                    file));
+            try {
+                final String first = reader.readLine();
+                final String[] fields = first == null ? new String[0] : first
+                        .split(" ");
+                if (fields.length != 3 || !MAGIC.equals(fields[0])) {
+                    throw new IllegalArgumentException("Not a shard index: "
+                            + file);
+                }
+                final ShardIndex index = new ShardIndex(acc, fields[1],
+                        MediaType.valueOf(fields[2]));
+                for (String line = reader.readLine(); line != null; line = reader
+                        .readLine()) {
+                    final Range range = parseRange(line);
+                    if (range != null) {
+                        index.ranges.add(range);
+                    }
+                }
+                // Work queue batches are written in the order they're claimed.
+                Collections.sort(index.ranges, new Comparator<Range>() {
+                    @Override
+                    public int compare(final Range first, final Range second) {
+                        return Long.compare(first.ordinal, second.ordinal);
+                    }
+                });
+                return index;
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + file, e);
+        }
+    }
+
+    /**
+     * @param line
+     *            A line of the index.
+     * @return The line's range, or null if it was cut short.
+     */
+    private static Range parseRange(final String line) {
+        final String[] fields = line.split(" ");
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            return new Range(Long.parseLong(fields[0]),
+                    Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Notes that the output of an input file starts, ending the output of the
+     * file before it.
+     *
+     * @param ordinal
+     *            The file's position among all of the run's input files.
+     * @param position
+     *            The number of bytes written to the accumulator so far.
+     */
+    public void start(final long ordinal, final long position) {
+        end(position);
+        openOrdinal = ordinal;
+        openStart = position;
+    }
+
+    /**
+     * Ends the output of the open file, adding it to the index if it wrote
+     * anything. The accumulator must have been flushed up to the position.
+     *
+     * @param position
+     *            The number of bytes written to the accumulator so far.
+     */
+    public void end(final long position) {
+        final long ordinal = openOrdinal;
+        openOrdinal = -1;
+        if (ordinal < 0 || position <= openStart) {
+            return;
+        }
+        final Range range = new Range(ordinal, openStart, position);
+        ranges.add(range);
+        try {
+            openJournal();
+            journal.write(String.format("%d %d %d%n", range.ordinal,
+                    range.start, range.end));
+            journal.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing "
+                    + indexFile(accFile), e);
+        }
+    }
+
+    /**
+     * Ends the output of the last file and closes the index. Call it before
+     * the display writes anything that ends the accumulator.
+     *
+     * @param position
+     *            The number of bytes written to the accumulator so far.
+     */
+    public void finish(final long position) {
+        end(position);
+        try {
+            openJournal();
+            journal.close();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing "
+                    + indexFile(accFile), e);
+        }
+    }
+
+    /**
+     * Starts the index file with the part and format unless it's started.
+     *
+     * @throws IOException
+     *             If there's a problem writing.
+     */
+    private void openJournal() throws IOException {
+        if (journal == null) {
+            journal = new FileWriter(indexFile(accFile));
+            journal.write(String.format("%s %s %s%n", MAGIC, part,
+                    format.name()));
+        }
+    }
+
+    /**
+     * Returns a copy of the index holding only the files of the given
+     * batches.
+     *
+     * @param batches
+     *            The batches to keep.
+     * @param batchSize
+     *            The number of input files in each batch.
+     * @return The copy.
+     */
+    ShardIndex retain(final BitSet batches, final int batchSize) {
+        final ShardIndex copy = new ShardIndex(accFile, part, format);
+        for (Range range : ranges) {
+            if (batches.get((int) (range.ordinal / batchSize))) {
+                copy.ranges.add(range);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @param acc
+     *            The accumulator output file.
+     * @return The accumulator's index file.
+     */
+    public static File indexFile(final File acc) {
+        return new File(acc.getPath() + EXTENSION);
+    }
+
+    /**
+     * @return the accumulator output file
+     */
+    public File getAccFile() {
+        return accFile;
+    }
+
+    /**
+     * @return the part of the run, such as the shard "0/8"
+     */
+    public String getPart() {
+        return part;
+    }
+
+    /**
+     * @return the accumulator's media type
+     */
+    public MediaType getFormat() {
+        return format;
+    }
+
+    /**
+     * @return where each file's output is in the accumulator, in input order
+     */
+    List<Range> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Where one input file's output is in the accumulator.
+     */
+    static final class Range {
+        private final long ordinal;
+        private final long start;
+        private final long end;
+
+        /**
+         * @param fileOrdinal
+         *            The file's position among the run's input files.
+         * @param startByte
+         *            The first byte of the file's output.
+         * @param endByte
+         *            The byte after the file's output.
+         */
+        Range(final long fileOrdinal, final long startByte,
+                final long endByte) {
+            this.ordinal = fileOrdinal;
+            this.start = startByte;
+            this.end = endByte;
+        }
+
+        /**
+         * @return the file's position among the run's input files
+         */
+        long getOrdinal() {
+            return ordinal;
+        }
+
+        /**
+         * @return the first byte of the file's output
+         */
+        long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the byte after the file's output
+         */
+        long getEnd() {
+            return end;
+        }
+    }
+}
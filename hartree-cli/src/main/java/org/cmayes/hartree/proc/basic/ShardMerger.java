@@ -0,0 +1,427 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Joins the accumulators of the parts of a run, every shard or the workers of
+ * a {@link WorkQueue} (see {@link ShardIndex}), into the accumulator a run on
+ * one node would have written. Each part's files are already in input order,
+ * so the parts are merged a file at a time by their position in the input.
+ * Runs of files that come from one part in a row are copied with a single
+ * channel transfer, which the OS can do without copying through the JVM when
+ * the target is a file. A CSV header is written once; the JSON arrays of the
+ * parts become one array.
+ *
+ * @author cmayes
+ */
+public class ShardMerger {
+    private static final int COPY_BUF_SIZE = 64 * 1024;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final List<ShardIndex> indexes = new ArrayList<ShardIndex>();
+    private final MediaType format;
+    private long fileCount;
+    private long byteCount;
+
+    /**
+     * Reads the indexes of the shard accumulators and checks that they are
+     * every shard of one run.
+     *
+     * @param accFiles
+     *            The accumulator of each shard, in any order.
+     * @throws IllegalArgumentException
+     *             If an accumulator has no index, or the accumulators aren't
+     *             every shard of one run.
+     */
+    public ShardMerger(final List<File> accFiles) {
+        this(readShards(accFiles));
+    }
+
+    /**
+     * Merges the given parts of a run, which between them hold each input
+     * file once.
+     *
+     * @param parts
+     *            The index of each part.
+     * @throws IllegalArgumentException
+     *             If there are no parts or their formats differ.
+     */
+    ShardMerger(final ShardIndex... parts) {
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("No accumulators to merge");
+        }
+        this.format = parts[0].getFormat();
+        for (ShardIndex part : parts) {
+            if (!format.equals(part.getFormat())) {
+                throw new IllegalArgumentException(String.format(
+                        "%s is %s; expected %s", part.getAccFile(),
+                        part.getFormat(), format));
+            }
+            indexes.add(part);
+        }
+    }
+
+    /**
+     * Reads the indexes of the shard accumulators and checks that they are
+     * every shard of one run.
+     *
+     * @param accFiles
+     *            The accumulator of each shard.
+     * @return The shards' indexes.
+     */
+    private static ShardIndex[] readShards(final List<File> accFiles) {
+        if (asNotNull(accFiles, "Accumulators are null").isEmpty()) {
+            throw new IllegalArgumentException("No shard accumulators given");
+        }
+        final ShardIndex[] shardIndexes = new ShardIndex[accFiles.size()];
+        int count = -1;
+        final BitSet seen = new BitSet();
+        for (int i = 0; i < shardIndexes.length; i++) {
+            shardIndexes[i] = ShardIndex.read(accFiles.get(i));
+            final Shard shard;
+            try {
+                shard = Shard.parse(shardIndexes[i].getPart());
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException(accFiles.get(i)
+                        + " was not written by a shard", e);
+            }
+            if (count < 0) {
+                count = shard.getCount();
+            } else if (shard.getCount() != count) {
+                throw new IllegalArgumentException(String.format(
+                        "%s is shard %s; expected %d shards",
+                        accFiles.get(i), shard, count));
+            }
+            if (seen.get(shard.getIndex())) {
+                throw new IllegalArgumentException("Shard " + shard
+                        + " was given twice");
+            }
+            seen.set(shard.getIndex());
+        }
+        if (seen.cardinality() != count) {
+            throw new IllegalArgumentException(String.format(
+                    "Got %d of %d shards; shard %d is missing",
+                    seen.cardinality(), count, seen.nextClearBit(0)));
+        }
+        return shardIndexes;
+    }
+
+    /**
+     * Writes the merged accumulator to a file, along with a merged
+     * {@link Manifest} when every shard kept one.
+     *
+     * @param target
+     *            The file to write.
+     * @throws IllegalArgumentException
+     *             If the target is one of the shard accumulators.
+     */
+    public void merge(final File target) {
+        for (ShardIndex index : indexes) {
+            if (target.getAbsoluteFile().equals(
+                    index.getAccFile().getAbsoluteFile())) {
+                throw new IllegalArgumentException("Merging into "
+                        + index.getPart() + " would overwrite it: " + target);
+            }
+        }
+        try {
+            final FileOutputStream out = new FileOutputStream(target);
+            try {
+                merge(out.getChannel());
+            } finally {
+                out.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + target, e);
+        }
+        final List<File> manifests = new ArrayList<File>();
+        for (ShardIndex index : indexes) {
+            final File manifest = new File(index.getAccFile().getPath()
+                    + Manifest.EXTENSION);
+            if (manifest.exists()) {
+                manifests.add(manifest);
+            }
+        }
+        if (manifests.size() == indexes.size()) {
+            Manifest.merge(manifests, new File(target.getPath()
+                    + Manifest.EXTENSION));
+        } else if (!manifests.isEmpty()) {
+            logger.warn("Only {} of {} parts kept a manifest; not merging "
+                    + "them", manifests.size(), indexes.size());
+        }
+    }
+
+    /**
+     * Writes the merged accumulator to a stream.
+     *
+     * @param out
+     *            The stream to write to; it is flushed but not closed.
+     */
+    public void merge(final OutputStream out) {
+        try {
+            merge(Channels.newChannel(out));
+            out.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing merged shards", e);
+        }
+    }
+
+    /**
+     * Merges the shards' files by their position in the input.
+     *
+     * @param out
+     *            The channel to write to.
+     * @throws IOException
+     *             If there's a problem reading or writing.
+     */
+    private void merge(final WritableByteChannel out) throws IOException {
+        final List<Cursor> cursors = new ArrayList<Cursor>();
+        try {
+            for (ShardIndex index : indexes) {
+                cursors.add(new Cursor(index));
+            }
+            final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(
+                    cursors.size(), new Comparator<Cursor>() {
+                        @Override
+                        public int compare(final Cursor first,
+                                final Cursor second) {
+                            return Long.compare(first.head().getOrdinal(),
+                                    second.head().getOrdinal());
+                        }
+                    });
+            for (Cursor cursor : cursors) {
+                if (cursor.hasNext()) {
+                    queue.add(cursor);
+                }
+            }
+            if (queue.isEmpty()) {
+                // Nothing was written; every shard holds the same framing.
+                transfer(cursors.get(0).channel, 0,
+                        cursors.get(0).channel.size(), out);
+                return;
+            }
+            while (!queue.isEmpty()) {
+                final Cursor cursor = queue.poll();
+                final long limit = queue.isEmpty() ? Long.MAX_VALUE : queue
+                        .peek().head().getOrdinal();
+                copyRun(cursor, limit, out);
+                if (cursor.hasNext()) {
+                    queue.add(cursor);
+                }
+            }
+            if (MediaType.JSON.equals(format)) {
+                write(out, "]");
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Copies the cursor's files that come before the limit, joining the ones
+     * that follow each other in the shard into one transfer.
+     *
+     * @param cursor
+     *            The shard to copy from.
+     * @param limit
+     *            The position of the next file from another shard.
+     * @param out
+     *            The channel to write to.
+     * @throws IOException
+     *             If there's a problem reading or writing.
+     */
+    private void copyRun(final Cursor cursor, final long limit,
+            final WritableByteChannel out) throws IOException {
+        long start = cursor.head().getStart();
+        long end = cursor.head().getEnd();
+        fileCount++;
+        cursor.next();
+        while (cursor.hasNext() && cursor.head().getOrdinal() < limit
+                && cursor.head().getStart() == end) {
+            end = cursor.head().getEnd();
+            fileCount++;
+            cursor.next();
+        }
+        if (MediaType.JSON.equals(format)) {
+            // Swap the shard's opening bracket or comma for the merged one.
+            write(out, byteCount == 0 ? "[" : ",");
+            start++;
+        } else {
+            if (byteCount == 0) {
+                transfer(cursor.channel, 0, cursor.headerLength, out);
+            }
+            if (start == 0) {
+                start = cursor.headerLength;
+            }
+        }
+        transfer(cursor.channel, start, end - start, out);
+    }
+
+    /**
+     * @param out
+     *            The channel to write to.
+     * @param text
+     *            The framing to write.
+     * @throws IOException
+     *             If there's a problem writing.
+     */
+    private void write(final WritableByteChannel out, final String text)
+            throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(text
+                .getBytes(StandardCharsets.US_ASCII));
+        while (buf.hasRemaining()) {
+            byteCount += out.write(buf);
+        }
+    }
+
+    /**
+     * Copies part of a shard to the output.
+     *
+     * @param in
+     *            The shard's channel.
+     * @param position
+     *            The first byte to copy.
+     * @param count
+     *            The number of bytes to copy.
+     * @param out
+     *            The channel to write to.
+     * @throws IOException
+     *             If there's a problem reading or writing.
+     */
+    private void transfer(final FileChannel in, final long position,
+            final long count, final WritableByteChannel out)
+            throws IOException {
+        long done = 0;
+        while (done < count) {
+            final long moved = in.transferTo(position + done, count - done,
+                    out);
+            if (moved <= 0) {
+                throw new IOException("Shard ended early at byte "
+                        + (position + done));
+            }
+            done += moved;
+        }
+        byteCount += count;
+    }
+
+    /**
+     * @return the name of the parts' accumulator, for the merged one
+     */
+    public String getAccName() {
+        return indexes.get(0).getAccFile().getName();
+    }
+
+    /**
+     * @return the number of input files merged
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%d parts, %d files, %d bytes", indexes.size(),
+                fileCount, byteCount);
+    }
+
+    /**
+     * A shard's accumulator and its next file.
+     */
+    private static final class Cursor {
+        private final List<ShardIndex.Range> ranges;
+        private final FileChannel channel;
+        private final long headerLength;
+        private int pos;
+
+        /**
+         * @param index
+         *            The shard's index.
+         * @throws IOException
+         *             If there's a problem opening the accumulator.
+         */
+        private Cursor(final ShardIndex index) throws IOException {
+            this.ranges = index.getRanges();
+            this.channel = new FileInputStream(index.getAccFile())
+                    .getChannel();
+            this.headerLength = MediaType.CSV.equals(index.getFormat()) ? readHeaderLength()
+                    : 0;
+        }
+
+        /**
+         * @return The length of the accumulator's first line.
+         * @throws IOException
+         *             If there's a problem reading.
+         */
+        private long readHeaderLength() throws IOException {
+            final ByteBuffer buf = ByteBuffer.allocate(COPY_BUF_SIZE);
+            long length = 0;
+            while (channel.read(buf, length) > 0) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    length++;
+                    if (buf.get() == '\n') {
+                        return length;
+                    }
+                }
+                buf.clear();
+            }
+            return length;
+        }
+
+        /**
+         * @return Whether there is another file.
+         */
+        private boolean hasNext() {
+            return pos < ranges.size();
+        }
+
+        /**
+         * @return The next file.
+         */
+        private ShardIndex.Range head() {
+            return ranges.get(pos);
+        }
+
+        /**
+         * Moves to the file after this one.
+         */
+        private void next() {
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.loader.StepLoader;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Runs the configured calculations over every step of each input file,
+ * writing one row per step into the accumulator output. Steps are handed to a
+ * worker pool as the loader produces them; results are written in step order
+ * by the reading thread. At most a fixed window of steps is in flight per
+ * worker, so memory use does not grow with the length of the trajectory.
+ * 
+ * @author cmayes
+ * 
+ * @param <T>
+ *            The type that is returned for each step.
+ */
+public class TrajectoryFileProcessor<T> extends AccumulatingFileProcessor<T> {
+    /** The number of in-flight steps allowed per worker thread. */
+    public static final int STEPS_PER_WORKER = 4;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final StepLoader<T> stepLoader;
+    private final Display<T> displayer;
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    /**
+     * Creates a processor that will use the given step loader, display and
+     * number of worker threads.
+     * 
+     * @param handType
+     *            The handling type.
+     * @param theParser
+     *            The parser to use; must also be a {@link StepLoader}.
+     * @param theDisp
+     *            The display to use.
+     * @param calcs
+     *            The calculations to use; they must be safe to share between
+     *            threads.
+     * @param fileHandler
+     *            The handler to use for files.
+     * @param workers
+     *            The number of worker threads.
+     * @throws IllegalArgumentException
+     *             If the parser can't load steps or the worker count is not
+     *             positive.
+     */
+    @SuppressWarnings("unchecked")
+    public TrajectoryFileProcessor(final HandlingType handType,
+            final Loader<T> theParser, final Display<T> theDisp,
+            final List<Calculation> calcs, final InputFileHandler fileHandler,
+            final int workers) {
+        super(handType, theParser, theDisp, calcs, fileHandler);
+        if (!(theParser instanceof StepLoader)) {
+            throw new IllegalArgumentException(String.format(
+                    "Loader '%s' does not load trajectory steps",
+                    theParser.getClass()));
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                    "Worker count must be positive: " + workers);
+        }
+        this.stepLoader = (StepLoader<T>) theParser;
+        this.displayer = asNotNull(theDisp, "Display is null");
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.maxPending = workers * STEPS_PER_WORKER;
+    }
+
+    /**
+     * {@inheritDoc} Each entry of a tar or zip archive is handled as a file.
+     * 
+     * @see org.cmayes.hartree.proc.FileProcessor#displayAll(List)
+     */
+    @Override
+    public void displayAll(final List<File> processMe) {
+        for (File targetFile : processMe) {
+            if (ArchiveInput.isArchive(targetFile)) {
+                displayArchive(targetFile);
+                continue;
+            }
+            displaySteps(Compression.baseName(targetFile), new StepInput() {
+                @Override
+                int loadSteps(final StepHandler<T> handler) {
+                    return LoaderInput.loadSteps(stepLoader, targetFile,
+                            handler);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes every step of the archive entry.
+     * 
+     * @see org.cmayes.hartree.proc.basic.AccumulatingFileProcessor#displayEntry(java.io.File,
+     *      java.lang.String, java.io.InputStream)
+     */
+    @Override
+    protected void displayEntry(final File archive, final String path,
+            final InputStream data) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap(ArchiveInput.toBytes(data));
+        displaySteps(path, new StepInput() {
+            @Override
+            int loadSteps(final StepHandler<T> handler) {
+                return stepLoader.loadSteps(path, bytes, handler);
+            }
+        });
+    }
+
+    /**
+     * Calculates and writes each step read from the input.
+     * 
+     * @param srcName
+     *            The name of the steps' source.
+     * @param input
+     *            The source of the steps.
+     */
+    private void displaySteps(final String srcName, final StepInput input) {
+        final Deque<Future<T>> pending = new ArrayDeque<Future<T>>();
+        try {
+            final int steps = input.loadSteps(new StepHandler<T>() {
+                @Override
+                public void handle(final T step) {
+                    pending.add(executor.submit(new Callable<T>() {
+                        @Override
+                        public T call() {
+                            return applyCalcs(step);
+                        }
+                    }));
+                    if (pending.size() >= maxPending) {
+                        writeNext(pending);
+                    }
+                }
+            });
+            while (!pending.isEmpty()) {
+                writeNext(pending);
+            }
+            logger.debug("Processed {} steps from {}", steps, srcName);
+        } finally {
+            for (Future<T> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Waits for the oldest pending step and writes its result.
+     * 
+     * @param pending
+     *            The pending steps in file order.
+     */
+    private void writeNext(final Deque<Future<T>> pending) {
+        final Future<T> next = pending.poll();
+        try {
+            displayer.write(getAccWriter(), next.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException(
+                    "Interrupted while waiting for a trajectory step", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EnvironmentException(
+                    "Problems calculating a trajectory step", e.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.proc.FileProcessor#finish()
+     */
+    @Override
+    public void finish() {
+        executor.shutdownNow();
+        super.finish();
+    }
+
+    /**
+     * Passes the steps of one file or archive entry to a handler.
+     */
+    private abstract class StepInput {
+        /**
+         * Loads the steps.
+         * 
+         * @param handler
+         *            The handler for each step.
+         * @return The number of steps passed to the handler.
+         */
+        abstract int loadSteps(StepHandler<T> handler);
+    }
+}
@@ -0,0 +1,570 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.cmayes.hartree.loader.gaussian.BaseGaussianLoader;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Keeps one accumulating processor, with its loader, display and
+ * calculations, running over directories that jobs keep writing logs to. The
+ * directories and their subdirectories are watched with a
+ * {@link WatchService}. A new or changed log is processed once the end of it
+ * shows how its last job ended, with a normal or error termination line that
+ * no Link1 job step follows. The settle time only debounces the checks: the
+ * end of a file is read once its size and modification time have stayed the
+ * same for that long, and a log whose job is still running waits for its next
+ * change. Archives and compressed files are processed once they settle. Files
+ * already in the directories when the daemon starts are handled the same way.
+ * Each batch of finished files is written and flushed to the accumulator
+ * before the next one is taken.
+ * <p>
+ * A file that changes again after it was processed is processed again. With a
+ * {@link Manifest}, its new rows replace the ones written before (see
+ * {@link AccumulatingFileProcessor#displayAndFlush(List)}); otherwise they are
+ * added after them. The daemon runs until {@link #stop()} is called, from
+ * another thread or over JMX, or its thread is interrupted.
+ *
+ * @author cmayes
+ */
+public class WatchDaemon implements WatchDaemonMXBean {
+    /** The default number of seconds a file must stay unchanged. */
+    public static final int DEF_SETTLE_SECS = 10;
+    private static final long MAX_POLL_MILLIS = 1000;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final AccumulatingFileProcessor<?> proc;
+    private final BasicInputFileHandler handler;
+    private final List<File> dirs;
+    private final long settleMillis;
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    private final Map<File, Stamp> pending = new LinkedHashMap<File, Stamp>();
+    private final Map<File, Stamp> processed = new HashMap<File, Stamp>();
+    private final Map<File, Stamp> unfinished = new HashMap<File, Stamp>();
+    private final BaseGaussianLoader ends = new BaseGaussianLoader();
+    private final AtomicLong fileCount = new AtomicLong();
+    private final AtomicLong failCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong busyMillis = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+    private volatile boolean running;
+    private volatile boolean healthy = true;
+    private volatile int watchedCount;
+    private volatile int pendingCount;
+    private volatile int unfinishedCount;
+    private volatile long lastProcessed;
+    private volatile String lastError;
+
+    /**
+     * Creates a daemon that gives the files in the directories to the
+     * processor.
+     *
+     * @param theProc
+     *            The processor for settled files.
+     * @param fileHandler
+     *            The handler whose filter picks the files to process.
+     * @param watchDirs
+     *            The directories to watch with their subdirectories.
+     * @param settle
+     *            The milliseconds a file must stay unchanged.
+     * @throws IllegalArgumentException
+     *             If no directory is given or the settle time is negative.
+     */
+    public WatchDaemon(final AccumulatingFileProcessor<?> theProc,
+            final BasicInputFileHandler fileHandler,
+            final List<File> watchDirs, final long settle) {
+        this.proc = asNotNull(theProc, "Processor is null");
+        this.handler = asNotNull(fileHandler, "Handler is null");
+        if (asNotNull(watchDirs, "Directories are null").isEmpty()) {
+            throw new IllegalArgumentException("No directories to watch");
+        }
+        if (settle < 0) {
+            throw new IllegalArgumentException(
+                    "Settle time can't be negative: " + settle);
+        }
+        this.dirs = new ArrayList<File>(watchDirs);
+        this.settleMillis = settle;
+    }
+
+    /**
+     * Watches the directories and processes settled files until stopped.
+     *
+     * @throws EnvironmentException
+     *             If a directory can't be watched.
+     */
+    public void run() {
+        running = true;
+        final long pollMillis = Math.max(1,
+                Math.min(MAX_POLL_MILLIS, settleMillis / 2));
+        try {
+            final WatchService watcher = FileSystems.getDefault()
+                    .newWatchService();
+            try {
+                for (File dir : dirs) {
+                    watchTree(watcher, dir.toPath());
+                }
+                while (running) {
+                    WatchKey key = watcher.poll(pollMillis,
+                            TimeUnit.MILLISECONDS);
+                    while (key != null) {
+                        handleEvents(watcher, key);
+                        key = watcher.poll();
+                    }
+                    processSettled();
+                }
+            } finally {
+                watcher.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems watching " + dirs, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Registers the directory and its subdirectories with the watcher, and
+     * offers the files already in them.
+     *
+     * @param watcher
+     *            The watcher.
+     * @param root
+     *            The directory.
+     * @throws IOException
+     *             If a directory can't be read or watched.
+     */
+    private void watchTree(final WatchService watcher, final Path root)
+            throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir,
+                    final BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                    final BasicFileAttributes attrs) {
+                offer(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file,
+                    final IOException exc) {
+                logger.warn("Could not watch {}: {}", file, exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        watchedCount = keys.size();
+    }
+
+    /**
+     * Offers the files named by a directory's events, watching new
+     * subdirectories. When events were lost, every directory is searched
+     * again.
+     *
+     * @param watcher
+     *            The watcher.
+     * @param key
+     *            The directory's key.
+     * @throws IOException
+     *             If a new directory can't be watched.
+     */
+    private void handleEvents(final WatchService watcher, final WatchKey key)
+            throws IOException {
+        final Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.OVERFLOW.equals(event.kind())) {
+                logger.warn("Missed changes; searching the directories again");
+                for (File root : dirs) {
+                    watchTree(watcher, root.toPath());
+                }
+            } else if (dir != null) {
+                final Path child = dir.resolve((Path) event.context());
+                if (Files.isDirectory(child)) {
+                    if (StandardWatchEventKinds.ENTRY_CREATE.equals(event
+                            .kind())) {
+                        watchTree(watcher, child);
+                    }
+                } else {
+                    offer(child.toFile());
+                }
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            watchedCount = keys.size();
+        }
+    }
+
+    /**
+     * Adds a file to the files waiting to settle unless the handler filters
+     * it or it hasn't changed since it was processed or found unfinished.
+     *
+     * @param file
+     *            The new or changed file.
+     */
+    private void offer(final File file) {
+        if (!handler.accepts(file)) {
+            return;
+        }
+        final Stamp stamp = new Stamp(file);
+        if (!stamp.equals(processed.get(file))
+                && !stamp.equals(unfinished.get(file))
+                && !pending.containsKey(file)) {
+            pending.put(file, stamp);
+            pendingCount = pending.size();
+        }
+    }
+
+    /**
+     * Processes the waiting files that haven't changed for the settle time
+     * and have finished.
+     */
+    private void processSettled() {
+        final long now = System.currentTimeMillis();
+        final List<File> ready = new ArrayList<File>();
+        for (Iterator<Map.Entry<File, Stamp>> iter = pending.entrySet()
+                .iterator(); iter.hasNext();) {
+            final Map.Entry<File, Stamp> entry = iter.next();
+            final Stamp current = new Stamp(entry.getKey());
+            if (!entry.getKey().exists()) {
+                iter.remove();
+            } else if (!current.equals(entry.getValue())) {
+                current.seen = now;
+                entry.setValue(current);
+            } else if (now - entry.getValue().seen >= settleMillis) {
+                if (isFinished(entry.getKey())) {
+                    ready.add(entry.getKey());
+                    processed.put(entry.getKey(), entry.getValue());
+                    unfinished.remove(entry.getKey());
+                } else {
+                    unfinished.put(entry.getKey(), entry.getValue());
+                }
+                iter.remove();
+            }
+        }
+        pendingCount = pending.size();
+        unfinishedCount = unfinished.size();
+        if (ready.isEmpty()) {
+            return;
+        }
+        Collections.sort(ready);
+        final long start = System.currentTimeMillis();
+        try {
+            proc.displayAndFlush(ready);
+            for (File file : ready) {
+                byteCount.addAndGet(processed.get(file).length);
+            }
+            fileCount.addAndGet(ready.size());
+            healthy = true;
+        } catch (final RuntimeException e) {
+            logger.error("Problems processing " + ready, e);
+            failCount.addAndGet(ready.size());
+            lastError = e.getMessage();
+            healthy = false;
+        }
+        lastProcessed = System.currentTimeMillis();
+        busyMillis.addAndGet(lastProcessed - start);
+    }
+
+    /**
+     * Returns whether a settled file can be processed: an archive, a
+     * compressed file or a log whose last job has ended.
+     *
+     * @param file
+     *            The settled file.
+     * @return Whether the file is finished; a file whose end can't be read
+     *         is left for the processor to report.
+     */
+    private boolean isFinished(final File file) {
+        if (ArchiveInput.isArchive(file)
+                || Compression.forName(file.getName()) != null) {
+            return true;
+        }
+        try {
+            return ends.readStatus(file) != TerminationStatus.INCOMPLETE;
+        } catch (final EnvironmentException e) {
+            logger.warn("Could not read the end of {}: {}", file,
+                    e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Publishes the daemon's counters to the platform MBean server.
+     *
+     * @param name
+     *            The name to publish under, such as the command's name.
+     * @return The name the daemon was registered with.
+     * @throws EnvironmentException
+     *             If the daemon can't be registered.
+     */
+    public ObjectName register(final String name) {
+        try {
+            final ObjectName objectName = new ObjectName(
+                    "org.cmayes.hartree:type=WatchDaemon,name="
+                            + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    objectName);
+            return objectName;
+        } catch (final JMException e) {
+            throw new EnvironmentException("Problems registering " + name
+                    + " with JMX", e);
+        }
+    }
+
+    /**
+     * Removes the daemon from the platform MBean server.
+     *
+     * @param objectName
+     *            The name from {@link #register(String)}.
+     */
+    public static void unregister(final ObjectName objectName) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (final JMException e) {
+            LoggerFactory.getLogger(WatchDaemon.class).warn(
+                    "Problems unregistering " + objectName, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#stop()
+     */
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @return whether the daemon is watching
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#isHealthy()
+     */
+    @Override
+    public boolean isHealthy() {
+        return running && healthy;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getWatchedDirectories()
+     */
+    @Override
+    public int getWatchedDirectories() {
+        return watchedCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getPendingFiles()
+     */
+    @Override
+    public int getPendingFiles() {
+        return pendingCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getUnfinishedFiles()
+     */
+    @Override
+    public int getUnfinishedFiles() {
+        return unfinishedCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getFilesProcessed()
+     */
+    @Override
+    public long getFilesProcessed() {
+        return fileCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getFilesFailed()
+     */
+    @Override
+    public long getFilesFailed() {
+        return failCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getBytesProcessed()
+     */
+    @Override
+    public long getBytesProcessed() {
+        return byteCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getMeanMillisPerFile()
+     */
+    @Override
+    public double getMeanMillisPerFile() {
+        final long files = fileCount.get() + failCount.get();
+        return files == 0 ? 0 : (double) busyMillis.get() / files;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getFilesPerMinute()
+     */
+    @Override
+    public double getFilesPerMinute() {
+        final long millis = Math.max(1, System.currentTimeMillis() - startTime);
+        return fileCount.get() * (double) TimeUnit.MINUTES.toMillis(1)
+                / millis;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getUptimeSeconds()
+     */
+    @Override
+    public long getUptimeSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()
+                - startTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getLastProcessedTime()
+     */
+    @Override
+    public long getLastProcessedTime() {
+        return lastProcessed;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.proc.basic.WatchDaemonMXBean#getLastError()
+     */
+    @Override
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "processed %d files (%d bytes), %d failed, %.1f per minute",
+                fileCount.get(), byteCount.get(), failCount.get(),
+                getFilesPerMinute());
+    }
+
+    /**
+     * The size and modification time of a file when it was last looked at.
+     */
+    private static final class Stamp {
+        private final long length;
+        private final long modified;
+        private long seen;
+
+        /**
+         * @param file
+         *            The file to look at.
+         */
+        private Stamp(final File file) {
+            this.length = file.length();
+            this.modified = file.lastModified();
+            // A file that was already quiet when found needn't wait again.
+            this.seen = Math.min(System.currentTimeMillis(), modified);
+        }
+
+        /**
+         * {@inheritDoc} Stamps are equal when the size and modification time
+         * are.
+         *
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            final Stamp other = (Stamp) obj;
+            return length == other.length && modified == other.modified;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return (int) (length ^ modified);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.cmayes.hartree.proc.basic;
+
+/**
+ * The health and throughput of a {@link WatchDaemon}, as published over JMX.
+ *
+ * @author cmayes
+ */
+public interface WatchDaemonMXBean {
+    /**
+     * @return whether the daemon is watching and its last batch of files was
+     *         processed without an error
+     */
+    boolean isHealthy();
+
+    /**
+     * @return the number of directories being watched
+     */
+    int getWatchedDirectories();
+
+    /**
+     * @return the number of files waiting to stop changing
+     */
+    int getPendingFiles();
+
+    /**
+     * @return the number of settled logs whose jobs haven't ended
+     */
+    int getUnfinishedFiles();
+
+    /**
+     * @return the number of files processed
+     */
+    long getFilesProcessed();
+
+    /**
+     * @return the number of files in batches that failed
+     */
+    long getFilesFailed();
+
+    /**
+     * @return the number of bytes in the files processed
+     */
+    long getBytesProcessed();
+
+    /**
+     * @return the mean time to process a file, in milliseconds
+     */
+    double getMeanMillisPerFile();
+
+    /**
+     * @return the files processed per minute since the daemon started
+     */
+    double getFilesPerMinute();
+
+    /**
+     * @return the seconds since the daemon started
+     */
+    long getUptimeSeconds();
+
+    /**
+     * @return when the last file was processed, in milliseconds since the
+     *         epoch, or 0 if none has been
+     */
+    long getLastProcessedTime();
+
+    /**
+     * @return the message of the last error, or null if there was none
+     */
+    String getLastError();
+
+    /**
+     * Stops the daemon once its current batch is written.
+     */
+    void stop();
+}
@@ -0,0 +1,491 @@
+package org.cmayes.hartree.proc.basic;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Shares a run's input files between worker processes on any number of nodes
+ * through a directory on a shared file system. The input is cut into batches
+ * of files in input order, and each worker claims the next batch nobody holds
+ * with a lease file, processes it and marks it done. A worker renews its
+ * leases while it works; a lease that isn't renewed in time, as when its
+ * worker has died, expires and the batch is claimed again. Each worker writes
+ * its own accumulator under the queue directory, and {@link #merger(File)}
+ * joins the batches marked done into the output of a run on one node.
+ *
+ * <p>
+ * Leases and done markers only rely on exclusive file creation and hard
+ * links, which are atomic on POSIX file systems, and on the clocks of the
+ * nodes agreeing to well within the lease time. A lease is a file named for
+ * the batch and a generation; claiming an expired batch creates the next
+ * generation, so only one worker can take it over. When a slow worker and the
+ * worker that took over its batch both finish it, the first to mark it done
+ * wins and the other's rows for it are left out of the merge.
+ * </p>
+ *
+ * <pre>
+ * queue.properties            the input file count, batch size and settings
+ * leases/batch-N.GEN          a worker's claim on batch N
+ * done/batch-N                the ID of the worker that finished batch N
+ * parts/WORKER/accumulator-*  each worker's accumulator and shard index
+ * </pre>
+ *
+ * @author cmayes
+ */
+public class WorkQueue {
+    /** The default number of input files in a batch. */
+    public static final int DEF_BATCH_SIZE = 8;
+    /** The default number of seconds before an unrenewed lease expires. */
+    public static final int DEF_LEASE_SECS = 60;
+    /** Marks the shard index part of a worker. */
+    static final String PART_PREFIX = "worker:";
+    private static final String QUEUE_FILE = "queue.properties";
+    private static final String FILE_COUNT = "files";
+    private static final String BATCH_SIZE = "batch";
+    private static final String SETTINGS = "settings";
+    private static final String LEASE_DIR = "leases";
+    private static final String DONE_DIR = "done";
+    private static final String PART_DIR = "parts";
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final File dir;
+    private final String workerId;
+    private final long leaseMillis;
+    private final Map<Integer, File> held = new ConcurrentHashMap<Integer, File>();
+    private int batchCount;
+    private int claimedCount;
+    private int reclaimedCount;
+
+    /**
+     * Joins the queue in the given directory, creating it if needed.
+     *
+     * @param queueDir
+     *            The queue's directory on a shared file system.
+     * @param worker
+     *            This worker's ID; see {@link #newWorkerId()}.
+     * @param lease
+     *            The milliseconds before a lease that isn't renewed expires.
+     * @throws IllegalArgumentException
+     *             If the lease time isn't positive.
+     */
+    public WorkQueue(final File queueDir, final String worker,
+            final long lease) {
+        if (lease < 1) {
+            throw new IllegalArgumentException(
+                    "Lease time must be positive: " + lease);
+        }
+        this.dir = asNotNull(queueDir, "Queue directory is null");
+        this.workerId = asNotNull(worker, "Worker ID is null");
+        this.leaseMillis = lease;
+        new File(dir, LEASE_DIR).mkdirs();
+        new File(dir, DONE_DIR).mkdirs();
+        getPartDir().mkdirs();
+    }
+
+    /**
+     * @return An ID for a new worker made from the host name, the process ID
+     *         and a random suffix, using only characters safe in file names.
+     */
+    public static String newWorkerId() {
+        final String[] pidHost = ManagementFactory.getRuntimeMXBean()
+                .getName().split("@");
+        final String base = pidHost.length == 2 ? pidHost[1] + "-"
+                + pidHost[0] : pidHost[0];
+        return (base + "-" + UUID.randomUUID().toString().substring(0, 8))
+                .replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Processes batches of the input until every batch is done, by this
+     * worker or another. Once there's nothing left to claim, the worker keeps
+     * watching the batches other workers hold so that it can take over any
+     * whose lease expires.
+     *
+     * @param inputs
+     *            All of the run's input files, in input order; every worker
+     *            must list the same files.
+     * @param batchSize
+     *            The number of files in each batch.
+     * @param settings
+     *            A description of the run's settings, which must match the
+     *            other workers'.
+     * @param proc
+     *            The processor to give batches to, set up with
+     *            {@link AccumulatingFileProcessor#useWorkQueue(String)}.
+     * @throws IllegalArgumentException
+     *             If the queue was started for other input or settings.
+     */
+    public void work(final List<File> inputs, final int batchSize,
+            final String settings, final AccumulatingFileProcessor<?> proc) {
+        open(inputs.size(), batchSize, settings);
+        final ScheduledExecutorService heartbeat = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable task) {
+                        final Thread thread = new Thread(task,
+                                "lease-renewer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final long period = Math.max(1, leaseMillis / 3);
+        heartbeat.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        try {
+            final List<Integer> left = new ArrayList<Integer>();
+            for (int batch = 0; batch < batchCount; batch++) {
+                left.add(batch);
+            }
+            while (!left.isEmpty()) {
+                for (Iterator<Integer> iter = left.iterator(); iter.hasNext();) {
+                    final int batch = iter.next();
+                    if (isDone(batch)) {
+                        iter.remove();
+                    } else if (claim(batch)) {
+                        final int from = batch * batchSize;
+                        proc.displayBatch(inputs.subList(from,
+                                Math.min(from + batchSize, inputs.size())),
+                                from);
+                        complete(batch);
+                        iter.remove();
+                    }
+                }
+                if (!left.isEmpty()) {
+                    Thread.sleep(period);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvironmentException("Interrupted waiting on " + dir, e);
+        } finally {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    /**
+     * Records the input of the queue, or checks it against the input the
+     * queue was started with.
+     *
+     * @param fileCount
+     *            The number of input files.
+     * @param batchSize
+     *            The number of files in each batch.
+     * @param settings
+     *            A description of the run's settings.
+     * @throws IllegalArgumentException
+     *             If the batch size isn't positive or the queue was started
+     *             for other input or settings.
+     */
+    void open(final int fileCount, final int batchSize, final String settings) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be positive: " + batchSize);
+        }
+        final Properties props = new Properties();
+        props.setProperty(FILE_COUNT, Integer.toString(fileCount));
+        props.setProperty(BATCH_SIZE, Integer.toString(batchSize));
+        props.setProperty(SETTINGS, settings);
+        final File queueFile = new File(dir, QUEUE_FILE);
+        final File tmpFile = new File(dir, QUEUE_FILE + "." + workerId);
+        try {
+            final Writer writer = new FileWriter(tmpFile);
+            try {
+                props.store(writer, null);
+            } finally {
+                writer.close();
+            }
+            Files.createLink(queueFile.toPath(), tmpFile.toPath());
+        } catch (final FileAlreadyExistsException e) {
+            final Properties started = readProperties(dir);
+            if (!props.equals(started)) {
+                throw new IllegalArgumentException(String.format(
+                        "%s was started for other input: %s", dir, started));
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + queueFile, e);
+        } finally {
+            tmpFile.delete();
+        }
+        batchCount = (fileCount + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * Claims a batch unless it's done or another worker holds a live lease on
+     * it.
+     *
+     * @param batch
+     *            The batch to claim.
+     * @return Whether this worker now holds the batch.
+     */
+    boolean claim(final int batch) {
+        if (isDone(batch)) {
+            return false;
+        }
+        int gen = 0;
+        while (leaseFile(batch, gen).exists()) {
+            gen++;
+        }
+        if (gen > 0) {
+            final long renewed = leaseFile(batch, gen - 1).lastModified();
+            if (System.currentTimeMillis() - renewed < leaseMillis) {
+                return false;
+            }
+        }
+        final File lease = leaseFile(batch, gen);
+        try {
+            Files.write(Files.createFile(lease.toPath()),
+                    workerId.getBytes(StandardCharsets.UTF_8));
+        } catch (final FileAlreadyExistsException e) {
+            return false;
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + lease, e);
+        }
+        held.put(batch, lease);
+        if (isDone(batch)) {
+            // Finished by the worker whose lease just expired.
+            held.remove(batch);
+            return false;
+        }
+        claimedCount++;
+        if (gen > 0) {
+            reclaimedCount++;
+            logger.info("Took over batch {} after its lease expired", batch);
+        }
+        return true;
+    }
+
+    /**
+     * Marks a held batch done unless another worker finished it first.
+     *
+     * @param batch
+     *            The batch to mark.
+     */
+    void complete(final int batch) {
+        final File done = doneFile(batch);
+        final File tmpFile = new File(done.getPath() + "." + workerId);
+        try {
+            Files.write(tmpFile.toPath(),
+                    workerId.getBytes(StandardCharsets.UTF_8));
+            Files.createLink(done.toPath(), tmpFile.toPath());
+        } catch (final FileAlreadyExistsException e) {
+            logger.info("Batch {} was finished by another worker", batch);
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing " + done, e);
+        } finally {
+            tmpFile.delete();
+            held.remove(batch);
+        }
+    }
+
+    /**
+     * Renews the leases this worker holds.
+     */
+    private void renew() {
+        final long now = System.currentTimeMillis();
+        for (File lease : held.values()) {
+            if (!lease.setLastModified(now)) {
+                logger.warn("Could not renew {}", lease);
+            }
+        }
+    }
+
+    /**
+     * @param batch
+     *            The batch to check.
+     * @return Whether a worker has marked the batch done.
+     */
+    boolean isDone(final int batch) {
+        return doneFile(batch).exists();
+    }
+
+    /**
+     * @param batch
+     *            The batch.
+     * @param gen
+     *            The lease's generation.
+     * @return The lease file.
+     */
+    private File leaseFile(final int batch, final int gen) {
+        return new File(new File(dir, LEASE_DIR), String.format(
+                "batch-%d.%d", batch, gen));
+    }
+
+    /**
+     * @param batch
+     *            The batch.
+     * @return The batch's done marker.
+     */
+    private File doneFile(final int batch) {
+        return doneFile(dir, batch);
+    }
+
+    /**
+     * @param queueDir
+     *            The queue's directory.
+     * @param batch
+     *            The batch.
+     * @return The batch's done marker.
+     */
+    private static File doneFile(final File queueDir, final int batch) {
+        return new File(new File(queueDir, DONE_DIR), "batch-" + batch);
+    }
+
+    /**
+     * @param queueDir
+     *            The queue's directory.
+     * @return The queue's input description.
+     */
+    private static Properties readProperties(final File queueDir) {
+        final File queueFile = new File(queueDir, QUEUE_FILE);
+        if (!queueFile.exists()) {
+            throw new IllegalArgumentException("No work queue in " + queueDir);
+        }
+        final Properties props = new Properties();
+        try {
+            final Reader reader = new FileReader(queueFile);
+            try {
+                props.load(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading " + queueFile, e);
+        }
+        return props;
+    }
+
+    /**
+     * Returns a merger for the accumulators of a queue's workers that takes
+     * each batch from the worker that marked it done.
+     *
+     * @param queueDir
+     *            The queue's directory.
+     * @return The merger.
+     * @throws IllegalArgumentException
+     *             If there is no queue or a batch isn't done.
+     */
+    public static ShardMerger merger(final File queueDir) {
+        final Properties props = readProperties(queueDir);
+        final int fileCount = Integer.parseInt(props.getProperty(FILE_COUNT));
+        final int batchSize = Integer.parseInt(props.getProperty(BATCH_SIZE));
+        final int batches = (fileCount + batchSize - 1) / batchSize;
+        final Map<String, BitSet> byWorker = new LinkedHashMap<String, BitSet>();
+        for (int batch = 0; batch < batches; batch++) {
+            final File done = doneFile(queueDir, batch);
+            if (!done.exists()) {
+                throw new IllegalArgumentException(String.format(
+                        "Batch %d of %d in %s isn't done", batch, batches,
+                        queueDir));
+            }
+            final String worker;
+            try {
+                worker = new String(Files.readAllBytes(done.toPath()),
+                        StandardCharsets.UTF_8).trim();
+            } catch (final IOException e) {
+                throw new EnvironmentException("Problems reading " + done, e);
+            }
+            if (!byWorker.containsKey(worker)) {
+                byWorker.put(worker, new BitSet(batches));
+            }
+            byWorker.get(worker).set(batch);
+        }
+        final List<ShardIndex> parts = new ArrayList<ShardIndex>();
+        for (Map.Entry<String, BitSet> entry : byWorker.entrySet()) {
+            parts.add(ShardIndex.read(findAccumulator(new File(new File(
+                    queueDir, PART_DIR), entry.getKey())))
+                    .retain(entry.getValue(), batchSize));
+        }
+        return new ShardMerger(parts.toArray(new ShardIndex[parts.size()]));
+    }
+
+    /**
+     * @param partDir
+     *            A worker's directory.
+     * @return The worker's accumulator.
+     */
+    private static File findAccumulator(final File partDir) {
+        final File[] indexes = partDir.listFiles();
+        if (indexes != null) {
+            for (File index : indexes) {
+                final String name = index.getName();
+                if (name.endsWith(ShardIndex.EXTENSION)) {
+                    return new File(partDir, name.substring(0, name.length()
+                            - ShardIndex.EXTENSION.length()));
+                }
+            }
+        }
+        throw new IllegalArgumentException("No shard index in " + partDir);
+    }
+
+    /**
+     * @return the directory this worker writes its accumulator to
+     */
+    public File getPartDir() {
+        return new File(new File(dir, PART_DIR), workerId);
+    }
+
+    /**
+     * @return this worker's ID
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @return the number of batches this worker claimed
+     */
+    public int getClaimedCount() {
+        return claimedCount;
+    }
+
+    /**
+     * @return the number of batches this worker took over from an expired
+     *         lease
+     */
+    public int getReclaimedCount() {
+        return reclaimedCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: processed %d of %d batches, %d taken over",
+                workerId, claimedCount, batchCount, reclaimedCount);
+    }
+}
@@ -0,0 +1,124 @@
+package org.cmayes.hartree;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.calc.impl.CremerPopleCalculation;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.ArchiveSnapshotLoader;
+import org.junit.Test;
+
+import com.cmayes.common.MediaType;
+import com.google.common.base.Supplier;
+
+/**
+ * Tests for {@link ComponentRegistry}.
+ *
+ * @author cmayes
+ */
+public class TestComponentRegistry {
+    /**
+     * Tests that components are created when first asked for, and only once.
+     */
+    @Test
+    public void testLazy() {
+        final AtomicInteger loaders = new AtomicInteger();
+        final AtomicInteger calcs = new AtomicInteger();
+        final ComponentRegistry registry = new ComponentRegistry();
+        registry.setLoader(HandlingType.SNAPSHOT,
+                new Supplier<Loader<?>>() {
+                    @Override
+                    public Loader<?> get() {
+                        loaders.incrementAndGet();
+                        return new ArchiveSnapshotLoader();
+                    }
+                });
+        registry.addCalculation(new Supplier<Calculation>() {
+            @Override
+            public Calculation get() {
+                calcs.incrementAndGet();
+                return new CremerPopleCalculation();
+            }
+        }, HandlingType.CPSNAPSHOT, HandlingType.TRAJECTORY);
+        assertThat(loaders.get(), equalTo(0));
+        assertThat(calcs.get(), equalTo(0));
+        assertThat(registry.getCalculations(HandlingType.SNAPSHOT).size(),
+                equalTo(0));
+        assertThat(calcs.get(), equalTo(0));
+
+        assertThat(registry.getLoader(HandlingType.SNAPSHOT),
+                sameInstance(registry.getLoader(HandlingType.SNAPSHOT)));
+        assertThat(loaders.get(), equalTo(1));
+        assertThat(registry.getCalculations(HandlingType.CPSNAPSHOT).get(0),
+                sameInstance(registry
+                        .getCalculations(HandlingType.TRAJECTORY).get(0)));
+        assertThat(calcs.get(), equalTo(1));
+        assertThat(registry.getLoader(HandlingType.CATALOG), nullValue());
+    }
+
+    /**
+     * Tests that every built-in component can be created.
+     */
+    @Test
+    public void testDefaults() {
+        final ComponentRegistry registry = new ComponentRegistry();
+        new DefaultComponentProvider().register(registry);
+        for (HandlingType type : HandlingType.values()) {
+            final MediaType media = registry.getDefaultMedia(type);
+            if (media != null) {
+                assertThat(type.name(), registry.getLoader(type),
+                        notNullValue());
+                assertThat(type.name(), registry.getDisplay(type, media),
+                        notNullValue());
+                assertThat(type.name(), registry.getDefaultProc(type),
+                        notNullValue());
+            }
+        }
+        final List<Calculation> cpCalcs = registry
+                .getCalculations(HandlingType.CPSNAPSHOT);
+        assertThat(cpCalcs.size(), equalTo(8));
+        assertThat(registry.getCalculations(HandlingType.TRAJECTORY),
+                equalTo(cpCalcs));
+        assertThat(registry.getCalculations(HandlingType.SNAPSHOT).size(),
+                equalTo(0));
+    }
+
+    /**
+     * Tests that providers on the classpath are registered after the built-in
+     * components.
+     */
+    @Test
+    public void testServiceLoader() {
+        final ComponentRegistry registry = ComponentRegistry.load();
+        assertThat(registry.getDisplay(HandlingType.THERM, MediaType.CSV),
+                instanceOf(SnapshotCsvDisplay.class));
+        assertThat(registry.getDisplay(HandlingType.CATALOG, MediaType.CSV),
+                instanceOf(CatalogCsvDisplay.class));
+    }
+
+    /**
+     * A provider listed in this module's test resources.
+     */
+    public static class StubProvider implements ComponentProvider {
+        /**
+         * {@inheritDoc}
+         *
+         * @see org.cmayes.hartree.ComponentProvider#register(org.cmayes.hartree.ComponentRegistry)
+         */
+        @Override
+        public void register(final ComponentRegistry registry) {
+            registry.setDisplay(HandlingType.THERM, MediaType.CSV,
+                    ComponentRegistry.of(SnapshotCsvDisplay.class));
+        }
+    }
+}
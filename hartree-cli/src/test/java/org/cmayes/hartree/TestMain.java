@@ -12,10 +12,12 @@ import java.io.PrintStream;
 
 import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
 import org.cmayes.hartree.disp.txt.NormalModeTextDisplay;
+import org.cmayes.hartree.filter.ResultFilter;
 import org.cmayes.hartree.loader.gaussian.NormalModeLoader;
 import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
 import org.cmayes.hartree.model.BaseResult;
 import org.cmayes.hartree.model.NormalModeCalculation;
+import org.cmayes.hartree.model.SnapshotField;
 import org.cmayes.hartree.proc.FileProcessor;
 import org.junit.Test;
 import org.kohsuke.args4j.CmdLineException;
@@ -207,6 +209,241 @@ public class TestMain {
         main.doMain("-f", REV4_LOC, "badArg");
     }
 
+    /**
+     * Tests selecting fields for a command that doesn't support them.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testFieldsNotSnap() throws Exception {
+        final Main<NormalModeCalculation> main = new Main<NormalModeCalculation>();
+        main.doMain("-f", REV4_LOC, "-l", "charge", NORM_ARG);
+    }
+
+    /**
+     * Tests selecting an unknown field.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testBadField() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-l", "charge,badField", SNAP_ARG);
+    }
+
+    /**
+     * Tests filtering results for a command other than snap.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testWhereNotSnap() throws Exception {
+        final Main<NormalModeCalculation> main = new Main<NormalModeCalculation>();
+        main.doMain("-f", REV4_LOC, "-q", "charge=0", NORM_ARG);
+    }
+
+    /**
+     * Tests filtering with a condition that can't be parsed.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testBadWhere() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-q", "charge>=one", SNAP_ARG);
+    }
+
+    /**
+     * Tests following files for a command that can't be followed.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testFollowNotFollowable() throws Exception {
+        final Main<NormalModeCalculation> main = new Main<NormalModeCalculation>();
+        main.doMain("-f", REV4_LOC, "-F", "5", NORM_ARG);
+    }
+
+    /**
+     * Tests filtering followed results.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testFollowWhere() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-F", "5", "-q", "charge=0", SNAP_ARG);
+    }
+
+    /**
+     * Tests the summary of a filtered run.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test
+    public void testFilterSummary() throws Exception {
+        final ResultFilter filter = ResultFilter.parse("charge=0");
+        filter.recordMatch();
+        filter.recordSkip();
+        filter.recordSkip();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Main.printFilterSummary(new PrintStream(bytes), filter);
+        assertThat(bytes.toString().trim(),
+                equalTo("Matched 1 files; skipped 2 that didn't match --where"));
+    }
+
+    /**
+     * Tests pipeline thread counts that can't be parsed.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testBadStageThreads() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-p", "PIPELINE", "-g", "2,0", SNAP_ARG);
+    }
+
+    /**
+     * Tests a directory walk without threads.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testNoWalkThreads() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-W", "0", SNAP_ARG);
+    }
+
+    /**
+     * Tests scheduling files for a processor that starts them in input order.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testScheduleNotParallel() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-S", "LARGEST", SNAP_ARG);
+    }
+
+    /**
+     * Tests that an incremental run needs an output directory.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testIncrementalNoOutDir() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-I", SNAP_ARG);
+    }
+
+    /**
+     * Tests that a shard past the shard count is rejected.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testBadShard() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-s", "4/4", SNAP_ARG);
+    }
+
+    /**
+     * Tests that a sharded run needs an output directory.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testShardNoOutDir() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-s", "0/4", SNAP_ARG);
+    }
+
+    /**
+     * Tests that a queued run needs a positive batch size.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testQueueBadBatch() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-Q", "queue", "-b", "0", SNAP_ARG);
+    }
+
+    /**
+     * Tests that trajectory steps aren't inserted into the database.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testTrajectoryRdbms() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-m", "RDBMS", "traj");
+    }
+
+    /**
+     * Tests that a daemon takes its input from its watched directories.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testDaemonWithFile() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("-f", REV4_LOC, "-D", ".", SNAP_ARG);
+    }
+
+    /**
+     * Tests that merging needs shard accumulators.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test(expected = CmdLineException.class)
+    public void testMergeNoShards() throws Exception {
+        final Main<BaseResult> main = new Main<BaseResult>();
+        main.doMain("merge");
+    }
+
+    /**
+     * Tests parsing pipeline thread counts.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test
+    public void testParseStageThreads() throws Exception {
+        assertThat(Main.parseStageThreads("2, 3,1"),
+                equalTo(new int[] { 2, 3, 1 }));
+    }
+
+    /**
+     * Tests parsing a field list.
+     * 
+     * @throws Exception
+     *             When the test throws an exception.
+     */
+    @Test
+    public void testParseFields() throws Exception {
+        assertThat(Main.parseFields("stoichiometry, Charge,energy"),
+                contains(SnapshotField.STOICHIOMETRY, SnapshotField.CHARGE,
+                        SnapshotField.ENERGY));
+    }
+
     /**
      * Tests calls for a {@link FileProcessor} for the NORMAL_MODE handling type
      * with a file.
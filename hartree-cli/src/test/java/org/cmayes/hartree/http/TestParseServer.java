@@ -0,0 +1,278 @@
+package org.cmayes.hartree.http;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.disp.json.JsonDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.ArchiveSnapshotLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.proc.basic.LoaderInput;
+import org.junit.After;
+import org.junit.Test;
+
+import com.cmayes.common.MediaType;
+
+/**
+ * Tests for {@link ParseServer}.
+ *
+ * @author cmayes
+ */
+public class TestParseServer {
+    private static final File ROOT = new File(
+            "src/test/resources/files/g09/snapshot");
+    private static final File LOG = new File(ROOT, "0S200.log");
+    private static final long MAX_BODY = 16L * 1024 * 1024;
+    private ParseServer server;
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Tests that a posted log is answered with what the display writes for
+     * it.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testPost() throws Exception {
+        startSnap(2, 2, MAX_BODY, new ArchiveSnapshotLoader());
+        final HttpURLConnection conn = post("/snap?format=json&name="
+                + LOG.getName(), Files.readAllBytes(LOG.toPath()));
+        assertThat(conn.getResponseCode(), equalTo(200));
+        assertThat(conn.getContentType(), containsString("json"));
+        final String json = read(conn.getInputStream());
+        assertThat(json, equalTo(expected(new JsonDisplay())));
+        assertThat(json, startsWith("{"));
+    }
+
+    /**
+     * Tests that a file can be named by path under the root, and only there.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testPath() throws Exception {
+        startSnap(2, 2, MAX_BODY, new ArchiveSnapshotLoader());
+        final HttpURLConnection conn = get("/snap?path="
+                + URLEncoder.encode(LOG.getPath(), "UTF-8"));
+        assertThat(conn.getResponseCode(), equalTo(200));
+        assertThat(read(conn.getInputStream()),
+                equalTo(expected(new SnapshotCsvDisplay())));
+        assertThat(get("/snap?path=pom.xml").getResponseCode(),
+                equalTo(403));
+        assertThat(get("/snap?path=" + ROOT.getPath() + "/../../../../../pom.xml")
+                .getResponseCode(), equalTo(403));
+        assertThat(get("/snap?format=text").getResponseCode(),
+                equalTo(406));
+    }
+
+    /**
+     * Tests that a body over the limit is refused.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTooLarge() throws Exception {
+        startSnap(1, 1, 100, new ArchiveSnapshotLoader());
+        assertThat(post("/snap", new byte[101]).getResponseCode(),
+                equalTo(413));
+    }
+
+    /**
+     * Tests that a request beyond the busy workers and the queue is answered
+     * with 503, and that the metrics count it.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testBusy() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        startSnap(1, 0, MAX_BODY, new Loader<BaseResult>() {
+            @Override
+            public BaseResult load(final String srcName, final Reader reader) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        final int[] firstCode = new int[1];
+        final Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    firstCode[0] = post("/snap", new byte[1])
+                            .getResponseCode();
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        first.start();
+        assertThat(started.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(post("/snap", new byte[1]).getResponseCode(),
+                equalTo(503));
+        release.countDown();
+        first.join();
+        assertThat(firstCode[0], equalTo(422));
+        assertThat(server.getRejectedCount(), equalTo(1L));
+
+        // The latency of a request is recorded just after it is answered.
+        String metrics = "";
+        for (int tries = 0; tries < 50
+                && !metrics.contains("command=\"snap\"} 2"); tries++) {
+            Thread.sleep(20);
+            metrics = read(get("/metrics").getInputStream());
+        }
+        assertThat(metrics,
+                containsString("hartree_request_seconds_count{command=\"snap\"} 2"));
+        assertThat(metrics, containsString(
+                "hartree_responses_total{command=\"snap\",code=\"503\"} 1"));
+        assertThat(metrics, containsString("hartree_rejected_total 1"));
+    }
+
+    /**
+     * Starts a server for snap on a free port.
+     *
+     * @param threads
+     *            The number of workers.
+     * @param queueSize
+     *            The most requests waiting.
+     * @param maxBody
+     *            The largest body.
+     * @param loader
+     *            The loader.
+     */
+    private void startSnap(final int threads, final int queueSize,
+            final long maxBody, final Loader<BaseResult> loader) {
+        server = new ParseServer(new InetSocketAddress("127.0.0.1", 0),
+                threads, queueSize, maxBody, Arrays.asList(ROOT));
+        server.addCommand(HandlingType.SNAPSHOT, loader,
+                new ArrayList<Calculation>(),
+                new ParseServer.DisplayFactory<BaseResult>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Display<BaseResult> create(final MediaType media) {
+                        if (MediaType.JSON.equals(media)) {
+                            return (Display<BaseResult>) (Object) new JsonDisplay();
+                        }
+                        return media == null || MediaType.CSV.equals(media) ? new SnapshotCsvDisplay()
+                                : null;
+                    }
+                });
+        server.start();
+    }
+
+    /**
+     * @param display
+     *            A new display.
+     * @return What the display writes for the log.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static String expected(final Display display) {
+        final StringWriter out = new StringWriter();
+        display.write(out,
+                LoaderInput.load(new ArchiveSnapshotLoader(), LOG));
+        display.finish(out);
+        return out.toString();
+    }
+
+    /**
+     * @param path
+     *            The path and query.
+     * @return The connection.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private HttpURLConnection get(final String path) throws Exception {
+        return (HttpURLConnection) new URL("http://127.0.0.1:"
+                + server.getPort() + path).openConnection();
+    }
+
+    /**
+     * @param path
+     *            The path and query.
+     * @param body
+     *            The body to post.
+     * @return The connection.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private HttpURLConnection post(final String path, final byte[] body)
+            throws Exception {
+        final HttpURLConnection conn = get(path);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        final OutputStream out = conn.getOutputStream();
+        try {
+            out.write(body);
+        } catch (final IOException e) {
+            // The server may answer before reading a refused body.
+        } finally {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                // As above.
+            }
+        }
+        return conn;
+    }
+
+    /**
+     * @param in
+     *            The stream to read.
+     * @return The stream's text.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static String read(final InputStream in) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        for (int read = in.read(buf); read >= 0; read = in.read(buf)) {
+            bytes.write(buf, 0, read);
+        }
+        in.close();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
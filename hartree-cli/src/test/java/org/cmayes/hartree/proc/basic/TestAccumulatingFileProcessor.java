@@ -11,15 +11,19 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.cmayes.hartree.HandlingType;
 import org.cmayes.hartree.calc.Calculation;
@@ -209,4 +213,41 @@ public class TestAccumulatingFileProcessor {
             tgtFile.delete();
         }
     }
+
+    /**
+     * Tests that a compressed file is read by its uncompressed name.
+     * 
+     * @throws IOException
+     *             If there's a problem writing the test file.
+     */
+    @Test
+    public void testDisplayCompressed() throws IOException {
+        final Loader<BaseResult> theParser = mock(Loader.class);
+        final Display<BaseResult> theDisp = mock(Display.class);
+        final List<Calculation> calcs = new ArrayList<Calculation>();
+        final InputFileHandler fileHandler = mock(InputFileHandler.class);
+        when(theDisp.getMediaType()).thenReturn(MediaType.LOG);
+        final Writer writer = mock(Writer.class);
+        final AccumulatingFileProcessor<BaseResult> proc = new AccumulatingFileProcessor<BaseResult>(
+                HandlingType.SNAPSHOT, theParser, theDisp, calcs, fileHandler);
+        proc.setAccWriter(writer);
+        final File tgtFile = File.createTempFile("hartree",
+                MediaType.LOG.getPrimaryExtension() + ".gz");
+        try {
+            final OutputStream out = new GZIPOutputStream(new FileOutputStream(
+                    tgtFile));
+            out.write(SRC_NAME.getBytes("US-ASCII"));
+            out.close();
+            final String baseName = tgtFile.getName().substring(0,
+                    tgtFile.getName().length() - ".gz".length());
+            final DefaultBaseResult result = new DefaultBaseResult(SRC_NAME);
+            when(theParser.load(eq(baseName), any(Reader.class))).thenReturn(
+                    result);
+            proc.displayAll(Collections.singletonList(tgtFile));
+            proc.finish();
+            verify(theDisp).write(writer, result);
+        } finally {
+            tgtFile.delete();
+        }
+    }
 }
@@ -0,0 +1,351 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.utils.IOUtils;
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.file.ExtensionFilter;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link ArchiveInput}.
+ *
+ * @author cmayes
+ */
+public class TestArchiveInput {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "archivein");
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String LOG_EXT = ".log";
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests recognizing archive names.
+     */
+    @Test
+    public void testIsArchive() {
+        assertTrue(ArchiveInput.isArchive(new File("logs.tar")));
+        assertTrue(ArchiveInput.isArchive(new File("logs.tar.gz")));
+        assertTrue(ArchiveInput.isArchive(new File("logs.TGZ")));
+        assertTrue(ArchiveInput.isArchive(new File("logs.tar.xz")));
+        assertTrue(ArchiveInput.isArchive(new File("logs.zip")));
+        assertFalse(ArchiveInput.isArchive(new File("logs.log")));
+        assertFalse(ArchiveInput.isArchive(new File("logs.log.gz")));
+    }
+
+    /**
+     * Tests reading a plain tar file.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTar() throws Exception {
+        checkEntries(writeTar("logs.tar", null));
+    }
+
+    /**
+     * Tests reading a gzipped tar file.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTarGz() throws Exception {
+        checkEntries(writeTar("logs.tar.gz", CompressorStreamFactory.GZIP));
+    }
+
+    /**
+     * Tests reading a zip file.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testZip() throws Exception {
+        final File file = new File(TMP_DIR, "logs.zip");
+        final ZipArchiveOutputStream out = new ZipArchiveOutputStream(file);
+        try {
+            addEntries(out, new EntryFactory() {
+                @Override
+                public ArchiveEntry create(final String name, final int size) {
+                    return new ZipArchiveEntry(name);
+                }
+            });
+        } finally {
+            out.close();
+        }
+        checkEntries(file);
+    }
+
+    /**
+     * Tests that entries whose paths are absolute or leave the archive are
+     * skipped and that the rest are normalized.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testUnsafePaths() throws Exception {
+        final File file = new File(TMP_DIR, "unsafe.zip");
+        final ZipArchiveOutputStream out = new ZipArchiveOutputStream(file);
+        final EntryFactory factory = new EntryFactory() {
+            @Override
+            public ArchiveEntry create(final String name, final int size) {
+                return new ZipArchiveEntry(name);
+            }
+        };
+        try {
+            addEntry(out, factory, "../../escape.log", "escape".getBytes(ASCII));
+            addEntry(out, factory, "/tmp/absolute.log",
+                    "absolute".getBytes(ASCII));
+            addEntry(out, factory, "run1/../../up.log", "up".getBytes(ASCII));
+            addEntry(out, factory, "C:\\drive.log", "drive".getBytes(ASCII));
+            addEntry(out, factory, "./run1//safe.log", "safe".getBytes(ASCII));
+        } finally {
+            out.close();
+        }
+        final List<String> found = new ArrayList<String>();
+        final int count = ArchiveInput.read(file, new BasicInputFileHandler(
+                new ExtensionFilter(LOG_EXT), TMP_DIR, TMP_DIR),
+                new ArchiveInput.EntryHandler() {
+                    @Override
+                    public void handle(final String path, final InputStream data)
+                            throws IOException {
+                        found.add(path);
+                    }
+                });
+        assertThat(count, equalTo(1));
+        assertThat(found, contains("run1/safe.log"));
+        assertThat(ArchiveInput.normalize("run1\\sub\\a.log"),
+                equalTo("run1/sub/a.log"));
+        assertThat(ArchiveInput.normalize("run1/sub/.."), nullValue());
+    }
+
+    /**
+     * Tests that a parallel processor writes the entries of an archive in
+     * archive order, named by their paths.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testParallelAccumulating() throws Exception {
+        final File[] files = new File(FILE_DIR_PFX).listFiles();
+        Arrays.sort(files);
+        final File file = new File(TMP_DIR, "snaps.tgz");
+        final TarArchiveOutputStream out = new TarArchiveOutputStream(
+                new CompressorStreamFactory().createCompressorOutputStream(
+                        CompressorStreamFactory.GZIP, new FileOutputStream(
+                                file)));
+        try {
+            for (File logFile : files) {
+                final TarArchiveEntry entry = new TarArchiveEntry("snap/"
+                        + logFile.getName());
+                entry.setSize(logFile.length());
+                out.putArchiveEntry(entry);
+                final InputStream in = new FileInputStream(logFile);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    in.close();
+                }
+                out.closeArchiveEntry();
+            }
+        } finally {
+            out.close();
+        }
+        final ParallelAccumulatingFileProcessor<CatalogEntry> proc = new ParallelAccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                new BasicInputFileHandler(), 2);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        proc.displayAll(Collections.singletonList(file));
+        proc.finish();
+        final String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, equalTo(files.length + 1));
+        for (int i = 0; i < files.length; i++) {
+            assertThat(lines[i + 1],
+                    startsWith(String.format("\"snap/%s\",", files[i].getName())));
+        }
+    }
+
+    /**
+     * Checks that only the log entries are read, in order, with a compressed
+     * entry decompressed and renamed.
+     *
+     * @param archive
+     *            The archive to check.
+     */
+    private static void checkEntries(final File archive) {
+        final List<String> found = new ArrayList<String>();
+        final int count = ArchiveInput.read(archive, new BasicInputFileHandler(
+                new ExtensionFilter(LOG_EXT), TMP_DIR, TMP_DIR),
+                new ArchiveInput.EntryHandler() {
+                    @Override
+                    public void handle(final String path, final InputStream data)
+                            throws IOException {
+                        found.add(path + "=" + new String(
+                                ArchiveInput.toBytes(data), ASCII));
+                    }
+                });
+        assertThat(count, equalTo(2));
+        assertThat(found, contains("run1/first.log=first text",
+                "run1/second.log=second text"));
+    }
+
+    /**
+     * Writes the test entries to a tar file.
+     *
+     * @param name
+     *            The name of the file.
+     * @param format
+     *            The commons-compress name of the compression format or null
+     *            for none.
+     * @return The tar file.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static File writeTar(final String name, final String format)
+            throws Exception {
+        final File file = new File(TMP_DIR, name);
+        OutputStream fileOut = new FileOutputStream(file);
+        if (format != null) {
+            fileOut = new CompressorStreamFactory()
+                    .createCompressorOutputStream(format, fileOut);
+        }
+        final TarArchiveOutputStream out = new TarArchiveOutputStream(fileOut);
+        try {
+            addEntries(out, new EntryFactory() {
+                @Override
+                public ArchiveEntry create(final String entryName,
+                        final int size) {
+                    final TarArchiveEntry entry = new TarArchiveEntry(entryName);
+                    entry.setSize(size);
+                    return entry;
+                }
+            });
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Adds a directory, a log, a gzipped log, a text file and a nested archive.
+     *
+     * @param out
+     *            The archive to write to.
+     * @param factory
+     *            Creates the archive's entries.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static void addEntries(final ArchiveOutputStream out,
+            final EntryFactory factory) throws Exception {
+        out.putArchiveEntry(factory.create("run1/", 0));
+        out.closeArchiveEntry();
+        addEntry(out, factory, "run1/first.log", "first text".getBytes(ASCII));
+        addEntry(out, factory, "run1/notes.txt", "notes".getBytes(ASCII));
+        final ByteArrayOutputStream gzBytes = new ByteArrayOutputStream();
+        final OutputStream gzOut = new CompressorStreamFactory()
+                .createCompressorOutputStream(CompressorStreamFactory.GZIP,
+                        gzBytes);
+        gzOut.write("second text".getBytes(ASCII));
+        gzOut.close();
+        addEntry(out, factory, "run1/second.log.gz", gzBytes.toByteArray());
+        addEntry(out, factory, "run1/nested.tar", new byte[0]);
+    }
+
+    /**
+     * Adds one file entry.
+     *
+     * @param out
+     *            The archive to write to.
+     * @param factory
+     *            Creates the entry.
+     * @param name
+     *            The entry's path.
+     * @param data
+     *            The entry's contents.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static void addEntry(final ArchiveOutputStream out,
+            final EntryFactory factory, final String name, final byte[] data)
+            throws IOException {
+        out.putArchiveEntry(factory.create(name, data.length));
+        out.write(data);
+        out.closeArchiveEntry();
+    }
+
+    /**
+     * Creates entries for one archive format.
+     */
+    private interface EntryFactory {
+        /**
+         * @param name
+         *            The entry's path.
+         * @param size
+         *            The entry's size.
+         * @return The new entry.
+         */
+        ArchiveEntry create(String name, int size);
+    }
+}
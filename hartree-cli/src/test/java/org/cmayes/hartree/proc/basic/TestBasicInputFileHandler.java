@@ -35,6 +35,8 @@ import com.cmayes.common.util.EnvUtils;
  */
 public class TestBasicInputFileHandler {
     private static final String HELLO_STR = "Hello!";
+    /** The default input extension. */
+    private static final String LOG_EXT = ".log";
     private static final File INDIR = new File(CommonConstants.TMPDIR,
             "basicfpin");
     private static final File OUTDIR = new File(CommonConstants.TMPDIR,
@@ -156,6 +158,54 @@ public class TestBasicInputFileHandler {
         verifyNoMoreInteractions(fProc);
     }
 
+    /**
+     * Tests that compressed copies of matching files are included.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testCompressedFilter() throws Exception {
+        final File gzFile = new File(INDIR, "someInFile.log.gz");
+        final File txtFile = new File(INDIR, "someInFile.txt.gz");
+        for (File file : Arrays.asList(gzFile, txtFile)) {
+            if (!file.createNewFile()) {
+                logger.warn("Couldn't create " + file);
+            }
+        }
+        final BasicInputFileHandler proc = new BasicInputFileHandler(
+                new ExtensionFilter(LOG_EXT),
+                INDIR, OUTDIR);
+        @SuppressWarnings("unchecked")
+        final FileProcessor<Object> fProc = mock(FileProcessor.class);
+        proc.handle(INDIR, fProc);
+        verify(fProc).displayAll(Collections.singletonList(gzFile));
+        verifyNoMoreInteractions(fProc);
+    }
+
+    /**
+     * Tests that both extensions are stripped from a compressed file's output
+     * file name.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testCompressedName() throws Exception {
+        final File inFile = new File(INDIR, "someInFile.log.xz");
+        if (!inFile.createNewFile()) {
+            logger.warn("Couldn't create " + inFile);
+        }
+        final BasicInputFileHandler proc = new BasicInputFileHandler(
+                new ExtensionFilter(LOG_EXT),
+                INDIR, OUTDIR);
+        final Writer outWriter = proc.createOutWriter(inFile, "test",
+                MediaType.LOG.getPrimaryExtension());
+        outWriter.write(HELLO_STR);
+        outWriter.close();
+        assertTrue(new File(OUTDIR, "someInFile-test.log").exists());
+    }
+
     /**
      * Tests creating an outfile for an infile in the INDIR base directory.
      * 
@@ -0,0 +1,269 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link Compression} and {@link DecompressingInputStream}.
+ *
+ * @author cmayes
+ */
+public class TestCompression {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "compressin");
+    /** Enough lines to fill the decompressor's queue several times. */
+    private static final int LINE_COUNT = 40000;
+    private static final String TEXT;
+
+    static {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINE_COUNT; i++) {
+            builder.append(" SCF Done:  E(RM062X) =  -849.236562").append(i)
+                    .append("     A.U. after   ").append(i % 17)
+                    .append(" cycles\n");
+        }
+        TEXT = builder.toString();
+    }
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests finding formats and stripping their extensions.
+     */
+    @Test
+    public void testNames() {
+        assertThat(Compression.forName("pet_opt.log.gz"),
+                equalTo(Compression.GZIP));
+        assertThat(Compression.forName("pet_opt.log.BZ2"),
+                equalTo(Compression.BZIP2));
+        assertThat(Compression.forName("pet_opt.log.xz"),
+                equalTo(Compression.XZ));
+        assertThat(Compression.forName("pet_opt.log.zst"),
+                equalTo(Compression.ZSTD));
+        assertThat(Compression.forName("pet_opt.log"), nullValue());
+        assertThat(Compression.baseName(new File("pet_opt.log.gz")),
+                equalTo("pet_opt.log"));
+        assertThat(Compression.baseName(new File("pet_opt.log")),
+                equalTo("pet_opt.log"));
+    }
+
+    /**
+     * Tests reading each format that doesn't need an extra library.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testRead() throws Exception {
+        assertThat(read(compress("test.log.gz", CompressorStreamFactory.GZIP)),
+                equalTo(TEXT));
+        assertThat(
+                read(compress("test.log.bz2", CompressorStreamFactory.BZIP2)),
+                equalTo(TEXT));
+        assertThat(read(compress("test.log.xz", CompressorStreamFactory.XZ)),
+                equalTo(TEXT));
+    }
+
+    /**
+     * Tests reading a file that is several gzip streams written one after
+     * the other, as parallel compressors do.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testConcatenated() throws Exception {
+        final File file = new File(TMP_DIR, "test.log.gz");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < 2; i++) {
+                final OutputStream compOut = new CompressorStreamFactory()
+                        .createCompressorOutputStream(
+                                CompressorStreamFactory.GZIP, new NoCloseStream(
+                                        out));
+                compOut.write(TEXT.getBytes(Charset.forName("US-ASCII")));
+                compOut.close();
+            }
+        } finally {
+            out.close();
+        }
+        assertThat(read(file), equalTo(TEXT + TEXT));
+    }
+
+    /**
+     * Tests that closing a reader early stops decompression.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testCloseEarly() throws Exception {
+        final DecompressingInputStream stream = new DecompressingInputStream(
+                compress("test.log.gz", CompressorStreamFactory.GZIP),
+                Compression.GZIP);
+        assertThat(stream.read(), equalTo((int) ' '));
+        stream.close();
+        assertThat(stream.read(), equalTo(-1));
+    }
+
+    /**
+     * Tests that damaged data is reported by the reader.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test(expected = IOException.class)
+    public void testDamaged() throws Exception {
+        final File file = new File(TMP_DIR, "test.log.gz");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(TEXT.substring(0, 100).getBytes(
+                    Charset.forName("US-ASCII")));
+        } finally {
+            out.close();
+        }
+        read(file);
+    }
+
+    /**
+     * Tests that an error on the decompressor thread is reported by the
+     * reader instead of leaving it waiting.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test(timeout = 10000)
+    public void testDecompressorError() throws Exception {
+        final DecompressingInputStream stream = new DecompressingInputStream(
+                "error.log.gz", new InputStream() {
+                    @Override
+                    public int read() {
+                        throw new StackOverflowError("Decompressor failed");
+                    }
+                }, null);
+        try {
+            stream.read();
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            assertThat(e.getCause(), instanceOf(StackOverflowError.class));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Compresses the test text into a file.
+     *
+     * @param name
+     *            The name of the file.
+     * @param format
+     *            The commons-compress name of the format.
+     * @return The compressed file.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private File compress(final String name, final String format)
+            throws Exception {
+        final File file = new File(TMP_DIR, name);
+        final OutputStream out = new CompressorStreamFactory()
+                .createCompressorOutputStream(format, new FileOutputStream(
+                        file));
+        try {
+            out.write(TEXT.getBytes(Charset.forName("US-ASCII")));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Reads all of a file through {@link Compression#openReader(File)}.
+     *
+     * @param file
+     *            The file to read.
+     * @return The file's text.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static String read(final File file) throws IOException {
+        final Reader reader = Compression.openReader(file);
+        try {
+            final StringWriter writer = new StringWriter();
+            final char[] buf = new char[4096];
+            for (int len = reader.read(buf); len >= 0; len = reader.read(buf)) {
+                writer.write(buf, 0, len);
+            }
+            return writer.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Keeps a compressor from closing the file it writes to.
+     */
+    private static final class NoCloseStream extends OutputStream {
+        private final OutputStream out;
+
+        /**
+         * @param target
+         *            The stream to write to.
+         */
+        private NoCloseStream(final OutputStream target) {
+            this.out = target;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
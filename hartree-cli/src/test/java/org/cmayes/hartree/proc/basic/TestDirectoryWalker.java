@@ -0,0 +1,179 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cmayes.hartree.proc.FileProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.file.ExtensionFilter;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link DirectoryWalker}.
+ *
+ * @author cmayes
+ */
+public class TestDirectoryWalker {
+    private static final File INDIR = new File(CommonConstants.TMPDIR,
+            "walkerin");
+    private static final FilenameFilter LOG_FILTER = new ExtensionFilter(
+            ".log");
+    private List<File> expected;
+
+    /**
+     * Creates a tree of files, listing the logs in sorted walk order.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (INDIR.exists()) {
+            EnvUtils.recursiveDelete(INDIR);
+        }
+        expected = new ArrayList<File>();
+        expected.add(touch(INDIR, "a.log"));
+        for (String dir : Arrays.asList("b", "c")) {
+            final File subDir = new File(INDIR, dir);
+            for (int i = 0; i < 3; i++) {
+                final File subSubDir = new File(subDir, "d" + i);
+                expected.add(touch(subSubDir, "e.log"));
+                touch(subSubDir, "e.txt");
+            }
+            expected.add(touch(subDir, "f.log"));
+        }
+        expected.add(touch(INDIR, "g.log"));
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(INDIR);
+    }
+
+    /**
+     * Tests that an ordered walk processes files in sorted walk order.
+     */
+    @Test
+    public void testOrdered() {
+        for (int threads : Arrays.asList(1, 4)) {
+            final RecordingProcessor proc = new RecordingProcessor();
+            new DirectoryWalker(LOG_FILTER, threads, true).walk(INDIR, proc);
+            assertThat(proc.files, equalTo(expected));
+        }
+    }
+
+    /**
+     * Tests that an unordered walk processes each file once.
+     */
+    @Test
+    public void testUnordered() {
+        final RecordingProcessor proc = new RecordingProcessor();
+        new DirectoryWalker(LOG_FILTER, 4, false).walk(INDIR, proc);
+        assertThat(proc.files, containsInAnyOrder(expected.toArray()));
+    }
+
+    /**
+     * Tests that a file is processed as it is.
+     */
+    @Test
+    public void testFile() {
+        final RecordingProcessor proc = new RecordingProcessor();
+        new DirectoryWalker(LOG_FILTER, 1, true).walk(expected.get(0), proc);
+        assertThat(proc.files, equalTo(expected.subList(0, 1)));
+    }
+
+    /**
+     * Tests that a link back up the tree is skipped while other links are
+     * followed.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLinks() throws Exception {
+        final File loop = new File(new File(INDIR, "b"), "loop");
+        Files.createSymbolicLink(loop.toPath(), INDIR.getAbsoluteFile()
+                .toPath());
+        final File link = new File(INDIR, "h");
+        Files.createSymbolicLink(link.toPath(), new File(INDIR, "c")
+                .getAbsoluteFile().toPath());
+        try {
+            for (boolean ordered : Arrays.asList(true, false)) {
+                final RecordingProcessor proc = new RecordingProcessor();
+                new DirectoryWalker(LOG_FILTER, 2, ordered).walk(INDIR, proc);
+                assertThat(proc.files.size(), equalTo(expected.size() + 4));
+                assertThat(proc.files.contains(new File(link, "f.log")),
+                        equalTo(true));
+            }
+        } finally {
+            // Removed here since the delete in tearDown follows links.
+            Files.delete(loop.toPath());
+            Files.delete(link.toPath());
+        }
+    }
+
+    /**
+     * Tests that a walker needs a thread.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreads() {
+        new DirectoryWalker(LOG_FILTER, 0, true);
+    }
+
+    /**
+     * Creates an empty file, and its directory if needed.
+     *
+     * @param dir
+     *            The directory to create the file in.
+     * @param name
+     *            The file's name.
+     * @return The file.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static File touch(final File dir, final String name)
+            throws IOException {
+        dir.mkdirs();
+        final File file = new File(dir, name);
+        file.createNewFile();
+        return file;
+    }
+
+    /**
+     * Records the files it is given.
+     */
+    private static final class RecordingProcessor implements
+            FileProcessor<Object> {
+        private final List<File> files = new ArrayList<File>();
+
+        @Override
+        public void displayAll(final List<File> processFiles) {
+            files.addAll(processFiles);
+        }
+
+        @Override
+        public void displayDir(final File processDir) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+}
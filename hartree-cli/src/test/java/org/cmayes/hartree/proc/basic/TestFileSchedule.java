@@ -0,0 +1,158 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link FileSchedule}.
+ *
+ * @author cmayes
+ */
+public class TestFileSchedule {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "schedule");
+    private List<File> files;
+
+    /**
+     * Creates files of different sizes in two directories. The first directory
+     * holds 7 bytes, the second 10.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        files = new ArrayList<File>();
+        files.add(create("a", "one.log", 1));
+        files.add(create("a", "two.log", 6));
+        files.add(create("b", "three.log", 2));
+        files.add(create("b", "four.log", 2));
+        files.add(create("b", "five.log", 6));
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that input order is kept and not batched.
+     */
+    @Test
+    public void testInput() {
+        final FileSchedule schedule = scheduled(FileSchedule.Policy.INPUT);
+        assertFalse(schedule.isBatched());
+        assertThat(schedule.start(), equalTo(new int[] { 0, 1, 2, 3, 4 }));
+        assertThat(schedule.getTotalBytes(), equalTo(17L));
+    }
+
+    /**
+     * Tests that the largest files start first, ties in input order.
+     */
+    @Test
+    public void testLargest() {
+        final FileSchedule schedule = scheduled(FileSchedule.Policy.LARGEST);
+        assertTrue(schedule.isBatched());
+        assertThat(schedule.start(), equalTo(new int[] { 1, 4, 2, 3, 0 }));
+        schedule.finished();
+        assertThat(schedule.toString(), equalTo(String.format(
+                "LARGEST: 5 files, 17 bytes, two.log started first, "
+                        + "%d ms to finish", schedule.getMakespanMillis())));
+    }
+
+    /**
+     * Tests that the largest directory's files start first, largest first.
+     */
+    @Test
+    public void testDirectory() {
+        assertThat(scheduled(FileSchedule.Policy.DIRECTORY).start(),
+                equalTo(new int[] { 4, 2, 3, 1, 0 }));
+    }
+
+    /**
+     * Tests that files start in inode order.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testInode() throws Exception {
+        final int[] order = scheduled(FileSchedule.Policy.INODE).start();
+        assertThat(order.length, equalTo(files.size()));
+        for (int i = 1; i < order.length; i++) {
+            assertTrue(inode(files.get(order[i - 1])) <= inode(files
+                    .get(order[i])));
+        }
+    }
+
+    /**
+     * @param policy
+     *            The schedule's policy.
+     * @return A schedule holding the test files.
+     */
+    private FileSchedule scheduled(final FileSchedule.Policy policy) {
+        final FileSchedule schedule = new FileSchedule(policy);
+        schedule.add(files.subList(0, 2));
+        schedule.add(files.subList(2, files.size()));
+        assertThat(schedule.getFiles(), equalTo(files));
+        return schedule;
+    }
+
+    /**
+     * @param file
+     *            The file to read.
+     * @return The file's inode number.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static long inode(final File file) throws IOException {
+        return ((Number) Files.getAttribute(file.toPath(), "unix:ino"))
+                .longValue();
+    }
+
+    /**
+     * Creates a file of the given size.
+     *
+     * @param dir
+     *            The name of the directory to create it in.
+     * @param name
+     *            The file's name.
+     * @param size
+     *            The number of bytes in the file.
+     * @return The file.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static File create(final String dir, final String name,
+            final int size) throws IOException {
+        final File parent = new File(TMP_DIR, dir);
+        parent.mkdirs();
+        final File file = new File(parent, name);
+        final byte[] data = new byte[size];
+        Arrays.fill(data, (byte) 'x');
+        Files.write(file.toPath(), data);
+        return file;
+    }
+}
@@ -0,0 +1,164 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.disp.txt.NormalModeTextDisplay;
+import org.cmayes.hartree.loader.gaussian.NormalModeLoader;
+import org.cmayes.hartree.loader.gaussian.SnapshotFollower;
+import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.NormalModeCalculation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link FollowFileProcessor}.
+ *
+ * @author cmayes
+ */
+public class TestFollowFileProcessor {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "followproc");
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/";
+    private static final String LOG_NAME = "GL_THF_rev4.log";
+    private static final long POLL_MILLIS = 50;
+    /** How long the writer waits before finishing the file. */
+    private static final long WRITE_DELAY = 300;
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that finished files are written once and followed no further.
+     */
+    @Test(timeout = 60000)
+    public void testFinished() {
+        final String[] lines = follow(new File(FILE_DIR_PFX + LOG_NAME),
+                new File(FILE_DIR_PFX + "init_water+pos4.log"));
+        assertThat(lines.length, equalTo(3));
+        assertThat(lines[1], startsWith("\"" + LOG_NAME + "\","));
+        assertThat(lines[2], startsWith("\"init_water+pos4.log\","));
+    }
+
+    /**
+     * Tests that a file is written again as it grows and followed until its
+     * job terminates.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test(timeout = 60000)
+    public void testGrowing() throws Exception {
+        final byte[] data = Files.readAllBytes(new File(FILE_DIR_PFX
+                + LOG_NAME).toPath());
+        final File target = new File(TMP_DIR, LOG_NAME);
+        append(target, Arrays.copyOf(data, data.length / 2));
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(WRITE_DELAY);
+                    append(target, Arrays.copyOfRange(data, data.length / 2,
+                            data.length));
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        final String[] lines = follow(target);
+        writer.join();
+        assertThat(lines.length, greaterThan(2));
+        // The running job's rows are steps, so the header has a step column.
+        assertThat(lines[0], startsWith("\"File Name\",\"Step\","));
+        final String[] finished = follow(new File(FILE_DIR_PFX + LOG_NAME));
+        assertThat(lines[lines.length - 1].replaceFirst(
+                "^(\"[^\"]*\",)\"N/A\",", "$1"), equalTo(finished[1]));
+    }
+
+    /**
+     * Tests that types without a follower reading are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotFollowable() {
+        new FollowFileProcessor<NormalModeCalculation>(HandlingType.NORMAL_MODE,
+                new NormalModeLoader(), new NormalModeTextDisplay(),
+                new ArrayList<Calculation>(), new BasicInputFileHandler(),
+                new SnapshotFollower(), POLL_MILLIS);
+    }
+
+    /**
+     * Follows the files with a snapshot display.
+     *
+     * @param files
+     *            The files to follow.
+     * @return The lines written.
+     */
+    private static String[] follow(final File... files) {
+        final FollowFileProcessor<BaseResult> proc = new FollowFileProcessor<BaseResult>(
+                HandlingType.SNAPSHOT, new SnapshotLoader(),
+                new SnapshotCsvDisplay(), new ArrayList<Calculation>(),
+                new BasicInputFileHandler(), new SnapshotFollower(),
+                POLL_MILLIS);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        proc.displayAll(Arrays.asList(files));
+        proc.finish();
+        return writer.toString().split("\n");
+    }
+
+    /**
+     * Appends the data to the file.
+     *
+     * @param file
+     *            The file to write to.
+     * @param data
+     *            The data to append.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static void append(final File file, final byte[] data)
+            throws IOException {
+        final OutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
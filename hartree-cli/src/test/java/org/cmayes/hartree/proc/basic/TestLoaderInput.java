@@ -0,0 +1,173 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.StepHandler;
+import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
+import org.cmayes.hartree.loader.gaussian.TrajectoryLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link LoaderInput}.
+ *
+ * @author cmayes
+ */
+public class TestLoaderInput {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "loaderin");
+    private static final File LOG_FILE = new File(
+            "src/test/resources/files/g09/GL_THF_rev4.log");
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that a mapped file, a compressed file, an entry and a loader
+     * without a buffer method all give the result that a reader gives.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        final SnapshotLoader loader = new SnapshotLoader();
+        final BaseResult expected = loadReader(loader);
+        assertThat(LoaderInput.load(loader, LOG_FILE), equalTo(expected));
+        assertThat(LoaderInput.load(loader, gzip(LOG_FILE)), equalTo(expected));
+        final byte[] bytes = Files.readAllBytes(LOG_FILE.toPath());
+        assertThat(LoaderInput.load(loader, LOG_FILE.getName(), bytes),
+                equalTo(expected));
+        assertThat(LoaderInput.load(loader, LOG_FILE.getName(),
+                new ByteArrayInputStream(bytes)), equalTo(expected));
+        final Loader<BaseResult> readerOnly = new Loader<BaseResult>() {
+            @Override
+            public BaseResult load(final String srcName, final Reader reader) {
+                return loader.load(srcName, reader);
+            }
+        };
+        assertThat(LoaderInput.load(readerOnly, LOG_FILE), equalTo(expected));
+        assertThat(LoaderInput.load(readerOnly, LOG_FILE.getName(), bytes),
+                equalTo(expected));
+    }
+
+    /**
+     * Tests that the steps of mapped and compressed files match.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLoadSteps() throws Exception {
+        final TrajectoryLoader loader = new TrajectoryLoader();
+        final List<BaseResult> mapped = new ArrayList<BaseResult>();
+        final List<BaseResult> compressed = new ArrayList<BaseResult>();
+        assertThat(LoaderInput.loadSteps(loader, LOG_FILE, collect(mapped)),
+                greaterThan(1));
+        LoaderInput.loadSteps(loader, gzip(LOG_FILE), collect(compressed));
+        assertThat(mapped, equalTo(compressed));
+    }
+
+    /**
+     * Tests which files can be mapped.
+     */
+    @Test
+    public void testMappable() {
+        assertTrue(LoaderInput.isMappable(LOG_FILE));
+        assertFalse(LoaderInput.isMappable(new File("pet_opt.log.gz")));
+        final ByteBuffer buf = LoaderInput.map(LOG_FILE);
+        assertThat((long) buf.remaining(), equalTo(LOG_FILE.length()));
+    }
+
+    /**
+     * @param steps
+     *            The list to add to.
+     * @return A handler that adds each step to the list.
+     */
+    private static StepHandler<BaseResult> collect(
+            final List<BaseResult> steps) {
+        return new StepHandler<BaseResult>() {
+            @Override
+            public void handle(final BaseResult step) {
+                steps.add(step);
+            }
+        };
+    }
+
+    /**
+     * @param loader
+     *            The loader to use.
+     * @return The log file's result, read with a reader.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static BaseResult loadReader(final SnapshotLoader loader)
+            throws IOException {
+        final Reader reader = new FileReader(LOG_FILE);
+        try {
+            return loader.load(LOG_FILE.getName(), reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes a gzip copy of the file to the test directory.
+     *
+     * @param file
+     *            The file to copy.
+     * @return The copy.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static File gzip(final File file) throws IOException {
+        final File target = new File(TMP_DIR, file.getName() + ".gz");
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(
+                target));
+        try {
+            Files.copy(file.toPath(), out);
+        } finally {
+            out.close();
+        }
+        return target;
+    }
+}
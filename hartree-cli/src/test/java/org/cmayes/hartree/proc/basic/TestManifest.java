@@ -0,0 +1,234 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.MediaType;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link Manifest}.
+ *
+ * @author cmayes
+ */
+public class TestManifest {
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "manifest");
+    private static final File INDIR = new File(TMP_DIR, "in");
+    private static final File OUTDIR = new File(TMP_DIR, "out");
+    private static final String SETTINGS = "cat";
+    private List<File> files;
+
+    /**
+     * Copies a few logs to the input directory.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        INDIR.mkdirs();
+        OUTDIR.mkdirs();
+        files = new ArrayList<File>();
+        for (String name : Arrays.asList("1C400.log", "1H200.log",
+                "1HO00.log")) {
+            final File file = new File(INDIR, name);
+            Files.copy(new File(FILE_DIR_PFX, name).toPath(), file.toPath());
+            files.add(file);
+        }
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that a rerun writes the same accumulator from the manifest alone.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testRerun() throws Exception {
+        final String first = run(SETTINGS, 3, 0);
+        assertThat(first.split("\n").length, equalTo(files.size() + 1));
+        assertThat(run(SETTINGS, 0, 3), equalTo(first));
+    }
+
+    /**
+     * Tests that a changed file is parsed again.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testChanged() throws Exception {
+        run(SETTINGS, 3, 0);
+        final File changed = files.get(1);
+        final FileOutputStream out = new FileOutputStream(changed, true);
+        try {
+            out.write(" \n".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            out.close();
+        }
+        final String second = run(SETTINGS, 1, 2);
+        assertThat(second, containsString(String.format("\"%s\",\"%d\",",
+                changed.getName(), changed.length())));
+        assertThat(run(SETTINGS, 0, 3), equalTo(second));
+    }
+
+    /**
+     * Tests that a file with a new modification time but the same bytes is
+     * reused.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testTouched() throws Exception {
+        final String first = run(SETTINGS, 3, 0);
+        files.get(0).setLastModified(
+                files.get(0).lastModified() - 60 * 1000L);
+        assertThat(run(SETTINGS, 0, 3), equalTo(first));
+        assertThat(run(SETTINGS, 0, 3), equalTo(first));
+    }
+
+    /**
+     * Tests that a manifest written with other settings is not used.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testSettingsChanged() throws Exception {
+        run(SETTINGS, 3, 0);
+        run("cat fields=[name]", 3, 0);
+        run("cat fields=[name]", 0, 3);
+    }
+
+    /**
+     * Tests that a run resumes from a manifest an interrupted run cut short.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testResume() throws Exception {
+        final String first = run(SETTINGS, 3, 0);
+        final File manFile = new File(OUTDIR, "accumulator-catalog.csv"
+                + Manifest.EXTENSION);
+        final RandomAccessFile raf = new RandomAccessFile(manFile, "rw");
+        try {
+            raf.setLength(raf.length() - 20);
+        } finally {
+            raf.close();
+        }
+        assertThat(run(SETTINGS, 1, 2), equalTo(first));
+        assertThat(run(SETTINGS, 0, 3), equalTo(first));
+    }
+
+    /**
+     * Tests that JSON rows are written as one array.
+     */
+    @Test
+    public void testJson() {
+        final File accFile = new File(OUTDIR, "accumulator-snap.json");
+        Manifest manifest = new Manifest(accFile, SETTINGS, MediaType.JSON);
+        StringWriter out = new StringWriter();
+        manifest.write(out, files.get(0), manifest.describe(files.get(0)),
+                "[{\"a\":1}");
+        manifest.write(out, files.get(1), manifest.describe(files.get(1)),
+                "");
+        manifest.write(out, files.get(2), manifest.describe(files.get(2)),
+                ",{\"a\":3}");
+        manifest.finish(out);
+        assertThat(out.toString(), equalTo("[{\"a\":1},{\"a\":3}]"));
+
+        manifest = new Manifest(accFile, SETTINGS, MediaType.JSON);
+        out = new StringWriter();
+        for (File file : files) {
+            assertThat(manifest.isUnchanged(file), equalTo(true));
+        }
+        manifest.writeUnchanged(files.get(2), out);
+        manifest.writeUnchanged(files.get(1), out);
+        manifest.writeUnchanged(files.get(0), out);
+        manifest.finish(out);
+        assertThat(out.toString(), equalTo("[{\"a\":3},{\"a\":1}]"));
+    }
+
+    /**
+     * Tests that only CSV and JSON can be kept.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadFormat() {
+        new Manifest(new File(OUTDIR, "accumulator-snap.txt"), SETTINGS,
+                MediaType.TEXT);
+    }
+
+    /**
+     * Runs the catalog over the input files with a manifest.
+     *
+     * @param settings
+     *            The settings of the run.
+     * @param parsed
+     *            The number of files that should be parsed.
+     * @param reused
+     *            The number of files that should be reused.
+     * @return The accumulator's contents.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private String run(final String settings, final int parsed,
+            final int reused) throws IOException {
+        final InputFileHandler handler = mock(InputFileHandler.class);
+        when(handler.getOutDir()).thenReturn(OUTDIR);
+        final AccumulatingFileProcessor<CatalogEntry> proc = new AccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(), handler);
+        proc.useManifest(settings);
+        proc.displayAll(files);
+        proc.finish();
+        final Manifest manifest = proc.getManifest();
+        assertThat(manifest.getParsedCount(), equalTo(parsed));
+        assertThat(manifest.getReusedCount(), equalTo(reused));
+        final String contents = new String(Files.readAllBytes(new File(
+                OUTDIR, "accumulator-catalog.csv").toPath()),
+                StandardCharsets.UTF_8);
+        assertThat(contents, not(equalTo("")));
+        return contents;
+    }
+}
@@ -0,0 +1,205 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.MediaType;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link ParallelAccumulatingFileProcessor}.
+ * 
+ * @author cmayes
+ */
+public class TestParallelAccumulatingFileProcessor {
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "parbounded");
+    /** Several times the in-flight window of one worker. */
+    private static final int BOUNDED_FILE_COUNT = 20;
+
+    /**
+     * Tests that results are written once each, in the order the files were
+     * given, even with more files than the in-flight window.
+     */
+    @Test
+    public void testOrderedFiles() {
+        final ParallelAccumulatingFileProcessor<CatalogEntry> proc = new ParallelAccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class), 2);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        final File[] files = new File(FILE_DIR_PFX).listFiles();
+        Arrays.sort(files);
+        final List<File> fileList = Arrays.asList(files);
+        proc.displayAll(fileList);
+        proc.finish();
+        final String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, equalTo(files.length + 1));
+        assertThat(lines[0], startsWith("\"File Name\",\"Size (bytes)\","));
+        for (int i = 0; i < files.length; i++) {
+            assertThat(lines[i + 1], startsWith(String.format("\"%s\",\"%d\",",
+                    files[i].getName(), files[i].length())));
+        }
+    }
+
+    /**
+     * Tests that files started largest first are still written in the order
+     * they were given.
+     */
+    @Test
+    public void testScheduledFiles() {
+        final FileSchedule schedule = new FileSchedule(
+                FileSchedule.Policy.LARGEST);
+        final ParallelAccumulatingFileProcessor<CatalogEntry> proc = new ParallelAccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class), 2, schedule);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        final File[] files = new File(FILE_DIR_PFX).listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            proc.displayAll(Collections.singletonList(file));
+        }
+        assertThat(writer.toString(), equalTo(""));
+        proc.finish();
+        final String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, equalTo(files.length + 1));
+        for (int i = 0; i < files.length; i++) {
+            assertThat(lines[i + 1], startsWith(String.format("\"%s\",",
+                    files[i].getName())));
+        }
+        assertThat(schedule.getFileCount(), equalTo(files.length));
+    }
+
+    /**
+     * Tests that a schedule that starts the last input file first doesn't
+     * hold more results than the in-flight window while waiting to write the
+     * first.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testScheduledPendingBounded() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+        try {
+            // Smallest first, so the largest-first schedule is reversed.
+            final List<File> files = new ArrayList<File>();
+            for (int i = 0; i < BOUNDED_FILE_COUNT; i++) {
+                final File file = new File(TMP_DIR, String.format("%02d.log",
+                        i));
+                final byte[] data = new byte[i + 1];
+                Arrays.fill(data, (byte) 'x');
+                Files.write(file.toPath(), data);
+                files.add(file);
+            }
+            final AtomicInteger loaded = new AtomicInteger();
+            final AtomicInteger maxHeld = new AtomicInteger();
+            final List<String> written = new ArrayList<String>();
+            final ParallelAccumulatingFileProcessor<String> proc = new ParallelAccumulatingFileProcessor<String>(
+                    HandlingType.CATALOG, mock(Loader.class),
+                    new CountingDisplay(loaded, maxHeld, written),
+                    new ArrayList<Calculation>(),
+                    mock(InputFileHandler.class), 1, new FileSchedule(
+                            FileSchedule.Policy.LARGEST)) {
+                @Override
+                protected String load(final File targetFile) {
+                    loaded.incrementAndGet();
+                    return targetFile.getName();
+                }
+            };
+            proc.setAccWriter(new StringWriter());
+            proc.displayAll(files);
+            proc.finish();
+            assertThat(written.size(), equalTo(BOUNDED_FILE_COUNT));
+            for (int i = 0; i < BOUNDED_FILE_COUNT; i++) {
+                assertThat(written.get(i), equalTo(files.get(i).getName()));
+            }
+            assertThat(maxHeld.get(),
+                    lessThanOrEqualTo(ParallelAccumulatingFileProcessor.FILES_PER_WORKER));
+        } finally {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+    }
+
+    /**
+     * Records the written results and the most results that had been loaded
+     * but not yet written.
+     */
+    private static final class CountingDisplay implements Display<String> {
+        private final AtomicInteger loaded;
+        private final AtomicInteger maxHeld;
+        private final List<String> written;
+
+        /**
+         * @param loadCount
+         *            Counts the loaded results.
+         * @param maxHeldCount
+         *            Records the most loaded but unwritten results.
+         * @param writtenList
+         *            Records the written results.
+         */
+        private CountingDisplay(final AtomicInteger loadCount,
+                final AtomicInteger maxHeldCount, final List<String> writtenList) {
+            this.loaded = loadCount;
+            this.maxHeld = maxHeldCount;
+            this.written = writtenList;
+        }
+
+        @Override
+        public void write(final Writer writer, final String valToDisp) {
+            maxHeld.set(Math.max(maxHeld.get(),
+                    loaded.get() - written.size()));
+            written.add(valToDisp);
+        }
+
+        @Override
+        public void finish(final Writer writer) {
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return MediaType.CSV;
+        }
+
+        @Override
+        public boolean isWriteMulti() {
+            return false;
+        }
+
+        @Override
+        public void setWriteMulti(final boolean writeMulti) {
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.loader.gaussian.SnapshotLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.MediaType;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link PipelineFileProcessor}.
+ *
+ * @author cmayes
+ */
+public class TestPipelineFileProcessor {
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "pipeline");
+    private static final String G09_DIR_PFX = "src/test/resources/files/g09/";
+    private static final String SNAP_DIR_PFX = G09_DIR_PFX + "snapshot/";
+    private static final String[] SNAP_NAMES = { "GL_THF_rev4.log",
+            "glucose5m062xEtOHnorm.log", "init_water+pos4.log",
+            "m-glucose_gasm062x.out" };
+    private static final int QUEUE_SIZE = 2;
+
+    /**
+     * Creates the test directory.
+     */
+    @Before
+    public void setUp() {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        TMP_DIR.mkdirs();
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that files read ahead, including a compressed one, give the same
+     * output as a linear run.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testMatchesLinear() throws Exception {
+        final List<File> files = new ArrayList<File>();
+        for (String name : SNAP_NAMES) {
+            files.add(new File(G09_DIR_PFX + name));
+        }
+        files.add(gzip(files.get(0)));
+        final AccumulatingFileProcessor<BaseResult> linear = new AccumulatingFileProcessor<BaseResult>(
+                HandlingType.SNAPSHOT, new SnapshotLoader(),
+                new SnapshotCsvDisplay(), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class));
+        final PipelineFileProcessor<BaseResult> pipeline = new PipelineFileProcessor<BaseResult>(
+                HandlingType.SNAPSHOT, new SnapshotLoader(),
+                new SnapshotCsvDisplay(), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class), 2, 2, 2, QUEUE_SIZE);
+        assertThat(run(pipeline, files), equalTo(run(linear, files)));
+        for (PipelineStage stage : pipeline.getStages()) {
+            assertThat(stage.getName(), stage.getItemCount(),
+                    equalTo((long) files.size()));
+            assertThat(stage.getMaxQueueDepth(),
+                    lessThanOrEqualTo(QUEUE_SIZE));
+        }
+    }
+
+    /**
+     * Tests that files a file loader reads itself are written in order, with
+     * more files than fit in the pipeline.
+     */
+    @Test
+    public void testOrderedFiles() {
+        final PipelineFileProcessor<CatalogEntry> proc = new PipelineFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class), 1, 3, 1, 1);
+        final File[] files = new File(SNAP_DIR_PFX).listFiles();
+        Arrays.sort(files);
+        final String[] lines = run(proc, Arrays.asList(files)).split("\n");
+        assertThat(lines.length, equalTo(files.length + 1));
+        assertThat(lines[0], startsWith("\"File Name\",\"Size (bytes)\","));
+        for (int i = 0; i < files.length; i++) {
+            assertThat(lines[i + 1], startsWith(String.format("\"%s\",\"%d\",",
+                    files[i].getName(), files[i].length())));
+        }
+    }
+
+    /**
+     * Tests that no more files are loaded than fit in the pipeline while the
+     * display is slow.
+     */
+    @Test
+    public void testBackpressure() {
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final Loader<String> loader = new Loader<String>() {
+            @Override
+            public String load(final String srcName, final Reader reader) {
+                final int ahead = loaded.incrementAndGet() - written.get();
+                if (ahead > maxAhead.get()) {
+                    maxAhead.set(ahead);
+                }
+                return srcName;
+            }
+        };
+        final PipelineFileProcessor<String> proc = new PipelineFileProcessor<String>(
+                HandlingType.SNAPSHOT, loader, new SlowDisplay(written),
+                new ArrayList<Calculation>(), mock(InputFileHandler.class),
+                1, 1, 1, 1);
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 40; i++) {
+            files.add(new File(G09_DIR_PFX + SNAP_NAMES[3]));
+        }
+        run(proc, files);
+        assertThat(written.get(), equalTo(files.size()));
+        // Four queues of one plus one item held by each thread.
+        assertThat(maxAhead.get(), lessThanOrEqualTo(8));
+    }
+
+    /**
+     * Tests that a failure is thrown once, after the results before it are
+     * written.
+     */
+    @Test
+    public void testFailure() {
+        final Loader<String> loader = new Loader<String>() {
+            @Override
+            public String load(final String srcName, final Reader reader) {
+                if (srcName.startsWith("init")) {
+                    throw new IllegalStateException("Bad " + srcName);
+                }
+                return srcName;
+            }
+        };
+        final PipelineFileProcessor<String> proc = new PipelineFileProcessor<String>(
+                HandlingType.SNAPSHOT, loader, new SlowDisplay(
+                        new AtomicInteger()), new ArrayList<Calculation>(),
+                mock(InputFileHandler.class), 2, 2, 1, 1);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        final List<File> files = new ArrayList<File>();
+        for (String name : SNAP_NAMES) {
+            files.add(new File(G09_DIR_PFX + name));
+        }
+        final List<String> failures = new ArrayList<String>();
+        try {
+            proc.displayAll(files);
+        } catch (final IllegalStateException e) {
+            failures.add(e.getMessage());
+        } finally {
+            try {
+                proc.finish();
+            } catch (final IllegalStateException e) {
+                failures.add(e.getMessage());
+            }
+        }
+        assertThat(failures, equalTo(Arrays.asList("Bad init_water+pos4.log")));
+        assertThat(writer.toString(), equalTo(SNAP_NAMES[0] + "\n"
+                + SNAP_NAMES[1] + "\n"));
+    }
+
+    /**
+     * Runs the processor over the files.
+     *
+     * @param proc
+     *            The processor to run.
+     * @param files
+     *            The files to process.
+     * @return The accumulated output.
+     */
+    private static String run(final AccumulatingFileProcessor<?> proc,
+            final List<File> files) {
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        proc.displayAll(files);
+        proc.finish();
+        return writer.toString();
+    }
+
+    /**
+     * Writes a gzip copy of the file to the test directory.
+     *
+     * @param file
+     *            The file to copy.
+     * @return The copy.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static File gzip(final File file) throws IOException {
+        final File target = new File(TMP_DIR, file.getName() + ".gz");
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(
+                target));
+        try {
+            Files.copy(file.toPath(), out);
+        } finally {
+            out.close();
+        }
+        return target;
+    }
+
+    /**
+     * Writes each value on its own line after a short wait.
+     */
+    private static final class SlowDisplay implements Display<String> {
+        private final AtomicInteger written;
+
+        /**
+         * @param count
+         *            Counts the values written.
+         */
+        private SlowDisplay(final AtomicInteger count) {
+            this.written = count;
+        }
+
+        @Override
+        public void write(final Writer writer, final String valToDisp) {
+            try {
+                Thread.sleep(5);
+                writer.write(valToDisp + "\n");
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            written.incrementAndGet();
+        }
+
+        @Override
+        public void finish(final Writer writer) {
+        }
+
+        @Override
+        public MediaType getMediaType() {
+            return MediaType.TEXT;
+        }
+
+        @Override
+        public boolean isWriteMulti() {
+            return true;
+        }
+
+        @Override
+        public void setWriteMulti(final boolean writeMulti) {
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Shard}.
+ *
+ * @author cmayes
+ */
+public class TestShard {
+    /**
+     * Tests parsing a shard.
+     */
+    @Test
+    public void testParse() {
+        final Shard shard = Shard.parse("2/8");
+        assertThat(shard.getIndex(), equalTo(2));
+        assertThat(shard.getCount(), equalTo(8));
+        assertThat(shard.toString(), equalTo("2/8"));
+    }
+
+    /**
+     * Tests that a shard past the count is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseBad() {
+        Shard.parse("8/8");
+    }
+
+    /**
+     * Tests that each path belongs to exactly one shard.
+     */
+    @Test
+    public void testOwns() {
+        final int count = 4;
+        final int[] owned = new int[count];
+        for (int i = 0; i < 400; i++) {
+            int owners = 0;
+            for (int idx = 0; idx < count; idx++) {
+                if (new Shard(idx, count).owns("run" + i + "/job.log")) {
+                    owners++;
+                    owned[idx]++;
+                }
+            }
+            assertThat(owners, equalTo(1));
+        }
+        for (int idx = 0; idx < count; idx++) {
+            assertThat(owned[idx] > 50, equalTo(true));
+        }
+    }
+
+    /**
+     * Tests that paths are taken relative to the input directory.
+     */
+    @Test
+    public void testRelativePath() {
+        final File inDir = new File("in");
+        assertThat(Shard.relativePath(new File(new File(inDir, "a"),
+                "b.log"), inDir), equalTo("a/b.log"));
+        assertThat(Shard.relativePath(new File("other", "b.log"), inDir),
+                equalTo("other/b.log"));
+        assertThat(Shard.relativePath(new File("b.log"), null),
+                equalTo("b.log"));
+    }
+}
@@ -0,0 +1,206 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.disp.json.JsonDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.MediaType;
+import com.cmayes.common.file.ExtensionFilter;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link ShardMerger}.
+ *
+ * @author cmayes
+ */
+public class TestShardMerger {
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "shards");
+    private static final File INDIR = new File(TMP_DIR, "in");
+    private static final int SHARDS = 3;
+
+    /**
+     * Copies the logs to two input directories.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        final File[] logs = new File(FILE_DIR_PFX).listFiles();
+        for (int i = 0; i < logs.length; i++) {
+            final File dir = new File(INDIR, i % 2 == 0 ? "a" : "b");
+            dir.mkdirs();
+            Files.copy(logs[i].toPath(),
+                    new File(dir, logs[i].getName()).toPath());
+        }
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that merged CSV shards match a run on one node.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testCsv() throws Exception {
+        assertMerged(MediaType.CSV, false, false);
+    }
+
+    /**
+     * Tests that merged JSON shards of the parallel processor match a run on
+     * one node.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testParallelJson() throws Exception {
+        assertMerged(MediaType.JSON, true, false);
+    }
+
+    /**
+     * Tests that the shards' manifests are merged too.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testManifests() throws Exception {
+        final File merged = assertMerged(MediaType.CSV, true, true);
+        final Manifest manifest = new Manifest(merged, "catalog",
+                MediaType.CSV);
+        for (File dir : INDIR.listFiles()) {
+            for (File file : dir.listFiles()) {
+                if (file.getName().endsWith(".log")) {
+                    assertThat(manifest.isUnchanged(file), equalTo(true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a missing shard is reported.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingShard() {
+        final List<File> accFiles = new ArrayList<File>();
+        for (int idx = 1; idx < SHARDS; idx++) {
+            accFiles.add(run(MediaType.CSV, false, false, new Shard(idx,
+                    SHARDS)));
+        }
+        new ShardMerger(accFiles);
+    }
+
+    /**
+     * Runs the catalog on one node and as shards, then merges the shards.
+     *
+     * @param media
+     *            The media type to write.
+     * @param parallel
+     *            Whether to use the parallel processor.
+     * @param incremental
+     *            Whether to keep manifests.
+     * @return The merged accumulator.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private File assertMerged(final MediaType media, final boolean parallel,
+            final boolean incremental) throws IOException {
+        final String single = read(run(media, parallel, incremental, null));
+        final List<File> accFiles = new ArrayList<File>();
+        for (int idx = SHARDS - 1; idx >= 0; idx--) {
+            accFiles.add(run(media, parallel, incremental, new Shard(idx,
+                    SHARDS)));
+        }
+        final ShardMerger merger = new ShardMerger(accFiles);
+        final File merged = new File(TMP_DIR, accFiles.get(0).getName());
+        merger.merge(merged);
+        assertThat(read(merged), equalTo(single));
+        assertThat(merger.getByteCount(), equalTo(merged.length()));
+        return merged;
+    }
+
+    /**
+     * Runs the catalog over the input directory.
+     *
+     * @param media
+     *            The media type to write.
+     * @param parallel
+     *            Whether to use the parallel processor.
+     * @param incremental
+     *            Whether to keep a manifest.
+     * @param shard
+     *            The shard to run, or null for all files.
+     * @return The accumulator.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static File run(final MediaType media, final boolean parallel,
+            final boolean incremental, final Shard shard) {
+        final File outDir = new File(TMP_DIR, shard == null ? "single"
+                : "shard" + shard.getIndex());
+        outDir.mkdirs();
+        final BasicInputFileHandler handler = new BasicInputFileHandler(
+                new ExtensionFilter(".log"), INDIR, outDir);
+        final Display display = MediaType.JSON.equals(media) ? new JsonDisplay()
+                : new CatalogCsvDisplay();
+        final Loader loader = new CatalogLoader();
+        final AccumulatingFileProcessor proc = parallel ? new ParallelAccumulatingFileProcessor(
+                HandlingType.CATALOG, loader, display,
+                new ArrayList<Calculation>(), handler, 2)
+                : new AccumulatingFileProcessor(HandlingType.CATALOG, loader,
+                        display, new ArrayList<Calculation>(), handler);
+        if (incremental) {
+            proc.useManifest("catalog");
+        }
+        if (shard != null) {
+            proc.useShard(shard);
+        }
+        proc.displayDir(INDIR);
+        proc.finish();
+        return new File(outDir, "accumulator-catalog."
+                + media.getPrimaryExtension());
+    }
+
+    /**
+     * @param file
+     *            The file to read.
+     * @return The file's contents.
+     * @throws IOException
+     *             When there's a problem.
+     */
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
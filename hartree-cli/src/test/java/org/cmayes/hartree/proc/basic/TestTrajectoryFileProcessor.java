@@ -0,0 +1,72 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.calc.impl.CremerPopleCalculation;
+import org.cmayes.hartree.calc.impl.GlucoseRingCalculation;
+import org.cmayes.hartree.disp.csv.SnapshotCsvDisplay;
+import org.cmayes.hartree.loader.Loader;
+import org.cmayes.hartree.loader.gaussian.TrajectoryLoader;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.proc.InputFileHandler;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TrajectoryFileProcessor}.
+ * 
+ * @author cmayes
+ */
+public class TestTrajectoryFileProcessor {
+    private static final String TRAJ_LOG = "glucANaO6c.log";
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final int TRAJ_STEPS = 28;
+
+    /**
+     * Tests that every step is written once and in file order, even with
+     * more steps than the in-flight window.
+     */
+    @Test
+    public void testOrderedSteps() {
+        final List<Calculation> calcs = Arrays.<Calculation> asList(
+                new GlucoseRingCalculation(), new CremerPopleCalculation());
+        final TrajectoryFileProcessor<BaseResult> proc = new TrajectoryFileProcessor<BaseResult>(
+                HandlingType.TRAJECTORY, new TrajectoryLoader(),
+                new SnapshotCsvDisplay(), calcs,
+                mock(InputFileHandler.class), 2);
+        final StringWriter writer = new StringWriter();
+        proc.setAccWriter(writer);
+        proc.displayAll(Collections.singletonList(new File(FILE_DIR_PFX
+                + TRAJ_LOG)));
+        proc.finish();
+        final String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, equalTo(TRAJ_STEPS + 1));
+        assertThat(lines[0], startsWith("\"File Name\",\"Step\","));
+        for (int i = 1; i < lines.length; i++) {
+            assertThat(lines[i], startsWith(String.format("\"%s\",\"%d\",",
+                    TRAJ_LOG, i)));
+        }
+    }
+
+    /**
+     * Tests that a loader without step support is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void testPlainLoader() {
+        new TrajectoryFileProcessor<BaseResult>(HandlingType.TRAJECTORY,
+                mock(Loader.class), new SnapshotCsvDisplay(),
+                new ArrayList<Calculation>(), mock(InputFileHandler.class), 1);
+    }
+}
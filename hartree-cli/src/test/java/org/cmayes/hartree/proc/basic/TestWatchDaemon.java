@@ -0,0 +1,305 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.cmayes.hartree.HandlingType;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.disp.csv.CatalogCsvDisplay;
+import org.cmayes.hartree.loader.gaussian.CatalogLoader;
+import org.cmayes.hartree.model.def.CatalogEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.file.ExtensionFilter;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link WatchDaemon}.
+ *
+ * @author cmayes
+ */
+public class TestWatchDaemon {
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final File LINK1_LOG = new File(FILE_DIR_PFX,
+            "bxyl_4h5_38m062xm06relb3lypbigcon2b3ltstts.log");
+    private static final String LINK1_STEP = " Link1:  Proceeding";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "watchdaemon");
+    private static final File WATCH_DIR = new File(TMP_DIR, "watch");
+    private static final File OUT_DIR = new File(TMP_DIR, "out");
+    private static final long SETTLE_MILLIS = 200;
+    private static final long WAIT_MILLIS = 20000;
+    private File[] logs;
+
+    /**
+     * Creates the test directories and puts a log in the watched one.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        WATCH_DIR.mkdirs();
+        OUT_DIR.mkdirs();
+        logs = new File(FILE_DIR_PFX).listFiles(new ExtensionFilter(".log"));
+        Arrays.sort(logs);
+        copy(logs[0], WATCH_DIR);
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that logs already there, added later and added to new
+     * subdirectories are processed once each, and that the counters are
+     * published.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testWatch() throws Exception {
+        final BasicInputFileHandler handler = new BasicInputFileHandler(
+                new ExtensionFilter(".log"), WATCH_DIR, OUT_DIR);
+        final AccumulatingFileProcessor<CatalogEntry> proc = new AccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                handler);
+        final WatchDaemon daemon = new WatchDaemon(proc, handler,
+                Arrays.asList(WATCH_DIR), SETTLE_MILLIS);
+        final ObjectName name = daemon.register("test");
+        final Thread runner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.run();
+            }
+        });
+        runner.start();
+        try {
+            awaitProcessed(daemon, 1);
+            copy(logs[1], WATCH_DIR);
+            awaitProcessed(daemon, 2);
+            final File subDir = new File(WATCH_DIR, "sub");
+            subDir.mkdirs();
+            copy(logs[2], subDir);
+            copy(new File("pom.xml"), subDir);
+            awaitProcessed(daemon, 3);
+            assertThat(daemon.isHealthy(), equalTo(true));
+            assertThat((Long) ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(name, "FilesProcessed"), equalTo(3L));
+        } finally {
+            daemon.stop();
+            runner.join(WAIT_MILLIS);
+            WatchDaemon.unregister(name);
+            proc.finish();
+        }
+        assertThat(runner.isAlive(), equalTo(false));
+        final List<String> lines = Files.readAllLines(new File(OUT_DIR,
+                "accumulator-catalog.csv").toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.size(), equalTo(4));
+        assertThat(daemon.getFilesProcessed(), equalTo(3L));
+        assertThat(daemon.getFilesFailed(), equalTo(0L));
+    }
+
+    /**
+     * Tests that a settled log is only processed once its last job has
+     * ended, here after the first step of a Link1 job has.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testWaitsForTermination() throws Exception {
+        final byte[] data = Files.readAllBytes(LINK1_LOG.toPath());
+        final String text = new String(data, StandardCharsets.US_ASCII);
+        final int split = text.indexOf('\n', text.indexOf(LINK1_STEP)) + 1;
+        final File running = new File(WATCH_DIR, LINK1_LOG.getName());
+        final OutputStream out = new FileOutputStream(running);
+        try {
+            out.write(data, 0, split);
+        } finally {
+            out.close();
+        }
+        final AccumulatingFileProcessor<CatalogEntry> proc = createProc();
+        final WatchDaemon daemon = new WatchDaemon(proc, createHandler(),
+                Arrays.asList(WATCH_DIR), SETTLE_MILLIS);
+        final Thread runner = start(daemon);
+        try {
+            awaitProcessed(daemon, 1);
+            final long end = System.currentTimeMillis() + WAIT_MILLIS;
+            while (daemon.getUnfinishedFiles() < 1
+                    && System.currentTimeMillis() < end) {
+                Thread.sleep(SETTLE_MILLIS / 4);
+            }
+            assertThat(daemon.getUnfinishedFiles(), equalTo(1));
+            Thread.sleep(SETTLE_MILLIS * 4);
+            assertThat(daemon.getFilesProcessed(), equalTo(1L));
+
+            final OutputStream rest = new FileOutputStream(running, true);
+            try {
+                rest.write(data, split, data.length - split);
+            } finally {
+                rest.close();
+            }
+            awaitProcessed(daemon, 2);
+            assertThat(daemon.getUnfinishedFiles(), equalTo(0));
+        } finally {
+            daemon.stop();
+            runner.join(WAIT_MILLIS);
+            proc.finish();
+        }
+        assertThat(readAccumulator().size(), equalTo(3));
+    }
+
+    /**
+     * Tests that a log that changes after it was processed replaces its row
+     * in the accumulator.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testChangedReplaced() throws Exception {
+        final AccumulatingFileProcessor<CatalogEntry> proc = createProc();
+        proc.useManifest("catalog");
+        final WatchDaemon daemon = new WatchDaemon(proc, createHandler(),
+                Arrays.asList(WATCH_DIR), SETTLE_MILLIS);
+        final Thread runner = start(daemon);
+        try {
+            awaitProcessed(daemon, 1);
+            copy(logs[1], WATCH_DIR);
+            awaitProcessed(daemon, 2);
+            final File changed = new File(WATCH_DIR, logs[0].getName());
+            final OutputStream out = new FileOutputStream(changed, true);
+            try {
+                out.write('\n');
+            } finally {
+                out.close();
+            }
+            awaitProcessed(daemon, 3);
+            final List<String> lines = readAccumulator();
+            assertThat(lines.size(), equalTo(3));
+            assertThat(lines.get(1), startsWith(String.format(
+                    "\"%s\",\"%d\"", changed.getName(), changed.length())));
+        } finally {
+            daemon.stop();
+            runner.join(WAIT_MILLIS);
+            proc.finish();
+        }
+        assertThat(readAccumulator().size(), equalTo(3));
+    }
+
+    /**
+     * Tests that a daemon needs a directory to watch.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDirs() {
+        final BasicInputFileHandler handler = new BasicInputFileHandler(
+                new ExtensionFilter(".log"), null, OUT_DIR);
+        new WatchDaemon(new AccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                handler), handler, new ArrayList<File>(), SETTLE_MILLIS);
+    }
+
+    /**
+     * @return A handler for the logs in the watched directory.
+     */
+    private static BasicInputFileHandler createHandler() {
+        return new BasicInputFileHandler(new ExtensionFilter(".log"),
+                WATCH_DIR, OUT_DIR);
+    }
+
+    /**
+     * @return A catalog processor writing to the output directory.
+     */
+    private static AccumulatingFileProcessor<CatalogEntry> createProc() {
+        return new AccumulatingFileProcessor<CatalogEntry>(
+                HandlingType.CATALOG, new CatalogLoader(),
+                new CatalogCsvDisplay(), new ArrayList<Calculation>(),
+                createHandler());
+    }
+
+    /**
+     * @param daemon
+     *            The daemon to run.
+     * @return The thread running the daemon.
+     */
+    private static Thread start(final WatchDaemon daemon) {
+        final Thread runner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.run();
+            }
+        });
+        runner.start();
+        return runner;
+    }
+
+    /**
+     * @return The lines of the catalog accumulator.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static List<String> readAccumulator() throws Exception {
+        return Files.readAllLines(new File(OUT_DIR, "accumulator-catalog.csv")
+                .toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Waits for the daemon to process a number of files.
+     *
+     * @param daemon
+     *            The daemon.
+     * @param count
+     *            The number of files.
+     * @throws InterruptedException
+     *             When interrupted.
+     */
+    private static void awaitProcessed(final WatchDaemon daemon,
+            final long count) throws InterruptedException {
+        final long end = System.currentTimeMillis() + WAIT_MILLIS;
+        while (daemon.getFilesProcessed() < count
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(SETTLE_MILLIS / 4);
+        }
+        assertThat(daemon.getFilesProcessed(), equalTo(count));
+    }
+
+    /**
+     * @param file
+     *            The file to copy.
+     * @param dir
+     *            The directory to copy it to.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static void copy(final File file, final File dir)
+            throws Exception {
+        Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+    }
+}
@@ -0,0 +1,158 @@
+package org.cmayes.hartree.proc.basic;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cmayes.hartree.Main;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cmayes.common.CommonConstants;
+import com.cmayes.common.util.EnvUtils;
+
+/**
+ * Tests for {@link WorkQueue}.
+ *
+ * @author cmayes
+ */
+public class TestWorkQueue {
+    private static final String FILE_DIR_PFX = "src/test/resources/files/g09/snapshot/";
+    private static final File TMP_DIR = new File(CommonConstants.TMPDIR,
+            "workqueue");
+    private static final File INDIR = new File(TMP_DIR, "in");
+    private static final File QDIR = new File(TMP_DIR, "queue");
+    private static final long LEASE_MILLIS = 300;
+    private static final int WORKERS = 3;
+
+    /**
+     * Copies the logs to an input directory.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (TMP_DIR.exists()) {
+            EnvUtils.recursiveDelete(TMP_DIR);
+        }
+        INDIR.mkdirs();
+        for (File log : new File(FILE_DIR_PFX).listFiles()) {
+            Files.copy(log.toPath(), new File(INDIR, log.getName()).toPath());
+        }
+    }
+
+    /**
+     * Removes the test directory.
+     */
+    @After
+    public void tearDown() {
+        EnvUtils.recursiveDelete(TMP_DIR);
+    }
+
+    /**
+     * Tests that a held batch can't be claimed until its lease expires, and
+     * that the first worker to finish a batch keeps it.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testLeases() throws Exception {
+        final WorkQueue first = new WorkQueue(QDIR, "first", LEASE_MILLIS);
+        final WorkQueue second = new WorkQueue(QDIR, "second", LEASE_MILLIS);
+        first.open(4, 2, "catalog");
+        second.open(4, 2, "catalog");
+        assertThat(first.claim(0), equalTo(true));
+        assertThat(second.claim(0), equalTo(false));
+        assertThat(second.claim(1), equalTo(true));
+        Thread.sleep(LEASE_MILLIS * 2);
+        assertThat(second.claim(0), equalTo(true));
+        assertThat(second.getReclaimedCount(), equalTo(1));
+        first.complete(0);
+        second.complete(0);
+        assertThat(first.isDone(0), equalTo(true));
+        assertThat(second.claim(0), equalTo(false));
+        assertThat(new String(Files.readAllBytes(new File(new File(QDIR,
+                "done"), "batch-0").toPath()), StandardCharsets.UTF_8),
+                equalTo("first"));
+    }
+
+    /**
+     * Tests that a worker started with other input is turned away.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherInput() {
+        new WorkQueue(QDIR, "first", LEASE_MILLIS).open(4, 2, "catalog");
+        new WorkQueue(QDIR, "second", LEASE_MILLIS).open(5, 2, "catalog");
+    }
+
+    /**
+     * Tests that a merge waits for every batch to be done.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeUnfinished() {
+        new WorkQueue(QDIR, "first", LEASE_MILLIS).open(4, 2, "catalog");
+        WorkQueue.merger(QDIR);
+    }
+
+    /**
+     * Tests that workers in separate JVMs, along with a batch left by a dead
+     * worker, produce what a run on one node does once merged.
+     *
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testWorkerJvms() throws Exception {
+        final File single = new File(TMP_DIR, "single");
+        single.mkdirs();
+        new Main<Object>().doMain("catalog", "-d", INDIR.getPath(), "-o",
+                single.getPath());
+
+        final File deadLease = new File(new File(QDIR, "leases"),
+                "batch-0.0");
+        deadLease.getParentFile().mkdirs();
+        deadLease.createNewFile();
+        deadLease.setLastModified(System.currentTimeMillis() - 10000);
+        final List<Process> workers = new ArrayList<Process>();
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(new ProcessBuilder(new File(new File(
+                    System.getProperty("java.home"), "bin"), "java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    Main.class.getName(), "catalog", "-d", INDIR.getPath(),
+                    "-Q", QDIR.getPath(), "-b", "1", "-L", "5")
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(TMP_DIR, "worker" + i + ".out"))
+                    .start());
+        }
+        for (Process worker : workers) {
+            assertThat(worker.waitFor(), equalTo(0));
+        }
+
+        final File merged = new File(TMP_DIR, "merged");
+        merged.mkdirs();
+        new Main<Object>().doMain("merge", "-Q", QDIR.getPath(), "-o",
+                merged.getPath());
+        assertThat(read(new File(merged, "accumulator-catalog.csv")),
+                equalTo(read(new File(single, "accumulator-catalog.csv"))));
+    }
+
+    /**
+     * @param file
+     *            The file to read.
+     * @return The file's contents.
+     * @throws Exception
+     *             When there's a problem.
+     */
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
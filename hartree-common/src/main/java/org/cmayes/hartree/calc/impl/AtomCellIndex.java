@@ -0,0 +1,146 @@
+package org.cmayes.hartree.calc.impl;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNullCollection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cmayes.common.model.Atom;
+
+/**
+ * A uniform grid (cell list) over a set of atoms. Atoms are binned into cubic
+ * cells whose edge is the search cutoff, so a radius query only has to look at
+ * the 27 cells around the target. Building the index is linear in the number
+ * of atoms and each query is proportional to the local density rather than
+ * the total atom count.
+ *
+ * @author cmayes
+ */
+public class AtomCellIndex {
+    private final double cellSize;
+    private final Map<Long, List<Atom>> cells = new HashMap<Long, List<Atom>>();
+
+    /**
+     * Bins the given atoms using cells of the given edge length.
+     *
+     * @param atoms
+     *            The atoms to index.
+     * @param cutoff
+     *            The cell edge length; this should be the largest radius that
+     *            will be queried.
+     * @throws IllegalArgumentException
+     *             If the cutoff is not positive.
+     */
+    public AtomCellIndex(final Collection<Atom> atoms, final double cutoff) {
+        if (!(cutoff > 0)) {
+            throw new IllegalArgumentException("Cutoff must be positive: "
+                    + cutoff);
+        }
+        this.cellSize = cutoff;
+        for (Atom atom : asNotNullCollection(atoms, "Atoms are or contain nulls")) {
+            final Long key = cellKey(cellIdx(atom.getX()),
+                    cellIdx(atom.getY()), cellIdx(atom.getZ()));
+            List<Atom> cell = cells.get(key);
+            if (cell == null) {
+                cell = new ArrayList<Atom>();
+                cells.put(key, cell);
+            }
+            cell.add(atom);
+        }
+    }
+
+    /**
+     * Returns the atoms within the given radius of the center atom. The center
+     * atom itself is not included.
+     *
+     * @param center
+     *            The atom to search around.
+     * @param radius
+     *            The search radius; must not exceed the cell size.
+     * @return The atoms within the radius, in no particular order.
+     * @throws IllegalArgumentException
+     *             If the radius is larger than the cell size.
+     */
+    public List<Atom> findWithin(final Atom center, final double radius) {
+        if (radius > cellSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Radius %f is larger than the cell size %f", radius,
+                    cellSize));
+        }
+        final double radSq = radius * radius;
+        final long cx = cellIdx(center.getX());
+        final long cy = cellIdx(center.getY());
+        final long cz = cellIdx(center.getZ());
+        final List<Atom> found = new ArrayList<Atom>();
+        for (long x = cx - 1; x <= cx + 1; x++) {
+            for (long y = cy - 1; y <= cy + 1; y++) {
+                for (long z = cz - 1; z <= cz + 1; z++) {
+                    final List<Atom> cell = cells.get(cellKey(x, y, z));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Atom atom : cell) {
+                        if (atom != center
+                                && distanceSq(center, atom) <= radSq) {
+                            found.add(atom);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The edge length of the index's cells.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the squared distance between two atoms.
+     *
+     * @param first
+     *            The first atom.
+     * @param second
+     *            The second atom.
+     * @return The squared distance between the atoms.
+     */
+    static double distanceSq(final Atom first, final Atom second) {
+        final double dx = first.getX() - second.getX();
+        final double dy = first.getY() - second.getY();
+        final double dz = first.getZ() - second.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns the cell index along one axis.
+     *
+     * @param coord
+     *            The coordinate value.
+     * @return The index of the cell that holds the coordinate.
+     */
+    private long cellIdx(final double coord) {
+        return (long) Math.floor(coord / cellSize);
+    }
+
+    /**
+     * Packs three cell indices into a single map key (21 bits per axis).
+     *
+     * @param x
+     *            The X index.
+     * @param y
+     *            The Y index.
+     * @param z
+     *            The Z index.
+     * @return The cell key.
+     */
+    private static Long cellKey(final long x, final long y, final long z) {
+        final long mask = 0x1FFFFFL;
+        return Long.valueOf(((x & mask) << 42) | ((y & mask) << 21) | (z & mask));
+    }
+}
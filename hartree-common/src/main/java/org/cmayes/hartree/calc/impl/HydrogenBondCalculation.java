@@ -0,0 +1,252 @@
+package org.cmayes.hartree.calc.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.def.CpCalculationSnapshot;
+import org.cmayes.hartree.model.def.HydrogenBond;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.util.ChemUtils;
+
+/**
+ * Finds donor-H...acceptor hydrogen bonds between oxygen and nitrogen atoms
+ * using geometric criteria: the H...acceptor distance must not exceed the
+ * distance cutoff and the donor-H...acceptor angle must be at least the angle
+ * cutoff. Candidate partners are found through an {@link AtomCellIndex}, so
+ * the calculation stays linear in the number of atoms. Instances hold no
+ * per-call state and may be shared between threads.
+ *
+ * <p>
+ * If the ring's oxygens were found by {@link GlucoseBondLengthCalculation},
+ * each one is assigned a role (donor, acceptor, both or neither) and the
+ * bonds between ring oxygens are summarized as a pattern such as "O2&gt;O1".
+ * </p>
+ *
+ * @author cmayes
+ */
+public class HydrogenBondCalculation implements Calculation {
+    /** The default maximum H...acceptor distance in angstroms. */
+    public static final double DEF_MAX_DIST = 2.5;
+    /** The default minimum donor-H...acceptor angle in degrees. */
+    public static final double DEF_MIN_ANGLE = 120.0;
+    /** The maximum covalent donor-H distance in angstroms. */
+    public static final double MAX_DONOR_DIST = 1.2;
+    private static final String DONOR = "d";
+    private static final String ACCEPTOR = "a";
+    private static final String NO_ROLE = "-";
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final double maxDist;
+    private final double minAngle;
+
+    /**
+     * Creates a calculation with the default cutoffs.
+     */
+    public HydrogenBondCalculation() {
+        this(DEF_MAX_DIST, DEF_MIN_ANGLE);
+    }
+
+    /**
+     * Creates a calculation with the given cutoffs.
+     *
+     * @param maxHaDist
+     *            The maximum H...acceptor distance in angstroms.
+     * @param minDhaAngle
+     *            The minimum donor-H...acceptor angle in degrees.
+     * @throws IllegalArgumentException
+     *             If the distance is not positive.
+     */
+    public HydrogenBondCalculation(final double maxHaDist,
+            final double minDhaAngle) {
+        if (!(maxHaDist > 0)) {
+            throw new IllegalArgumentException(
+                    "Distance cutoff must be positive: " + maxHaDist);
+        }
+        this.maxDist = maxHaDist;
+        this.minAngle = minDhaAngle;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.calc.Calculation#calculate(java.lang.Object)
+     */
+    @Override
+    public Object calculate(final Object rawInput) {
+        if (rawInput instanceof BaseResult) {
+            final CpCalculationSnapshot cpSnap;
+            if (rawInput instanceof CpCalculationSnapshot) {
+                cpSnap = new CpCalculationSnapshot(
+                        (CpCalculationSnapshot) rawInput);
+            } else {
+                cpSnap = new CpCalculationSnapshot((BaseResult) rawInput);
+            }
+            final List<Atom> atoms = cpSnap.getAtoms();
+            if (atoms == null || atoms.isEmpty()) {
+                logger.warn("No atoms for H-bond calc {}, skipping.",
+                        cpSnap.getSourceName());
+                return cpSnap;
+            }
+            final List<HydrogenBond> bonds = findBonds(atoms);
+            cpSnap.setHydrogenBonds(bonds);
+            fillRingRoles(cpSnap, bonds);
+            return cpSnap;
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unhandled class '%s'", rawInput.getClass()));
+        }
+    }
+
+    /**
+     * Finds all hydrogen bonds in the given atoms.
+     *
+     * @param atoms
+     *            The atoms to evaluate.
+     * @return The hydrogen bonds, ordered by hydrogen ID.
+     */
+    private List<HydrogenBond> findBonds(final List<Atom> atoms) {
+        final List<Atom> candidates = new ArrayList<Atom>();
+        final List<Atom> hydrogens = new ArrayList<Atom>();
+        for (Atom atom : atoms) {
+            if (AtomicElement.HYDROGEN.equals(atom.getType())) {
+                hydrogens.add(atom);
+            } else if (isDonorOrAcceptor(atom)) {
+                candidates.add(atom);
+            }
+        }
+        final List<HydrogenBond> bonds = new ArrayList<HydrogenBond>();
+        if (hydrogens.isEmpty() || candidates.isEmpty()) {
+            return bonds;
+        }
+
+        // The donor is looked for out to its covalent distance even when the
+        // acceptor cutoff is shorter.
+        final double searchDist = Math.max(maxDist, MAX_DONOR_DIST);
+        final double maxDistSq = maxDist * maxDist;
+        final AtomCellIndex index = new AtomCellIndex(candidates, searchDist);
+        for (Atom hyd : hydrogens) {
+            final List<Atom> near = index.findWithin(hyd, searchDist);
+            final Atom donor = findDonor(hyd, near);
+            if (donor == null) {
+                continue;
+            }
+            final Vector3D hydVec = ChemUtils.vectorForAtom(hyd);
+            final Vector3D toDonor = ChemUtils.vectorForAtom(donor).subtract(
+                    hydVec);
+            for (Atom acceptor : near) {
+                if (acceptor == donor
+                        || AtomCellIndex.distanceSq(hyd, acceptor) > maxDistSq) {
+                    continue;
+                }
+                final Vector3D toAcc = ChemUtils.vectorForAtom(acceptor)
+                        .subtract(hydVec);
+                final double angle = Math.toDegrees(Vector3D.angle(toDonor,
+                        toAcc));
+                if (angle >= minAngle) {
+                    bonds.add(new HydrogenBond(donor.getId(), hyd.getId(),
+                            acceptor.getId(), toAcc.getNorm(), angle));
+                }
+            }
+        }
+        return bonds;
+    }
+
+    /**
+     * Returns the closest O or N atom that is covalently bonded to the
+     * hydrogen, or null if there is none.
+     *
+     * @param hyd
+     *            The hydrogen to evaluate.
+     * @param near
+     *            The O and N atoms near the hydrogen.
+     * @return The donor atom or null.
+     */
+    private Atom findDonor(final Atom hyd, final List<Atom> near) {
+        Atom donor = null;
+        double minDistSq = MAX_DONOR_DIST * MAX_DONOR_DIST;
+        for (Atom atom : near) {
+            final double distSq = AtomCellIndex.distanceSq(hyd, atom);
+            if (distSq <= minDistSq) {
+                minDistSq = distSq;
+                donor = atom;
+            }
+        }
+        return donor;
+    }
+
+    /**
+     * Assigns roles to the ring's oxygens and builds the ring pattern.
+     *
+     * @param cpSnap
+     *            The snapshot to fill.
+     * @param bonds
+     *            The hydrogen bonds in the snapshot.
+     */
+    private void fillRingRoles(final CpCalculationSnapshot cpSnap,
+            final List<HydrogenBond> bonds) {
+        final List<Atom> oxys = cpSnap.getOxygenAtoms();
+        if (oxys == null || oxys.isEmpty()) {
+            logger.debug("No ring oxygens for H-bond roles {}",
+                    cpSnap.getSourceName());
+            return;
+        }
+        final Map<Integer, Integer> labelIdx = new HashMap<Integer, Integer>();
+        for (int i = 0; i < oxys.size(); i++) {
+            if (oxys.get(i) != null) {
+                labelIdx.put(oxys.get(i).getId(), i);
+            }
+        }
+        final boolean[] donates = new boolean[oxys.size()];
+        final boolean[] accepts = new boolean[oxys.size()];
+        final StringBuilder pattern = new StringBuilder();
+        for (HydrogenBond bond : bonds) {
+            final Integer donIdx = labelIdx.get(bond.getDonorId());
+            final Integer accIdx = labelIdx.get(bond.getAcceptorId());
+            if (donIdx != null) {
+                donates[donIdx] = true;
+            }
+            if (accIdx != null) {
+                accepts[accIdx] = true;
+            }
+            if (donIdx != null && accIdx != null) {
+                if (pattern.length() > 0) {
+                    pattern.append(',');
+                }
+                pattern.append('O').append(donIdx + 1).append('>')
+                        .append('O').append(accIdx + 1);
+            }
+        }
+        final List<String> roles = new ArrayList<String>(oxys.size());
+        for (int i = 0; i < oxys.size(); i++) {
+            if (oxys.get(i) == null) {
+                roles.add(null);
+            } else if (donates[i] || accepts[i]) {
+                roles.add((donates[i] ? DONOR : "")
+                        + (accepts[i] ? ACCEPTOR : ""));
+            } else {
+                roles.add(NO_ROLE);
+            }
+        }
+        cpSnap.setHydroxylHBondRoles(roles);
+        cpSnap.setRingHBondPattern(pattern.toString());
+    }
+
+    /**
+     * @param atom
+     *            The atom to check.
+     * @return Whether the atom is an oxygen or a nitrogen.
+     */
+    private static boolean isDonorOrAcceptor(final Atom atom) {
+        return AtomicElement.OXYGEN.equals(atom.getType())
+                || AtomicElement.NITROGEN.equals(atom.getType());
+    }
+}
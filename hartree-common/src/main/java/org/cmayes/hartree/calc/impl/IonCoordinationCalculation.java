@@ -0,0 +1,155 @@
+package org.cmayes.hartree.calc.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cmayes.hartree.calc.Calculation;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.def.CpCalculationSnapshot;
+import org.cmayes.hartree.model.def.IonCoordination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.util.ChemUtils;
+
+/**
+ * Finds the coordination shell of every ion of the target types. Unlike
+ * {@link IonDistanceCalculation}, any number of ions may be present, and every
+ * heavy (non-hydrogen) atom within the cutoff is reported rather than just the
+ * sugar's oxygens. Neighbor searches use an {@link AtomCellIndex}, so the cost
+ * grows linearly with the size of the geometry.
+ *
+ * @author cmayes
+ */
+public class IonCoordinationCalculation implements Calculation {
+    /** The default coordination cutoff in angstroms. */
+    public static final double DEF_CUTOFF = 3.0;
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Set<AtomicElement> ionTypes;
+    private final double cutoff;
+
+    /**
+     * Creates a coordination calculation for the given ion types using the
+     * default cutoff.
+     *
+     * @param types
+     *            The ion element types to target.
+     */
+    public IonCoordinationCalculation(final AtomicElement... types) {
+        this(DEF_CUTOFF, types);
+    }
+
+    /**
+     * Creates a coordination calculation for the given ion types and cutoff.
+     *
+     * @param cutoffDist
+     *            The maximum ion-neighbor distance in angstroms.
+     * @param types
+     *            The ion element types to target.
+     * @throws IllegalArgumentException
+     *             If no types are given or the cutoff is not positive.
+     */
+    public IonCoordinationCalculation(final double cutoffDist,
+            final AtomicElement... types) {
+        if (types == null || types.length == 0) {
+            throw new IllegalArgumentException("No ion types specified");
+        }
+        if (!(cutoffDist > 0)) {
+            throw new IllegalArgumentException("Cutoff must be positive: "
+                    + cutoffDist);
+        }
+        this.ionTypes = EnumSet.copyOf(Arrays.asList(types));
+        this.cutoff = cutoffDist;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.calc.Calculation#calculate(java.lang.Object)
+     */
+    @Override
+    public Object calculate(final Object rawInput) {
+        if (rawInput instanceof BaseResult) {
+            final CpCalculationSnapshot cpSnap;
+            if (rawInput instanceof CpCalculationSnapshot) {
+                cpSnap = new CpCalculationSnapshot(
+                        (CpCalculationSnapshot) rawInput);
+            } else {
+                cpSnap = new CpCalculationSnapshot((BaseResult) rawInput);
+            }
+            final List<Atom> atoms = cpSnap.getAtoms();
+            if (atoms == null || atoms.isEmpty()) {
+                logger.warn("No atoms for ion coordination calc {}, skipping.",
+                        cpSnap.getSourceName());
+                return cpSnap;
+            }
+            cpSnap.setIonCoordinations(findCoordinations(atoms));
+            return cpSnap;
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unhandled class '%s'", rawInput.getClass()));
+        }
+    }
+
+    /**
+     * Builds the coordination shell for every target ion in the given atoms.
+     *
+     * @param atoms
+     *            The atoms to evaluate.
+     * @return The coordination shells, in atom order.
+     */
+    private List<IonCoordination> findCoordinations(final List<Atom> atoms) {
+        final List<Atom> ions = new ArrayList<Atom>();
+        final List<Atom> heavy = new ArrayList<Atom>(atoms.size());
+        for (Atom atom : atoms) {
+            if (ionTypes.contains(atom.getType())) {
+                ions.add(atom);
+            }
+            if (!AtomicElement.HYDROGEN.equals(atom.getType())) {
+                heavy.add(atom);
+            }
+        }
+        final List<IonCoordination> coords = new ArrayList<IonCoordination>(
+                ions.size());
+        if (ions.isEmpty()) {
+            logger.info("No ions of types {} found.", ionTypes);
+            return coords;
+        }
+
+        final AtomCellIndex index = new AtomCellIndex(heavy, cutoff);
+        for (final Atom ion : ions) {
+            final List<Atom> shell = index.findWithin(ion, cutoff);
+            Collections.sort(shell, new Comparator<Atom>() {
+                @Override
+                public int compare(final Atom first, final Atom second) {
+                    return Double.compare(
+                            AtomCellIndex.distanceSq(ion, first),
+                            AtomCellIndex.distanceSq(ion, second));
+                }
+            });
+            final IonCoordination coord = new IonCoordination(ion.getId(),
+                    ion.getType());
+            for (Atom neighbor : shell) {
+                coord.addNeighbor(neighbor.getId(), neighbor.getType(),
+                        ChemUtils.findDistance(ion, neighbor));
+            }
+            coords.add(coord);
+        }
+        return coords;
+    }
+
+    /**
+     * @return The maximum ion-neighbor distance in angstroms.
+     */
+    public double getCutoff() {
+        return cutoff;
+    }
+}
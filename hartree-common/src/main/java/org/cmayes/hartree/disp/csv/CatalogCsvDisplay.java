@@ -0,0 +1,110 @@
+package org.cmayes.hartree.disp.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.model.def.CatalogEntry;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Formats {@link CatalogEntry} data as one CSV line per file.
+ *
+ * @author cmayes
+ */
+public class CatalogCsvDisplay implements Display<CatalogEntry> {
+    private static final String MISSING = "N/A";
+    private final String[] headerRow = new String[] { "File Name",
+            "Size (bytes)", "Version", "Status", "Jobs", "CPU (s)",
+            "Imag Freqs", "Read" };
+    private boolean first = true;
+    private volatile boolean writeMulti = false;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#write(java.io.Writer,
+     *      java.lang.Object)
+     */
+    @Override
+    public void write(final Writer writer, final CatalogEntry valToDisp) {
+        @SuppressWarnings("resource")
+        final CSVWriter csvWriter = new CSVWriter(writer);
+        try {
+            if (first) {
+                csvWriter.writeNext(headerRow);
+                first = false;
+            }
+            csvWriter.writeNext(new String[] {
+                    valToDisp.getSourceName(),
+                    String.valueOf(valToDisp.getFileSize()),
+                    valOrMissing(valToDisp.getVersion()),
+                    valToDisp.getStatus().name(),
+                    String.valueOf(valToDisp.getJobCount()),
+                    String.valueOf(valToDisp.getCpuSeconds()),
+                    valOrMissing(valToDisp.getImagFreqCount()),
+                    valToDisp.isFullRead() ? "full" : "tail" });
+            csvWriter.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing CSV to writer", e);
+        }
+    }
+
+    /**
+     * Returns the string value of the given object or the MISSING value if it
+     * is null.
+     *
+     * @param val
+     *            The value to evaluate.
+     * @return The value as a string.
+     */
+    private String valOrMissing(final Object val) {
+        if (val == null) {
+            return MISSING;
+        }
+        return String.valueOf(val);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#finish(Writer)
+     */
+    @Override
+    public void finish(final Writer writer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#getMediaType()
+     */
+    @Override
+    public MediaType getMediaType() {
+        return MediaType.CSV;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#isWriteMulti()
+     */
+    @Override
+    public boolean isWriteMulti() {
+        return this.writeMulti;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#setWriteMulti(boolean)
+     */
+    @Override
+    public void setWriteMulti(final boolean wMulti) {
+        this.writeMulti = wMulti;
+    }
+}
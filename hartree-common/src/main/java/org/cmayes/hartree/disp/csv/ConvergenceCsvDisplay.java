@@ -0,0 +1,178 @@
+package org.cmayes.hartree.disp.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.model.ConvergenceCriterion;
+import org.cmayes.hartree.model.def.ConvergenceSeries;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Formats {@link ConvergenceSeries} data as CSV. By default, each series is
+ * written as one summary row with the step count, the final criteria and
+ * whether the energy fell at every step. When full series are enabled, one
+ * row is written for every step instead.
+ *
+ * @author cmayes
+ */
+public class ConvergenceCsvDisplay implements Display<ConvergenceSeries> {
+    private static final String MISSING = "N/A";
+    private static final ConvergenceCriterion[] CRITERIA = ConvergenceCriterion
+            .values();
+    private final boolean fullSeries;
+    private boolean first = true;
+    private volatile boolean writeMulti = false;
+
+    /**
+     * Creates a display that writes one summary row per series.
+     */
+    public ConvergenceCsvDisplay() {
+        this(false);
+    }
+
+    /**
+     * Creates a display that writes either summaries or full series.
+     *
+     * @param full
+     *            Whether to write a row for every step.
+     */
+    public ConvergenceCsvDisplay(final boolean full) {
+        this.fullSeries = full;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#write(java.io.Writer,
+     *      java.lang.Object)
+     */
+    @Override
+    public void write(final Writer writer, final ConvergenceSeries valToDisp) {
+        @SuppressWarnings("resource")
+        final CSVWriter csvWriter = new CSVWriter(writer);
+        try {
+            if (first) {
+                csvWriter.writeNext(getHeaderRow());
+                first = false;
+            }
+            if (fullSeries) {
+                for (int step = 0; step < valToDisp.getStepCount(); step++) {
+                    final String[] row = new String[CRITERIA.length + 4];
+                    row[0] = valToDisp.getSourceName();
+                    row[1] = String.valueOf(step + 1);
+                    row[2] = valOrMissing(valToDisp.getEnergy(step));
+                    for (int crit = 0; crit < CRITERIA.length; crit++) {
+                        row[crit + 3] = valOrMissing(valToDisp.getValue(
+                                CRITERIA[crit], step));
+                    }
+                    row[row.length - 1] = String.valueOf(valToDisp
+                            .getCriteriaMet(step));
+                    csvWriter.writeNext(row);
+                }
+            } else {
+                final String[] row = new String[CRITERIA.length + 6];
+                row[0] = valToDisp.getSourceName();
+                row[1] = String.valueOf(valToDisp.getStepCount());
+                row[2] = valOrMissing(valToDisp.getFinalEnergy());
+                for (int crit = 0; crit < CRITERIA.length; crit++) {
+                    row[crit + 3] = valOrMissing(valToDisp
+                            .getFinalValue(CRITERIA[crit]));
+                }
+                row[CRITERIA.length + 3] = valToDisp.isConverged() ? "YES"
+                        : "NO";
+                row[CRITERIA.length + 4] = String.valueOf(valToDisp
+                        .getEnergyRises());
+                row[CRITERIA.length + 5] = valToDisp.isMonotonic() ? "YES"
+                        : "NO";
+                csvWriter.writeNext(row);
+            }
+            csvWriter.flush();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing CSV to writer", e);
+        }
+    }
+
+    /**
+     * @return The header row for the configured layout.
+     */
+    private String[] getHeaderRow() {
+        final String[] header;
+        if (fullSeries) {
+            header = new String[CRITERIA.length + 4];
+            header[1] = "Step";
+            header[2] = "Energy (A.U.)";
+            header[header.length - 1] = "Criteria Met";
+        } else {
+            header = new String[CRITERIA.length + 6];
+            header[1] = "Steps";
+            header[2] = "Final Energy (A.U.)";
+            header[CRITERIA.length + 3] = "Converged";
+            header[CRITERIA.length + 4] = "Energy Rises";
+            header[CRITERIA.length + 5] = "Monotonic";
+        }
+        header[0] = "File Name";
+        for (int crit = 0; crit < CRITERIA.length; crit++) {
+            header[crit + 3] = CRITERIA[crit].getLabel();
+        }
+        return header;
+    }
+
+    /**
+     * Returns the string value of the given number or the MISSING value if it
+     * is NaN.
+     *
+     * @param val
+     *            The value to evaluate.
+     * @return The value as a string.
+     */
+    private String valOrMissing(final double val) {
+        if (Double.isNaN(val)) {
+            return MISSING;
+        }
+        return String.valueOf(val);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#finish(Writer)
+     */
+    @Override
+    public void finish(final Writer writer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#getMediaType()
+     */
+    @Override
+    public MediaType getMediaType() {
+        return MediaType.CSV;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#isWriteMulti()
+     */
+    @Override
+    public boolean isWriteMulti() {
+        return this.writeMulti;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.disp.Display#setWriteMulti(boolean)
+     */
+    @Override
+    public void setWriteMulti(final boolean wMulti) {
+        this.writeMulti = wMulti;
+    }
+}
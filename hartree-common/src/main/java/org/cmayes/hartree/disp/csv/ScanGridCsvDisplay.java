@@ -0,0 +1,155 @@
+package org.cmayes.hartree.disp.csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.cmayes.hartree.disp.Display;
+import org.cmayes.hartree.model.def.PesScan;
+import org.cmayes.hartree.model.def.ScanGrid;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+import com.cmayes.common.MediaType;
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Writes the energy grid of a {@link PesScan} as CSV. A one-dimensional scan
+ * is written as coordinate/energy rows. A two-dimensional scan is written as a
+ * matrix whose header row holds the second coordinate's values and whose
+ * first column holds the first coordinate's values. A scan with no scanned
+ * coordinates or more than {@link ScanGrid#MAX_DIMS} can't be gridded, so its
+ * points are written in scan order as point/coordinates/energy rows. Values
+ * the scan did not reach are written as "N/A". This display keeps no state between writes,
+ * so one instance may be shared by several threads.
+ * 
+ * @author cmayes
+ */
+public class ScanGridCsvDisplay implements Display<PesScan> {
+    private static final String MISSING = "N/A";
+    private static final String ENERGY_HEADER = "Energy (A.U.)";
+    private volatile boolean writeMulti = false;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.disp.Display#write(java.io.Writer,
+     *      java.lang.Object)
+     */
+    @Override
+    public void write(final Writer writer, final PesScan valToDisp) {
+        @SuppressWarnings("resource")
+        final CSVWriter csvWriter = new CSVWriter(writer);
+        try {
+            final List<String> names = valToDisp.getCoordNames();
+            if (names.isEmpty() || names.size() > ScanGrid.MAX_DIMS) {
+                final String[] header = new String[names.size() + 2];
+                header[0] = "Point";
+                for (int j = 0; j < names.size(); j++) {
+                    header[j + 1] = names.get(j);
+                }
+                header[header.length - 1] = ENERGY_HEADER;
+                csvWriter.writeNext(header);
+                for (int i = 0; i < valToDisp.getPointCount(); i++) {
+                    final String[] row = new String[header.length];
+                    row[0] = String.valueOf(i + 1);
+                    for (int j = 0; j < names.size(); j++) {
+                        row[j + 1] = valOrMissing(valToDisp
+                                .getCoordValue(i, j));
+                    }
+                    row[row.length - 1] = valOrMissing(valToDisp.getEnergy(i));
+                    csvWriter.writeNext(row);
+                }
+                return;
+            }
+            final ScanGrid grid = valToDisp.toGrid();
+            if (grid.getDimensions() == 1) {
+                csvWriter.writeNext(new String[] { grid.getAxisName(0),
+                        ENERGY_HEADER });
+                final double[] axis = grid.getAxis(0);
+                for (int i = 0; i < axis.length; i++) {
+                    csvWriter.writeNext(new String[] { valOrMissing(axis[i]),
+                            valOrMissing(grid.getEnergy(i)) });
+                }
+            } else {
+                final double[] rows = grid.getAxis(0);
+                final double[] cols = grid.getAxis(1);
+                final String[] header = new String[cols.length + 1];
+                header[0] = grid.getAxisName(0) + "\\" + grid.getAxisName(1);
+                for (int j = 0; j < cols.length; j++) {
+                    header[j + 1] = valOrMissing(cols[j]);
+                }
+                csvWriter.writeNext(header);
+                for (int i = 0; i < rows.length; i++) {
+                    final String[] row = new String[cols.length + 1];
+                    row[0] = valOrMissing(rows[i]);
+                    for (int j = 0; j < cols.length; j++) {
+                        row[j + 1] = valOrMissing(grid.getEnergy(i, j));
+                    }
+                    csvWriter.writeNext(row);
+                }
+            }
+        } finally {
+            try {
+                csvWriter.flush();
+            } catch (final IOException e) {
+                throw new EnvironmentException(
+                        "Problems writing CSV to writer", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the string value of the given number or the MISSING value if it
+     * is NaN.
+     * 
+     * @param val
+     *            The value to evaluate.
+     * @return The value as a string.
+     */
+    private String valOrMissing(final double val) {
+        if (Double.isNaN(val)) {
+            return MISSING;
+        }
+        return String.valueOf(val);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.disp.Display#finish(Writer)
+     */
+    @Override
+    public void finish(final Writer writer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.disp.Display#getMediaType()
+     */
+    @Override
+    public MediaType getMediaType() {
+        return MediaType.CSV;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.disp.Display#isWriteMulti()
+     */
+    @Override
+    public boolean isWriteMulti() {
+        return this.writeMulti;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.disp.Display#setWriteMulti(boolean)
+     */
+    @Override
+    public void setWriteMulti(final boolean wMulti) {
+        this.writeMulti = wMulti;
+    }
+}
@@ -2,14 +2,20 @@ package org.cmayes.hartree.disp.csv;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import org.cmayes.hartree.disp.Display;
 import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.HydrogenBondResult;
+import org.cmayes.hartree.model.IonCoordinationResult;
+import org.cmayes.hartree.model.SnapshotField;
 import org.cmayes.hartree.model.def.CremerPopleCoordinates;
 import org.cmayes.hartree.model.def.CremerPopleResult;
+import org.cmayes.hartree.model.def.HydrogenBond;
+import org.cmayes.hartree.model.def.IonCoordination;
 
 import au.com.bytecode.opencsv.CSVWriter;
 
@@ -38,10 +44,43 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
             "AC2 (deg)", "Ano1 (deg)", "Ano2 (deg)", "R1 (A)", "R2 (A)",
             "R3 (A)", "R4 (A)", "R5 (A)", "R6 (A)", "O1 (A)", "O2 (A)",
             "O3 (A)", "O4 (A)", "O6 (A)", "Ion1 (A)", "Ion2 (A)", "Ion3 (A)",
-            "Ion4 (A)", "Ion5 (A)", "Ion6 (A)" };
+            "Ion4 (A)", "Ion5 (A)", "Ion6 (A)", "Ion Count", "Ion CN", "HB Count",
+            "HB Roles", "HB Pattern" };
+    private final int[] projection;
     private boolean first = true;
+    private boolean stepCol = false;
     private volatile boolean writeMulti = false;
 
+    /**
+     * Creates a display that writes every column.
+     */
+    public SnapshotCsvDisplay() {
+        this.projection = null;
+    }
+
+    /**
+     * Creates a display that writes the file name followed by the columns for
+     * the given fields, in the given order. The projection applies to plain
+     * snapshot rows; Cremer-Pople rows are written in full.
+     *
+     * @param fields
+     *            The fields to write.
+     */
+    public SnapshotCsvDisplay(final List<SnapshotField> fields) {
+        final List<String> headers = Arrays.asList(defaultHeaderRow);
+        final List<Integer> cols = new ArrayList<Integer>();
+        cols.add(0);
+        for (SnapshotField field : fields) {
+            for (String col : field.getColumns()) {
+                cols.add(headers.indexOf(col));
+            }
+        }
+        this.projection = new int[cols.size()];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = cols.get(i);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -54,7 +93,8 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
         final CSVWriter csvWriter = new CSVWriter(writer);
         try {
             if (first) {
-                csvWriter.writeNext(getHeaderRow(valToDisp));
+                stepCol = valToDisp.getStep() != null;
+                csvWriter.writeNext(withStep(getHeaderRow(valToDisp), "Step"));
                 first = false;
             }
             final String charge = valOrMissing(valToDisp.getCharge());
@@ -83,18 +123,21 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
             final String h298 = valOrMissing(valToDisp.getEnthalpy298());
             final String g298 = valOrMissing(valToDisp.getGibbs298());
             final String bsse = valOrMissing(valToDisp.getBsse());
+            final String step = valOrMissing(valToDisp.getStep());
             if (valToDisp instanceof CremerPopleResult) {
                 final CremerPopleResult cpResult = (CremerPopleResult) valToDisp;
                 final CremerPopleCoordinates cpCoords = cpResult.getCpCoords();
                 if (cpCoords == null) {
-                    csvWriter.writeNext(new String[] { fname, solv, stoi,
-                            charge, mult, func, basisSet, energy, dip, zpe,
-                            h298, g298, bsse, firstFreq, secFreq, MISSING, MISSING,
+                    csvWriter.writeNext(withStep(ObjectArrays.concat(new String[] {
+                            fname, solv, stoi, charge, mult, func, basisSet,
+                            energy, dip, zpe, h298, g298, bsse, firstFreq,
+                            secFreq, MISSING, MISSING, MISSING, MISSING,
                             MISSING, MISSING, MISSING, MISSING, MISSING,
                             MISSING, MISSING, MISSING, MISSING, MISSING,
                             MISSING, MISSING, MISSING, MISSING, MISSING,
                             MISSING, MISSING, MISSING, MISSING, MISSING,
-                            MISSING, MISSING, MISSING, MISSING, MISSING });
+                            MISSING, MISSING, MISSING },
+                            networkCols(valToDisp), String.class), step));
 
                 } else {
                     final String phi = valOrMissing(cpCoords.getPhi());
@@ -123,12 +166,13 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
                             valListOrMissing(cpResult.getIonDistances(), 6),
                             String.class);
 
-                    csvWriter.writeNext(withIons);
+                    csvWriter.writeNext(withStep(ObjectArrays.concat(withIons,
+                            networkCols(valToDisp), String.class), step));
                 }
             } else {
-                csvWriter.writeNext(new String[] { fname, solv, stoi, charge,
-                        mult, func, basisSet, energy, dip, zpe, h298, g298,
-                        firstFreq, secFreq, bsse });
+                csvWriter.writeNext(withStep(project(new String[] { fname,
+                        solv, stoi, charge, mult, func, basisSet, energy, dip,
+                        zpe, h298, g298, firstFreq, secFreq, bsse }), step));
             }
         } finally {
             try {
@@ -140,6 +184,107 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
         }
     }
 
+    /**
+     * Inserts the given step value after the file name column if the first
+     * result written to this display came from a trajectory.
+     * 
+     * @param row
+     *            The row to add the step to.
+     * @param stepVal
+     *            The step column value.
+     * @return The row with the step column or the unchanged row.
+     */
+    private String[] withStep(final String[] row, final String stepVal) {
+        if (!stepCol) {
+            return row;
+        }
+        final String[] stepped = new String[row.length + 1];
+        stepped[0] = row[0];
+        stepped[1] = stepVal;
+        System.arraycopy(row, 1, stepped, 2, row.length - 1);
+        return stepped;
+    }
+
+    /**
+     * Returns the ion coordination columns followed by the hydrogen bond
+     * columns for the given result.
+     * 
+     * @param res
+     *            The result to evaluate.
+     * @return The coordination and hydrogen bond columns.
+     */
+    private String[] networkCols(final BaseResult res) {
+        return ObjectArrays.concat(ionCoordCols(res), hbondCols(res),
+                String.class);
+    }
+
+    /**
+     * Returns the hydrogen bond count, the semicolon-separated roles of the
+     * ring's oxygens (such as "O1:d;O2:da") and the ring bond pattern, or
+     * missing values if no hydrogen bonds were calculated.
+     * 
+     * @param res
+     *            The result to evaluate.
+     * @return The hydrogen bond columns.
+     */
+    private String[] hbondCols(final BaseResult res) {
+        if (!(res instanceof HydrogenBondResult)) {
+            return new String[] { MISSING, MISSING, MISSING };
+        }
+        final HydrogenBondResult hbRes = (HydrogenBondResult) res;
+        final List<HydrogenBond> bonds = hbRes.getHydrogenBonds();
+        if (bonds == null) {
+            return new String[] { MISSING, MISSING, MISSING };
+        }
+        final List<String> roles = hbRes.getHydroxylHBondRoles();
+        String roleCol = MISSING;
+        if (roles != null && !roles.isEmpty()) {
+            final StringBuilder roleBuf = new StringBuilder();
+            for (int i = 0; i < roles.size(); i++) {
+                if (roles.get(i) == null) {
+                    continue;
+                }
+                if (roleBuf.length() > 0) {
+                    roleBuf.append(';');
+                }
+                roleBuf.append('O').append(i + 1).append(':')
+                        .append(roles.get(i));
+            }
+            roleCol = roleBuf.toString();
+        }
+        final String pattern = hbRes.getRingHBondPattern();
+        return new String[] { String.valueOf(bonds.size()), roleCol,
+                pattern == null ? MISSING : pattern };
+    }
+
+    /**
+     * Returns the ion count and the semicolon-separated coordination numbers
+     * for the given result, or missing values if no coordination shells were
+     * calculated.
+     * 
+     * @param res
+     *            The result to evaluate.
+     * @return The ion coordination columns.
+     */
+    private String[] ionCoordCols(final BaseResult res) {
+        if (!(res instanceof IonCoordinationResult)) {
+            return new String[] { MISSING, MISSING };
+        }
+        final List<IonCoordination> coords = ((IonCoordinationResult) res)
+                .getIonCoordinations();
+        if (coords == null || coords.isEmpty()) {
+            return new String[] { MISSING, MISSING };
+        }
+        final StringBuilder cns = new StringBuilder();
+        for (IonCoordination coord : coords) {
+            if (cns.length() > 0) {
+                cns.append(';');
+            }
+            cns.append(coord.getCoordinationNumber());
+        }
+        return new String[] { String.valueOf(coords.size()), cns.toString() };
+    }
+
     /**
      * Extracts the values from the given collection and returns an array filled
      * with the non-null values or the MISSING value.
@@ -218,7 +363,26 @@ public class SnapshotCsvDisplay implements Display<BaseResult> {
         } else if (res instanceof CremerPopleResult) {
             return cpHeaderRow;
         }
-        return defaultHeaderRow;
+        return project(defaultHeaderRow);
+    }
+
+    /**
+     * Returns the projected columns of a plain snapshot row.
+     *
+     * @param row
+     *            The full row.
+     * @return The projected row or the unchanged row if there is no
+     *         projection.
+     */
+    private String[] project(final String[] row) {
+        if (projection == null) {
+            return row;
+        }
+        final String[] projected = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            projected[i] = row[projection[i]];
+        }
+        return projected;
     }
 
     /**
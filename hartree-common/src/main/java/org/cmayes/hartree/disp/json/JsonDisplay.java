@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 import org.cmayes.hartree.disp.Display;
+import org.joda.time.ReadableDuration;
 
 import com.cmayes.common.MediaType;
 import com.cmayes.common.exception.EnvironmentException;
@@ -12,6 +13,8 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 /**
  * Displays the given object as JSON.
@@ -35,6 +38,10 @@ public class JsonDisplay implements Display<Object> {
                 JsonGenerator.Feature.AUTO_CLOSE_TARGET);
         // Enable pretty printing.
         objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        // Jackson can't write Joda types without its Joda module; the ISO
+        // form of the CPU times is enough for us.
+        objectMapper.registerModule(new SimpleModule().addSerializer(
+                ReadableDuration.class, ToStringSerializer.instance));
     }
 
     /**
@@ -64,14 +71,10 @@ public class JsonDisplay implements Display<Object> {
     @Override
     public void write(final Writer writer, final Object valToDisp) {
         try {
-            if (first) {
-                writer.write("[");
-                first = false;
-            } else {
-                if (writeMulti) {
-                    writer.write(",");
-                }
+            if (writeMulti) {
+                writer.write(first ? "[" : ",");
             }
+            first = false;
             objectMapper.writeValue(writer, valToDisp);
         } catch (final JsonGenerationException e) {
             throw new EnvironmentException("Problems writing JSON for value "
@@ -0,0 +1,177 @@
+package org.cmayes.hartree.filter;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
+import org.cmayes.hartree.model.TerminationStatus;
+
+/**
+ * A set of {@link ResultPredicate}s that a result must all match, written as
+ * a comma-separated list such as "functional=M062X,charge=1". Loaders test
+ * each field as soon as its value is final so that they can give up on a
+ * source that can't match; the filter counts the sources that were kept and
+ * skipped for the run summary.
+ *
+ * @author cmayes
+ */
+public class ResultFilter {
+    private final List<ResultPredicate> predicates;
+    private final AtomicInteger matchCount = new AtomicInteger();
+    private final AtomicInteger skipCount = new AtomicInteger();
+
+    /**
+     * Creates a filter from the given predicates.
+     *
+     * @param preds
+     *            The predicates that must all match.
+     * @throws IllegalArgumentException
+     *             If no predicates are given.
+     */
+    public ResultFilter(final List<ResultPredicate> preds) {
+        if (asNotNull(preds, "Predicates are null").isEmpty()) {
+            throw new IllegalArgumentException("No conditions to filter on");
+        }
+        this.predicates = new ArrayList<ResultPredicate>(preds);
+    }
+
+    /**
+     * Parses a comma-separated list of conditions.
+     *
+     * @param expr
+     *            The conditions to parse.
+     * @return The parsed filter.
+     * @throws IllegalArgumentException
+     *             If a condition can't be parsed or there are none.
+     */
+    public static ResultFilter parse(final String expr) {
+        final List<ResultPredicate> preds = new ArrayList<ResultPredicate>();
+        for (String cond : asNotNull(expr, "Expression is null").split(",")) {
+            if (!cond.trim().isEmpty()) {
+                preds.add(ResultPredicate.parse(cond));
+            }
+        }
+        if (preds.isEmpty()) {
+            throw new IllegalArgumentException("No conditions in '" + expr
+                    + "'");
+        }
+        return new ResultFilter(preds);
+    }
+
+    /**
+     * @return the snapshot fields that the filter tests
+     */
+    public Set<SnapshotField> getFields() {
+        final Set<SnapshotField> fields = EnumSet.noneOf(SnapshotField.class);
+        for (ResultPredicate pred : predicates) {
+            if (!pred.isTermination()) {
+                fields.add(pred.getField());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return whether the filter tests the termination status
+     */
+    public boolean hasTermination() {
+        for (ResultPredicate pred : predicates) {
+            if (pred.isTermination()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests the predicates for one field.
+     *
+     * @param field
+     *            The field whose value is final.
+     * @param result
+     *            The result holding the value.
+     * @return Whether every predicate on the field matches.
+     */
+    public boolean test(final SnapshotField field, final BaseResult result) {
+        for (ResultPredicate pred : predicates) {
+            if (field.equals(pred.getField()) && !pred.test(result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests the predicates for every field.
+     *
+     * @param result
+     *            The result to test.
+     * @return Whether every field predicate matches.
+     */
+    public boolean test(final BaseResult result) {
+        for (ResultPredicate pred : predicates) {
+            if (!pred.isTermination() && !pred.test(result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests the termination predicates.
+     *
+     * @param status
+     *            The source's termination status.
+     * @return Whether every termination predicate matches.
+     */
+    public boolean test(final TerminationStatus status) {
+        for (ResultPredicate pred : predicates) {
+            if (pred.isTermination() && !pred.test(status)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a source that matched.
+     */
+    public void recordMatch() {
+        matchCount.incrementAndGet();
+    }
+
+    /**
+     * Counts a source that was skipped because it can't match.
+     */
+    public void recordSkip() {
+        skipCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of sources that matched
+     */
+    public int getMatchCount() {
+        return matchCount.get();
+    }
+
+    /**
+     * @return the number of sources that were skipped
+     */
+    public int getSkipCount() {
+        return skipCount.get();
+    }
+
+    /**
+     * @return the predicates that must all match
+     */
+    public List<ResultPredicate> getPredicates() {
+        return Collections.unmodifiableList(predicates);
+    }
+}
@@ -0,0 +1,294 @@
+package org.cmayes.hartree.filter;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
+import org.cmayes.hartree.model.TerminationStatus;
+
+/**
+ * One comparison in a {@link ResultFilter}, such as "charge=1",
+ * "functional=M062X" or "termination=normal". Text fields and the termination
+ * status only support "=" and "!=", which ignore case; a functional also
+ * matches when the result adds Gaussian's "R", "U" or "RO" prefix. Numeric
+ * fields support "=", "!=", "&lt;", "&lt;=", "&gt;" and "&gt;="; "freq"
+ * compares the lowest frequency. A missing value never matches.
+ *
+ * @author cmayes
+ */
+public class ResultPredicate {
+    /** The name used for the termination status. */
+    public static final String TERMINATION = "termination";
+    private static final Pattern EXPR = Pattern
+            .compile("^\\s*([A-Za-z0-9]+)\\s*(!=|<=|>=|=|<|>)\\s*(.*?)\\s*$");
+    private static final Pattern SPIN_PREFIX = Pattern.compile("^(RO|R|U)",
+            Pattern.CASE_INSENSITIVE);
+    private final SnapshotField field;
+    private final Op op;
+    private final String text;
+    private final Double number;
+    private final TerminationStatus status;
+
+    /**
+     * The supported comparisons.
+     */
+    public static enum Op {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        /**
+         * Creates the operator.
+         *
+         * @param sym
+         *            The operator as written in an expression.
+         */
+        private Op(final String sym) {
+            this.symbol = sym;
+        }
+
+        /**
+         * @return the operator as written in an expression
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Looks up an operator by its symbol.
+         *
+         * @param sym
+         *            The operator as written in an expression.
+         * @return The matching operator.
+         * @throws IllegalArgumentException
+         *             If no operator has the symbol.
+         */
+        public static Op valueOfSymbol(final String sym) {
+            for (Op val : Op.values()) {
+                if (val.symbol.equals(sym)) {
+                    return val;
+                }
+            }
+            throw new IllegalArgumentException("No operator " + sym);
+        }
+
+        /**
+         * Applies the operator to the result of a comparison.
+         *
+         * @param cmp
+         *            The comparison of the actual value to the expected one.
+         * @return Whether the operator holds.
+         */
+        boolean holds(final int cmp) {
+            switch (this) {
+            case EQ:
+                return cmp == 0;
+            case NE:
+                return cmp != 0;
+            case LT:
+                return cmp < 0;
+            case LE:
+                return cmp <= 0;
+            case GT:
+                return cmp > 0;
+            default:
+                return cmp >= 0;
+            }
+        }
+    }
+
+    /**
+     * Creates a predicate on a snapshot field.
+     *
+     * @param theField
+     *            The field to compare.
+     * @param theOp
+     *            The comparison.
+     * @param value
+     *            The value to compare against.
+     * @throws IllegalArgumentException
+     *             If the comparison isn't supported for the field or a numeric
+     *             field's value isn't a number.
+     */
+    public ResultPredicate(final SnapshotField theField, final Op theOp,
+            final String value) {
+        this.field = asNotNull(theField, "Field is null");
+        this.op = asNotNull(theOp, "Operator is null");
+        this.text = asNotNull(value, "Value is null");
+        this.status = null;
+        if (isText(theField)) {
+            this.number = null;
+            checkEquality(theField.getFieldName());
+        } else {
+            try {
+                this.number = Double.valueOf(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(String.format(
+                        "Value for %s isn't a number: '%s'",
+                        theField.getFieldName(), value), e);
+            }
+        }
+    }
+
+    /**
+     * Creates a predicate on the termination status.
+     *
+     * @param theOp
+     *            The comparison; only "=" and "!=" are supported.
+     * @param theStatus
+     *            The status to compare against.
+     * @throws IllegalArgumentException
+     *             If the comparison isn't supported.
+     */
+    public ResultPredicate(final Op theOp, final TerminationStatus theStatus) {
+        this.field = null;
+        this.op = asNotNull(theOp, "Operator is null");
+        this.status = asNotNull(theStatus, "Status is null");
+        this.text = theStatus.name();
+        this.number = null;
+        checkEquality(TERMINATION);
+    }
+
+    /**
+     * Parses an expression such as "charge=1" or "energy&lt;-800".
+     *
+     * @param expr
+     *            The expression to parse.
+     * @return The parsed predicate.
+     * @throws IllegalArgumentException
+     *             If the expression can't be parsed.
+     */
+    public static ResultPredicate parse(final String expr) {
+        final Matcher exprMatch = EXPR.matcher(asNotNull(expr,
+                "Expression is null"));
+        if (!exprMatch.matches() || exprMatch.group(3).isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Expected a condition such as 'charge=1': '" + expr + "'");
+        }
+        final Op op = Op.valueOfSymbol(exprMatch.group(2));
+        if (TERMINATION.equalsIgnoreCase(exprMatch.group(1))) {
+            try {
+                return new ResultPredicate(op, TerminationStatus
+                        .valueOf(exprMatch.group(3).toUpperCase(Locale.US)));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Termination must be normal, error or incomplete: '"
+                                + exprMatch.group(3) + "'", e);
+            }
+        }
+        return new ResultPredicate(SnapshotField.valueOfName(exprMatch
+                .group(1)), op, exprMatch.group(3));
+    }
+
+    /**
+     * Tests the predicate's field in the given result.
+     *
+     * @param result
+     *            The result to test.
+     * @return Whether the result's value matches.
+     * @throws IllegalStateException
+     *             If this is a termination predicate.
+     */
+    public boolean test(final BaseResult result) {
+        if (field == null) {
+            throw new IllegalStateException("Not a field predicate: " + this);
+        }
+        final Object value = field.getValue(result);
+        if (value == null) {
+            return false;
+        }
+        if (number != null) {
+            return op.holds(Double.compare(((Number) value).doubleValue(),
+                    number));
+        }
+        final String actual = value.toString();
+        boolean equal = actual.equalsIgnoreCase(text);
+        if (!equal && SnapshotField.FUNCTIONAL.equals(field)) {
+            equal = SPIN_PREFIX.matcher(actual).replaceFirst("")
+                    .equalsIgnoreCase(text);
+        }
+        return op.holds(equal ? 0 : 1);
+    }
+
+    /**
+     * Tests the given termination status.
+     *
+     * @param actual
+     *            The status to test.
+     * @return Whether the status matches.
+     * @throws IllegalStateException
+     *             If this is a field predicate.
+     */
+    public boolean test(final TerminationStatus actual) {
+        if (status == null) {
+            throw new IllegalStateException("Not a termination predicate: "
+                    + this);
+        }
+        return op.holds(status.equals(actual) ? 0 : 1);
+    }
+
+    /**
+     * @return the field compared, or null for the termination status
+     */
+    public SnapshotField getField() {
+        return field;
+    }
+
+    /**
+     * @return whether this compares the termination status
+     */
+    public boolean isTermination() {
+        return status != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("name",
+                        field == null ? TERMINATION : field.getFieldName())
+                .append("op", op.getSymbol()).append("value", text)
+                .toString();
+    }
+
+    /**
+     * @param theField
+     *            The field to check.
+     * @return Whether the field holds text rather than a number.
+     */
+    private static boolean isText(final SnapshotField theField) {
+        switch (theField) {
+        case SOLVENT:
+        case STOICHIOMETRY:
+        case FUNCTIONAL:
+        case BASIS_SET:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Ensures the operator is one that text values support.
+     *
+     * @param name
+     *            The name to report.
+     * @throws IllegalArgumentException
+     *             If the operator orders values.
+     */
+    private void checkEquality(final String name) {
+        if (!Op.EQ.equals(op) && !Op.NE.equals(op)) {
+            throw new IllegalArgumentException(String.format(
+                    "Only = and != are supported for %s", name));
+        }
+    }
+}
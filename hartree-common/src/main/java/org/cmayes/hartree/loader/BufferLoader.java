@@ -0,0 +1,36 @@
+package org.cmayes.hartree.loader;
+
+import java.nio.ByteBuffer;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Defines a {@link Loader} that can read its input as bytes, such as a
+ * memory-mapped file or an archive entry held in memory. Each byte is read as
+ * one ASCII character, so the input isn't decoded through a charset or copied
+ * into characters before it is parsed. Processors prefer this method over a
+ * reader when the loader supports it and the input isn't compressed.
+ *
+ * @author cmayes
+ *
+ * @param <T>
+ *            The type of data structure that will be returned.
+ */
+public interface BufferLoader<T> extends Loader<T> {
+    /**
+     * Parses the data from the buffer's remaining bytes, returning the handled
+     * result type. The buffer's position isn't changed.
+     *
+     * @param srcName
+     *            The name identifying the source (file name, URL, etc.).
+     * @param data
+     *            The bytes to process.
+     * @return An instance of the handled result type filled with data from the
+     *         buffer, or null if the loader skips the source.
+     * @throws EnvironmentException
+     *             If there's a problem reading the buffer.
+     * @throws ParseException
+     *             If there is a problem parsing data from the buffer.
+     */
+    T load(String srcName, ByteBuffer data);
+}
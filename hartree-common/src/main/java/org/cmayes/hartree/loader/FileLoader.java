@@ -0,0 +1,32 @@
+package org.cmayes.hartree.loader;
+
+import java.io.File;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Defines a {@link Loader} that can read a file directly, which lets it seek
+ * to the parts of the file it needs rather than reading it front to back.
+ * Processors prefer this method when the loader supports it.
+ * 
+ * @author cmayes
+ * 
+ * @param <T>
+ *            The type of data structure that will be returned.
+ */
+public interface FileLoader<T> extends Loader<T> {
+    /**
+     * Parses the data from the file, returning the handled result type. The
+     * result's source name is the file's name.
+     * 
+     * @param file
+     *            The file to process.
+     * @return An instance of the handled result type filled with data from the
+     *         file, or null if the loader skips the file.
+     * @throws EnvironmentException
+     *             If there's a problem reading the file.
+     * @throws ParseException
+     *             If there is a problem parsing data from the file.
+     */
+    T load(File file);
+}
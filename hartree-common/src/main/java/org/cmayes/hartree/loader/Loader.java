@@ -24,7 +24,8 @@ public interface Loader<T> {
      *            The reader to process.
      * 
      * @return An instance of the handled result type filled with data from the
-     *         reader.
+     *         reader, or null if the loader skips the source (for example,
+     *         because it doesn't match a filter).
      * @throws EnvironmentException
      *             If there's a problem processing the reader.
      * @throws ParseException
@@ -0,0 +1,20 @@
+package org.cmayes.hartree.loader;
+
+/**
+ * Receives each step of a multi-step calculation as soon as it is parsed.
+ * 
+ * @author cmayes
+ * 
+ * @param <T>
+ *            The type of data for each step.
+ */
+public interface StepHandler<T> {
+    /**
+     * Handles a single parsed step. Implementations should not assume that the
+     * loader keeps any reference to earlier steps.
+     * 
+     * @param step
+     *            The parsed step.
+     */
+    void handle(T step);
+}
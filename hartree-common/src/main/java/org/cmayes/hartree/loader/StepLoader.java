@@ -0,0 +1,55 @@
+package org.cmayes.hartree.loader;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * Defines a parser that hands every step of a multi-step calculation (an
+ * optimization, scan or IRC) to a {@link StepHandler} as it is read rather
+ * than collecting the steps into a single result.
+ * 
+ * @author cmayes
+ * 
+ * @param <T>
+ *            The type of data for each step.
+ */
+public interface StepLoader<T> {
+    /**
+     * Parses each step from the reader, passing it to the handler in file
+     * order.
+     * 
+     * @param srcName
+     *            The name identifying the source (file name, URL, etc.).
+     * @param reader
+     *            The reader to process.
+     * @param handler
+     *            The handler that receives each step.
+     * @return The number of steps passed to the handler.
+     * @throws EnvironmentException
+     *             If there's a problem processing the reader.
+     * @throws ParseException
+     *             If there is a problem parsing data from the reader.
+     */
+    int loadSteps(String srcName, Reader reader, StepHandler<T> handler);
+
+    /**
+     * Parses each step from the buffer's remaining bytes, read as ASCII
+     * characters, passing it to the handler in file order. The buffer's
+     * position isn't changed.
+     * 
+     * @param srcName
+     *            The name identifying the source (file name, URL, etc.).
+     * @param data
+     *            The bytes to process.
+     * @param handler
+     *            The handler that receives each step.
+     * @return The number of steps passed to the handler.
+     * @throws EnvironmentException
+     *             If there's a problem reading the buffer.
+     * @throws ParseException
+     *             If there is a problem parsing data from the buffer.
+     */
+    int loadSteps(String srcName, ByteBuffer data, StepHandler<T> handler);
+}
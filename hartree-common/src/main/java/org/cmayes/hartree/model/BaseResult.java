@@ -325,4 +325,20 @@ public interface BaseResult extends NamedSource {
      *            the bsse to set
      */
     void setBsse(Double bsse);
+
+    /**
+     * Returns the optimization step this result was taken from (starting at
+     * 1), or null if the result describes the whole file.
+     * 
+     * @return The trajectory step or null.
+     */
+    Integer getStep();
+
+    /**
+     * Sets the optimization step this result was taken from.
+     * 
+     * @param stepNum
+     *            the step to set
+     */
+    void setStep(Integer stepNum);
 }
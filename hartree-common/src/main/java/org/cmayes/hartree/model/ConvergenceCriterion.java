@@ -0,0 +1,30 @@
+package org.cmayes.hartree.model;
+
+/**
+ * The criteria in Gaussian's optimization convergence table.
+ * 
+ * @author cmayes
+ */
+public enum ConvergenceCriterion {
+    MAX_FORCE("Max Force"), RMS_FORCE("RMS Force"), MAX_DISPLACEMENT(
+            "Max Disp"), RMS_DISPLACEMENT("RMS Disp");
+
+    private final String label;
+
+    /**
+     * Creates the criterion.
+     * 
+     * @param lbl
+     *            The short label for the criterion.
+     */
+    private ConvergenceCriterion(final String lbl) {
+        this.label = lbl;
+    }
+
+    /**
+     * @return the short label for the criterion
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,62 @@
+package org.cmayes.hartree.model;
+
+import java.util.List;
+
+import org.cmayes.hartree.model.def.HydrogenBond;
+
+/**
+ * Indicates that the model class carries a hydrogen bond network.
+ *
+ * @author cmayes
+ */
+public interface HydrogenBondResult {
+    /**
+     * Returns every hydrogen bond found in the geometry.
+     *
+     * @return Every hydrogen bond found in the geometry.
+     */
+    List<HydrogenBond> getHydrogenBonds();
+
+    /**
+     * Sets the hydrogen bonds found in the geometry.
+     *
+     * @param bonds
+     *            The hydrogen bonds to set.
+     */
+    void setHydrogenBonds(List<HydrogenBond> bonds);
+
+    /**
+     * Returns the hydrogen bond role of each of the ring's oxygens (O1 to O6):
+     * "d" for donor, "a" for acceptor, "da" for both, and "-" for neither.
+     * Null entries mark oxygens that were not found.
+     *
+     * @return The hydrogen bond role of each ring oxygen.
+     */
+    List<String> getHydroxylHBondRoles();
+
+    /**
+     * Sets the hydrogen bond roles of the ring's oxygens.
+     *
+     * @param roles
+     *            The roles to set.
+     * @see #getHydroxylHBondRoles()
+     */
+    void setHydroxylHBondRoles(List<String> roles);
+
+    /**
+     * Returns the hydrogen bonds between the ring's oxygens as a
+     * comma-separated list of "donor&gt;acceptor" labels (such as "O2&gt;O1").
+     *
+     * @return The ring substituent hydrogen bond pattern.
+     */
+    String getRingHBondPattern();
+
+    /**
+     * Sets the ring substituent hydrogen bond pattern.
+     *
+     * @param pattern
+     *            The pattern to set.
+     * @see #getRingHBondPattern()
+     */
+    void setRingHBondPattern(String pattern);
+}
@@ -0,0 +1,27 @@
+package org.cmayes.hartree.model;
+
+import java.util.List;
+
+import org.cmayes.hartree.model.def.IonCoordination;
+
+/**
+ * Indicates that the model class carries ion coordination shells.
+ *
+ * @author cmayes
+ */
+public interface IonCoordinationResult {
+    /**
+     * Returns the coordination shells for each ion found, in atom ID order.
+     *
+     * @return The coordination shells for each ion found.
+     */
+    List<IonCoordination> getIonCoordinations();
+
+    /**
+     * Sets the coordination shells for the ions in the result.
+     *
+     * @param coords
+     *            The coordination shells to set.
+     */
+    void setIonCoordinations(List<IonCoordination> coords);
+}
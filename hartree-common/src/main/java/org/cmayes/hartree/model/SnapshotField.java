@@ -0,0 +1,132 @@
+package org.cmayes.hartree.model;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@link BaseResult} fields written by the snapshot CSV display. Header
+ * fields are printed once near the start of a job, so their first value is
+ * final; the others may be printed again until the end of the file.
+ *
+ * @author cmayes
+ */
+public enum SnapshotField {
+    SOLVENT("solvent", true, "Solvent type"),
+    STOICHIOMETRY("stoichiometry", true, "Stoichiometry"),
+    CHARGE("charge", true, "Charge"),
+    MULT("mult", true, "Mult"),
+    FUNCTIONAL("functional", true, "Functional"),
+    BASIS_SET("basisset", true, "Basis Set"),
+    ENERGY("energy", false, "Energy (A.U.)"),
+    DIPOLE("dipole", false, "dipole"),
+    ZPE("zpe", false, "ZPE (Hartrees)"),
+    H298("h298", false, "H298 (Hartrees)"),
+    G298("g298", false, "G298 (Hartrees)"),
+    FREQ("freq", false, "Freq 1", "Freq 2"),
+    BSSE("bsse", false, "BSSE (Hartrees)");
+
+    private final String fieldName;
+    private final boolean header;
+    private final String[] columns;
+
+    /**
+     * Creates the field.
+     *
+     * @param name
+     *            The name used to select the field.
+     * @param head
+     *            Whether the field is only printed in a job's header.
+     * @param cols
+     *            The CSV column labels for the field.
+     */
+    private SnapshotField(final String name, final boolean head,
+            final String... cols) {
+        this.fieldName = name;
+        this.header = head;
+        this.columns = cols;
+    }
+
+    /**
+     * @return the name used to select the field
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return whether the field is only printed in a job's header
+     */
+    public boolean isHeader() {
+        return header;
+    }
+
+    /**
+     * @return the CSV column labels for the field
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Returns the field's value in the given result. The value of
+     * {@link #FREQ} is the lowest frequency.
+     *
+     * @param result
+     *            The result to read.
+     * @return The value or null if it isn't set.
+     */
+    public Object getValue(final BaseResult result) {
+        switch (this) {
+        case SOLVENT:
+            return result.getSolvent();
+        case STOICHIOMETRY:
+            return result.getStoichiometry();
+        case CHARGE:
+            return result.getCharge();
+        case MULT:
+            return result.getMult();
+        case FUNCTIONAL:
+            return result.getFunctional();
+        case BASIS_SET:
+            return result.getBasisSet();
+        case ENERGY:
+            return result.getElecEn();
+        case DIPOLE:
+            return result.getDipoleMomentTotal();
+        case ZPE:
+            return result.getZpeCorrection();
+        case H298:
+            return result.getEnthalpy298();
+        case G298:
+            return result.getGibbs298();
+        case FREQ:
+            final List<Double> freqs = result.getFrequencyValues();
+            return freqs == null || freqs.isEmpty() ? null : freqs.get(0);
+        default:
+            return result.getBsse();
+        }
+    }
+
+    /**
+     * Look up a field by name, ignoring case.
+     *
+     * @param name
+     *            The name of the field.
+     * @return The field with the given name.
+     * @throws IllegalArgumentException
+     *             If no fields match the given name.
+     */
+    public static SnapshotField valueOfName(final String name) {
+        final String lowerName = asNotNull(name, "Field name is null").trim()
+                .toLowerCase(Locale.US);
+        for (SnapshotField val : SnapshotField.values()) {
+            if (val.getFieldName().equals(lowerName)) {
+                return val;
+            }
+        }
+        throw new IllegalArgumentException("No snapshot field with name "
+                + name);
+    }
+}
@@ -0,0 +1,15 @@
+package org.cmayes.hartree.model;
+
+/**
+ * How a calculation's output ends.
+ * 
+ * @author cmayes
+ */
+public enum TerminationStatus {
+    /** The last job ended with "Normal termination". */
+    NORMAL,
+    /** The last job ended with "Error termination". */
+    ERROR,
+    /** No termination line was found; the job was killed or is running. */
+    INCOMPLETE;
+}
@@ -0,0 +1,215 @@
+package org.cmayes.hartree.model.def;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.cmayes.hartree.model.NamedSource;
+import org.cmayes.hartree.model.TerminationStatus;
+
+/**
+ * A summary of one output file's job status, used to decide which files are
+ * worth processing.
+ *
+ * @author cmayes
+ */
+public class CatalogEntry implements NamedSource {
+    private String sourceName;
+    private long fileSize;
+    private String version;
+    private TerminationStatus status = TerminationStatus.INCOMPLETE;
+    private int jobCount;
+    private double cpuSeconds;
+    private Integer imagFreqCount;
+    private boolean fullRead;
+
+    /**
+     * Zero-arg constructor.
+     */
+    public CatalogEntry() {
+
+    }
+
+    /**
+     * Creates an entry for the given source.
+     *
+     * @param srcName
+     *            The source name.
+     */
+    public CatalogEntry(final String srcName) {
+        this.sourceName = srcName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#getSourceName()
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#setSourceName(java.lang.String)
+     */
+    public void setSourceName(final String srcName) {
+        this.sourceName = srcName;
+    }
+
+    /**
+     * @return the file size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @param size
+     *            the file size to set
+     */
+    public void setFileSize(final long size) {
+        this.fileSize = size;
+    }
+
+    /**
+     * @return the program version (such as "ES64L-G16RevB.01") or null if it
+     *         wasn't found
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @param ver
+     *            the version to set
+     */
+    public void setVersion(final String ver) {
+        this.version = ver;
+    }
+
+    /**
+     * @return how the last job ended
+     */
+    public TerminationStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @param stat
+     *            the status to set
+     */
+    public void setStatus(final TerminationStatus stat) {
+        this.status = stat;
+    }
+
+    /**
+     * @return the number of jobs (Link1 sections) in the file
+     */
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * @param count
+     *            the job count to set
+     */
+    public void setJobCount(final int count) {
+        this.jobCount = count;
+    }
+
+    /**
+     * @return the total "Job cpu time" of all jobs in seconds
+     */
+    public double getCpuSeconds() {
+        return cpuSeconds;
+    }
+
+    /**
+     * @param seconds
+     *            the CPU seconds to set
+     */
+    public void setCpuSeconds(final double seconds) {
+        this.cpuSeconds = seconds;
+    }
+
+    /**
+     * @return the number of imaginary frequencies from the last frequency job,
+     *         or null if there was none
+     */
+    public Integer getImagFreqCount() {
+        return imagFreqCount;
+    }
+
+    /**
+     * @param count
+     *            the imaginary frequency count to set
+     */
+    public void setImagFreqCount(final Integer count) {
+        this.imagFreqCount = count;
+    }
+
+    /**
+     * @return true if the whole file had to be read rather than just its head
+     *         and tail
+     */
+    public boolean isFullRead() {
+        return fullRead;
+    }
+
+    /**
+     * @param full
+     *            whether the whole file was read
+     */
+    public void setFullRead(final boolean full) {
+        this.fullRead = full;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(Object)
+     */
+    public boolean equals(final Object object) {
+        if (!(object instanceof CatalogEntry)) {
+            return false;
+        }
+        final CatalogEntry rhs = (CatalogEntry) object;
+        return new EqualsBuilder().append(this.sourceName, rhs.sourceName)
+                .append(this.fileSize, rhs.fileSize)
+                .append(this.version, rhs.version)
+                .append(this.status, rhs.status)
+                .append(this.jobCount, rhs.jobCount)
+                .append(this.cpuSeconds, rhs.cpuSeconds)
+                .append(this.imagFreqCount, rhs.imagFreqCount)
+                .append(this.fullRead, rhs.fullRead).isEquals();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return new HashCodeBuilder(1795321407, -2038441623)
+                .append(this.sourceName).append(this.fileSize)
+                .append(this.version).append(this.status)
+                .append(this.jobCount).append(this.cpuSeconds)
+                .append(this.imagFreqCount).append(this.fullRead)
+                .toHashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return new ToStringBuilder(this).append("sourceName", sourceName)
+                .append("fileSize", fileSize).append("version", version)
+                .append("status", status).append("jobCount", jobCount)
+                .append("cpuSeconds", cpuSeconds)
+                .append("imagFreqCount", imagFreqCount)
+                .append("fullRead", fullRead).toString();
+    }
+}
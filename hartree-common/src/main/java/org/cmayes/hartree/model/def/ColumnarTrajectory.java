@@ -0,0 +1,607 @@
+package org.cmayes.hartree.model.def;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.cmayes.hartree.loader.ParseException;
+import org.cmayes.hartree.model.NamedSource;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.exception.EnvironmentException;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * Stores every frame of a trajectory in contiguous primitive arrays: one
+ * energy per frame and X, Y and Z for every atom of every frame, laid out frame
+ * by frame. Atom IDs and types are stored once, since they are the same for
+ * every frame. This takes a small fraction of the memory of a list of
+ * {@link Atom} instances per frame.
+ *
+ * <p>
+ * A trajectory can be written to a compressed format in which coordinates are
+ * rounded to a fixed precision and stored as variable-length differences from
+ * the previous frame. Neighboring optimization steps differ by small amounts,
+ * so most coordinates take one or two bytes before deflation.
+ * </p>
+ *
+ * @author cmayes
+ */
+public class ColumnarTrajectory implements NamedSource, Iterable<List<Atom>> {
+    /**
+     * The default coordinate precision in angstroms; this keeps every digit
+     * that Gaussian prints.
+     */
+    public static final double DEF_PRECISION = 1.0E-6;
+    /** Identifies the compressed format ("HTR1"). */
+    static final int MAGIC = 0x48545231;
+    private static final int INIT_FRAMES = 16;
+    private static final int DIMS = 3;
+    private static final int INFLATE_BUF_SIZE = 8192;
+    private String sourceName;
+    private final int[] atomIds;
+    private final AtomicElement[] atomTypes;
+    private double[] energies;
+    private double[] coords;
+    private int frameCount;
+
+    /**
+     * Creates an empty trajectory for the given atoms. Only the IDs and types
+     * of the atoms are used.
+     *
+     * @param srcName
+     *            The source name.
+     * @param atoms
+     *            The atoms in every frame, in the order their coordinates will
+     *            be added.
+     * @throws IllegalArgumentException
+     *             If there are no atoms.
+     */
+    public ColumnarTrajectory(final String srcName, final List<Atom> atoms) {
+        if (asNotNull(atoms, "Atoms are null").isEmpty()) {
+            throw new IllegalArgumentException("No atoms for trajectory "
+                    + srcName);
+        }
+        this.sourceName = srcName;
+        this.atomIds = new int[atoms.size()];
+        this.atomTypes = new AtomicElement[atoms.size()];
+        for (int i = 0; i < atomIds.length; i++) {
+            atomIds[i] = atoms.get(i).getId();
+            atomTypes[i] = atoms.get(i).getType();
+        }
+        this.energies = new double[INIT_FRAMES];
+        this.coords = new double[INIT_FRAMES * atomIds.length * DIMS];
+    }
+
+    /**
+     * Creates a trajectory with the given atom data and capacity.
+     *
+     * @param srcName
+     *            The source name.
+     * @param ids
+     *            The atom IDs.
+     * @param types
+     *            The atom types.
+     * @param frames
+     *            The number of frames to allocate.
+     */
+    private ColumnarTrajectory(final String srcName, final int[] ids,
+            final AtomicElement[] types, final int frames) {
+        this.sourceName = srcName;
+        this.atomIds = ids;
+        this.atomTypes = types;
+        this.energies = new double[Math.max(frames, 1)];
+        this.coords = new double[Math.max(frames, 1) * ids.length * DIMS];
+    }
+
+    /**
+     * Appends a frame.
+     *
+     * @param energy
+     *            The frame's energy; NaN if unknown.
+     * @param atoms
+     *            The frame's atoms, in the same order as the atoms given when
+     *            the trajectory was created.
+     * @return The index of the new frame.
+     * @throws IllegalArgumentException
+     *             If the atoms don't match the trajectory's atoms.
+     */
+    public int addFrame(final double energy, final List<Atom> atoms) {
+        if (asNotNull(atoms, "Atoms are null").size() != atomIds.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Frame has %d atoms; expected %d", atoms.size(),
+                    atomIds.length));
+        }
+        ensureCapacity(frameCount + 1);
+        int pos = frameCount * atomIds.length * DIMS;
+        for (int i = 0; i < atomIds.length; i++) {
+            final Atom atom = atoms.get(i);
+            if (atom.getId() != atomIds[i]) {
+                throw new IllegalArgumentException(String.format(
+                        "Atom %d has ID %d; expected %d", i, atom.getId(),
+                        atomIds[i]));
+            }
+            coords[pos++] = atom.getX();
+            coords[pos++] = atom.getY();
+            coords[pos++] = atom.getZ();
+        }
+        energies[frameCount] = energy;
+        return frameCount++;
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of frames.
+     *
+     * @param frames
+     *            The number of frames to hold.
+     */
+    private void ensureCapacity(final int frames) {
+        if (frames <= energies.length) {
+            return;
+        }
+        final int newCap = Math.max(frames, energies.length * 2);
+        energies = Arrays.copyOf(energies, newCap);
+        coords = Arrays.copyOf(coords, newCap * atomIds.length * DIMS);
+    }
+
+    /**
+     * Releases any unused capacity.
+     */
+    public void trimToSize() {
+        energies = Arrays.copyOf(energies, Math.max(frameCount, 1));
+        coords = Arrays.copyOf(coords, Math.max(frameCount, 1)
+                * atomIds.length * DIMS);
+    }
+
+    /**
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of atoms in each frame
+     */
+    public int getAtomCount() {
+        return atomIds.length;
+    }
+
+    /**
+     * @param atomIdx
+     *            The atom's index.
+     * @return the atom's ID
+     */
+    public int getAtomId(final int atomIdx) {
+        return atomIds[atomIdx];
+    }
+
+    /**
+     * @param atomIdx
+     *            The atom's index.
+     * @return the atom's type
+     */
+    public AtomicElement getAtomType(final int atomIdx) {
+        return atomTypes[atomIdx];
+    }
+
+    /**
+     * @param frame
+     *            The frame's index.
+     * @return the frame's energy
+     */
+    public double getEnergy(final int frame) {
+        checkFrame(frame);
+        return energies[frame];
+    }
+
+    /**
+     * Returns a single coordinate without creating any objects.
+     *
+     * @param frame
+     *            The frame's index.
+     * @param atomIdx
+     *            The atom's index.
+     * @param dim
+     *            0 for X, 1 for Y or 2 for Z.
+     * @return The coordinate value.
+     */
+    public double getCoord(final int frame, final int atomIdx, final int dim) {
+        checkFrame(frame);
+        return coords[(frame * atomIds.length + atomIdx) * DIMS + dim];
+    }
+
+    /**
+     * Copies a frame's coordinates (X, Y and Z for each atom in turn) into the
+     * given array.
+     *
+     * @param frame
+     *            The frame's index.
+     * @param dest
+     *            An array of at least three times the atom count.
+     */
+    public void copyFrameCoords(final int frame, final double[] dest) {
+        checkFrame(frame);
+        final int len = atomIds.length * DIMS;
+        System.arraycopy(coords, frame * len, dest, 0, len);
+    }
+
+    /**
+     * Creates atoms for the given frame.
+     *
+     * @param frame
+     *            The frame's index.
+     * @return New atoms holding the frame's coordinates.
+     */
+    public List<Atom> getFrame(final int frame) {
+        checkFrame(frame);
+        final List<Atom> atoms = new ArrayList<Atom>(atomIds.length);
+        int pos = frame * atomIds.length * DIMS;
+        for (int i = 0; i < atomIds.length; i++) {
+            final DefaultAtom atom = new DefaultAtom();
+            atom.setId(atomIds[i]);
+            atom.setType(atomTypes[i]);
+            atom.setX(coords[pos++]);
+            atom.setY(coords[pos++]);
+            atom.setZ(coords[pos++]);
+            atoms.add(atom);
+        }
+        return atoms;
+    }
+
+    /**
+     * Returns the index of the frame with the lowest energy.
+     *
+     * @return The index of the lowest-energy frame.
+     * @throws IllegalStateException
+     *             If there are no frames.
+     */
+    public int getLowestEnergyFrame() {
+        if (frameCount == 0) {
+            throw new IllegalStateException("Trajectory is empty");
+        }
+        int lowest = 0;
+        for (int i = 1; i < frameCount; i++) {
+            if (energies[i] < energies[lowest]) {
+                lowest = i;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Iterates over the frames in order, creating the atoms for each frame as
+     * it is reached.
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<List<Atom>> iterator() {
+        return new Iterator<List<Atom>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < frameCount;
+            }
+
+            @Override
+            public List<Atom> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getFrame(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Frames can't be removed");
+            }
+        };
+    }
+
+    /**
+     * @param frame
+     *            The frame index to check.
+     * @throws IndexOutOfBoundsException
+     *             If there is no such frame.
+     */
+    private void checkFrame(final int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Frame %d of %d", frame, frameCount));
+        }
+    }
+
+    /**
+     * Writes this trajectory in the compressed format using the default
+     * precision.
+     *
+     * @param out
+     *            The stream to write to; it is not closed.
+     * @see #writeCompressed(OutputStream, double)
+     */
+    public void writeCompressed(final OutputStream out) {
+        writeCompressed(out, DEF_PRECISION);
+    }
+
+    /**
+     * Writes this trajectory in the compressed format. Coordinates are rounded
+     * to the nearest multiple of the precision.
+     *
+     * @param out
+     *            The stream to write to; it is not closed.
+     * @param precision
+     *            The coordinate precision in angstroms.
+     * @throws IllegalArgumentException
+     *             If the precision is not positive.
+     */
+    public void writeCompressed(final OutputStream out, final double precision) {
+        if (!(precision > 0)) {
+            throw new IllegalArgumentException(
+                    "Precision must be positive: " + precision);
+        }
+        // The caller's stream stays open, so the deflater's native memory is
+        // released here rather than by closing the stream.
+        final Deflater def = new Deflater();
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(
+                asNotNull(out, "Output stream is null"), def);
+        final DataOutputStream dataOut = new DataOutputStream(
+                new BufferedOutputStream(deflater));
+        try {
+            dataOut.writeInt(MAGIC);
+            dataOut.writeBoolean(sourceName != null);
+            if (sourceName != null) {
+                dataOut.writeUTF(sourceName);
+            }
+            dataOut.writeInt(atomIds.length);
+            dataOut.writeInt(frameCount);
+            dataOut.writeDouble(precision);
+            for (int i = 0; i < atomIds.length; i++) {
+                dataOut.writeInt(atomIds[i]);
+                dataOut.writeInt(atomTypes[i] == null ? 0 : atomTypes[i]
+                        .getNumber());
+            }
+            for (int i = 0; i < frameCount; i++) {
+                dataOut.writeDouble(energies[i]);
+            }
+            final int frameLen = atomIds.length * DIMS;
+            final long[] prev = new long[frameLen];
+            for (int i = 0; i < frameCount * frameLen; i++) {
+                final long quant = Math.round(coords[i] / precision);
+                writeVarLong(dataOut, zigZag(quant - prev[i % frameLen]));
+                prev[i % frameLen] = quant;
+            }
+            dataOut.flush();
+            deflater.finish();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing trajectory "
+                    + sourceName, e);
+        } finally {
+            def.end();
+        }
+    }
+
+    /**
+     * Reads a trajectory written by {@link #writeCompressed(OutputStream)}.
+     *
+     * Nothing after the trajectory's data is read from the stream, so more
+     * data can follow it. Streams that support mark and reset, such as a
+     * {@link java.io.BufferedInputStream}, are read a buffer at a time;
+     * others are read a byte at a time.
+     *
+     * @param in
+     *            The stream to read from; it is not closed.
+     * @return The trajectory.
+     * @throws ParseException
+     *             If the data is not in the compressed trajectory format.
+     */
+    public static ColumnarTrajectory readCompressed(final InputStream in) {
+        final Inflater inf = new Inflater();
+        final DataInputStream dataIn = new DataInputStream(
+                new ExactInflaterInputStream(asNotNull(in,
+                        "Input stream is null"), inf));
+        try {
+            if (dataIn.readInt() != MAGIC) {
+                throw new ParseException("Not a compressed trajectory");
+            }
+            final String srcName = dataIn.readBoolean() ? dataIn.readUTF()
+                    : null;
+            final int atomCount = dataIn.readInt();
+            final int frames = dataIn.readInt();
+            final double precision = dataIn.readDouble();
+            final int[] ids = new int[atomCount];
+            final AtomicElement[] types = new AtomicElement[atomCount];
+            for (int i = 0; i < atomCount; i++) {
+                ids[i] = dataIn.readInt();
+                final int num = dataIn.readInt();
+                types[i] = num == 0 ? null : AtomicElement.valueOf(num);
+            }
+            final ColumnarTrajectory traj = new ColumnarTrajectory(srcName,
+                    ids, types, frames);
+            for (int i = 0; i < frames; i++) {
+                traj.energies[i] = dataIn.readDouble();
+            }
+            final int frameLen = atomCount * DIMS;
+            final long[] prev = new long[frameLen];
+            for (int i = 0; i < frames * frameLen; i++) {
+                final long quant = prev[i % frameLen]
+                        + unZigZag(readVarLong(dataIn));
+                traj.coords[i] = quant * precision;
+                prev[i % frameLen] = quant;
+            }
+            traj.frameCount = frames;
+            // Reading to the end lets the inflater finish, which returns the
+            // bytes after the trajectory to the stream.
+            if (dataIn.read() != -1) {
+                throw new ParseException("Unexpected data after trajectory "
+                        + srcName);
+            }
+            return traj;
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems reading trajectory", e);
+        } finally {
+            inf.end();
+        }
+    }
+
+    /**
+     * Maps signed values to unsigned ones so that small negative deltas stay
+     * small.
+     *
+     * @param val
+     *            The value to encode.
+     * @return The encoded value.
+     */
+    private static long zigZag(final long val) {
+        return (val << 1) ^ (val >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     *
+     * @param val
+     *            The value to decode.
+     * @return The decoded value.
+     */
+    private static long unZigZag(final long val) {
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    /**
+     * Writes the value seven bits at a time, low bits first.
+     *
+     * @param out
+     *            The stream to write to.
+     * @param val
+     *            The value to write.
+     * @throws IOException
+     *             If there are problems writing.
+     */
+    private static void writeVarLong(final DataOutputStream out, final long val)
+            throws IOException {
+        long rem = val;
+        while ((rem & ~0x7FL) != 0) {
+            out.writeByte((int) ((rem & 0x7F) | 0x80));
+            rem >>>= 7;
+        }
+        out.writeByte((int) rem);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarLong(DataOutputStream, long)}.
+     *
+     * @param in
+     *            The stream to read from.
+     * @return The value read.
+     * @throws IOException
+     *             If there are problems reading.
+     */
+    private static long readVarLong(final DataInputStream in)
+            throws IOException {
+        long val = 0;
+        int shift = 0;
+        int cur;
+        do {
+            cur = in.readUnsignedByte();
+            val |= (long) (cur & 0x7F) << shift;
+            shift += 7;
+        } while ((cur & 0x80) != 0);
+        return val;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#getSourceName()
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#setSourceName(java.lang.String)
+     */
+    public void setSourceName(final String srcName) {
+        this.sourceName = srcName;
+    }
+
+    /**
+     * Inflates data without consuming the bytes that follow it. After the
+     * inflater finishes, the bytes it was given but didn't use are returned
+     * to the source by resetting to the mark set before they were read; a
+     * source without mark support is read a byte at a time instead.
+     */
+    private static final class ExactInflaterInputStream extends
+            InflaterInputStream {
+        private final boolean markable;
+        private boolean returned;
+
+        /**
+         * @param src
+         *            The compressed data.
+         * @param inflater
+         *            The inflater, which the caller ends.
+         */
+        ExactInflaterInputStream(final InputStream src, final Inflater inflater) {
+            super(src, inflater, src.markSupported() ? INFLATE_BUF_SIZE : 1);
+            this.markable = src.markSupported();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.util.zip.InflaterInputStream#fill()
+         */
+        @Override
+        protected void fill() throws IOException {
+            if (markable) {
+                in.mark(buf.length);
+            }
+            super.fill();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.util.zip.InflaterInputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int length)
+                throws IOException {
+            final int read = super.read(b, off, length);
+            if (markable && !returned && inf.finished()) {
+                returned = true;
+                in.reset();
+                long toSkip = len - inf.getRemaining();
+                while (toSkip > 0) {
+                    final long skipped = in.skip(toSkip);
+                    if (skipped <= 0) {
+                        throw new IOException(
+                                "Couldn't skip the inflated data");
+                    }
+                    toSkip -= skipped;
+                }
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.cmayes.hartree.model.def;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.cmayes.hartree.model.ConvergenceCriterion;
+import org.cmayes.hartree.model.NamedSource;
+
+/**
+ * Holds the SCF energy and convergence table values for each step of an
+ * optimization. Each series is kept in its own primitive array so that long
+ * optimizations can be summarized without boxing.
+ *
+ * @author cmayes
+ */
+public class ConvergenceSeries implements NamedSource {
+    private static final int INIT_STEPS = 32;
+    private static final int CRIT_COUNT = ConvergenceCriterion.values().length;
+    private String sourceName;
+    private double[] energies = new double[INIT_STEPS];
+    private final double[][] values = new double[CRIT_COUNT][INIT_STEPS];
+    private final double[] thresholds = new double[CRIT_COUNT];
+    private int stepCount;
+
+    /**
+     * Creates an empty series.
+     *
+     * @param srcName
+     *            The source name.
+     */
+    public ConvergenceSeries(final String srcName) {
+        this.sourceName = srcName;
+        Arrays.fill(thresholds, Double.NaN);
+    }
+
+    /**
+     * Adds a step. Criteria that weren't printed should be NaN.
+     *
+     * @param energy
+     *            The step's SCF energy or NaN if there was none.
+     * @param stepVals
+     *            The step's values, indexed by {@link ConvergenceCriterion}
+     *            ordinal.
+     * @param stepThresholds
+     *            The step's thresholds, indexed by
+     *            {@link ConvergenceCriterion} ordinal.
+     * @return The index of the new step.
+     */
+    public int addStep(final double energy, final double[] stepVals,
+            final double[] stepThresholds) {
+        asNotNull(stepVals, "Values are null");
+        asNotNull(stepThresholds, "Thresholds are null");
+        if (stepVals.length != CRIT_COUNT
+                || stepThresholds.length != CRIT_COUNT) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %d criteria but got %d values and %d thresholds",
+                    CRIT_COUNT, stepVals.length, stepThresholds.length));
+        }
+        if (stepCount == energies.length) {
+            energies = Arrays.copyOf(energies, stepCount * 2);
+            for (int crit = 0; crit < CRIT_COUNT; crit++) {
+                values[crit] = Arrays.copyOf(values[crit], stepCount * 2);
+            }
+        }
+        energies[stepCount] = energy;
+        for (int crit = 0; crit < CRIT_COUNT; crit++) {
+            values[crit][stepCount] = stepVals[crit];
+            if (!Double.isNaN(stepThresholds[crit])) {
+                thresholds[crit] = stepThresholds[crit];
+            }
+        }
+        return stepCount++;
+    }
+
+    /**
+     * @return the number of steps
+     */
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @param step
+     *            The step index.
+     * @return the step's SCF energy or NaN if it wasn't found
+     */
+    public double getEnergy(final int step) {
+        checkStep(step);
+        return energies[step];
+    }
+
+    /**
+     * @return a copy of the energy series
+     */
+    public double[] getEnergies() {
+        return Arrays.copyOf(energies, stepCount);
+    }
+
+    /**
+     * @param crit
+     *            The criterion.
+     * @param step
+     *            The step index.
+     * @return the criterion's value at the step or NaN if it wasn't found
+     */
+    public double getValue(final ConvergenceCriterion crit, final int step) {
+        checkStep(step);
+        return values[crit.ordinal()][step];
+    }
+
+    /**
+     * @param crit
+     *            The criterion.
+     * @return a copy of the criterion's series
+     */
+    public double[] getValues(final ConvergenceCriterion crit) {
+        return Arrays.copyOf(values[crit.ordinal()], stepCount);
+    }
+
+    /**
+     * @param crit
+     *            The criterion.
+     * @return the criterion's last printed threshold or NaN if none was found
+     */
+    public double getThreshold(final ConvergenceCriterion crit) {
+        return thresholds[crit.ordinal()];
+    }
+
+    /**
+     * @param crit
+     *            The criterion.
+     * @return the criterion's value at the last step or NaN if there are no
+     *         steps
+     */
+    public double getFinalValue(final ConvergenceCriterion crit) {
+        if (stepCount == 0) {
+            return Double.NaN;
+        }
+        return values[crit.ordinal()][stepCount - 1];
+    }
+
+    /**
+     * @return the last step's SCF energy or NaN if there are no steps
+     */
+    public double getFinalEnergy() {
+        if (stepCount == 0) {
+            return Double.NaN;
+        }
+        return energies[stepCount - 1];
+    }
+
+    /**
+     * Returns the number of criteria at or below their thresholds for the
+     * given step.
+     *
+     * @param step
+     *            The step index.
+     * @return The number of met criteria.
+     */
+    public int getCriteriaMet(final int step) {
+        checkStep(step);
+        int met = 0;
+        for (int crit = 0; crit < CRIT_COUNT; crit++) {
+            if (values[crit][step] <= thresholds[crit]) {
+                met++;
+            }
+        }
+        return met;
+    }
+
+    /**
+     * @return true if every criterion is met at the last step
+     */
+    public boolean isConverged() {
+        return stepCount > 0 && getCriteriaMet(stepCount - 1) == CRIT_COUNT;
+    }
+
+    /**
+     * Returns the number of steps whose energy is higher than the energy of
+     * the step before it. Steps without an energy are skipped.
+     *
+     * @return The number of energy rises.
+     */
+    public int getEnergyRises() {
+        int rises = 0;
+        double prev = Double.NaN;
+        for (int step = 0; step < stepCount; step++) {
+            if (Double.isNaN(energies[step])) {
+                continue;
+            }
+            if (energies[step] > prev) {
+                rises++;
+            }
+            prev = energies[step];
+        }
+        return rises;
+    }
+
+    /**
+     * @return true if the energy never rises from one step to the next
+     */
+    public boolean isMonotonic() {
+        return getEnergyRises() == 0;
+    }
+
+    /**
+     * @param step
+     *            The step index to check.
+     * @throws IndexOutOfBoundsException
+     *             If there is no such step.
+     */
+    private void checkStep(final int step) {
+        if (step < 0 || step >= stepCount) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Step %d of %d", step, stepCount));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#getSourceName()
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#setSourceName(java.lang.String)
+     */
+    public void setSourceName(final String srcName) {
+        this.sourceName = srcName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return new ToStringBuilder(this).append("sourceName", sourceName)
+                .append("stepCount", stepCount).toString();
+    }
+}
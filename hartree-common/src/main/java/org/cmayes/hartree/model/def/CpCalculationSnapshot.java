@@ -8,6 +8,8 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.cmayes.hartree.model.BaseResult;
 import org.cmayes.hartree.model.GlucoseRingResult;
+import org.cmayes.hartree.model.HydrogenBondResult;
+import org.cmayes.hartree.model.IonCoordinationResult;
 
 import com.cmayes.common.model.Atom;
 
@@ -18,12 +20,17 @@ import com.cmayes.common.model.Atom;
  * @author cmayes
  */
 public class CpCalculationSnapshot extends DefaultBaseResult implements
-        CremerPopleResult, GlucoseRingResult {
+        CremerPopleResult, GlucoseRingResult, IonCoordinationResult,
+        HydrogenBondResult {
     private List<Atom> glucoseRing = new ArrayList<Atom>();
     private List<Atom> oxygenAtoms = new ArrayList<Atom>();
     private List<Double> carbonDistances = new ArrayList<Double>();
     private List<Double> oxygenDistances = new ArrayList<Double>();
     private List<Double> ionDistances = new ArrayList<Double>();
+    private List<IonCoordination> ionCoordinations = new ArrayList<IonCoordination>();
+    private List<HydrogenBond> hydrogenBonds = new ArrayList<HydrogenBond>();
+    private List<String> hydroxylHBondRoles = new ArrayList<String>();
+    private String ringHBondPattern;
     private CremerPopleCoordinates cpCoords;
     private Double hmArmAngle1;
     private Double acArmAngle1;
@@ -51,6 +58,10 @@ public class CpCalculationSnapshot extends DefaultBaseResult implements
         this.carbonDistances = snap.getCarbonDistances();
         this.oxygenDistances = snap.getOxygenDistances();
         this.ionDistances = snap.getIonDistances();
+        this.ionCoordinations = snap.getIonCoordinations();
+        this.hydrogenBonds = snap.getHydrogenBonds();
+        this.hydroxylHBondRoles = snap.getHydroxylHBondRoles();
+        this.ringHBondPattern = snap.getRingHBondPattern();
         this.oxygenAtoms = snap.getOxygenAtoms();
         this.hmArmAngle1 = snap.getHmArmAngle1();
         this.hmArmAngle2 = snap.getHmArmAngle2();
@@ -169,6 +180,78 @@ public class CpCalculationSnapshot extends DefaultBaseResult implements
         this.ionDistances = ionDist;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.IonCoordinationResult#getIonCoordinations()
+     */
+    public List<IonCoordination> getIonCoordinations() {
+        return ionCoordinations;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.IonCoordinationResult#setIonCoordinations(List)
+     */
+    public void setIonCoordinations(final List<IonCoordination> coords) {
+        this.ionCoordinations = coords;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#getHydrogenBonds()
+     */
+    public List<HydrogenBond> getHydrogenBonds() {
+        return hydrogenBonds;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#setHydrogenBonds(List)
+     */
+    public void setHydrogenBonds(final List<HydrogenBond> bonds) {
+        this.hydrogenBonds = bonds;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#getHydroxylHBondRoles()
+     */
+    public List<String> getHydroxylHBondRoles() {
+        return hydroxylHBondRoles;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#setHydroxylHBondRoles(List)
+     */
+    public void setHydroxylHBondRoles(final List<String> roles) {
+        this.hydroxylHBondRoles = roles;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#getRingHBondPattern()
+     */
+    public String getRingHBondPattern() {
+        return ringHBondPattern;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.cmayes.hartree.model.HydrogenBondResult#setRingHBondPattern(String)
+     */
+    public void setRingHBondPattern(final String pattern) {
+        this.ringHBondPattern = pattern;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -281,6 +364,10 @@ public class CpCalculationSnapshot extends DefaultBaseResult implements
                 .append(this.anoAngle1, rhs.anoAngle1)
                 .append(this.carbonDistances, rhs.carbonDistances)
                 .append(this.ionDistances, rhs.ionDistances)
+                .append(this.ionCoordinations, rhs.ionCoordinations)
+                .append(this.hydrogenBonds, rhs.hydrogenBonds)
+                .append(this.hydroxylHBondRoles, rhs.hydroxylHBondRoles)
+                .append(this.ringHBondPattern, rhs.ringHBondPattern)
                 .append(this.oxygenDistances, rhs.oxygenDistances)
                 .append(this.cpCoords, rhs.cpCoords)
                 .append(this.oxygenAtoms, rhs.oxygenAtoms)
@@ -300,7 +387,10 @@ public class CpCalculationSnapshot extends DefaultBaseResult implements
         return new HashCodeBuilder(-334262149, 954656579)
                 .appendSuper(super.hashCode()).append(this.anoAngle2)
                 .append(this.anoAngle1).append(this.carbonDistances)
-                .append(this.ionDistances).append(this.oxygenDistances)
+                .append(this.ionDistances).append(this.ionCoordinations)
+                .append(this.hydrogenBonds).append(this.hydroxylHBondRoles)
+                .append(this.ringHBondPattern)
+                .append(this.oxygenDistances)
                 .append(this.cpCoords).append(this.oxygenAtoms)
                 .append(this.hmArmAngle1).append(this.hmArmAngle2)
                 .append(this.acArmAngle2).append(this.acArmAngle1)
@@ -321,6 +411,10 @@ public class CpCalculationSnapshot extends DefaultBaseResult implements
                 .append("glucoseRing", this.glucoseRing)
                 .append("mult", this.getMult())
                 .append("ionDistances", this.ionDistances)
+                .append("ionCoordinations", this.ionCoordinations)
+                .append("hydrogenBonds", this.hydrogenBonds)
+                .append("hydroxylHBondRoles", this.hydroxylHBondRoles)
+                .append("ringHBondPattern", this.ringHBondPattern)
                 .append("symmetricTop", this.isSymmetricTop())
                 .append("sourceName", this.getSourceName())
                 .append("hmArmAngle1", this.hmArmAngle1)
@@ -43,6 +43,7 @@ public class DefaultBaseResult implements BaseResult {
     private Double elecEn;
     private Integer atomCount;
     private Double bsse;
+    private Integer step;
 
     /**
      * Zero-arg constructor.
@@ -90,6 +91,7 @@ public class DefaultBaseResult implements BaseResult {
         this.terminationDates = baseResult.getTerminationDates();
         this.transPart = baseResult.getTransPart();
         this.zpeCorrection = baseResult.getZpeCorrection();
+        this.step = baseResult.getStep();
     }
 
     /**
@@ -417,6 +419,21 @@ public class DefaultBaseResult implements BaseResult {
         this.bsse = bsse;
     }
 
+    /**
+     * @return the step
+     */
+    public Integer getStep() {
+        return step;
+    }
+
+    /**
+     * @param stepNum
+     *            the step to set
+     */
+    public void setStep(final Integer stepNum) {
+        this.step = stepNum;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -446,6 +463,7 @@ public class DefaultBaseResult implements BaseResult {
                 .append(this.dipoleMomentTotal, rhs.dipoleMomentTotal)
                 .append(this.sourceName, rhs.sourceName)
                 .append(this.terminationDates, rhs.terminationDates)
+                .append(this.step, rhs.step)
                 .append(this.stoichiometry, rhs.stoichiometry).isEquals();
     }
 
@@ -465,7 +483,7 @@ public class DefaultBaseResult implements BaseResult {
                 .append(this.charge).append(this.rotPart)
                 .append(this.zpeCorrection).append(this.dipoleMomentTotal)
                 .append(this.sourceName).append(this.terminationDates)
-                .append(this.stoichiometry).toHashCode();
+                .append(this.step).append(this.stoichiometry).toHashCode();
     }
 
     /**
@@ -492,6 +510,7 @@ public class DefaultBaseResult implements BaseResult {
                 .append("dipoleMomentTotal", this.dipoleMomentTotal)
                 .append("solvent", this.solvent)
                 .append("terminationDates", this.terminationDates)
+                .append("step", this.step)
                 .append("atomMap", this.atomMap).toString();
     }
 }
@@ -0,0 +1,165 @@
+package org.cmayes.hartree.model.def;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Models a single donor-H...acceptor hydrogen bond.
+ *
+ * @author cmayes
+ */
+public class HydrogenBond {
+    private int donorId;
+    private int hydrogenId;
+    private int acceptorId;
+    private double distance;
+    private double angle;
+
+    /**
+     * Zero-arg constructor.
+     */
+    public HydrogenBond() {
+
+    }
+
+    /**
+     * Creates a hydrogen bond with the given values.
+     *
+     * @param donor
+     *            The donor atom's ID.
+     * @param hydrogen
+     *            The bridging hydrogen's ID.
+     * @param acceptor
+     *            The acceptor atom's ID.
+     * @param dist
+     *            The H...acceptor distance in angstroms.
+     * @param ang
+     *            The donor-H...acceptor angle in degrees.
+     */
+    public HydrogenBond(final int donor, final int hydrogen,
+            final int acceptor, final double dist, final double ang) {
+        this.donorId = donor;
+        this.hydrogenId = hydrogen;
+        this.acceptorId = acceptor;
+        this.distance = dist;
+        this.angle = ang;
+    }
+
+    /**
+     * @return the donorId
+     */
+    public int getDonorId() {
+        return donorId;
+    }
+
+    /**
+     * @param id
+     *            the donorId to set
+     */
+    public void setDonorId(final int id) {
+        this.donorId = id;
+    }
+
+    /**
+     * @return the hydrogenId
+     */
+    public int getHydrogenId() {
+        return hydrogenId;
+    }
+
+    /**
+     * @param id
+     *            the hydrogenId to set
+     */
+    public void setHydrogenId(final int id) {
+        this.hydrogenId = id;
+    }
+
+    /**
+     * @return the acceptorId
+     */
+    public int getAcceptorId() {
+        return acceptorId;
+    }
+
+    /**
+     * @param id
+     *            the acceptorId to set
+     */
+    public void setAcceptorId(final int id) {
+        this.acceptorId = id;
+    }
+
+    /**
+     * @return the H...acceptor distance in angstroms
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @param dist
+     *            the H...acceptor distance to set
+     */
+    public void setDistance(final double dist) {
+        this.distance = dist;
+    }
+
+    /**
+     * @return the donor-H...acceptor angle in degrees
+     */
+    public double getAngle() {
+        return angle;
+    }
+
+    /**
+     * @param ang
+     *            the donor-H...acceptor angle to set
+     */
+    public void setAngle(final double ang) {
+        this.angle = ang;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(Object)
+     */
+    public boolean equals(final Object object) {
+        if (!(object instanceof HydrogenBond)) {
+            return false;
+        }
+        final HydrogenBond rhs = (HydrogenBond) object;
+        return new EqualsBuilder().append(this.donorId, rhs.donorId)
+                .append(this.hydrogenId, rhs.hydrogenId)
+                .append(this.acceptorId, rhs.acceptorId)
+                .append(this.distance, rhs.distance)
+                .append(this.angle, rhs.angle).isEquals();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return new HashCodeBuilder(-1545307427, 1160376379)
+                .append(this.donorId).append(this.hydrogenId)
+                .append(this.acceptorId).append(this.distance)
+                .append(this.angle).toHashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return new ToStringBuilder(this).append("donorId", this.donorId)
+                .append("hydrogenId", this.hydrogenId)
+                .append("acceptorId", this.acceptorId)
+                .append("distance", this.distance)
+                .append("angle", this.angle).toString();
+    }
+}
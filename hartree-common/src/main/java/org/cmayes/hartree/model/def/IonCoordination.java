@@ -0,0 +1,186 @@
+package org.cmayes.hartree.model.def;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import com.cmayes.common.chem.AtomicElement;
+
+/**
+ * Models the coordination shell of a single ion: the heavy atoms found within
+ * a cutoff distance, ordered from nearest to farthest.
+ *
+ * @author cmayes
+ */
+public class IonCoordination {
+    private int ionId;
+    private AtomicElement ionType;
+    private List<Integer> neighborIds = new ArrayList<Integer>();
+    private List<AtomicElement> neighborTypes = new ArrayList<AtomicElement>();
+    private List<Double> distances = new ArrayList<Double>();
+
+    /**
+     * Zero-arg constructor.
+     */
+    public IonCoordination() {
+
+    }
+
+    /**
+     * Creates an empty coordination shell for the given ion.
+     *
+     * @param id
+     *            The ion's atom ID.
+     * @param type
+     *            The ion's element type.
+     */
+    public IonCoordination(final int id, final AtomicElement type) {
+        this.ionId = id;
+        this.ionType = type;
+    }
+
+    /**
+     * Adds a neighbor to the shell. Callers are responsible for adding
+     * neighbors in order of increasing distance.
+     *
+     * @param id
+     *            The neighbor's atom ID.
+     * @param type
+     *            The neighbor's element type.
+     * @param distance
+     *            The ion-neighbor distance.
+     */
+    public void addNeighbor(final int id, final AtomicElement type,
+            final double distance) {
+        neighborIds.add(id);
+        neighborTypes.add(type);
+        distances.add(distance);
+    }
+
+    /**
+     * @return The number of heavy atoms in the coordination shell.
+     */
+    public int getCoordinationNumber() {
+        return distances.size();
+    }
+
+    /**
+     * @return the ionId
+     */
+    public int getIonId() {
+        return ionId;
+    }
+
+    /**
+     * @param id
+     *            the ionId to set
+     */
+    public void setIonId(final int id) {
+        this.ionId = id;
+    }
+
+    /**
+     * @return the ionType
+     */
+    public AtomicElement getIonType() {
+        return ionType;
+    }
+
+    /**
+     * @param type
+     *            the ionType to set
+     */
+    public void setIonType(final AtomicElement type) {
+        this.ionType = type;
+    }
+
+    /**
+     * @return the IDs of the neighbors, nearest first
+     */
+    public List<Integer> getNeighborIds() {
+        return neighborIds;
+    }
+
+    /**
+     * @param ids
+     *            the neighborIds to set
+     */
+    public void setNeighborIds(final List<Integer> ids) {
+        this.neighborIds = ids;
+    }
+
+    /**
+     * @return the element types of the neighbors, nearest first
+     */
+    public List<AtomicElement> getNeighborTypes() {
+        return neighborTypes;
+    }
+
+    /**
+     * @param types
+     *            the neighborTypes to set
+     */
+    public void setNeighborTypes(final List<AtomicElement> types) {
+        this.neighborTypes = types;
+    }
+
+    /**
+     * @return the ion-neighbor distances in ascending order
+     */
+    public List<Double> getDistances() {
+        return distances;
+    }
+
+    /**
+     * @param dists
+     *            the distances to set
+     */
+    public void setDistances(final List<Double> dists) {
+        this.distances = dists;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(Object)
+     */
+    public boolean equals(final Object object) {
+        if (!(object instanceof IonCoordination)) {
+            return false;
+        }
+        final IonCoordination rhs = (IonCoordination) object;
+        return new EqualsBuilder().append(this.ionId, rhs.ionId)
+                .append(this.ionType, rhs.ionType)
+                .append(this.neighborIds, rhs.neighborIds)
+                .append(this.neighborTypes, rhs.neighborTypes)
+                .append(this.distances, rhs.distances).isEquals();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return new HashCodeBuilder(1402736589, -1191380827).append(this.ionId)
+                .append(this.ionType).append(this.neighborIds)
+                .append(this.neighborTypes).append(this.distances)
+                .toHashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return new ToStringBuilder(this).append("ionId", this.ionId)
+                .append("ionType", this.ionType)
+                .append("neighborIds", this.neighborIds)
+                .append("neighborTypes", this.neighborTypes)
+                .append("distances", this.distances).toString();
+    }
+}
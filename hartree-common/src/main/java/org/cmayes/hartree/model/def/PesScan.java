@@ -0,0 +1,184 @@
+package org.cmayes.hartree.model.def;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.cmayes.hartree.model.NamedSource;
+
+import com.cmayes.common.model.Atom;
+
+/**
+ * Holds the converged points of a relaxed potential energy surface scan: the
+ * energy and geometry of each point along with the value of each scanned
+ * coordinate. Geometries are kept in a {@link ColumnarTrajectory} and
+ * coordinate values in a flat primitive array.
+ *
+ * @author cmayes
+ */
+public class PesScan implements NamedSource {
+    private static final int INIT_POINTS = 16;
+    private String sourceName;
+    private final List<String> coordNames;
+    private ColumnarTrajectory geometries;
+    private double[] energies = new double[INIT_POINTS];
+    private double[] coordValues;
+    private int pointCount;
+
+    /**
+     * Creates an empty scan over the given coordinates.
+     *
+     * @param srcName
+     *            The source name.
+     * @param names
+     *            The names of the scanned coordinates (such as "D(3,1,2,4)").
+     */
+    public PesScan(final String srcName, final List<String> names) {
+        this.sourceName = srcName;
+        this.coordNames = Collections.unmodifiableList(new ArrayList<String>(
+                asNotNull(names, "Coordinate names are null")));
+        this.coordValues = new double[INIT_POINTS * coordNames.size()];
+    }
+
+    /**
+     * Adds a converged point. Its coordinate values start out as NaN.
+     *
+     * @param energy
+     *            The point's energy.
+     * @param atoms
+     *            The point's geometry; null if it isn't tracked.
+     * @return The index of the new point.
+     */
+    public int addPoint(final double energy, final List<Atom> atoms) {
+        if (pointCount == energies.length) {
+            energies = Arrays.copyOf(energies, pointCount * 2);
+            coordValues = Arrays.copyOf(coordValues, pointCount * 2
+                    * coordNames.size());
+        }
+        if (atoms != null && !atoms.isEmpty()) {
+            if (geometries == null) {
+                geometries = new ColumnarTrajectory(sourceName, atoms);
+            }
+            geometries.addFrame(energy, atoms);
+        }
+        energies[pointCount] = energy;
+        Arrays.fill(coordValues, pointCount * coordNames.size(),
+                (pointCount + 1) * coordNames.size(), Double.NaN);
+        return pointCount++;
+    }
+
+    /**
+     * Sets the value of a scanned coordinate at a point.
+     *
+     * @param point
+     *            The point's index.
+     * @param coord
+     *            The coordinate's index.
+     * @param value
+     *            The coordinate's value.
+     */
+    public void setCoordValue(final int point, final int coord,
+            final double value) {
+        checkPoint(point);
+        coordValues[point * coordNames.size() + coord] = value;
+    }
+
+    /**
+     * @param point
+     *            The point's index.
+     * @param coord
+     *            The coordinate's index.
+     * @return the coordinate's value at the point or NaN if it wasn't found
+     */
+    public double getCoordValue(final int point, final int coord) {
+        checkPoint(point);
+        return coordValues[point * coordNames.size() + coord];
+    }
+
+    /**
+     * @param point
+     *            The point's index.
+     * @return the point's energy
+     */
+    public double getEnergy(final int point) {
+        checkPoint(point);
+        return energies[point];
+    }
+
+    /**
+     * @return the number of converged points
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return the names of the scanned coordinates
+     */
+    public List<String> getCoordNames() {
+        return coordNames;
+    }
+
+    /**
+     * @return the geometries of the points, or null if none were added
+     */
+    public ColumnarTrajectory getGeometries() {
+        return geometries;
+    }
+
+    /**
+     * Arranges the points into a dense grid using the default tolerance.
+     *
+     * @return The energy grid.
+     * @see ScanGrid#create(PesScan, double)
+     */
+    public ScanGrid toGrid() {
+        return ScanGrid.create(this, ScanGrid.DEF_TOLERANCE);
+    }
+
+    /**
+     * @param point
+     *            The point index to check.
+     * @throws IndexOutOfBoundsException
+     *             If there is no such point.
+     */
+    private void checkPoint(final int point) {
+        if (point < 0 || point >= pointCount) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Point %d of %d", point, pointCount));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#getSourceName()
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.cmayes.hartree.model.NamedSource#setSourceName(java.lang.String)
+     */
+    public void setSourceName(final String srcName) {
+        this.sourceName = srcName;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return new ToStringBuilder(this).append("sourceName", sourceName)
+                .append("coordNames", coordNames)
+                .append("pointCount", pointCount).toString();
+    }
+}
@@ -0,0 +1,304 @@
+package org.cmayes.hartree.model.def;
+
+import static com.cmayes.common.exception.ExceptionUtils.asNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.cmayes.common.exception.EnvironmentException;
+
+/**
+ * A dense one- or two-dimensional grid of scan energies. Each axis holds the
+ * sorted, distinct values of one scanned coordinate; energies are stored in
+ * row-major order, with NaN marking grid points the scan did not reach.
+ *
+ * @author cmayes
+ */
+public final class ScanGrid {
+    /**
+     * The default tolerance for treating two coordinate values as the same
+     * grid line; Gaussian prints scan coordinates to four decimal places.
+     */
+    public static final double DEF_TOLERANCE = 1.0E-3;
+    /** The most scanned coordinates a grid can be made from. */
+    public static final int MAX_DIMS = 2;
+    private static final byte[] NPY_MAGIC = new byte[] { (byte) 0x93, 'N',
+            'U', 'M', 'P', 'Y', 1, 0 };
+    private static final int NPY_ALIGN = 64;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private final List<String> axisNames;
+    private final double[][] axes;
+    private final double[] energies;
+
+    /**
+     * Creates a grid with the given values.
+     *
+     * @param names
+     *            The axis names.
+     * @param axisVals
+     *            The values for each axis.
+     * @param ens
+     *            The row-major energies.
+     */
+    private ScanGrid(final List<String> names, final double[][] axisVals,
+            final double[] ens) {
+        this.axisNames = Collections.unmodifiableList(new ArrayList<String>(
+                names));
+        this.axes = axisVals;
+        this.energies = ens;
+    }
+
+    /**
+     * Arranges the points of a scan into a grid. If more than one point falls
+     * on the same grid point, the lowest energy is kept. Points missing a
+     * coordinate value are skipped.
+     *
+     * @param scan
+     *            The scan to arrange.
+     * @param tolerance
+     *            The largest difference between coordinate values that are
+     *            treated as the same grid line.
+     * @return The grid.
+     * @throws IllegalArgumentException
+     *             If the scan has no scanned coordinates or more than two.
+     */
+    public static ScanGrid create(final PesScan scan, final double tolerance) {
+        final int dims = asNotNull(scan, "Scan is null").getCoordNames()
+                .size();
+        if (dims < 1 || dims > MAX_DIMS) {
+            throw new IllegalArgumentException(String.format(
+                    "Only 1D and 2D scans can be gridded; %s has %d "
+                            + "scanned coordinates", scan.getSourceName(),
+                    dims));
+        }
+        final double[][] axisVals = new double[dims][];
+        int size = 1;
+        for (int dim = 0; dim < dims; dim++) {
+            axisVals[dim] = findAxis(scan, dim, tolerance);
+            size *= axisVals[dim].length;
+        }
+        final double[] ens = new double[size];
+        Arrays.fill(ens, Double.NaN);
+        for (int point = 0; point < scan.getPointCount(); point++) {
+            int idx = 0;
+            for (int dim = 0; dim < dims; dim++) {
+                final int pos = findLine(axisVals[dim],
+                        scan.getCoordValue(point, dim), tolerance);
+                if (pos < 0) {
+                    idx = -1;
+                    break;
+                }
+                idx = idx * axisVals[dim].length + pos;
+            }
+            final double energy = scan.getEnergy(point);
+            if (idx >= 0 && !(ens[idx] <= energy)) {
+                ens[idx] = energy;
+            }
+        }
+        return new ScanGrid(scan.getCoordNames(), axisVals, ens);
+    }
+
+    /**
+     * Returns the sorted, distinct values of a scanned coordinate.
+     *
+     * @param scan
+     *            The scan to evaluate.
+     * @param dim
+     *            The coordinate's index.
+     * @param tolerance
+     *            The largest difference between equal values.
+     * @return The axis values.
+     */
+    private static double[] findAxis(final PesScan scan, final int dim,
+            final double tolerance) {
+        final double[] vals = new double[scan.getPointCount()];
+        int count = 0;
+        for (int point = 0; point < scan.getPointCount(); point++) {
+            final double val = scan.getCoordValue(point, dim);
+            if (!Double.isNaN(val)) {
+                vals[count++] = val;
+            }
+        }
+        Arrays.sort(vals, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || vals[i] - vals[distinct - 1] > tolerance) {
+                vals[distinct++] = vals[i];
+            }
+        }
+        return Arrays.copyOf(vals, distinct);
+    }
+
+    /**
+     * Finds the grid line for a value.
+     *
+     * @param axis
+     *            The sorted axis values.
+     * @param val
+     *            The value to find.
+     * @param tolerance
+     *            The largest difference between equal values.
+     * @return The index of the grid line or -1 if there is none.
+     */
+    private static int findLine(final double[] axis, final double val,
+            final double tolerance) {
+        if (Double.isNaN(val)) {
+            return -1;
+        }
+        final int pos = Arrays.binarySearch(axis, val);
+        if (pos >= 0) {
+            return pos;
+        }
+        final int ins = -pos - 1;
+        if (ins < axis.length && axis[ins] - val <= tolerance) {
+            return ins;
+        }
+        if (ins > 0 && val - axis[ins - 1] <= tolerance) {
+            return ins - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of axes (1 or 2)
+     */
+    public int getDimensions() {
+        return axes.length;
+    }
+
+    /**
+     * @param dim
+     *            The axis index.
+     * @return the name of the axis's scanned coordinate
+     */
+    public String getAxisName(final int dim) {
+        return axisNames.get(dim);
+    }
+
+    /**
+     * @param dim
+     *            The axis index.
+     * @return a copy of the axis's values
+     */
+    public double[] getAxis(final int dim) {
+        return axes[dim].clone();
+    }
+
+    /**
+     * @param dim
+     *            The axis index.
+     * @return the number of values on the axis
+     */
+    public int getAxisLength(final int dim) {
+        return axes[dim].length;
+    }
+
+    /**
+     * Returns an energy on a one-dimensional grid, or the energy at the given
+     * row-major offset of a two-dimensional grid.
+     *
+     * @param idx
+     *            The grid index.
+     * @return The energy or NaN if the point was not reached.
+     */
+    public double getEnergy(final int idx) {
+        return energies[idx];
+    }
+
+    /**
+     * @param row
+     *            The index on the first axis.
+     * @param col
+     *            The index on the second axis.
+     * @return The energy or NaN if the point was not reached.
+     */
+    public double getEnergy(final int row, final int col) {
+        if (axes.length != 2) {
+            throw new IllegalStateException("Grid is not two-dimensional");
+        }
+        return energies[row * axes[1].length + col];
+    }
+
+    /**
+     * @return a copy of the energies in row-major order
+     */
+    public double[] getEnergies() {
+        return energies.clone();
+    }
+
+    /**
+     * Writes the grid as a NumPy .npz archive holding "energies" (shaped to
+     * the grid) and one "axisN" array per axis, so that it can be plotted
+     * directly with numpy.load.
+     *
+     * @param out
+     *            The stream to write to; it is not closed.
+     */
+    public void writeNpz(final OutputStream out) {
+        final ZipOutputStream zipOut = new ZipOutputStream(asNotNull(out,
+                "Output stream is null"));
+        try {
+            final int[] shape = new int[axes.length];
+            for (int dim = 0; dim < axes.length; dim++) {
+                shape[dim] = axes[dim].length;
+            }
+            zipOut.putNextEntry(new ZipEntry("energies.npy"));
+            writeNpy(zipOut, energies, shape);
+            zipOut.closeEntry();
+            for (int dim = 0; dim < axes.length; dim++) {
+                zipOut.putNextEntry(new ZipEntry("axis" + dim + ".npy"));
+                writeNpy(zipOut, axes[dim], axes[dim].length);
+                zipOut.closeEntry();
+            }
+            zipOut.finish();
+        } catch (final IOException e) {
+            throw new EnvironmentException("Problems writing scan grid", e);
+        }
+    }
+
+    /**
+     * Writes an array in the NumPy .npy (version 1.0) format as little-endian
+     * doubles.
+     *
+     * @param out
+     *            The stream to write to.
+     * @param vals
+     *            The values to write.
+     * @param shape
+     *            The array's shape.
+     * @throws IOException
+     *             If there are problems writing.
+     */
+    private static void writeNpy(final OutputStream out, final double[] vals,
+            final int... shape) throws IOException {
+        final StringBuilder header = new StringBuilder(
+                "{'descr': '<f8', 'fortran_order': False, 'shape': (");
+        for (int dim : shape) {
+            header.append(dim).append(", ");
+        }
+        header.append("), }");
+        final int unpadded = NPY_MAGIC.length + 2 + header.length() + 1;
+        final int padding = (NPY_ALIGN - unpadded % NPY_ALIGN) % NPY_ALIGN;
+        for (int i = 0; i < padding; i++) {
+            header.append(' ');
+        }
+        header.append('\n');
+        out.write(NPY_MAGIC);
+        out.write(header.length() & 0xFF);
+        out.write((header.length() >> 8) & 0xFF);
+        out.write(header.toString().getBytes(ASCII));
+        final ByteBuffer buf = ByteBuffer.allocate(vals.length * 8).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buf.asDoubleBuffer().put(vals);
+        out.write(buf.array());
+    }
+}
@@ -0,0 +1,80 @@
+package org.cmayes.hartree.calc.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * Builds the atoms and geometries that the calculation tests run on.
+ *
+ * @author cmayes
+ */
+final class AtomFixtures {
+    /** The prefix for geometry file locations. */
+    private static final String XYZ_DIR_PFX = "src/test/resources/files/xyz/";
+
+    /**
+     * Not instantiable.
+     */
+    private AtomFixtures() {
+    }
+
+    /**
+     * Creates an atom with the given values.
+     *
+     * @param id
+     *            The atom ID.
+     * @param type
+     *            The element type.
+     * @param x
+     *            The X coordinate.
+     * @param y
+     *            The Y coordinate.
+     * @param z
+     *            The Z coordinate.
+     * @return The new atom.
+     */
+    static DefaultAtom createAtom(final int id, final AtomicElement type,
+            final double x, final double y, final double z) {
+        final DefaultAtom atom = new DefaultAtom();
+        atom.setId(id);
+        atom.setType(type);
+        atom.setX(x);
+        atom.setY(y);
+        atom.setZ(z);
+        return atom;
+    }
+
+    /**
+     * Reads a geometry kept as the rows of a Gaussian "Input orientation"
+     * table: the center number, atomic number, atomic type and X, Y and Z
+     * coordinates of each atom.
+     *
+     * @param srcName
+     *            The name of the log the geometry was taken from.
+     * @return A result holding the geometry's atoms.
+     * @throws IOException
+     *             If the geometry can't be read.
+     */
+    static DefaultBaseResult loadGeometry(final String srcName)
+            throws IOException {
+        final DefaultBaseResult result = new DefaultBaseResult(srcName);
+        for (String row : Files.readAllLines(Paths.get(XYZ_DIR_PFX
+                + srcName.replaceFirst("\\.[^.]+$", ".txt")),
+                StandardCharsets.US_ASCII)) {
+            final String[] cols = row.trim().split("\\s+");
+            result.addAtom(createAtom(Integer.parseInt(cols[0]),
+                    AtomicElement.valueOf(Integer.parseInt(cols[1])),
+                    Double.parseDouble(cols[3]), Double.parseDouble(cols[4]),
+                    Double.parseDouble(cols[5])));
+        }
+        result.setAtomCount(result.getAtoms().size());
+        return result;
+    }
+}
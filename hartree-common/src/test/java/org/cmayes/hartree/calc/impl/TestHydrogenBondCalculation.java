@@ -0,0 +1,148 @@
+package org.cmayes.hartree.calc.impl;
+
+import static org.cmayes.hartree.calc.impl.AtomFixtures.createAtom;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.cmayes.hartree.model.def.CpCalculationSnapshot;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.model.def.HydrogenBond;
+import org.junit.Test;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.Atom;
+
+/**
+ * Tests for {@link HydrogenBondCalculation}.
+ *
+ * @author cmayes
+ */
+public class TestHydrogenBondCalculation {
+    private static final String AGLC_LOG = "aglc_1c4_Na1b3lwatmwatca.log";
+    private static final double ERR_MARGIN = .01;
+
+    /**
+     * Tests a linear water dimer.
+     */
+    @Test
+    public void testWaterDimer() {
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) new HydrogenBondCalculation()
+                .calculate(createDimer(0));
+        final List<HydrogenBond> bonds = snap.getHydrogenBonds();
+        assertEquals(1, bonds.size());
+        final HydrogenBond bond = bonds.get(0);
+        assertEquals(1, bond.getDonorId());
+        assertEquals(2, bond.getHydrogenId());
+        assertEquals(4, bond.getAcceptorId());
+        assertThat(bond.getDistance(), closeTo(1.96, ERR_MARGIN));
+        assertThat(bond.getAngle(), closeTo(180, ERR_MARGIN));
+        assertTrue(snap.getHydroxylHBondRoles().isEmpty());
+    }
+
+    /**
+     * Tests that a bent dimer fails the angle cutoff.
+     */
+    @Test
+    public void testBentDimer() {
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) new HydrogenBondCalculation()
+                .calculate(createDimer(2.0));
+        assertTrue(snap.getHydrogenBonds().isEmpty());
+    }
+
+    /**
+     * Tests the roles assigned to labeled oxygens.
+     */
+    @Test
+    public void testRoles() {
+        final DefaultBaseResult dimer = createDimer(0);
+        final CpCalculationSnapshot cpSnap = new CpCalculationSnapshot(dimer);
+        final List<Atom> atoms = dimer.getAtoms();
+        cpSnap.setOxygenAtoms(Arrays.asList(atoms.get(0), null, atoms.get(3)));
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) new HydrogenBondCalculation()
+                .calculate(cpSnap);
+        assertEquals(Arrays.asList("d", null, "a"),
+                snap.getHydroxylHBondRoles());
+        assertEquals("O1>O3", snap.getRingHBondPattern());
+    }
+
+    /**
+     * Tests the calculation in the CP snapshot chain on the final geometry of
+     * a real job.
+     *
+     * @throws Exception
+     *             If there are problems.
+     */
+    @Test
+    public void testAglc() throws Exception {
+        Object result = AtomFixtures.loadGeometry(AGLC_LOG);
+        result = new GlucoseRingCalculation().calculate(result);
+        result = new GlucoseBondLengthCalculation().calculate(result);
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) new HydrogenBondCalculation()
+                .calculate(result);
+        assertNotNull(snap.getHydrogenBonds());
+        final List<String> roles = snap.getHydroxylHBondRoles();
+        assertEquals(snap.getOxygenAtoms().size(), roles.size());
+        assertNotNull(snap.getRingHBondPattern());
+        for (HydrogenBond bond : snap.getHydrogenBonds()) {
+            assertTrue(bond.getDistance() <= HydrogenBondCalculation.DEF_MAX_DIST);
+            assertTrue(bond.getAngle() >= HydrogenBondCalculation.DEF_MIN_ANGLE);
+        }
+    }
+
+    /**
+     * Tests that a distance cutoff shorter than the covalent donor distance
+     * still finds the donor and only keeps acceptors within the cutoff.
+     */
+    @Test
+    public void testSmallCutoff() {
+        final DefaultBaseResult shortBond = new DefaultBaseResult("short");
+        shortBond.addAtom(createAtom(1, AtomicElement.OXYGEN, 0, 0, 0));
+        shortBond.addAtom(createAtom(2, AtomicElement.HYDROGEN, 1.1, 0, 0));
+        shortBond.addAtom(createAtom(3, AtomicElement.OXYGEN, 2.25, 0, 0));
+        final List<HydrogenBond> bonds = ((CpCalculationSnapshot) new HydrogenBondCalculation(
+                1.16, HydrogenBondCalculation.DEF_MIN_ANGLE)
+                .calculate(shortBond)).getHydrogenBonds();
+        assertEquals(1, bonds.size());
+        assertEquals(1, bonds.get(0).getDonorId());
+        assertEquals(3, bonds.get(0).getAcceptorId());
+        assertThat(bonds.get(0).getDistance(), closeTo(1.15, ERR_MARGIN));
+        assertTrue(((CpCalculationSnapshot) new HydrogenBondCalculation(1.0,
+                HydrogenBondCalculation.DEF_MIN_ANGLE).calculate(shortBond))
+                .getHydrogenBonds().isEmpty());
+    }
+
+    /**
+     * Tests that an invalid cutoff is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCutoff() {
+        new HydrogenBondCalculation(-1, HydrogenBondCalculation.DEF_MIN_ANGLE);
+    }
+
+    /**
+     * Creates a water dimer where the first water donates to the second.
+     *
+     * @param bend
+     *            The Y offset of the acceptor oxygen; zero gives a linear bond.
+     * @return The dimer.
+     */
+    private DefaultBaseResult createDimer(final double bend) {
+        final DefaultBaseResult result = new DefaultBaseResult("dimer");
+        result.addAtom(createAtom(1, AtomicElement.OXYGEN, 0, 0, 0));
+        result.addAtom(createAtom(2, AtomicElement.HYDROGEN, 0.96, 0, 0));
+        result.addAtom(createAtom(3, AtomicElement.HYDROGEN, -0.24, 0.93, 0));
+        result.addAtom(createAtom(4, AtomicElement.OXYGEN, 2.92 - bend, bend,
+                0));
+        result.addAtom(createAtom(5, AtomicElement.HYDROGEN, 3.16 - bend,
+                bend, 0.93));
+        result.addAtom(createAtom(6, AtomicElement.HYDROGEN, 3.16 - bend,
+                bend, -0.93));
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+package org.cmayes.hartree.calc.impl;
+
+import static org.cmayes.hartree.calc.impl.AtomFixtures.createAtom;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.cmayes.hartree.model.def.CpCalculationSnapshot;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.cmayes.hartree.model.def.IonCoordination;
+import org.junit.Test;
+
+import com.cmayes.common.chem.AtomicElement;
+
+/**
+ * Tests for {@link IonCoordinationCalculation}.
+ *
+ * @author cmayes
+ */
+public class TestIonCoordinationCalculation {
+    private static final String AGLC_LOG = "aglc_1c4_Na1b3lwatmwatca.log";
+    private static final double ERR_MARGIN = .01;
+
+    /**
+     * Tests that the shell found with a cell index matches the ring oxygen
+     * distances found by {@link IonDistanceCalculation}.
+     *
+     * @throws Exception
+     *             If there are problems.
+     */
+    @Test
+    public void testAglcShell() throws Exception {
+        final IonCoordinationCalculation calc = new IonCoordinationCalculation(
+                AtomicElement.CALCIUM);
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) calc
+                .calculate(AtomFixtures.loadGeometry(AGLC_LOG));
+        final List<IonCoordination> coords = snap.getIonCoordinations();
+        assertEquals(1, coords.size());
+        final IonCoordination coord = coords.get(0);
+        assertEquals(AtomicElement.CALCIUM, coord.getIonType());
+        final List<Double> dists = coord.getDistances();
+        assertEquals(coord.getCoordinationNumber(), dists.size());
+        assertTrue(dists.size() >= 3);
+        // The three closest sugar oxygens from TestIonDistanceCalculation
+        assertThat(dists.get(0), closeTo(2.43021, ERR_MARGIN));
+        for (int i = 1; i < dists.size(); i++) {
+            assertTrue(dists.get(i - 1) <= dists.get(i));
+            assertTrue(dists.get(i) <= IonCoordinationCalculation.DEF_CUTOFF);
+        }
+    }
+
+    /**
+     * Tests a geometry with two ions, each with its own shell.
+     */
+    @Test
+    public void testMultiIon() {
+        final DefaultBaseResult result = new DefaultBaseResult("multi");
+        result.addAtom(createAtom(1, AtomicElement.SODIUM, 0, 0, 0));
+        result.addAtom(createAtom(2, AtomicElement.OXYGEN, 2.4, 0, 0));
+        result.addAtom(createAtom(3, AtomicElement.OXYGEN, 0, -2.2, 0));
+        result.addAtom(createAtom(4, AtomicElement.HYDROGEN, 0, 0, 1.0));
+        result.addAtom(createAtom(5, AtomicElement.SODIUM, 10, 0, 0));
+        result.addAtom(createAtom(6, AtomicElement.OXYGEN, 10, 0, 2.3));
+        result.addAtom(createAtom(7, AtomicElement.CARBON, 10, 0, 3.5));
+        final CpCalculationSnapshot snap = (CpCalculationSnapshot) new IonCoordinationCalculation(
+                AtomicElement.SODIUM).calculate(result);
+        final List<IonCoordination> coords = snap.getIonCoordinations();
+        assertEquals(2, coords.size());
+        assertEquals(1, coords.get(0).getIonId());
+        assertEquals(2, coords.get(0).getCoordinationNumber());
+        assertEquals(Integer.valueOf(3), coords.get(0).getNeighborIds().get(0));
+        assertThat(coords.get(0).getDistances().get(0), closeTo(2.2, ERR_MARGIN));
+        assertThat(coords.get(0).getDistances().get(1), closeTo(2.4, ERR_MARGIN));
+        assertEquals(5, coords.get(1).getIonId());
+        assertEquals(1, coords.get(1).getCoordinationNumber());
+        assertEquals(AtomicElement.OXYGEN, coords.get(1).getNeighborTypes()
+                .get(0));
+    }
+
+    /**
+     * Tests that an invalid cutoff is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCutoff() {
+        new IonCoordinationCalculation(0, AtomicElement.SODIUM);
+    }
+}
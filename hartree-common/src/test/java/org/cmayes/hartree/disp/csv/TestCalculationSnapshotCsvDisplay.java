@@ -11,6 +11,7 @@ import java.io.StringWriter;
 import java.util.Arrays;
 
 import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
 import org.cmayes.hartree.model.def.DefaultBaseResult;
 import org.junit.Before;
 import org.junit.Test;
@@ -77,6 +78,35 @@ public class TestCalculationSnapshotCsvDisplay {
 
     }
 
+    /**
+     * Tests writing only the columns for selected fields.
+     *
+     * @throws Exception
+     *             When there is a problem.
+     */
+    @Test
+    public void testProjectedFields() throws Exception {
+        final SnapshotCsvDisplay projDisp = new SnapshotCsvDisplay(
+                Arrays.asList(SnapshotField.STOICHIOMETRY,
+                        SnapshotField.CHARGE, SnapshotField.ENERGY,
+                        SnapshotField.FREQ));
+        final StringWriter stringWriter = new StringWriter();
+        projDisp.write(stringWriter, getTestInst());
+        final CSVReader csvReader = new CSVReader(new StringReader(
+                stringWriter.toString()));
+        try {
+            assertThat(csvReader.readNext(), equalTo(new String[] {
+                    "File Name", "Stoichiometry", "Charge", "Energy (A.U.)",
+                    "Freq 1", "Freq 2" }));
+            assertThat(csvReader.readNext(), equalTo(new String[] {
+                    "someFileName.txt", "C6H12NaO6(1+)", "1",
+                    "-849.236562347", "60.7784", "90.3398" }));
+            assertNull(csvReader.readNext());
+        } finally {
+            csvReader.close();
+        }
+    }
+
     /**
      * Tests running against an empty test instance.
      * 
@@ -0,0 +1,168 @@
+package org.cmayes.hartree.filter;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.cmayes.hartree.model.BaseResult;
+import org.cmayes.hartree.model.SnapshotField;
+import org.cmayes.hartree.model.TerminationStatus;
+import org.cmayes.hartree.model.def.DefaultBaseResult;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ResultFilter} and {@link ResultPredicate}.
+ *
+ * @author cmayes
+ */
+public class TestResultFilter {
+    /**
+     * Tests text comparisons, including the functional's spin prefix.
+     */
+    @Test
+    public void testText() {
+        final BaseResult result = getTestInst();
+        assertTrue(ResultPredicate.parse("functional=M062X").test(result));
+        assertTrue(ResultPredicate.parse("functional = rm062x").test(result));
+        assertFalse(ResultPredicate.parse("functional!=M062X").test(result));
+        assertFalse(ResultPredicate.parse("functional=B3LYP").test(result));
+        assertTrue(ResultPredicate.parse("stoichiometry=C6H12NaO6(1+)").test(
+                result));
+        assertFalse(ResultPredicate.parse("basisset=6-31g").test(result));
+    }
+
+    /**
+     * Tests numeric comparisons.
+     */
+    @Test
+    public void testNumbers() {
+        final BaseResult result = getTestInst();
+        assertTrue(ResultPredicate.parse("charge=1").test(result));
+        assertTrue(ResultPredicate.parse("charge>=1").test(result));
+        assertFalse(ResultPredicate.parse("charge>1").test(result));
+        assertTrue(ResultPredicate.parse("energy<-849").test(result));
+        assertTrue(ResultPredicate.parse("freq>0").test(result));
+        assertFalse(ResultPredicate.parse("freq<=60").test(result));
+    }
+
+    /**
+     * Tests that a missing value never matches.
+     */
+    @Test
+    public void testMissing() {
+        final BaseResult result = getTestInst();
+        assertFalse(ResultPredicate.parse("zpe>0").test(result));
+        assertFalse(ResultPredicate.parse("zpe!=0").test(result));
+        assertFalse(ResultPredicate.parse("solvent!=water").test(result));
+    }
+
+    /**
+     * Tests termination comparisons.
+     */
+    @Test
+    public void testTermination() {
+        final ResultFilter filter = ResultFilter
+                .parse("termination=normal,charge=1");
+        assertTrue(filter.hasTermination());
+        assertTrue(filter.test(TerminationStatus.NORMAL));
+        assertFalse(filter.test(TerminationStatus.ERROR));
+        assertFalse(filter.test(TerminationStatus.INCOMPLETE));
+        assertTrue(ResultFilter.parse("termination!=error").test(
+                TerminationStatus.INCOMPLETE));
+    }
+
+    /**
+     * Tests a filter with several conditions.
+     */
+    @Test
+    public void testFilter() {
+        final ResultFilter filter = ResultFilter
+                .parse("charge=1, functional=M062X,energy<-800,");
+        assertThat(filter.getFields(), contains(SnapshotField.CHARGE,
+                SnapshotField.FUNCTIONAL, SnapshotField.ENERGY));
+        assertFalse(filter.hasTermination());
+        final BaseResult result = getTestInst();
+        assertTrue(filter.test(result));
+        assertTrue(filter.test(SnapshotField.CHARGE, result));
+        assertTrue(filter.test(SnapshotField.MULT, result));
+        result.setCharge(0);
+        assertFalse(filter.test(SnapshotField.CHARGE, result));
+        assertTrue(filter.test(SnapshotField.FUNCTIONAL, result));
+        assertFalse(filter.test(result));
+        filter.recordMatch();
+        filter.recordSkip();
+        filter.recordSkip();
+        assertThat(filter.getMatchCount(), equalTo(1));
+        assertThat(filter.getSkipCount(), equalTo(2));
+    }
+
+    /**
+     * Tests a condition without an operator.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoOperator() {
+        ResultFilter.parse("charge");
+    }
+
+    /**
+     * Tests a condition without a value.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoValue() {
+        ResultFilter.parse("charge=");
+    }
+
+    /**
+     * Tests ordering a text field.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrderedText() {
+        ResultFilter.parse("functional>M062X");
+    }
+
+    /**
+     * Tests a numeric field with a text value.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotNumber() {
+        ResultFilter.parse("charge=one");
+    }
+
+    /**
+     * Tests an unknown termination status.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadTermination() {
+        ResultFilter.parse("termination=done");
+    }
+
+    /**
+     * Tests a filter without conditions.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        ResultFilter.parse(" , ");
+    }
+
+    /**
+     * Creates a test instance to filter.
+     *
+     * @return A test instance.
+     */
+    private BaseResult getTestInst() {
+        final DefaultBaseResult snap = new DefaultBaseResult();
+        snap.setSourceName("someFileName.txt");
+        snap.setStoichiometry("C6H12NaO6(1+)");
+        snap.setElecEn(-849.236562347);
+        snap.setFunctional("RM062X");
+        snap.setBasisSet("6-31+g(2df,p)");
+        snap.setCharge(1);
+        snap.setMult(1);
+        snap.setFrequencyValues(Arrays.asList(60.7784, 90.3398));
+        return snap;
+    }
+}
@@ -0,0 +1,233 @@
+package org.cmayes.hartree.model.def;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.cmayes.hartree.loader.ParseException;
+import org.junit.Test;
+
+import com.cmayes.common.chem.AtomicElement;
+import com.cmayes.common.model.Atom;
+import com.cmayes.common.model.impl.DefaultAtom;
+
+/**
+ * Tests for {@link ColumnarTrajectory}.
+ * 
+ * @author cmayes
+ */
+public class TestColumnarTrajectory {
+    private static final int ATOMS = 30;
+    private static final int FRAMES = 50;
+    private static final String SRC_NAME = "opt.log";
+    private static final int TRAILER = 0x7E57;
+
+    /**
+     * Tests random access to frames and energies.
+     */
+    @Test
+    public void testRandomAccess() {
+        final ColumnarTrajectory traj = createTrajectory();
+        assertEquals(FRAMES, traj.getFrameCount());
+        assertEquals(ATOMS, traj.getAtomCount());
+        final List<Atom> frame = traj.getFrame(17);
+        assertEquals(ATOMS, frame.size());
+        assertEquals(createFrame(17), frame);
+        assertThat(traj.getEnergy(17), closeTo(energy(17), 0));
+        assertThat(traj.getCoord(17, 4, 1), closeTo(coord(17, 4, 1), 0));
+        final double[] coords = new double[ATOMS * 3];
+        traj.copyFrameCoords(3, coords);
+        assertThat(coords[3 * 5 + 2], closeTo(coord(3, 5, 2), 0));
+        assertEquals(AtomicElement.OXYGEN, traj.getAtomType(1));
+        assertEquals(FRAMES - 1, traj.getLowestEnergyFrame());
+    }
+
+    /**
+     * Tests that the iterator returns every frame in order.
+     */
+    @Test
+    public void testIterator() {
+        final ColumnarTrajectory traj = createTrajectory();
+        final Iterator<List<Atom>> iter = traj.iterator();
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(createFrame(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    /**
+     * Tests a round trip through the compressed format and that it is smaller
+     * than the raw coordinates.
+     */
+    @Test
+    public void testCompressedRoundTrip() {
+        final ColumnarTrajectory traj = createTrajectory();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        traj.writeCompressed(out);
+        assertThat(out.size(), lessThan(FRAMES * ATOMS * 3 * 8 / 4));
+        final ColumnarTrajectory read = ColumnarTrajectory
+                .readCompressed(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(SRC_NAME, read.getSourceName());
+        assertEquals(FRAMES, read.getFrameCount());
+        for (int i = 0; i < FRAMES; i++) {
+            assertThat(read.getEnergy(i), closeTo(energy(i), 0));
+            for (int j = 0; j < ATOMS; j++) {
+                for (int k = 0; k < 3; k++) {
+                    assertThat(read.getCoord(i, j, k),
+                            closeTo(coord(i, j, k), 1E-6));
+                }
+            }
+        }
+        assertEquals(AtomicElement.CARBON, read.getAtomType(0));
+        assertEquals(2, read.getAtomId(1));
+    }
+
+    /**
+     * Tests that reading a trajectory leaves the data after it in the stream,
+     * with and without mark support.
+     * 
+     * @throws IOException
+     *             If there are problems with the test data.
+     */
+    @Test
+    public void testFollowingData() throws IOException {
+        final ColumnarTrajectory traj = createTrajectory();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        traj.writeCompressed(out);
+        traj.writeCompressed(out, 0.001);
+        new DataOutputStream(out).writeInt(TRAILER);
+        final byte[] data = out.toByteArray();
+        for (InputStream in : Arrays.asList(new ByteArrayInputStream(data),
+                new FilterInputStream(new ByteArrayInputStream(data)) {
+                    @Override
+                    public boolean markSupported() {
+                        return false;
+                    }
+                })) {
+            assertEquals(FRAMES, ColumnarTrajectory.readCompressed(in)
+                    .getFrameCount());
+            assertEquals(FRAMES, ColumnarTrajectory.readCompressed(in)
+                    .getFrameCount());
+            assertEquals(TRAILER, new DataInputStream(in).readInt());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Tests that a coarser precision stays within half a step.
+     */
+    @Test
+    public void testCoarsePrecision() {
+        final ColumnarTrajectory traj = createTrajectory();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        traj.writeCompressed(out, 0.001);
+        final ColumnarTrajectory read = ColumnarTrajectory
+                .readCompressed(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(read.getCoord(FRAMES - 1, ATOMS - 1, 2),
+                closeTo(coord(FRAMES - 1, ATOMS - 1, 2), 0.0005));
+    }
+
+    /**
+     * Tests that other data is rejected.
+     * 
+     * @throws IOException
+     *             If there are problems writing the test data.
+     */
+    @Test(expected = ParseException.class)
+    public void testBadMagic() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        deflater.write(new byte[] { 1, 2, 3, 4, 5 });
+        deflater.finish();
+        ColumnarTrajectory.readCompressed(new ByteArrayInputStream(out
+                .toByteArray()));
+    }
+
+    /**
+     * Tests that a frame with the wrong atoms is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedFrame() {
+        final ColumnarTrajectory traj = createTrajectory();
+        traj.addFrame(0, createFrame(0).subList(1, ATOMS));
+    }
+
+    /**
+     * Tests that frames out of range are rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadFrame() {
+        createTrajectory().getFrame(FRAMES);
+    }
+
+    /**
+     * @return A trajectory with slowly moving atoms.
+     */
+    private ColumnarTrajectory createTrajectory() {
+        final ColumnarTrajectory traj = new ColumnarTrajectory(SRC_NAME,
+                createFrame(0));
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i, traj.addFrame(energy(i), createFrame(i)));
+        }
+        return traj;
+    }
+
+    /**
+     * @param frame
+     *            The frame index.
+     * @return The atoms for the frame.
+     */
+    private List<Atom> createFrame(final int frame) {
+        final List<Atom> atoms = new ArrayList<Atom>(ATOMS);
+        for (int j = 0; j < ATOMS; j++) {
+            final DefaultAtom atom = new DefaultAtom();
+            atom.setId(j + 1);
+            atom.setType(j % 2 == 0 ? AtomicElement.CARBON
+                    : AtomicElement.OXYGEN);
+            atom.setX(coord(frame, j, 0));
+            atom.setY(coord(frame, j, 1));
+            atom.setZ(coord(frame, j, 2));
+            atoms.add(atom);
+        }
+        return atoms;
+    }
+
+    /**
+     * @param frame
+     *            The frame index.
+     * @return The frame's energy.
+     */
+    private double energy(final int frame) {
+        return -1000.5 - frame * 0.0001;
+    }
+
+    /**
+     * @param frame
+     *            The frame index.
+     * @param atom
+     *            The atom index.
+     * @param dim
+     *            The dimension.
+     * @return A coordinate rounded to Gaussian's printed precision.
+     */
+    private double coord(final int frame, final int atom, final int dim) {
+        final double raw = atom * 1.3 + dim * 0.7 - 2 + frame * 0.0013
+                * (dim + 1);
+        return Math.round(raw * 1E6) / 1E6;
+    }
+}
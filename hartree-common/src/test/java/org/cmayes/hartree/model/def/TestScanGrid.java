@@ -0,0 +1,156 @@
+package org.cmayes.hartree.model.def;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.cmayes.hartree.disp.csv.ScanGridCsvDisplay;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ScanGrid} and {@link PesScan}.
+ * 
+ * @author cmayes
+ */
+public class TestScanGrid {
+    private static final double ERR_MARGIN = .000001;
+    private static final String SRC_NAME = "scan.log";
+
+    /**
+     * Tests that a two-dimensional scan is arranged into a dense grid with the
+     * unreached point left as NaN and duplicates resolved to the lowest energy.
+     */
+    @Test
+    public void testTwoDimensions() {
+        final PesScan scan = createScan();
+        final ScanGrid grid = scan.toGrid();
+        assertEquals(2, grid.getDimensions());
+        assertArrayEquals(new double[] { 1.0, 1.5 }, grid.getAxis(0),
+                ERR_MARGIN);
+        assertArrayEquals(new double[] { 0, 90, 180 }, grid.getAxis(1),
+                ERR_MARGIN);
+        assertThat(grid.getEnergy(0, 0),
+                closeTo(-1.0, ERR_MARGIN));
+        assertThat(grid.getEnergy(0, 1),
+                closeTo(-1.3, ERR_MARGIN));
+        assertTrue(Double.isNaN(grid.getEnergy(1, 2)));
+    }
+
+    /**
+     * Tests that scans of more than two coordinates are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyDimensions() {
+        new PesScan(SRC_NAME, Arrays.asList("R(1,2)", "A(1,2,3)",
+                "D(1,2,3,4)")).toGrid();
+    }
+
+    /**
+     * Tests the layout of the written .npz archive.
+     * 
+     * @throws Exception
+     *             When there's a problem.
+     */
+    @Test
+    public void testWriteNpz() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createScan().toGrid().writeNpz(out);
+        final ZipInputStream zipIn = new ZipInputStream(
+                new ByteArrayInputStream(out.toByteArray()));
+        final List<String> names = new ArrayList<String>();
+        ZipEntry entry;
+        while ((entry = zipIn.getNextEntry()) != null) {
+            names.add(entry.getName());
+            final byte[] head = new byte[10];
+            int read = 0;
+            while (read < head.length) {
+                read += zipIn.read(head, read, head.length - read);
+            }
+            final int headerLen = (head[8] & 0xFF) | ((head[9] & 0xFF) << 8);
+            assertEquals(0, (head.length + headerLen) % 64);
+            if ("energies.npy".equals(entry.getName())) {
+                final byte[] header = new byte[headerLen];
+                read = 0;
+                while (read < header.length) {
+                    read += zipIn.read(header, read, header.length - read);
+                }
+                assertTrue(new String(header, Charset.forName("US-ASCII"))
+                        .contains("'shape': (2, 3, )"));
+            }
+        }
+        assertEquals(Arrays.asList("energies.npy", "axis0.npy", "axis1.npy"),
+                names);
+    }
+
+    /**
+     * Tests the CSV matrix layout of a two-dimensional grid.
+     */
+    @Test
+    public void testCsvDisplay() {
+        final StringWriter writer = new StringWriter();
+        new ScanGridCsvDisplay().write(writer, createScan());
+        final String[] lines = writer.toString().split("\r?\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("R(1,2)\\D(1,2,3,4)"));
+        assertTrue(lines[2].contains("N/A"));
+    }
+
+    /**
+     * Tests that a scan of more than two coordinates is written as a point
+     * list instead of failing.
+     */
+    @Test
+    public void testCsvDisplayTooManyDimensions() {
+        final PesScan scan = new PesScan(SRC_NAME, Arrays.asList("R(1,2)",
+                "A(1,2,3)", "D(1,2,3,4)"));
+        int point = scan.addPoint(-1.0, null);
+        scan.setCoordValue(point, 0, 1.0);
+        scan.setCoordValue(point, 1, 109.5);
+        scan.setCoordValue(point, 2, 60.0);
+        point = scan.addPoint(-1.1, null);
+        scan.setCoordValue(point, 0, 1.5);
+        scan.setCoordValue(point, 2, 180.0);
+        final StringWriter writer = new StringWriter();
+        new ScanGridCsvDisplay().write(writer, scan);
+        final String[] lines = writer.toString().split("\r?\n");
+        assertEquals(3, lines.length);
+        assertEquals("\"Point\",\"R(1,2)\",\"A(1,2,3)\",\"D(1,2,3,4)\","
+                + "\"Energy (A.U.)\"", lines[0]);
+        assertEquals("\"1\",\"1.0\",\"109.5\",\"60.0\",\"-1.0\"", lines[1]);
+        assertEquals("\"2\",\"1.5\",\"N/A\",\"180.0\",\"-1.1\"", lines[2]);
+    }
+
+    /**
+     * @return A two-coordinate scan missing one grid point.
+     */
+    private PesScan createScan() {
+        final PesScan scan = new PesScan(SRC_NAME, Arrays.asList("R(1,2)",
+                "D(1,2,3,4)"));
+        addPoint(scan, 1.0, 0, -1.0);
+        addPoint(scan, 1.0, 90, -1.2);
+        addPoint(scan, 1.0004, 90.0002, -1.3);
+        addPoint(scan, 1.0, 180, -1.1);
+        addPoint(scan, 1.5, 0, -0.9);
+        addPoint(scan, 1.5, 90, -0.8);
+        return scan;
+    }
+
+    private void addPoint(final PesScan scan, final double bond,
+            final double dihedral, final double energy) {
+        final int point = scan.addPoint(energy, null);
+        scan.setCoordValue(point, 0, bond);
+        scan.setCoordValue(point, 1, dihedral);
+    }
+}